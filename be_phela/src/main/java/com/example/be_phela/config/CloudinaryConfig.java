@@ -19,12 +19,17 @@ public class CloudinaryConfig {
     @Value("${cloudinary.api-secret}")
     private String apiSecret;
 
+    // Có thể trỏ sang một endpoint giả lập khi chạy thử
+    @Value("${cloudinary.upload-prefix:https://api.cloudinary.com}")
+    private String uploadPrefix;
+
     @Bean
     public Cloudinary cloudinary() {
         Map<String, String> config = new HashMap<>();
         config.put("cloud_name", cloudName);
         config.put("api_key", apiKey);
         config.put("api_secret", apiSecret);
+        config.put("upload_prefix", uploadPrefix);
         return new Cloudinary(config);
     }
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+package com.example.be_phela.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+// Các thread pool riêng, có giới hạn, cho những tác vụ chạy nền
+@Configuration
+public class ExecutorConfig {
+
+    // Chạy song song các truy vấn thống kê của dashboard
+    @Bean(name = "dashboardExecutor")
+    public ThreadPoolTaskExecutor dashboardExecutor(@Value("${app.dashboard.executor-threads:4}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(32);
+        executor.setThreadNamePrefix("dashboard-");
+        // Hết chỗ thì chạy luôn trên thread gọi thay vì từ chối
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        executor.initialize();
+        return executor;
+    }
+
+    // Upload ảnh lên Cloudinary, tách khỏi thread request và transaction DB
+    @Bean(name = "uploadExecutor")
+    public ThreadPoolTaskExecutor uploadExecutor(@Value("${app.upload.executor-threads:4}") int threads,
+                                                 @Value("${app.upload.queue-capacity:64}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("upload-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    // Điều phối backfill ảnh sản phẩm: thread này chỉ gửi ảnh sang uploadExecutor rồi chờ,
+    // nên không được chiếm một thread của chính pool đó. Mỗi lúc chỉ có một lần backfill.
+    @Bean(name = "backfillExecutor")
+    public ThreadPoolTaskExecutor backfillExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.setThreadNamePrefix("backfill-");
+        executor.setAwaitTerminationSeconds(5);
+        executor.initialize();
+        return executor;
+    }
+
+    // Gửi email từ outbox; hết chỗ thì thread quét outbox tự gửi, nhờ vậy tốc độ nhận việc tự chậm lại
+    @Bean(name = "mailExecutor")
+    public ThreadPoolTaskExecutor mailExecutor(@Value("${app.mail.executor-threads:4}") int threads,
+                                               @Value("${app.mail.queue-capacity:32}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("mail-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    // Ghi khóa tài khoản xuống DB; một thread để lần khóa và lần reset của cùng tài khoản ghi theo thứ tự.
+    // Đăng nhập sai được đếm trên thread request nên hàng đợi đầy chỉ bỏ lần ghi DB, khóa trong bộ nhớ vẫn áp dụng.
+    @Bean(name = "securityExecutor")
+    public ThreadPoolTaskExecutor securityExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1024);
+        executor.setThreadNamePrefix("security-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(5);
+        executor.initialize();
+        return executor;
+    }
+}
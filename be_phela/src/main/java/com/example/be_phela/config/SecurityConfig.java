@@ -1,8 +1,13 @@
 package com.example.be_phela.config;
 
+import com.example.be_phela.filter.ApiRateLimitFilter;
+import com.example.be_phela.filter.AuthRateLimitFilter;
 import com.example.be_phela.filter.JwtAuthenticationFilter;
+import com.example.be_phela.security.SecurityEventLogger;
 import com.example.be_phela.service.AdminUserDetailsService;
+import com.example.be_phela.service.ApiRateLimitService;
 import com.example.be_phela.service.CustomerUserDetailsService;
+import com.example.be_phela.service.LoginAttemptService;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
@@ -10,6 +15,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -28,10 +34,16 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 public class SecurityConfig {
     final AdminUserDetailsService adminUserDetailsService;
     final CustomerUserDetailsService customerUserDetailsService;
+    final SecurityEventLogger securityEventLogger;
+    final LoginAttemptService loginAttemptService;
+    final ApiRateLimitService apiRateLimitService;
 
     @Value("${jwt.signer-key}")
     private String signerKey;
 
+    @Value("${app.security.jwt-cache.max-entries:10000}")
+    private int jwtCacheMaxEntries;
+
     @Bean
     public BCryptPasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder(10);
@@ -39,7 +51,7 @@ public class SecurityConfig {
 
     @Bean
     public JwtAuthenticationFilter jwtAuthenticationFilter() {
-        return new JwtAuthenticationFilter(signerKey);
+        return new JwtAuthenticationFilter(signerKey, jwtCacheMaxEntries, securityEventLogger);
     }
 
     @Bean
@@ -73,6 +85,15 @@ public class SecurityConfig {
                     // Allow CORS preflight requests (OPTIONS method)
                     registry.requestMatchers(request -> "OPTIONS".equals(request.getMethod())).permitAll();
 
+                    // Thao tác bảo trì chỉ dành cho SUPER_ADMIN; khai báo ở đây vì ứng dụng không bật method security
+                    // nên @PreAuthorize trên controller không có tác dụng
+                    registry.requestMatchers(HttpMethod.POST, "/api/locations/refresh").hasRole("SUPER_ADMIN");
+                    registry.requestMatchers("/api/admin/cv/**").hasRole("SUPER_ADMIN");
+                    registry.requestMatchers(HttpMethod.POST, "/api/dashboard/revenue-rollup/rebuild").hasRole("SUPER_ADMIN");
+                    registry.requestMatchers("/api/dashboard/revenue-rollup/**").hasAnyRole("ADMIN", "SUPER_ADMIN");
+                    // Feed đơn hàng của mọi khách, chỉ dành cho màn hình quản trị / bếp
+                    registry.requestMatchers("/api/order/feed/**").hasAnyRole("ADMIN", "SUPER_ADMIN", "STAFF");
+
                     // Public endpoints - no authentication required
                     registry.requestMatchers(
                             "/healthz",
@@ -82,6 +103,7 @@ public class SecurityConfig {
                             "/auth/customer/login",
                             "/auth/forgot-password/**",
                             "/auth/admin/forgot-password/**",
+                            "/auth/logout",
                             "/verify",
                             "/api/product/**",
                             "/api/categories/**",
@@ -111,6 +133,8 @@ public class SecurityConfig {
                     registry.anyRequest().authenticated();
                 })
                 .addFilterBefore(jwtAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class)
+                .addFilterBefore(new AuthRateLimitFilter(loginAttemptService), JwtAuthenticationFilter.class)
+                .addFilterAfter(new ApiRateLimitFilter(apiRateLimitService), JwtAuthenticationFilter.class)
                 .build();
     }
 }
\ No newline at end of file
@@ -1,26 +1,154 @@
 package com.example.be_phela.config;
 
+import com.example.be_phela.security.StompAuthorizationInterceptor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
+import org.springframework.messaging.tcp.TcpOperations;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+import java.time.Duration;
+import java.util.Arrays;
+
+// app.websocket.broker=simple: broker trong bộ nhớ, chỉ dùng được khi chạy một instance.
+// app.websocket.broker=relay: chuyển tiếp tới broker STOMP bên ngoài (RabbitMQ, ActiveMQ...) để mọi instance
+// cùng thấy subscription của nhau; cần reactor-netty, hoặc một bean TcpOperations<byte[]> thay thế.
+@Slf4j
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private static final String[] BROKER_PREFIXES = {"/topic", "/queue"};
+
+    private final String brokerMode;
+    private final String relayHost;
+    private final int relayPort;
+    private final String relayVirtualHost;
+    private final String clientLogin;
+    private final String clientPasscode;
+    private final String systemLogin;
+    private final String systemPasscode;
+    private final Duration systemHeartbeat;
+    private final int inboundThreads;
+    private final int inboundQueueCapacity;
+    private final int outboundThreads;
+    private final int outboundQueueCapacity;
+    private final DataSize messageSizeLimit;
+    private final DataSize sendBufferSizeLimit;
+    private final Duration sendTimeLimit;
+    private final String[] allowedOrigins;
+    private final ObjectProvider<TcpOperations<byte[]>> relayTcpClient;
+    private final StompAuthorizationInterceptor stompAuthorizationInterceptor;
+
+    public WebSocketConfig(@Value("${app.websocket.broker:simple}") String brokerMode,
+                           @Value("${app.websocket.relay.host:localhost}") String relayHost,
+                           @Value("${app.websocket.relay.port:61613}") int relayPort,
+                           @Value("${app.websocket.relay.virtual-host:}") String relayVirtualHost,
+                           @Value("${app.websocket.relay.client-login:guest}") String clientLogin,
+                           @Value("${app.websocket.relay.client-passcode:guest}") String clientPasscode,
+                           @Value("${app.websocket.relay.system-login:guest}") String systemLogin,
+                           @Value("${app.websocket.relay.system-passcode:guest}") String systemPasscode,
+                           @Value("${app.websocket.relay.system-heartbeat:10s}") Duration systemHeartbeat,
+                           @Value("${app.websocket.inbound.threads:8}") int inboundThreads,
+                           @Value("${app.websocket.inbound.queue-capacity:1000}") int inboundQueueCapacity,
+                           @Value("${app.websocket.outbound.threads:8}") int outboundThreads,
+                           @Value("${app.websocket.outbound.queue-capacity:1000}") int outboundQueueCapacity,
+                           @Value("${app.websocket.message-size-limit:64KB}") DataSize messageSizeLimit,
+                           @Value("${app.websocket.send-buffer-size-limit:512KB}") DataSize sendBufferSizeLimit,
+                           @Value("${app.websocket.send-time-limit:15s}") Duration sendTimeLimit,
+                           @Value("${cors.allowed-origins:http://localhost:3000,http://localhost:3001}") String allowedOrigins,
+                           ObjectProvider<TcpOperations<byte[]>> relayTcpClient,
+                           StompAuthorizationInterceptor stompAuthorizationInterceptor) {
+        this.brokerMode = brokerMode;
+        this.relayHost = relayHost;
+        this.relayPort = relayPort;
+        this.relayVirtualHost = relayVirtualHost;
+        this.clientLogin = clientLogin;
+        this.clientPasscode = clientPasscode;
+        this.systemLogin = systemLogin;
+        this.systemPasscode = systemPasscode;
+        this.systemHeartbeat = systemHeartbeat;
+        this.inboundThreads = inboundThreads;
+        this.inboundQueueCapacity = inboundQueueCapacity;
+        this.outboundThreads = outboundThreads;
+        this.outboundQueueCapacity = outboundQueueCapacity;
+        this.messageSizeLimit = messageSizeLimit;
+        this.sendBufferSizeLimit = sendBufferSizeLimit;
+        this.sendTimeLimit = sendTimeLimit;
+        this.allowedOrigins = Arrays.stream(allowedOrigins.split(","))
+                .map(String::trim)
+                .filter(origin -> !origin.isEmpty())
+                .toArray(String[]::new);
+        this.relayTcpClient = relayTcpClient;
+        this.stompAuthorizationInterceptor = stompAuthorizationInterceptor;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic", "/queue");
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            StompBrokerRelayRegistration relay = config.enableStompBrokerRelay(BROKER_PREFIXES)
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(clientLogin)
+                    .setClientPasscode(clientPasscode)
+                    .setSystemLogin(systemLogin)
+                    .setSystemPasscode(systemPasscode)
+                    .setSystemHeartbeatSendInterval(systemHeartbeat.toMillis())
+                    .setSystemHeartbeatReceiveInterval(systemHeartbeat.toMillis());
+            if (!relayVirtualHost.isBlank()) {
+                relay.setVirtualHost(relayVirtualHost);
+            }
+            relayTcpClient.ifAvailable(relay::setTcpClient);
+            log.info("STOMP broker relay to {}:{}", relayHost, relayPort);
+        } else {
+            config.enableSimpleBroker(BROKER_PREFIXES);
+        }
         config.setApplicationDestinationPrefixes("/app");
+        // Outbound chạy nhiều thread nên cần giữ thứ tự tin nhắn gửi tới cùng một client
+        config.setPreservePublishOrder(true);
     }
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
+        // Cùng danh sách origin với CORS của REST API: endpoint này nhận JWT lúc CONNECT và mang cả tin nhắn admin
         registry.addEndpoint("/ws")
-                .setAllowedOrigins("http://localhost:3000", "http://localhost:3001")
-                .setAllowedOriginPatterns("*")
+                .setAllowedOrigins(allowedOrigins)
                 .withSockJS();
+        registry.setPreserveReceiveOrder(true);
+    }
+
+    // Thread pool có giới hạn cho tin nhắn từ client (gồm cả ghi chat) và tin nhắn gửi tới client.
+    // Xác thực CONNECT và phân quyền SUBSCRIBE chạy trước khi frame vào broker.
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(stompAuthorizationInterceptor);
+        registration.taskExecutor()
+                .corePoolSize(inboundThreads)
+                .maxPoolSize(inboundThreads)
+                .queueCapacity(inboundQueueCapacity);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundThreads)
+                .maxPoolSize(outboundThreads)
+                .queueCapacity(outboundQueueCapacity);
+    }
+
+    // Giới hạn kích thước frame nhận vào và bộ đệm gửi cho client chậm; vượt quá thì đóng phiên
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setMessageSizeLimit((int) messageSizeLimit.toBytes())
+                .setSendBufferSizeLimit((int) sendBufferSizeLimit.toBytes())
+                .setSendTimeLimit((int) sendTimeLimit.toMillis());
     }
 }
@@ -3,7 +3,10 @@ package com.example.be_phela.controller;
 import com.example.be_phela.dto.request.*;
 import com.example.be_phela.dto.response.ApiResponse;
 import com.example.be_phela.dto.response.AuthenticationResponse;
+import com.example.be_phela.filter.JwtAuthenticationFilter;
+import com.example.be_phela.security.SecurityEventLogger;
 import com.example.be_phela.service.AuthenticationService;
+import com.example.be_phela.service.LoginAttemptService;
 // import jakarta.mail.MessagingException; // Dòng này không còn cần thiết nữa
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
@@ -11,12 +14,14 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -30,6 +35,9 @@ import java.util.function.Supplier;
 public class AuthenticationController {
 
     final AuthenticationService authenticationService;
+    final LoginAttemptService loginAttemptService;
+    final SecurityEventLogger securityEventLogger;
+    final JwtAuthenticationFilter jwtAuthenticationFilter;
 
     @PostMapping("/customer/register")
     public ResponseEntity<ApiResponse<AuthenticationResponse>> registerCustomer(
@@ -56,16 +64,24 @@ public class AuthenticationController {
 
     @PostMapping("/admin/login")
     public ResponseEntity<ApiResponse<AuthenticationResponse>> loginAdmin(
-            @Valid @RequestBody AuthenticationRequest request) {
+            @Valid @RequestBody AuthenticationRequest request,
+            HttpServletRequest httpRequest) {
+        long lockedFor = loginAttemptService.lockedFor(LoginAttemptService.Scope.LOGIN, "admin", request.getUsername());
+        if (lockedFor > 0) {
+            return tooManyAttempts(lockedFor);
+        }
         try {
             log.info("Admin login attempt for username: {}", request.getUsername());
             AuthenticationResponse response = authenticationService.loginAdmin(request);
+            loginAttemptService.recordSuccess(LoginAttemptService.Scope.LOGIN, "admin", request.getUsername());
             return buildResponse(HttpStatus.OK, "success", "Admin logged in successfully", response);
         } catch (UsernameNotFoundException e) {
             log.error("Admin login failed: {}", e.getMessage());
+            securityEventLogger.logAuthenticationFailure(request.getUsername(), "USER_NOT_FOUND", httpRequest);
             return buildResponse(HttpStatus.NOT_FOUND, "error", "Tài khoản không tồn tại", null);
         } catch (BadCredentialsException e) {
             log.error("Admin login failed: {}", e.getMessage());
+            securityEventLogger.logAuthenticationFailure(request.getUsername(), "BAD_CREDENTIALS", httpRequest);
             return buildResponse(HttpStatus.UNAUTHORIZED, "error", "Sai mật khẩu", null);
         } catch (IllegalStateException e) {
             log.error("Admin login failed: {}", e.getMessage());
@@ -84,16 +100,24 @@ public class AuthenticationController {
 
     @PostMapping("/customer/login")
     public ResponseEntity<ApiResponse<AuthenticationResponse>> loginCustomer(
-            @Valid @RequestBody AuthenticationRequest request) {
+            @Valid @RequestBody AuthenticationRequest request,
+            HttpServletRequest httpRequest) {
+        long lockedFor = loginAttemptService.lockedFor(LoginAttemptService.Scope.LOGIN, "customer", request.getUsername());
+        if (lockedFor > 0) {
+            return tooManyAttempts(lockedFor);
+        }
         try {
             log.info("Customer login attempt for username: {}", request.getUsername());
             AuthenticationResponse response = authenticationService.loginCustomer(request);
+            loginAttemptService.recordSuccess(LoginAttemptService.Scope.LOGIN, "customer", request.getUsername());
             return buildResponse(HttpStatus.OK, "success", "Customer logged in successfully", response);
         } catch (UsernameNotFoundException e) {
             log.error("Customer login failed: {}", e.getMessage());
+            securityEventLogger.logAuthenticationFailure(request.getUsername(), "USER_NOT_FOUND", httpRequest);
             return buildResponse(HttpStatus.NOT_FOUND, "error", "Tài khoản không tồn tại", null);
         } catch (BadCredentialsException e) {
             log.error("Customer login failed: {}", e.getMessage());
+            securityEventLogger.logAuthenticationFailure(request.getUsername(), "BAD_CREDENTIALS", httpRequest);
             return buildResponse(HttpStatus.UNAUTHORIZED, "error", "Sai mật khẩu", null);
         } catch (IllegalStateException e) {
             log.error("Customer login failed: {}", e.getMessage());
@@ -110,13 +134,29 @@ public class AuthenticationController {
         }
     }
 
+    // Thu hồi token đang dùng; public để token đã hết hạn vẫn đăng xuất được
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        if (authorization != null && authorization.startsWith("Bearer ")) {
+            jwtAuthenticationFilter.revokeToken(authorization.substring(7));
+        }
+        return ResponseEntity.noContent().build();
+    }
+
     @PostMapping("/forgot-password/send-otp")
-    public ResponseEntity<ApiResponse<AuthenticationResponse>> sendOtpForPasswordReset(@Valid @RequestBody ForgotPasswordRequest request) {
+    public ResponseEntity<ApiResponse<AuthenticationResponse>> sendOtpForPasswordReset(@Valid @RequestBody ForgotPasswordRequest request,
+                                                                                       HttpServletRequest httpRequest) {
+        long lockedFor = loginAttemptService.lockedFor(LoginAttemptService.Scope.PASSWORD_RESET, "customer", request.getEmail());
+        if (lockedFor > 0) {
+            return tooManyAttempts(lockedFor);
+        }
         try {
             authenticationService.sendPasswordResetOtp(request.getEmail());
             return buildResponse(HttpStatus.OK, "success", "Mã OTP đã được gửi đến email của bạn.", null);
         } catch (RuntimeException e) { // SỬA LỖI: Bỏ MessagingException
             log.error("Failed to send OTP for password reset to {}: {}", request.getEmail(), e.getMessage());
+            securityEventLogger.logAuthenticationFailure(request.getEmail(), "OTP_SEND_FAILED", httpRequest);
             return buildResponse(HttpStatus.BAD_REQUEST, "error", e.getMessage(), null);
         } catch (Exception e) {
             log.error("An unexpected error occurred while sending OTP for password reset to {}", request.getEmail(), e);
@@ -125,12 +165,19 @@ public class AuthenticationController {
     }
 
     @PostMapping("/forgot-password/reset")
-    public ResponseEntity<ApiResponse<AuthenticationResponse>> verifyOtpAndResetPassword(@Valid @RequestBody VerifyOtpAndResetPasswordRequest request) {
+    public ResponseEntity<ApiResponse<AuthenticationResponse>> verifyOtpAndResetPassword(@Valid @RequestBody VerifyOtpAndResetPasswordRequest request,
+                                                                                         HttpServletRequest httpRequest) {
+        long lockedFor = loginAttemptService.lockedFor(LoginAttemptService.Scope.PASSWORD_RESET, "customer", request.getEmail());
+        if (lockedFor > 0) {
+            return tooManyAttempts(lockedFor);
+        }
         try {
             authenticationService.verifyOtpAndResetPassword(request.getEmail(), request.getOtp(), request.getNewPassword());
+            loginAttemptService.recordSuccess(LoginAttemptService.Scope.PASSWORD_RESET, "customer", request.getEmail());
             return buildResponse(HttpStatus.OK, "success", "Mật khẩu đã được đặt lại thành công.", null);
         } catch (RuntimeException e) {
             log.error("Failed to reset password: {}", e.getMessage());
+            securityEventLogger.logAuthenticationFailure(request.getEmail(), "OTP_VERIFY_FAILED", httpRequest);
             return buildResponse(HttpStatus.BAD_REQUEST, "error", e.getMessage(), null);
         } catch (Exception e) {
             log.error("An unexpected error occurred while resetting password for {}", request.getEmail(), e);
@@ -139,12 +186,18 @@ public class AuthenticationController {
     }
 
     @PostMapping("/admin/forgot-password/send-otp")
-    public ResponseEntity<ApiResponse<AuthenticationResponse>> sendOtpForAdminPasswordReset(@RequestBody ForgotPasswordRequest request) {
+    public ResponseEntity<ApiResponse<AuthenticationResponse>> sendOtpForAdminPasswordReset(@RequestBody ForgotPasswordRequest request,
+                                                                                            HttpServletRequest httpRequest) {
+        long lockedFor = loginAttemptService.lockedFor(LoginAttemptService.Scope.PASSWORD_RESET, "admin", request.getEmail());
+        if (lockedFor > 0) {
+            return tooManyAttempts(lockedFor);
+        }
         try {
             authenticationService.sendPasswordResetOtpAdmin(request.getEmail());
             return buildResponse(HttpStatus.OK, "success", "Mã OTP đã được gửi đến email quản trị viên của bạn.", null);
         } catch (RuntimeException e) { // SỬA LỖI: Bỏ MessagingException
             log.error("Failed to send OTP for admin password reset to {}: {}", request.getEmail(), e.getMessage());
+            securityEventLogger.logAuthenticationFailure(request.getEmail(), "OTP_SEND_FAILED", httpRequest);
             return buildResponse(HttpStatus.BAD_REQUEST, "error", e.getMessage(), null);
         } catch (Exception e) {
             log.error("An unexpected error occurred while sending OTP for admin password reset to {}", request.getEmail(), e);
@@ -153,12 +206,19 @@ public class AuthenticationController {
     }
 
     @PostMapping("/admin/forgot-password/reset")
-    public ResponseEntity<ApiResponse<AuthenticationResponse>> verifyOtpAndResetAdminPassword(@RequestBody VerifyOtpAndResetPasswordRequest request) {
+    public ResponseEntity<ApiResponse<AuthenticationResponse>> verifyOtpAndResetAdminPassword(@RequestBody VerifyOtpAndResetPasswordRequest request,
+                                                                                              HttpServletRequest httpRequest) {
+        long lockedFor = loginAttemptService.lockedFor(LoginAttemptService.Scope.PASSWORD_RESET, "admin", request.getEmail());
+        if (lockedFor > 0) {
+            return tooManyAttempts(lockedFor);
+        }
         try {
             authenticationService.verifyOtpAndResetPasswordAdmin(request.getEmail(), request.getOtp(), request.getNewPassword());
+            loginAttemptService.recordSuccess(LoginAttemptService.Scope.PASSWORD_RESET, "admin", request.getEmail());
             return buildResponse(HttpStatus.OK, "success", "Mật khẩu quản trị viên đã được đặt lại thành công.", null);
         } catch (RuntimeException e) {
             log.error("Failed to reset admin password: {}", e.getMessage());
+            securityEventLogger.logAuthenticationFailure(request.getEmail(), "OTP_VERIFY_FAILED", httpRequest);
             return buildResponse(HttpStatus.BAD_REQUEST, "error", e.getMessage(), null);
         } catch (Exception e) {
             log.error("An unexpected error occurred while resetting admin password for {}", request.getEmail(), e);
@@ -196,6 +256,16 @@ public class AuthenticationController {
         return new ResponseEntity<>(apiResponse, status);
     }
 
+    // Tài khoản đang bị khóa tạm thời do thử sai quá nhiều lần
+    private ResponseEntity<ApiResponse<AuthenticationResponse>> tooManyAttempts(long lockedForMillis) {
+        long retryAfterSeconds = Math.max(1, (lockedForMillis + 999) / 1000);
+        ResponseEntity<ApiResponse<AuthenticationResponse>> response = buildResponse(HttpStatus.TOO_MANY_REQUESTS, "error",
+                "Bạn đã thử sai quá nhiều lần, vui lòng thử lại sau " + retryAfterSeconds + " giây", null);
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .body(response.getBody());
+    }
+
     private String getClientIp(HttpServletRequest request) {
         String[] headers = {
                 "X-Forwarded-For",
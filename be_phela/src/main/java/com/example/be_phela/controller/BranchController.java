@@ -2,6 +2,7 @@ package com.example.be_phela.controller;
 
 import com.example.be_phela.dto.request.BranchCreateDTO;
 import com.example.be_phela.dto.response.BranchResponseDTO;
+import com.example.be_phela.dto.response.NearbyBranchDTO;
 import com.example.be_phela.exception.DuplicateResourceException;
 import com.example.be_phela.exception.ResourceNotFoundException;
 import com.example.be_phela.mapper.BranchMapper;
@@ -67,6 +68,24 @@ public class BranchController {
         }
     }
 
+    // k chi nhánh đang hoạt động gần tọa độ nhất
+    @GetMapping("/api/branch/nearest")
+    public ResponseEntity<List<NearbyBranchDTO>> findNearestBranches(
+            @RequestParam double latitude,
+            @RequestParam double longitude,
+            @RequestParam(defaultValue = "3") int limit) {
+        return ResponseEntity.ok(branchService.findNearestBranches(latitude, longitude, Math.min(Math.max(limit, 1), 20)));
+    }
+
+    // Các chi nhánh đang hoạt động trong bán kính radiusKm
+    @GetMapping("/api/branch/nearby")
+    public ResponseEntity<List<NearbyBranchDTO>> findBranchesWithinRadius(
+            @RequestParam double latitude,
+            @RequestParam double longitude,
+            @RequestParam(defaultValue = "5") double radiusKm) {
+        return ResponseEntity.ok(branchService.findBranchesWithinRadius(latitude, longitude, Math.min(radiusKm, 100)));
+    }
+
     @GetMapping("/api/branch/by-city")
     public ResponseEntity<List<BranchResponseDTO>> findBranchesByCity(@RequestParam String city) {
         List<Branch> branches = branchService.findBranchesByCity(city);
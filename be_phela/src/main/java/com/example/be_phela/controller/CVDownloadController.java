@@ -2,20 +2,19 @@ package com.example.be_phela.controller;
 
 import com.example.be_phela.repository.ApplicationRepository;
 import com.example.be_phela.service.CVStorageService;
+import com.example.be_phela.utils.FileRangeSender;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
 
 @RestController
 @RequestMapping("/api/cv")
@@ -30,76 +29,20 @@ public class CVDownloadController {
      * Download CV file by application ID
      */
     @GetMapping("/download/{applicationId}")
-    public ResponseEntity<Resource> downloadCV(@PathVariable String applicationId) {
-        try {
-            // Tìm application
-            var application = applicationRepository.findById(applicationId)
-                    .orElseThrow(() -> new RuntimeException("Application not found"));
-
-            String cvUrl = application.getCvUrl();
-            if (cvUrl == null || !cvUrl.startsWith("/uploads/cv/")) {
-                return ResponseEntity.notFound().build();
-            }
-
-            // Lấy tên file từ URL
-            String fileName = cvUrl.substring("/uploads/cv/".length());
-            Path filePath = Paths.get("uploads/cv").resolve(fileName).normalize();
-
-            Resource resource = new UrlResource(filePath.toUri());
-
-            if (!resource.exists() || !resource.isReadable()) {
-                return ResponseEntity.notFound().build();
-            }
-
-            // Xác định content type
-            String contentType = getContentType(fileName);
-
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CONTENT_DISPOSITION,
-                            "attachment; filename=\"CV_" + application.getFullName() + "_" + fileName + "\"")
-                    .body(resource);
-
-        } catch (MalformedURLException e) {
-            return ResponseEntity.badRequest().build();
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().build();
-        }
+    public void downloadCV(@PathVariable String applicationId,
+                           HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+        serveCV(applicationId, true, request, response);
     }
 
     /**
      * View CV file in browser (if supported)
      */
     @GetMapping("/view/{applicationId}")
-    public ResponseEntity<Resource> viewCV(@PathVariable String applicationId) {
-        try {
-            var application = applicationRepository.findById(applicationId)
-                    .orElseThrow(() -> new RuntimeException("Application not found"));
-
-            String cvUrl = application.getCvUrl();
-            if (cvUrl == null || !cvUrl.startsWith("/uploads/cv/")) {
-                return ResponseEntity.notFound().build();
-            }
-
-            String fileName = cvUrl.substring("/uploads/cv/".length());
-            Path filePath = Paths.get("uploads/cv").resolve(fileName).normalize();
-
-            Resource resource = new UrlResource(filePath.toUri());
-
-            if (!resource.exists() || !resource.isReadable()) {
-                return ResponseEntity.notFound().build();
-            }
-
-            String contentType = getContentType(fileName);
-
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline")
-                    .body(resource);
-
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().build();
-        }
+    public void viewCV(@PathVariable String applicationId,
+                       HttpServletRequest request,
+                       HttpServletResponse response) throws IOException {
+        serveCV(applicationId, false, request, response);
     }
 
     /**
@@ -116,13 +59,13 @@ public class CVDownloadController {
                 return ResponseEntity.notFound().build();
             }
 
-            boolean exists = cvStorageService.fileExists(cvUrl);
-            long size = cvStorageService.getFileSize(cvUrl);
+            // Metadata lấy từ cache của CVStorageService, không stat filesystem mỗi lần gọi
+            CVStorageService.CVFileMetadata metadata = cvStorageService.getMetadata(cvUrl);
 
             CVFileInfo info = CVFileInfo.builder()
                     .fileName(cvUrl.substring(cvUrl.lastIndexOf("/") + 1))
-                    .fileSize(size)
-                    .exists(exists)
+                    .fileSize(metadata != null ? metadata.size() : 0)
+                    .exists(metadata != null && metadata.exists())
                     .applicantName(application.getFullName())
                     .uploadDate(application.getApplicationDate())
                     .build();
@@ -134,17 +77,38 @@ public class CVDownloadController {
         }
     }
 
-    /**
-     * Xác định content type từ extension
-     */
-    private String getContentType(String fileName) {
-        String extension = fileName.substring(fileName.lastIndexOf(".") + 1).toLowerCase();
-        return switch (extension) {
-            case "pdf" -> "application/pdf";
-            case "doc" -> "application/msword";
-            case "docx" -> "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
-            default -> "application/octet-stream";
-        };
+    // Gửi file qua CVStorageService: hỗ trợ Range, ETag/Last-Modified và sendfile/transferTo
+    private void serveCV(String applicationId, boolean attachment,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        var application = applicationRepository.findById(applicationId).orElse(null);
+        if (application == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String cvUrl = application.getCvUrl();
+        CVStorageService.CVFileMetadata metadata = cvStorageService.getMetadata(cvUrl);
+        if (metadata == null || !metadata.exists()) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String contentDisposition = attachment
+                ? ContentDisposition.attachment()
+                        .filename("CV_" + application.getFullName() + "_" + metadata.fileName(), StandardCharsets.UTF_8)
+                        .build().toString()
+                : "inline";
+        try {
+            FileRangeSender.send(request, response, metadata.path(), metadata.size(), metadata.lastModifiedMillis(),
+                    metadata.etag(), metadata.contentType(), contentDisposition);
+        } catch (NoSuchFileException e) {
+            // File bị xóa sau khi metadata được cache
+            cvStorageService.invalidateMetadata(cvUrl);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            }
+        }
     }
 
     /**
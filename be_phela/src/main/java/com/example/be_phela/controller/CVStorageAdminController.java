@@ -0,0 +1,33 @@
+package com.example.be_phela.controller;
+
+import com.example.be_phela.dto.response.CVStorageMaintenanceDTO;
+import com.example.be_phela.service.CVStorageMaintenanceService;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+// Chỉ SUPER_ADMIN (quy tắc /api/admin/cv/** trong SecurityConfig)
+@RestController
+@RequestMapping("/api/admin/cv")
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class CVStorageAdminController {
+
+    CVStorageMaintenanceService cvStorageMaintenanceService;
+
+    // Chuyển các CV lưu theo tên UUID sang kho lưu theo nội dung (chạy một lần sau khi nâng cấp)
+    @PostMapping("/migrate")
+    public ResponseEntity<CVStorageMaintenanceDTO> migrate() {
+        return ResponseEntity.ok(cvStorageMaintenanceService.migrateFlatDirectory());
+    }
+
+    // Dọn ngay các file CV không còn đơn ứng tuyển nào dùng
+    @PostMapping("/gc")
+    public ResponseEntity<CVStorageMaintenanceDTO> collectGarbage() {
+        return ResponseEntity.ok(cvStorageMaintenanceService.collectGarbage());
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.be_phela.controller;
 
+import com.example.be_phela.dto.request.CartBatchUpdateDTO;
 import com.example.be_phela.dto.request.CartItemDTO;
 import com.example.be_phela.dto.response.CartResponseDTO;
 import com.example.be_phela.service.CartService;
@@ -49,6 +50,13 @@ public class CartController {
         return ResponseEntity.ok(cartService.getCartByCartId(cartId));
     }
 
+    @PostMapping("/{cartId}/batch")
+    public ResponseEntity<CartResponseDTO> applyCartBatch(
+            @PathVariable String cartId,
+            @Valid @RequestBody CartBatchUpdateDTO batch) {
+        return ResponseEntity.ok(cartService.applyCartBatch(cartId, batch));
+    }
+
     @DeleteMapping("/{cartId}/items/{cartItemId}")
     public ResponseEntity<Void> removeCartItem(
             @PathVariable String cartId,
@@ -1,19 +1,26 @@
 package com.example.be_phela.controller;
 
+import com.example.be_phela.dto.response.ChatHistoryDTO;
 import com.example.be_phela.dto.response.ConversationDTO;
 import com.example.be_phela.model.Admin;
 import com.example.be_phela.model.ChatMessage;
 import com.example.be_phela.model.Customer;
 import com.example.be_phela.repository.AdminRepository;
-import com.example.be_phela.repository.ChatMessageRepository;
 import com.example.be_phela.repository.CustomerRepository;
+import com.example.be_phela.service.ChatConversationService;
+import com.example.be_phela.service.ChatMessageWriter;
 import com.example.be_phela.service.FileStorageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -25,18 +32,29 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.security.Principal;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 @Controller
 @RequiredArgsConstructor
 public class ChatController {
 
     private final SimpMessagingTemplate messagingTemplate;
-    private final ChatMessageRepository chatMessageRepository;
     private final CustomerRepository customerRepository;
     private final AdminRepository adminRepository;
     private final FileStorageService fileStorageService;
+    private final ChatMessageWriter chatMessageWriter;
+    private final ChatConversationService chatConversationService;
+    private final MeterRegistry meterRegistry;
+
+    // Mọi tin nhắn chat cũng được gửi vào topic này cho màn hình admin; broker ngoài (relay) không hỗ trợ
+    // subscription dạng /topic/chat/** như broker trong bộ nhớ
+    public static final String ADMIN_TOPIC = "/topic/chat-admin";
+
+    private static final Set<String> ADMIN_ROLES = Set.of("ROLE_ADMIN", "ROLE_SUPER_ADMIN", "ROLE_STAFF");
+    private static final int MAX_IMAGES_PER_UPLOAD = 5;
 
     @PostMapping("/api/chat/uploadImage")
     public ResponseEntity<String> uploadChatImage(@RequestParam("file") MultipartFile file) {
@@ -51,71 +69,121 @@ public class ChatController {
         }
     }
 
+    // Gửi nhiều ảnh trong một tin nhắn; tính là một lượt trong giới hạn chat-upload nên giới hạn số ảnh mỗi lần
+    @PostMapping("/api/chat/uploadImages")
+    public ResponseEntity<?> uploadChatImages(@RequestParam("files") List<MultipartFile> files) {
+        if (files.isEmpty() || files.size() > MAX_IMAGES_PER_UPLOAD) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Between 1 and " + MAX_IMAGES_PER_UPLOAD + " images can be uploaded at once.");
+        }
+        if (files.stream().anyMatch(MultipartFile::isEmpty)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Failed to upload image.");
+        }
+        try {
+            return ResponseEntity.ok(fileStorageService.storeChatImages(files));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error uploading image: " + e.getMessage());
+        }
+    }
+
     @MessageMapping("/chat.sendMessage")
     public void sendMessage(@Payload ChatMessage chatMessage, Principal principal) {
-        // Lấy thông tin người dùng đang gửi tin nhắn từ context bảo mật
-        UserDetails user = (UserDetails) principal;
-
-        // Điền thông tin người gửi một cách an toàn từ server
-        if (user instanceof Customer) {
-            Customer customer = (Customer) user;
-            chatMessage.setSenderId(customer.getCustomerId());
-            chatMessage.setSenderName(customer.getUsername());
-        } else if (user instanceof Admin) {
-            Admin admin = (Admin) user;
-            chatMessage.setSenderId("ADMIN"); // Dùng một ID chung cho admin hoặc admin.getId()
-            chatMessage.setSenderName(admin.getFullname());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        // Principal do StompAuthorizationInterceptor gán lúc CONNECT (Authentication từ JWT), không phải entity:
+        // tra Customer/Admin theo username để điền thông tin người gửi một cách an toàn từ server
+        if (!(principal instanceof Authentication authentication)) {
+            throw new AccessDeniedException("Chat requires an authenticated STOMP session");
         }
-
-        chatMessage.setTimestamp(LocalDateTime.now());
-        chatMessageRepository.save(chatMessage);
+        boolean isAdmin = authentication.getAuthorities().stream()
+                .anyMatch(authority -> ADMIN_ROLES.contains(authority.getAuthority()));
 
         // 1. Xác định ID của khách hàng trong cuộc hội thoại này
         String customerIdInConversation;
-        if (user instanceof Customer) {
-            // Nếu người gửi là khách hàng, ID chính là của họ
-            customerIdInConversation = chatMessage.getSenderId();
-        } else {
+        if (isAdmin) {
+            Admin admin = adminRepository.findByUsername(authentication.getName())
+                    .orElseThrow(() -> new AccessDeniedException("Unknown admin " + authentication.getName()));
+            chatMessage.setSenderId("ADMIN"); // Dùng một ID chung cho admin
+            chatMessage.setSenderName(admin.getFullname());
             // Nếu người gửi là admin, ID là của người nhận (chính là khách hàng)
             customerIdInConversation = chatMessage.getRecipientId();
+            if (customerIdInConversation == null || customerIdInConversation.isBlank()) {
+                throw new IllegalArgumentException("Admin message without recipient");
+            }
+        } else {
+            Customer customer = customerRepository.findByUsername(authentication.getName())
+                    .orElseThrow(() -> new AccessDeniedException("Unknown customer " + authentication.getName()));
+            chatMessage.setSenderId(customer.getCustomerId());
+            chatMessage.setSenderName(customer.getUsername());
+            // Nếu người gửi là khách hàng, ID chính là của họ
+            customerIdInConversation = customer.getCustomerId();
         }
 
+        // Id được tạo ở đây để tin nhắn broadcast đã có id trước khi được ghi vào DB
+        chatMessage.setId(UUID.randomUUID().toString());
+        // Làm tròn tới micro giây như cột DATETIME(6) để tin broadcast và tin trong lịch sử giống nhau
+        chatMessage.setTimestamp(LocalDateTime.now().truncatedTo(ChronoUnit.MICROS));
+
+        chatMessage.setConversationId(customerIdInConversation);
+        chatMessageWriter.enqueue(chatMessage);
+
         // 2. Tạo ra "phòng chat" (topic) riêng cho cuộc hội thoại này
         String conversationTopic = "/topic/chat/" + customerIdInConversation;
 
         // 3. Gửi tin nhắn vào phòng chat đó
         // Cả khách hàng và admin đang lắng nghe topic này sẽ nhận được tin nhắn
         messagingTemplate.convertAndSend(conversationTopic, chatMessage);
+        messagingTemplate.convertAndSend(ADMIN_TOPIC, chatMessage);
+        sample.stop(Timer.builder("phela.chat.fanout")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry));
     }
 
     /**
-     * Tạo một REST endpoint để tải lịch sử chat.
+     * Tải các tin nhắn mới nhất của cuộc hội thoại (cũ -> mới); trang cũ hơn lấy qua /page.
      */
     @GetMapping("/api/chat/history/{customerId}")
-    public ResponseEntity<List<ChatMessage>> getChatHistory(@PathVariable String customerId) {
-        List<ChatMessage> history = chatMessageRepository.findConversationWithCustomer(customerId);
-        return ResponseEntity.ok(history);
+    public ResponseEntity<List<ChatMessage>> getChatHistory(@PathVariable String customerId,
+                                                            @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(chatConversationService.getHistory(customerId, null, size).getMessages());
     }
 
     /**
-     * Lấy danh sách các cuộc hội thoại cho admin.
+     * Lịch sử chat phân trang theo con trỏ: truyền nextCursor của trang trước để tải các tin cũ hơn.
+     */
+    @GetMapping("/api/chat/history/{customerId}/page")
+    public ResponseEntity<ChatHistoryDTO> getChatHistoryPage(@PathVariable String customerId,
+                                                             @RequestParam(required = false) String cursor,
+                                                             @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(chatConversationService.getHistory(customerId, cursor, size));
+    }
+
+    /**
+     * Lấy danh sách các cuộc hội thoại cho admin (một truy vấn trên bảng tóm tắt).
      */
     @GetMapping("/api/chat/conversations")
     public ResponseEntity<List<ConversationDTO>> getConversations() {
-        List<String> customerIds = chatMessageRepository.findDistinctCustomerIds();
-        List<ConversationDTO> conversations = new ArrayList<>();
-
-        for (String customerId : customerIds) {
-            customerRepository.findById(customerId).ifPresent(customer -> {
-                ChatMessage lastMessage = chatMessageRepository.findTopBySenderIdOrRecipientIdOrderByTimestampDesc(customerId, customerId);
-                conversations.add(new ConversationDTO(
-                        customer.getCustomerId(),
-                        customer.getUsername(),
-                        lastMessage != null ? lastMessage.getContent() : "No messages yet",
-                        lastMessage != null ? lastMessage.getTimestamp() : null
-                ));
-            });
+        return ResponseEntity.ok(chatConversationService.getConversations());
+    }
+
+    /**
+     * Đánh dấu đã đọc cuộc hội thoại: admin đánh dấu tin của khách, khách hàng chỉ đánh dấu tin admin gửi cho mình.
+     */
+    @PostMapping("/api/chat/conversations/{customerId}/read")
+    public ResponseEntity<Void> markConversationRead(@PathVariable String customerId,
+                                                     @AuthenticationPrincipal UserDetails user) {
+        boolean isAdmin = user.getAuthorities().stream()
+                .anyMatch(authority -> ADMIN_ROLES.contains(authority.getAuthority()));
+        if (isAdmin) {
+            chatConversationService.markRead(customerId, true);
+            return ResponseEntity.noContent().build();
+        }
+        boolean ownConversation = customerRepository.findByUsername(user.getUsername())
+                .map(customer -> customer.getCustomerId().equals(customerId))
+                .orElse(false);
+        if (!ownConversation) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
-        return ResponseEntity.ok(conversations);
+        chatConversationService.markRead(customerId, false);
+        return ResponseEntity.noContent().build();
     }
-}
\ No newline at end of file
+}
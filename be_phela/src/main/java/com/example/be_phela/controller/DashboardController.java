@@ -2,12 +2,16 @@ package com.example.be_phela.controller;
 
 import com.example.be_phela.dto.response.DashboardStatsDTO;
 import com.example.be_phela.dto.response.RevenueReportDTO;
+import com.example.be_phela.dto.response.RevenueRollupCheckDTO;
 import com.example.be_phela.service.DashboardService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+
 @RestController
 @RequestMapping("/api/dashboard")
 @RequiredArgsConstructor
@@ -26,4 +30,19 @@ public class DashboardController {
     public ResponseEntity<DashboardStatsDTO> getDashboardStats() {
         return ResponseEntity.ok(dashboardService.getDashboardStatistics());
     }
-}
\ No newline at end of file
+
+    // Kiểm tra bảng tổng hợp doanh thu có khớp với dữ liệu đơn hàng không
+    @GetMapping("/revenue-rollup/verify")
+    public ResponseEntity<RevenueRollupCheckDTO> verifyRevenueRollup(
+            @RequestParam(defaultValue = "month") String period) {
+        return ResponseEntity.ok(dashboardService.verifyRevenueRollup(period));
+    }
+
+    // Dựng lại bảng tổng hợp; không truyền startDate thì dựng lại toàn bộ lịch sử (SUPER_ADMIN, xem SecurityConfig)
+    @PostMapping("/revenue-rollup/rebuild")
+    public ResponseEntity<RevenueRollupCheckDTO> rebuildRevenueRollup(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        return ResponseEntity.ok(dashboardService.rebuildRevenueRollup(startDate, endDate));
+    }
+}
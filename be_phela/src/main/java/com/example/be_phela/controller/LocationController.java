@@ -2,6 +2,7 @@ package com.example.be_phela.controller;
 
 import com.example.be_phela.dto.response.ApiResponse;
 import com.example.be_phela.dto.response.District;
+import com.example.be_phela.dto.response.LocationSyncResultDTO;
 import com.example.be_phela.dto.response.Province;
 import com.example.be_phela.dto.response.Ward;
 import com.example.be_phela.interService.ILocationService;
@@ -9,6 +10,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -48,4 +50,11 @@ public class LocationController {
         List<Ward> wards = locationService.getWardsByDistrict(districtCode);
         return ResponseEntity.ok(ApiResponse.success("Fetched wards for district code " + districtCode, wards));
     }
+
+    // Đồng bộ lại dữ liệu địa giới từ nguồn bên ngoài và trả về thay đổi so với bản đang dùng (SUPER_ADMIN, xem SecurityConfig)
+    @PostMapping("/refresh")
+    public ResponseEntity<ApiResponse<LocationSyncResultDTO>> refreshLocations() {
+        LocationSyncResultDTO result = locationService.refresh();
+        return ResponseEntity.ok(ApiResponse.success("Refreshed location hierarchy", result));
+    }
 }
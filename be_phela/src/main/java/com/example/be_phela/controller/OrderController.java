@@ -2,18 +2,20 @@ package com.example.be_phela.controller;
 
 import com.example.be_phela.dto.request.OrderCreateDTO;
 import com.example.be_phela.dto.response.CustomerResponseDTO;
+import com.example.be_phela.dto.response.OrderFeedDTO;
 import com.example.be_phela.dto.response.OrderResponseDTO;
 import com.example.be_phela.model.enums.OrderStatus;
 import com.example.be_phela.service.OrderService;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
 
 @RestController
 @RequestMapping("/api/order")
@@ -53,18 +55,36 @@ public class OrderController {
     }
 
     @GetMapping("/customer/{customerId}")
-    public ResponseEntity<List<OrderResponseDTO>> getOrdersByCustomerId(@PathVariable String customerId) {
-        List<OrderResponseDTO> orders = orderService.getOrdersByCustomerId(customerId);
+    public ResponseEntity<Page<OrderResponseDTO>> getOrdersByCustomerId(
+            @PathVariable String customerId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        Page<OrderResponseDTO> orders = orderService.getOrdersByCustomerId(customerId, PageRequest.of(page, size));
         return ResponseEntity.ok(orders);
     }
 
     // Lấy đơn hàng theo trạng thái
     @GetMapping("/status/{status}")
-    public ResponseEntity<List<OrderResponseDTO>> getOrdersByStatus(@PathVariable OrderStatus status) {
-        List<OrderResponseDTO> orders = orderService.getOrdersByStatus(status);
+    public ResponseEntity<Page<OrderResponseDTO>> getOrdersByStatus(
+            @PathVariable OrderStatus status,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        Page<OrderResponseDTO> orders = orderService.getOrdersByStatus(status, PageRequest.of(page, size));
         return ResponseEntity.ok(orders);
     }
 
+    // Feed đơn hàng theo trạng thái/chi nhánh, phân trang bằng con trỏ (dùng cho màn hình bếp)
+    @GetMapping("/feed/{status}")
+    public ResponseEntity<OrderFeedDTO> getOrderFeed(
+            @PathVariable OrderStatus status,
+            @RequestParam(required = false) String branchCode,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "asc") String direction) {
+        OrderFeedDTO feed = orderService.getOrderFeed(status, branchCode, cursor, size, "desc".equalsIgnoreCase(direction));
+        return ResponseEntity.ok(feed);
+    }
+
     // Lấy thông tin khách hàng từ ID đơn hàng
     @GetMapping("/{orderId}/customer")
     @PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN', 'STAFF')")
@@ -1,6 +1,7 @@
 package com.example.be_phela.controller;
 
 import com.example.be_phela.dto.request.ProductCreateDTO;
+import com.example.be_phela.dto.response.ImageVariantBackfillDTO;
 import com.example.be_phela.dto.response.ProductResponseDTO;
 import com.example.be_phela.mapper.ProductMapper;
 import com.example.be_phela.model.Product;
@@ -76,6 +77,18 @@ public class ProductController {
         return ResponseEntity.ok(productMapper.toProductResponseDTO(updatedProduct));
     }
 
+    // Tạo bản thu nhỏ cho ảnh của các sản phẩm đã có; chạy nền, kết quả xem qua GET cùng đường dẫn
+    @PostMapping("/api/admin/product/image-variants/backfill")
+    public ResponseEntity<ImageVariantBackfillDTO> backfillImageVariants() {
+        HttpStatus status = productService.startImageVariantBackfill() ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT;
+        return ResponseEntity.status(status).body(productService.getImageVariantBackfillStatus());
+    }
+
+    @GetMapping("/api/admin/product/image-variants/backfill")
+    public ResponseEntity<ImageVariantBackfillDTO> getImageVariantBackfillStatus() {
+        return ResponseEntity.ok(productService.getImageVariantBackfillStatus());
+    }
+
     //Xoá sản phẩm
 //    @DeleteMapping("/api/admin/product/delete/{productId}")
 //    public ResponseEntity<Void> deleteProduct(@PathVariable String productId) throws IllegalAccessException {
@@ -93,9 +106,7 @@ public class ProductController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "productName") String sortBy) {
         Pageable pageable = PageRequest.of(page, size, Sort.by(sortBy));
-        Page<ProductResponseDTO> productPage = productService.getAllProducts(pageable)
-                .map(productMapper::toProductResponseDTO);
-        return ResponseEntity.ok(productPage);
+        return ResponseEntity.ok(productService.getAllProductResponses(pageable));
     }
 
     // Lấy sản phẩm theo id
@@ -104,8 +115,7 @@ public class ProductController {
         if (productId == null || productId.trim().isEmpty()) {
             throw new IllegalAccessException("Product ID cannot be null or empty");
         }
-        Product product = productService.getProductById(productId);
-        return ResponseEntity.ok(productMapper.toProductResponseDTO(product));
+        return ResponseEntity.ok(productService.getProductResponseById(productId));
     }
 
     // Lấy sản phẩm theo mã sản phẩm
@@ -131,11 +141,7 @@ public class ProductController {
     // Lấy sản phẩm theo trạng thái
     @GetMapping("/api/product/status/{status}")
     public ResponseEntity<List<ProductResponseDTO>> getProductsByStatus(@PathVariable ProductStatus status) {
-        List<Product> products = productService.getProductsByStatus(status);
-        List<ProductResponseDTO> productResponseDTOs = products.stream()
-                .map(productMapper::toProductResponseDTO)
-                .toList();
-        return ResponseEntity.ok(productResponseDTOs);
+        return ResponseEntity.ok(productService.getProductResponsesByStatus(status));
     }
 
     // Lọc sản phẩm theo danh mục
@@ -144,11 +150,7 @@ public class ProductController {
         if (categoryCode == null || categoryCode.trim().isEmpty()) {
             throw new IllegalArgumentException("Category code is required");
         }
-        List<Product> products = productService.getProductsByCategory(categoryCode);
-        List<ProductResponseDTO> productResponseDTOs = products.stream()
-                .map(productMapper::toProductResponseDTO)
-                .toList();
-        return ResponseEntity.ok(productResponseDTOs);
+        return ResponseEntity.ok(productService.getProductResponsesByCategory(categoryCode));
     }
 
     @GetMapping("/api/admin/product/category/{categoryCode}")
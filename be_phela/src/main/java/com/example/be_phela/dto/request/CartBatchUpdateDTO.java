@@ -0,0 +1,24 @@
+package com.example.be_phela.dto.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+// Gom nhiều thay đổi giỏ hàng vào một request; quantity <= 0 nghĩa là xóa sản phẩm
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class CartBatchUpdateDTO {
+    List<@NotNull @Valid CartItemDTO> items;
+    List<@NotBlank String> removeCartItemIds;
+    List<@NotBlank String> removePromotionIds;
+    String promotionCode;
+    String addressId;
+    String branchCode;
+}
@@ -1,5 +1,7 @@
 package com.example.be_phela.dto.request;
 
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 
@@ -10,7 +12,9 @@ import lombok.experimental.FieldDefaults;
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class CartItemDTO {
     String cartItemId;
+    @NotBlank(message = "Product id is required")
     String productId;
+    @NotNull(message = "Quantity is required")
     Integer quantity;
     Double amount;
     String note;
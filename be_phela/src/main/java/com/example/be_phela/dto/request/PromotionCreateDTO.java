@@ -2,6 +2,7 @@ package com.example.be_phela.dto.request;
 
 import com.example.be_phela.model.enums.DiscountType;
 import com.example.be_phela.model.enums.PromotionStatus;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.AccessLevel;
@@ -36,4 +37,10 @@ public class PromotionCreateDTO {
 
     @NotNull(message = "Status is required")
     PromotionStatus status;
+
+    @Min(value = 1, message = "Max redemptions must be at least 1")
+    Integer maxRedemptions;
+
+    @Min(value = 1, message = "Max redemptions per customer must be at least 1")
+    Integer maxRedemptionsPerCustomer;
 }
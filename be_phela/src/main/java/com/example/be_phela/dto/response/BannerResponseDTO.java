@@ -10,6 +10,8 @@ import java.time.LocalDateTime;
 public class BannerResponseDTO {
     private String bannerId;
     private String imageUrl;
+    private String imageThumbUrl;
+    private String imageMediumUrl;
     private LocalDateTime createdAt;
     private BannerStatus status;
 }
@@ -0,0 +1,19 @@
+package com.example.be_phela.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class CVStorageMaintenanceDTO {
+    private String operation;
+    private int scanned;
+    private int migrated;
+    private int deduplicated;
+    private int referencesUpdated;
+    private int unreferenced;
+    private int deleted;
+    private int failed;
+    private long bytesReclaimed;
+    private long durationMillis;
+}
@@ -0,0 +1,19 @@
+package com.example.be_phela.dto.response;
+
+import com.example.be_phela.model.ChatMessage;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+// Một trang lịch sử chat (cũ -> mới); nextCursor dùng để tải trang cũ hơn
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ChatHistoryDTO {
+    List<ChatMessage> messages;
+    String nextCursor;
+    boolean hasMore;
+}
@@ -14,4 +14,6 @@ public class ConversationDTO {
     private String customerName;
     private String lastMessage;
     private LocalDateTime lastMessageTimestamp;
-}
\ No newline at end of file
+    private Integer unreadByAdmin;
+    private Integer unreadByCustomer;
+}
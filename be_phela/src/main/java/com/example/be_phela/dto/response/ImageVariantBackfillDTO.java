@@ -0,0 +1,17 @@
+package com.example.be_phela.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder(toBuilder = true)
+public class ImageVariantBackfillDTO {
+    // true khi lần chạy đang diễn ra; các số liệu là của lần chạy gần nhất đã xong
+    private boolean running;
+    private int candidates;
+    private int updated;
+    private int skipped;
+    private int failed;
+    private long durationMillis;
+    private double imagesPerSecond;
+}
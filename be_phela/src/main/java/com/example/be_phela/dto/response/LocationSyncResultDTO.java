@@ -0,0 +1,26 @@
+package com.example.be_phela.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class LocationSyncResultDTO {
+    private String source;
+    private int provinces;
+    private int districts;
+    private int wards;
+    private boolean changed;
+    private LevelChange provinceChanges;
+    private LevelChange districtChanges;
+    private LevelChange wardChanges;
+    private long durationMillis;
+
+    @Data
+    @Builder
+    public static class LevelChange {
+        private int added;
+        private int removed;
+        private int renamed;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.be_phela.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class NearbyBranchDTO {
+    BranchResponseDTO branch;
+    double distanceKm;
+}
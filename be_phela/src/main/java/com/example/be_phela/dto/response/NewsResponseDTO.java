@@ -13,6 +13,8 @@ public class NewsResponseDTO {
     private String summary;
     private String content;
     private String thumbnailUrl;
+    private String imageThumbUrl;
+    private String imageMediumUrl;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
@@ -0,0 +1,18 @@
+package com.example.be_phela.dto.response;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+// Một trang của feed đơn hàng phân trang theo con trỏ (orderDate, orderId)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class OrderFeedDTO {
+    List<OrderResponseDTO> orders;
+    String nextCursor;
+    boolean hasMore;
+}
@@ -0,0 +1,26 @@
+package com.example.be_phela.dto.response;
+
+import com.example.be_phela.model.enums.OrderStatus;
+import com.example.be_phela.model.enums.PaymentStatus;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+// Sự kiện trạng thái đơn hàng gọn nhẹ đẩy qua STOMP cho màn hình nhân viên và khách hàng
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class OrderStatusEventDTO {
+    // CREATED, STATUS_CHANGED, PAYMENT_CONFIRMED, REMOVED
+    String type;
+    String orderId;
+    String orderCode;
+    String customerId;
+    String branchCode;
+    OrderStatus status;
+    PaymentStatus paymentStatus;
+    LocalDateTime timestamp;
+}
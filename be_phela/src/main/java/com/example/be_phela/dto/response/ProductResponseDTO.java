@@ -10,7 +10,7 @@ import java.math.BigDecimal;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class ProductResponseDTO {
     private String productId;
@@ -19,6 +19,9 @@ public class ProductResponseDTO {
     private String description;
     private Double originalPrice;
     private String imageUrl;
+    // Ảnh nhỏ cho danh sách, ảnh vừa cho trang chi tiết; bằng imageUrl nếu chưa có bản thu nhỏ
+    private String imageThumbUrl;
+    private String imageMediumUrl;
     private String categoryCode;
     private ProductStatus status;
 }
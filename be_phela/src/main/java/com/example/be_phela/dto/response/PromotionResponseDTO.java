@@ -24,4 +24,7 @@ public class PromotionResponseDTO {
     LocalDateTime startDate;
     LocalDateTime endDate;
     PromotionStatus status;
+    Integer maxRedemptions;
+    Integer maxRedemptionsPerCustomer;
+    Long redemptionCount;
 }
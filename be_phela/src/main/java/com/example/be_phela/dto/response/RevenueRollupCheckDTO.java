@@ -0,0 +1,26 @@
+package com.example.be_phela.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class RevenueRollupCheckDTO {
+    private String startDate;
+    private String endDate;
+    private boolean consistent;
+    private int rebuiltRows;
+    private List<Mismatch> mismatches;
+
+    @Data
+    @Builder
+    public static class Mismatch {
+        private String date;
+        private double liveRevenue;
+        private double rollupRevenue;
+        private long liveOrderCount;
+        private long rollupOrderCount;
+    }
+}
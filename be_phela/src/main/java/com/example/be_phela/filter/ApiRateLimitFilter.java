@@ -0,0 +1,55 @@
+package com.example.be_phela.filter;
+
+import com.example.be_phela.security.SecurityEvent;
+import com.example.be_phela.service.ApiRateLimitService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+// Chạy sau JwtAuthenticationFilter: đã đăng nhập thì tính theo user, chưa thì theo IP kết nối (không theo X-Forwarded-For do client gửi)
+public class ApiRateLimitFilter extends OncePerRequestFilter {
+
+    private final ApiRateLimitService rateLimitService;
+    // Cần module jsr310 để ghi LocalDateTime trong ErrorResponse
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    public ApiRateLimitFilter(ApiRateLimitService rateLimitService) {
+        this.rateLimitService = rateLimitService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        ApiRateLimitService.Policy policy = "OPTIONS".equals(request.getMethod())
+                ? null
+                : rateLimitService.policyFor(request.getRequestURI());
+        if (policy == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long retryAfterMillis = rateLimitService.tryAcquire(policy, clientKey(request));
+        if (retryAfterMillis > 0) {
+            AuthRateLimitFilter.writeTooManyRequests(response, request.getRequestURI(), retryAfterMillis, objectMapper);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    private static String clientKey(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return "u:" + authentication.getName();
+        }
+        return "ip:" + SecurityEvent.resolveClientIp(request);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.be_phela.filter;
+
+import com.example.be_phela.dto.response.ErrorResponse;
+import com.example.be_phela.security.SecurityEvent;
+import com.example.be_phela.service.LoginAttemptService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+// Giới hạn tần suất gọi đăng nhập / quên mật khẩu theo IP trước khi vào controller
+@Slf4j
+public class AuthRateLimitFilter extends OncePerRequestFilter {
+
+    private final LoginAttemptService loginAttemptService;
+    // Cần module jsr310 để ghi LocalDateTime trong ErrorResponse
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    public AuthRateLimitFilter(LoginAttemptService loginAttemptService) {
+        this.loginAttemptService = loginAttemptService;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod()) || scopeOf(request.getRequestURI()) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String ip = SecurityEvent.resolveClientIp(request);
+        long retryAfterMillis = loginAttemptService.acquire(scopeOf(request.getRequestURI()), ip);
+        if (retryAfterMillis > 0) {
+            log.warn("Rate limited {} from {}", request.getRequestURI(), ip);
+            writeTooManyRequests(response, request.getRequestURI(), retryAfterMillis, objectMapper);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    private static LoginAttemptService.Scope scopeOf(String uri) {
+        if (uri.equals("/auth/customer/login") || uri.equals("/auth/admin/login")) {
+            return LoginAttemptService.Scope.LOGIN;
+        }
+        if (uri.startsWith("/auth/forgot-password/") || uri.startsWith("/auth/admin/forgot-password/")) {
+            return LoginAttemptService.Scope.PASSWORD_RESET;
+        }
+        return null;
+    }
+
+    static void writeTooManyRequests(HttpServletResponse response, String path, long retryAfterMillis,
+                                     ObjectMapper objectMapper) throws IOException {
+        long retryAfterSeconds = Math.max(1, (retryAfterMillis + 999) / 1000);
+        response.setStatus(429);
+        response.setHeader("Retry-After", Long.toString(retryAfterSeconds));
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        ErrorResponse errorResponse = ErrorResponse.of(
+                429,
+                "Too Many Requests",
+                "Bạn thao tác quá nhanh, vui lòng thử lại sau " + retryAfterSeconds + " giây",
+                path,
+                "RATE_LIMITED",
+                "Retry after " + retryAfterSeconds + " seconds"
+        );
+        response.getWriter().write(objectMapper.writeValueAsString(errorResponse));
+    }
+}
@@ -5,13 +5,14 @@ import com.example.be_phela.exception.JwtExpiredException;
 import com.example.be_phela.exception.JwtMalformedException;
 import com.example.be_phela.exception.JwtSignatureException;
 import com.example.be_phela.security.SecurityEventLogger;
+import com.example.be_phela.utils.BoundedCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.JWSVerifier;
 import com.nimbusds.jose.crypto.MACVerifier;
 import com.nimbusds.jwt.JWTClaimsSet;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -24,21 +25,58 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
-    @Value("${jwt.signer-key}")
-    private String signerKey;
+    private static final int DEFAULT_TOKEN_CACHE_SIZE = 10_000;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final SecurityEventLogger securityEventLogger = new SecurityEventLogger();
+    // Cần module java.time để ghi ErrorResponse.timestamp (LocalDateTime)
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final SecurityEventLogger securityEventLogger;
+    private final WebAuthenticationDetailsSource authenticationDetailsSource = new WebAuthenticationDetailsSource();
 
-    public JwtAuthenticationFilter(String signerKey) {
-        this.signerKey = signerKey;
+    // MACVerifier không giữ trạng thái giữa các lần verify nên dùng chung cho mọi request
+    private final JWSVerifier verifier;
+    // Token đã xác thực, key là SHA-256 của token; hết hạn theo claim exp của từng token
+    private final BoundedCache<String, VerifiedToken> verifiedTokens;
+    // Token đã đăng xuất (SHA-256 -> exp), bị từ chối tới khi tự hết hạn; không dùng BoundedCache
+    // vì bị đẩy ra khỏi cache đồng nghĩa với token dùng lại được
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+
+    private record VerifiedToken(User principal, String role, long expiresAtMillis) {
+    }
+
+    public JwtAuthenticationFilter(String signerKey, SecurityEventLogger securityEventLogger) {
+        this(signerKey, DEFAULT_TOKEN_CACHE_SIZE, securityEventLogger);
+    }
+
+    public JwtAuthenticationFilter(String signerKey, int tokenCacheSize, SecurityEventLogger securityEventLogger) {
+        this(macVerifier(signerKey), tokenCacheSize, securityEventLogger);
+    }
+
+    JwtAuthenticationFilter(JWSVerifier verifier, int tokenCacheSize, SecurityEventLogger securityEventLogger) {
+        this.securityEventLogger = securityEventLogger;
+        this.verifier = verifier;
+        this.verifiedTokens = new BoundedCache<>(tokenCacheSize, null);
+    }
+
+    private static MACVerifier macVerifier(String signerKey) {
+        try {
+            return new MACVerifier(signerKey.getBytes());
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Invalid JWT signer key", e);
+        }
     }
 
     @Override
@@ -47,13 +85,19 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         String requestURI = request.getRequestURI();
 
-        // Skip JWT processing for public endpoints - let SecurityConfig handle authorization
+        String authHeader = request.getHeader("Authorization");
+
+        // Public endpoint: không bao giờ trả 401, nhưng token hợp lệ vẫn được đưa vào context
+        // để ApiRateLimitFilter tính theo user thay vì theo IP
         if (isPublicEndpoint(requestURI)) {
+            if (authHeader != null && authHeader.startsWith("Bearer ")
+                    && SecurityContextHolder.getContext().getAuthentication() == null) {
+                authenticateQuietly(authHeader.substring(7), request);
+            }
             chain.doFilter(request, response);
             return;
         }
 
-        String authHeader = request.getHeader("Authorization");
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
             chain.doFilter(request, response);
             return;
@@ -61,7 +105,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         try {
             String token = authHeader.substring(7);
-            validateAndProcessToken(token, request, response);
+            VerifiedToken verified = verify(token);
+            authenticate(verified.principal(), verified.role(), request);
         } catch (JwtMalformedException e) {
             log.warn("Malformed JWT token: " + e.getMessage());
             securityEventLogger.logTokenValidationFailure("MALFORMED_TOKEN: " + e.getMessage(), null, request);
@@ -91,8 +136,48 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         chain.doFilter(request, response);
     }
 
-    private void validateAndProcessToken(String token, HttpServletRequest request, HttpServletResponse response)
-            throws JwtMalformedException, JwtExpiredException, JwtSignatureException, ParseException, JOSEException {
+    // Xác thực token ngoài chuỗi filter HTTP (STOMP CONNECT qua WebSocket), dùng chung cache token đã xác thực
+    public UsernamePasswordAuthenticationToken authenticateToken(String token) {
+        try {
+            User principal = verify(token).principal();
+            return new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+        } catch (ParseException e) {
+            throw new JwtMalformedException("Failed to parse JWT claims", e);
+        }
+    }
+
+    // Đăng xuất: token hợp lệ bị từ chối như token hết hạn cho tới exp, kể cả khi đã nằm trong cache.
+    // Token không hợp lệ hoặc đã hết hạn thì bỏ qua.
+    public void revokeToken(String token) {
+        long now = System.currentTimeMillis();
+        revokedTokens.values().removeIf(expiresAtMillis -> expiresAtMillis < now);
+        VerifiedToken verified;
+        try {
+            verified = verify(token);
+        } catch (Exception e) {
+            return;
+        }
+        String cacheKey = digest(token);
+        revokedTokens.put(cacheKey, verified.expiresAtMillis());
+        verifiedTokens.invalidate(cacheKey);
+    }
+
+    private VerifiedToken verify(String token)
+            throws JwtMalformedException, JwtExpiredException, JwtSignatureException, ParseException {
+
+        String cacheKey = digest(token);
+        if (revokedTokens.containsKey(cacheKey)) {
+            throw new JwtExpiredException("JWT token has been revoked");
+        }
+        Optional<VerifiedToken> cached = verifiedTokens.getIfPresent(cacheKey);
+        if (cached.isPresent()) {
+            VerifiedToken verified = cached.get();
+            if (verified.expiresAtMillis() < System.currentTimeMillis()) {
+                verifiedTokens.invalidate(cacheKey);
+                throw new JwtExpiredException("JWT token has expired at " + new Date(verified.expiresAtMillis()));
+            }
+            return verified;
+        }
 
         JWSObject jwsObject;
         try {
@@ -103,7 +188,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         // Verify signature
         try {
-            if (!jwsObject.verify(new MACVerifier(signerKey.getBytes()))) {
+            if (!jwsObject.verify(verifier)) {
                 throw new JwtSignatureException("JWT signature verification failed");
             }
         } catch (JOSEException e) {
@@ -136,21 +221,50 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             throw new JwtMalformedException("JWT token missing role claim");
         }
 
-        // Set authentication if not already set
-        if (SecurityContextHolder.getContext().getAuthentication() == null) {
-            User userDetails = (User) User.builder()
-                    .username(username)
-                    .password("")
-                    .authorities(Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role)))
-                    .build();
+        User userDetails = (User) User.builder()
+                .username(username)
+                .password("")
+                .authorities(Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role)))
+                .build();
 
+        long expiresAtMillis = expirationTime != null ? expirationTime.getTime() : Long.MAX_VALUE;
+        VerifiedToken verified = new VerifiedToken(userDetails, role, expiresAtMillis);
+        verifiedTokens.put(cacheKey, verified);
+        return verified;
+    }
+
+    // Set authentication if not already set
+    private void authenticate(User userDetails, String role, HttpServletRequest request) {
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
             UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                     userDetails, null, userDetails.getAuthorities());
-            authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+            authToken.setDetails(authenticationDetailsSource.buildDetails(request));
             SecurityContextHolder.getContext().setAuthentication(authToken);
 
-            log.debug("Successfully authenticated user: " + username + " with role: " + role);
-            securityEventLogger.logAuthenticationSuccess(username, role, request);
+            log.debug("Successfully authenticated user: " + userDetails.getUsername() + " with role: " + role);
+            securityEventLogger.logAuthenticationSuccess(userDetails.getUsername(), role, request);
+        }
+    }
+
+    // Token lỗi trên public endpoint thì coi như khách, không ghi audit
+    private void authenticateQuietly(String token, HttpServletRequest request) {
+        try {
+            User principal = verify(token).principal();
+            UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                    principal, null, principal.getAuthorities());
+            authToken.setDetails(authenticationDetailsSource.buildDetails(request));
+            SecurityContextHolder.getContext().setAuthentication(authToken);
+        } catch (Exception e) {
+            log.debug("Ignoring invalid JWT on public endpoint " + request.getRequestURI() + ": " + e.getMessage());
+        }
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
 
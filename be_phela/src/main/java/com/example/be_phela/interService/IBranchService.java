@@ -1,6 +1,7 @@
 package com.example.be_phela.interService;
 
 import com.example.be_phela.dto.request.BranchCreateDTO;
+import com.example.be_phela.dto.response.NearbyBranchDTO;
 import com.example.be_phela.model.Address;
 import com.example.be_phela.model.Branch;
 import org.springframework.data.domain.Page;
@@ -19,4 +20,7 @@ public interface IBranchService {
     List<Branch> findBranchesByDistrict(String district);
     Branch toggleBranchStatus(String branchCode);
     Optional<Branch> findNearestBranch(Address address, List<Branch> branches);
+    Optional<Branch> findNearestBranch(Address address);
+    List<NearbyBranchDTO> findNearestBranches(double latitude, double longitude, int limit);
+    List<NearbyBranchDTO> findBranchesWithinRadius(double latitude, double longitude, double radiusKm);
 }
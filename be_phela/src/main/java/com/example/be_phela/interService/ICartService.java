@@ -1,6 +1,7 @@
 package com.example.be_phela.interService;
 
 import com.example.be_phela.dto.request.CartCreateDTO;
+import com.example.be_phela.dto.request.CartBatchUpdateDTO;
 import com.example.be_phela.dto.request.CartItemDTO;
 import com.example.be_phela.dto.response.CartResponseDTO;
 import com.example.be_phela.model.Cart;
@@ -23,4 +24,5 @@ public interface ICartService {
     void updateCartAddress(String cartId, String addressId);
     void updateCartBranch(String cartId, String branchCode);
     CartResponseDTO getCartByCartId(String cartId);
+    CartResponseDTO applyCartBatch(String cartId, CartBatchUpdateDTO batch);
 }
\ No newline at end of file
@@ -1,12 +1,15 @@
 package com.example.be_phela.interService;
 
 import com.example.be_phela.dto.response.District;
+import com.example.be_phela.dto.response.LocationSyncResultDTO;
 import com.example.be_phela.dto.response.Province;
 import com.example.be_phela.dto.response.Ward;
 
 import java.util.List;
 
 public interface ILocationService {
+    // Dữ liệu được phục vụ từ snapshot trong bộ nhớ; các API bên dưới là nguồn gốc của snapshot.
+
     /**
      * Lấy danh sách tất cả Tỉnh/Thành phố.
      * API: https://provinces.open-api.vn/api/v1/p/
@@ -30,4 +33,9 @@ public interface ILocationService {
      * API: https://provinces.open-api.vn/api/?depth=3
      */
     List<Province> getLocationHierarchy();
+
+    /**
+     * Đồng bộ lại toàn bộ cây từ API, so sánh với dữ liệu đang dùng và ghi snapshot mới.
+     */
+    LocationSyncResultDTO refresh();
 }
@@ -2,10 +2,13 @@ package com.example.be_phela.interService;
 
 import com.example.be_phela.dto.request.OrderCreateDTO;
 import com.example.be_phela.dto.response.CustomerResponseDTO;
+import com.example.be_phela.dto.response.OrderFeedDTO;
 import com.example.be_phela.dto.response.OrderResponseDTO;
 import com.example.be_phela.dto.response.RevenueReportDTO;
 import com.example.be_phela.model.Order;
 import com.example.be_phela.model.enums.OrderStatus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 
 import java.util.List;
 import java.util.Optional;
@@ -16,9 +19,10 @@ public interface IOrderService {
     OrderResponseDTO getOrderById(String orderId);
     void cancelOrder(String orderId);
     void updateOrderStatus(String orderId, OrderStatus status, String username);
-    List<OrderResponseDTO> getOrdersByCustomerId(String customerId);
+    Page<OrderResponseDTO> getOrdersByCustomerId(String customerId, Pageable pageable);
     Optional<Order> getOrderByCode(String orderCode);
-    List<OrderResponseDTO> getOrdersByStatus(OrderStatus status);
+    Page<OrderResponseDTO> getOrdersByStatus(OrderStatus status, Pageable pageable);
     CustomerResponseDTO getCustomerByOrderId(String orderId);
+    OrderFeedDTO getOrderFeed(OrderStatus status, String branchCode, String cursor, int size, boolean descending);
 //    RevenueReportDTO getRevenueAndOrderReport(String period);
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package com.example.be_phela.interService;
 
 import com.example.be_phela.dto.request.ProductCreateDTO;
+import com.example.be_phela.dto.response.ImageVariantBackfillDTO;
+import com.example.be_phela.dto.response.ProductResponseDTO;
 import com.example.be_phela.model.Category;
 import com.example.be_phela.model.Product;
 import com.example.be_phela.model.enums.ProductStatus;
@@ -32,4 +34,16 @@ public interface IProductService {
 
     Product getProductById(String productId);
     Page<Product> getProductsByCategoryWithPagination(String categoryCode, Pageable pageable);
+
+    Page<ProductResponseDTO> getAllProductResponses(Pageable pageable);
+
+    ProductResponseDTO getProductResponseById(String productId);
+
+    boolean startImageVariantBackfill();
+
+    ImageVariantBackfillDTO getImageVariantBackfillStatus();
+
+    List<ProductResponseDTO> getProductResponsesByCategory(String categoryCode);
+
+    List<ProductResponseDTO> getProductResponsesByStatus(ProductStatus status);
 }
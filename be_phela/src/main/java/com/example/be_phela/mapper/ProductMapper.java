@@ -16,5 +16,7 @@ public interface ProductMapper {
     @Mapping(target = "productId", source = "productId")
     @Mapping(target = "productCode", source = "productCode")
     @Mapping(target = "categoryCode", source = "category.categoryCode")
+    @Mapping(target = "imageThumbUrl", source = "imageThumbUrl", defaultExpression = "java(product.getImageUrl())")
+    @Mapping(target = "imageMediumUrl", source = "imageMediumUrl", defaultExpression = "java(product.getImageUrl())")
     ProductResponseDTO toProductResponseDTO(Product product);
 }
\ No newline at end of file
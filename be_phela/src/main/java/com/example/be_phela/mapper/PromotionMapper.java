@@ -3,6 +3,7 @@ package com.example.be_phela.mapper;
 import com.example.be_phela.dto.request.PromotionCreateDTO;
 import com.example.be_phela.dto.response.PromotionResponseDTO;
 import com.example.be_phela.model.Promotion;
+import com.example.be_phela.utils.PromotionIndex;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.MappingTarget;
@@ -15,13 +16,17 @@ public interface PromotionMapper {
     @Mapping(target = "createdAt", ignore = true)
     @Mapping(target = "updatedAt", ignore = true)
     @Mapping(target = "promotionCarts", ignore = true)
+    @Mapping(target = "redemptionCount", ignore = true)
     Promotion toPromotion(PromotionCreateDTO createDTO);
 
     PromotionResponseDTO toResponseDTO(Promotion promotion);
 
+    PromotionResponseDTO toResponseDTO(PromotionIndex.Entry entry);
+
     @Mapping(target = "promotionId", ignore = true)
     @Mapping(target = "createdAt", ignore = true)
     @Mapping(target = "updatedAt", ignore = true)
     @Mapping(target = "promotionCarts", ignore = true)
+    @Mapping(target = "redemptionCount", ignore = true)
     void updatePromotionFromDTO(PromotionCreateDTO createDTO, @MappingTarget Promotion promotion);
 }
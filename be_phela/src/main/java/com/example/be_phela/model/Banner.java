@@ -23,6 +23,10 @@ public class Banner {
     private String bannerId;
     @Column(name = "imageUrl")
     private String imageUrl;
+    @Column(name = "imageThumbUrl")
+    private String imageThumbUrl;
+    @Column(name = "imageMediumUrl")
+    private String imageMediumUrl;
     @Column(name = "createdAt")
     private LocalDateTime createdAt;
     @Column(name = "updatedAt")
@@ -0,0 +1,41 @@
+package com.example.be_phela.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+
+// Tóm tắt một cuộc hội thoại (tin nhắn cuối, số tin chưa đọc), cập nhật cùng lô với việc ghi tin nhắn
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity(name = "chat_conversation")
+@Table(name = "chat_conversation", indexes = {
+        @Index(name = "idx_chat_conversation_last_message_at", columnList = "last_message_at")
+})
+public class ChatConversation {
+    // Chính là customerId của khách hàng trong cuộc hội thoại
+    @Id
+    @Column(name = "conversation_id", nullable = false, unique = true)
+    private String conversationId;
+
+    @Column(name = "last_message")
+    private String lastMessage;
+
+    @Column(name = "last_message_at", nullable = false)
+    private LocalDateTime lastMessageAt;
+
+    @Column(name = "last_sender_id")
+    private String lastSenderId;
+
+    // Tin nhắn của khách hàng admin chưa đọc
+    @Column(name = "unread_by_admin", nullable = false)
+    private Integer unreadByAdmin;
+
+    // Tin nhắn của admin khách hàng chưa đọc
+    @Column(name = "unread_by_customer", nullable = false)
+    private Integer unreadByCustomer;
+}
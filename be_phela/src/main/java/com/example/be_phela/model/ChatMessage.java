@@ -1,7 +1,10 @@
 package com.example.be_phela.model;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import lombok.*;
 import org.hibernate.annotations.UuidGenerator;
 import java.time.LocalDateTime;
@@ -11,6 +14,9 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @Builder
 @Entity(name = "chat_message")
+@Table(name = "chat_message", indexes = {
+        @Index(name = "idx_chat_message_conversation_time", columnList = "conversation_id, timestamp, id")
+})
 public class ChatMessage {
     @Id
     @UuidGenerator
@@ -18,6 +24,9 @@ public class ChatMessage {
     private String content;
     private String senderId;
     private String recipientId; // adminId hoặc customerId
+    // Mỗi khách hàng có một cuộc hội thoại với admin, id cuộc hội thoại là customerId
+    @Column(name = "conversation_id")
+    private String conversationId;
     private String senderName;
     private LocalDateTime timestamp;
     private String imageUrl;
@@ -0,0 +1,70 @@
+package com.example.be_phela.model;
+
+import com.example.be_phela.model.enums.EmailStatus;
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+// Email chờ gửi, được ghi trong cùng transaction với nghiệp vụ và gửi bởi EmailDispatcher.
+// Nội dung chứa các khóa thay thế (vd -otp-); giá trị riêng của từng người nhận nằm trong substitutions
+// nên các email cùng mẫu có thể gửi chung một lần gọi SendGrid.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity(name = "email_outbox")
+@Table(name = "email_outbox", indexes = {
+        @Index(name = "idx_email_outbox_status_next_attempt", columnList = "status, next_attempt_at"),
+        @Index(name = "idx_email_outbox_claim_token", columnList = "claim_token")
+})
+public class EmailOutbox {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "email_id", nullable = false, unique = true)
+    private Long emailId;
+
+    @Column(name = "recipient", nullable = false)
+    private String recipient;
+
+    @Column(name = "subject", nullable = false)
+    private String subject;
+
+    @Lob
+    @Column(name = "html_content", nullable = false, columnDefinition = "TEXT")
+    private String htmlContent;
+
+    // JSON {"-khóa-": "giá trị"}; bị xóa khi email chuyển sang SENT hoặc FAILED
+    @Column(name = "substitutions", length = 2000)
+    private String substitutions;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private EmailStatus status;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    // Đánh dấu lô đang được một worker gửi; lô bị bỏ dở (server tắt giữa chừng) được trả lại sau claim-timeout
+    @Column(name = "claim_token", length = 36)
+    private String claimToken;
+
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+}
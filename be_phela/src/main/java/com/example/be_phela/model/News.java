@@ -28,6 +28,10 @@ public class News {
     private String content;
     @Column(name = "thumbnailUrl")
     private String thumbnailUrl;
+    @Column(name = "imageThumbUrl")
+    private String imageThumbUrl;
+    @Column(name = "imageMediumUrl")
+    private String imageMediumUrl;
     @Column(name = "createdAt")
     private LocalDateTime createdAt;
     @Column(name = "updatedAt")
@@ -20,6 +20,10 @@ import java.util.List;
 @Builder
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @Entity(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_status_branch_date", columnList = "status, branch_id, order_date"),
+        @Index(name = "idx_orders_status_date", columnList = "status, order_date")
+})
 public class Order {
     @Id
     @UuidGenerator
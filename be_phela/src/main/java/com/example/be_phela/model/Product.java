@@ -43,6 +43,13 @@ public class Product {
     @Column(name = "image_url")
     private String imageUrl;
 
+    // Các bản thu nhỏ tạo khi upload, null với ảnh cũ chưa được bổ sung
+    @Column(name = "image_thumb_url")
+    private String imageThumbUrl;
+
+    @Column(name = "image_medium_url")
+    private String imageMediumUrl;
+
     @Column(name = "status")
     private ProductStatus status;
 
@@ -69,6 +69,20 @@ public class Promotion {
     @Column(name = "status", nullable = false)
     private PromotionStatus status;
 
+    // Tổng số lượt dùng tối đa, null là không giới hạn
+    @Column(name = "max_redemptions")
+    private Integer maxRedemptions;
+
+    // Số lượt tối đa cho mỗi khách hàng, null là không giới hạn
+    @Column(name = "max_redemptions_per_customer")
+    private Integer maxRedemptionsPerCustomer;
+
+    // Số lượt đã dùng; chỉ thay đổi qua câu UPDATE có điều kiện của PromotionRepository khi giữ/trả lượt,
+    // không ghi qua entity để lần lưu khuyến mãi không ghi đè số đang tăng
+    @Builder.Default
+    @Column(name = "redemption_count", nullable = false, updatable = false)
+    private Long redemptionCount = 0L;
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
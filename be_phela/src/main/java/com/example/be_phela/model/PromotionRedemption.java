@@ -0,0 +1,39 @@
+package com.example.be_phela.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+// Một lượt dùng khuyến mãi của một đơn hàng; đây là dữ liệu gốc để đếm lượt khi khởi động lại
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity(name = "promotion_redemption")
+@Table(name = "promotion_redemption", indexes = {
+        @Index(name = "idx_redemption_promotion_customer", columnList = "promotion_id, customer_id"),
+        @Index(name = "idx_redemption_order", columnList = "order_id")
+})
+public class PromotionRedemption {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "redemption_id", nullable = false, unique = true)
+    private Long redemptionId;
+
+    @Column(name = "promotion_id", nullable = false)
+    private String promotionId;
+
+    @Column(name = "customer_id", nullable = false)
+    private String customerId;
+
+    @Column(name = "order_id", nullable = false)
+    private String orderId;
+
+    @CreationTimestamp
+    @Column(name = "redeemed_at", nullable = false, updatable = false)
+    private LocalDateTime redeemedAt;
+}
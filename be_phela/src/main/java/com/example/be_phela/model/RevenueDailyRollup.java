@@ -0,0 +1,41 @@
+package com.example.be_phela.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Doanh thu tổng hợp theo ngày đặt hàng và chi nhánh (chỉ tính đơn DELIVERED)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Entity(name = "revenue_daily_rollup")
+@Table(name = "revenue_daily_rollup",
+        uniqueConstraints = @UniqueConstraint(name = "uk_revenue_rollup_date_branch", columnNames = {"rollup_date", "branch_code"}))
+public class RevenueDailyRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "rollup_id", nullable = false, unique = true)
+    private Long rollupId;
+
+    @Column(name = "rollup_date", nullable = false)
+    private LocalDate rollupDate;
+
+    @Column(name = "branch_code", nullable = false)
+    private String branchCode;
+
+    @Column(name = "revenue", nullable = false)
+    private Double revenue;
+
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
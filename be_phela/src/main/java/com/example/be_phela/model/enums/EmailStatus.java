@@ -0,0 +1,8 @@
+package com.example.be_phela.model.enums;
+
+public enum EmailStatus {
+    PENDING,
+    SENDING,
+    SENT,
+    FAILED
+}
@@ -3,7 +3,11 @@ package com.example.be_phela.repository;
 import com.example.be_phela.model.Admin;
 import com.example.be_phela.model.enums.Roles;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -17,4 +21,9 @@ public interface AdminRepository extends JpaRepository<Admin, String> {
     List<Admin> findAll();
     List<Admin> findByRole(Roles role);
     Optional<Admin> findById(String id);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE admin a SET a.failedLoginAttempts = :attempts WHERE a.username = :username")
+    int updateFailedLoginAttempts(@Param("username") String username, @Param("attempts") int attempts);
 }
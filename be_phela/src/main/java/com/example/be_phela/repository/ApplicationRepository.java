@@ -3,6 +3,7 @@ package com.example.be_phela.repository;
 import com.example.be_phela.model.Application;
 import com.example.be_phela.model.enums.ApplicationStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -15,4 +16,17 @@ public interface ApplicationRepository extends JpaRepository<Application, String
     boolean existsByEmailAndJobPosting_JobPostingId(String email, String jobPostingId);
     List<Application> findByJobPosting_JobPostingId(String jobPostingId);
 
+    // Số tham chiếu của một file CV (các đơn nộp cùng nội dung dùng chung cvUrl)
+    long countByCvUrl(String cvUrl);
+
+    @Query("SELECT DISTINCT a.cvUrl FROM application a WHERE a.cvUrl IS NOT NULL")
+    List<String> findDistinctCvUrls();
+
+    @Query("SELECT DISTINCT a.cvUrl FROM application a WHERE a.jobPosting.jobPostingId = :jobPostingId AND a.cvUrl IS NOT NULL")
+    List<String> findCvUrlsByJobPostingId(@Param("jobPostingId") String jobPostingId);
+
+    @Modifying
+    @Query("UPDATE application a SET a.cvUrl = :newUrl WHERE a.cvUrl = :oldUrl")
+    int updateCvUrl(@Param("oldUrl") String oldUrl, @Param("newUrl") String newUrl);
+
 }
@@ -1,6 +1,7 @@
 package com.example.be_phela.repository;
 
 import com.example.be_phela.model.Branch;
+import com.example.be_phela.model.enums.ProductStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -15,4 +16,5 @@ public interface BranchRepository extends JpaRepository<Branch, String> {
     Boolean existsByBranchCode(String branchCode);
     List<Branch> findByCityContainsIgnoreCase(String city);
     List<Branch> findByDistrictContainsIgnoreCase(String district);
+    List<Branch> findByStatus(ProductStatus status);
 }
@@ -0,0 +1,41 @@
+package com.example.be_phela.repository;
+
+import com.example.be_phela.dto.response.ConversationDTO;
+import com.example.be_phela.model.ChatConversation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ChatConversationRepository extends JpaRepository<ChatConversation, String> {
+
+    // Danh sách hội thoại cho admin trong một truy vấn, mới nhất trước
+    @Query("SELECT new com.example.be_phela.dto.response.ConversationDTO(c.conversationId, cu.username, c.lastMessage, " +
+            "c.lastMessageAt, c.unreadByAdmin, c.unreadByCustomer) " +
+            "FROM chat_conversation c JOIN customer cu ON cu.customerId = c.conversationId " +
+            "ORDER BY c.lastMessageAt DESC")
+    List<ConversationDTO> findAllSummaries();
+
+    @Modifying
+    @Query("UPDATE chat_conversation c SET c.unreadByAdmin = 0 WHERE c.conversationId = :conversationId")
+    int markReadByAdmin(@Param("conversationId") String conversationId);
+
+    @Modifying
+    @Query("UPDATE chat_conversation c SET c.unreadByCustomer = 0 WHERE c.conversationId = :conversationId")
+    int markReadByCustomer(@Param("conversationId") String conversationId);
+
+    // Tạo tóm tắt từ tin nhắn cuối của mỗi cuộc hội thoại chưa có tóm tắt (dữ liệu cũ); số chưa đọc bắt đầu từ 0
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO chat_conversation " +
+            "(conversation_id, last_message, last_message_at, last_sender_id, unread_by_admin, unread_by_customer) " +
+            "SELECT m.conversation_id, m.content, m.timestamp, m.sender_id, 0, 0 FROM chat_message m " +
+            "JOIN (SELECT conversation_id, MAX(timestamp) AS last_at FROM chat_message " +
+            "WHERE conversation_id IS NOT NULL GROUP BY conversation_id) t " +
+            "ON t.conversation_id = m.conversation_id AND t.last_at = m.timestamp",
+            nativeQuery = true)
+    int backfillFromMessages();
+}
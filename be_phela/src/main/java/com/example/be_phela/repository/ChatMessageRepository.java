@@ -1,22 +1,38 @@
 package com.example.be_phela.repository;
 
 import com.example.be_phela.model.ChatMessage;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, String> {
-    // Lấy lịch sử chat của một khách hàng
-    @Query("SELECT m FROM chat_message m WHERE (m.senderId = :customerId AND m.recipientId = 'ADMIN') OR (m.senderId = 'ADMIN' AND m.recipientId = :customerId) ORDER BY m.timestamp ASC")
-    List<ChatMessage> findConversationWithCustomer(@Param("customerId") String customerId);
+    // Một trang lịch sử chat, mới nhất trước, bắt đầu ngay trước vị trí (timestamp, id); chạy trên index (conversation_id, timestamp, id)
+    @Query("SELECT m FROM chat_message m WHERE m.conversationId = :conversationId " +
+            "AND (m.timestamp < :beforeTime OR (m.timestamp = :beforeTime AND m.id < :beforeId)) " +
+            "ORDER BY m.timestamp DESC, m.id DESC")
+    List<ChatMessage> findHistoryBefore(
+            @Param("conversationId") String conversationId,
+            @Param("beforeTime") LocalDateTime beforeTime,
+            @Param("beforeId") String beforeId,
+            Limit limit);
 
-    @Query("SELECT m.senderId FROM chat_message m WHERE m.recipientId = 'ADMIN' GROUP BY m.senderId")
-    List<String> findDistinctCustomerIds();
+    @Query("SELECT m.id FROM chat_message m WHERE m.id IN :ids")
+    List<String> findExistingIds(@Param("ids") Collection<String> ids);
 
-    ChatMessage findTopBySenderIdOrRecipientIdOrderByTimestampDesc(String senderId, String recipientId);
+    boolean existsByConversationIdIsNull();
+
+    // Gán conversation_id cho tin nhắn cũ (trước khi có cột này)
+    @Modifying
+    @Query("UPDATE chat_message m SET m.conversationId = CASE WHEN m.senderId = 'ADMIN' THEN m.recipientId ELSE m.senderId END " +
+            "WHERE m.conversationId IS NULL")
+    int backfillConversationIds();
 }
@@ -32,4 +32,9 @@ public interface CustomerRepository extends JpaRepository<Customer, String> {
     @Modifying
     @Query("UPDATE customer c SET c.status = :status WHERE c.customerId = :customerId")
     void updateStatus(@Param("customerId") String customerId, @Param("status") Status status);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE customer c SET c.failedLoginAttempts = :attempts WHERE c.username = :username")
+    int updateFailedLoginAttempts(@Param("username") String username, @Param("attempts") int attempts);
 }
@@ -0,0 +1,52 @@
+package com.example.be_phela.repository;
+
+import com.example.be_phela.model.EmailOutbox;
+import com.example.be_phela.model.enums.EmailStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+    @Query("SELECT e.emailId FROM email_outbox e WHERE e.status = :status AND e.nextAttemptAt <= :now ORDER BY e.nextAttemptAt")
+    List<Long> findDueIds(@Param("status") EmailStatus status, @Param("now") LocalDateTime now, Pageable pageable);
+
+    // Chỉ nhận những email vẫn còn PENDING, nên hai worker không thể nhận cùng một email
+    @Modifying
+    @Query("UPDATE email_outbox e SET e.status = com.example.be_phela.model.enums.EmailStatus.SENDING, " +
+            "e.claimToken = :token, e.claimedAt = :now " +
+            "WHERE e.emailId IN :ids AND e.status = com.example.be_phela.model.enums.EmailStatus.PENDING")
+    int claim(@Param("ids") Collection<Long> ids, @Param("token") String token, @Param("now") LocalDateTime now);
+
+    List<EmailOutbox> findByClaimToken(String claimToken);
+
+    // Xóa luôn substitutions (OTP, token đặt lại mật khẩu) vì email đã gửi không cần đến nữa
+    @Modifying
+    @Query("UPDATE email_outbox e SET e.status = com.example.be_phela.model.enums.EmailStatus.SENT, " +
+            "e.sentAt = :sentAt, e.attempts = e.attempts + 1, e.claimToken = NULL, e.lastError = NULL, " +
+            "e.substitutions = NULL WHERE e.emailId IN :ids")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("sentAt") LocalDateTime sentAt);
+
+    @Modifying
+    @Query("UPDATE email_outbox e SET e.status = com.example.be_phela.model.enums.EmailStatus.PENDING, e.claimToken = NULL " +
+            "WHERE e.status = com.example.be_phela.model.enums.EmailStatus.SENDING AND e.claimedAt < :cutoff")
+    int releaseStaleClaims(@Param("cutoff") LocalDateTime cutoff);
+
+    // Dọn substitutions của các email đã xong từ trước khi markSent/FAILED tự xóa
+    @Modifying
+    @Query("UPDATE email_outbox e SET e.substitutions = NULL WHERE e.substitutions IS NOT NULL AND e.status IN " +
+            "(com.example.be_phela.model.enums.EmailStatus.SENT, com.example.be_phela.model.enums.EmailStatus.FAILED)")
+    int clearFinishedSubstitutions();
+
+    @Modifying
+    @Query("DELETE FROM email_outbox e WHERE e.status = com.example.be_phela.model.enums.EmailStatus.SENT AND e.sentAt < :cutoff")
+    int deleteSentBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    long countByStatus(EmailStatus status);
+}
@@ -3,13 +3,19 @@ package com.example.be_phela.repository;
 import com.example.be_phela.model.Order;
 import com.example.be_phela.model.enums.OrderStatus;
 import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,6 +23,65 @@ import java.util.Optional;
 public interface OrderRepository extends JpaRepository<Order, String> {
 
     List<Order> findByCustomer_CustomerIdOrderByOrderDateDesc(String customerId);
+
+    // Phân trang theo id trước, sau đó tải chi tiết bằng entity graph để tránh N+1
+    @Query(value = "SELECT o.orderId FROM orders o WHERE o.status = :status",
+            countQuery = "SELECT COUNT(o) FROM orders o WHERE o.status = :status")
+    Page<String> findOrderIdsByStatus(@Param("status") OrderStatus status, Pageable pageable);
+
+    // Ưu tiên đơn chỉ có 1 sản phẩm lên đầu (dùng cho trạng thái CONFIRMED)
+    @Query(value = "SELECT o.orderId FROM orders o WHERE o.status = :status " +
+            "ORDER BY CASE WHEN SIZE(o.orderItems) = 1 THEN 0 ELSE 1 END",
+            countQuery = "SELECT COUNT(o) FROM orders o WHERE o.status = :status")
+    Page<String> findOrderIdsByStatusSingleItemFirst(@Param("status") OrderStatus status, Pageable pageable);
+
+    @Query(value = "SELECT o.orderId FROM orders o WHERE o.customer.customerId = :customerId",
+            countQuery = "SELECT COUNT(o) FROM orders o WHERE o.customer.customerId = :customerId")
+    Page<String> findOrderIdsByCustomerId(@Param("customerId") String customerId, Pageable pageable);
+
+    // Feed theo con trỏ (orderDate, orderId), dùng index idx_orders_status_branch_date
+    @Query("SELECT o.orderId FROM orders o WHERE o.status = :status AND o.branch.branchCode = :branchCode " +
+            "AND (o.orderDate > :afterDate OR (o.orderDate = :afterDate AND o.orderId > :afterId)) " +
+            "ORDER BY o.orderDate ASC, o.orderId ASC")
+    List<String> findFeedIdsByStatusAndBranchAsc(
+            @Param("status") OrderStatus status,
+            @Param("branchCode") String branchCode,
+            @Param("afterDate") LocalDateTime afterDate,
+            @Param("afterId") String afterId,
+            Limit limit);
+
+    @Query("SELECT o.orderId FROM orders o WHERE o.status = :status AND o.branch.branchCode = :branchCode " +
+            "AND (o.orderDate < :beforeDate OR (o.orderDate = :beforeDate AND o.orderId < :beforeId)) " +
+            "ORDER BY o.orderDate DESC, o.orderId DESC")
+    List<String> findFeedIdsByStatusAndBranchDesc(
+            @Param("status") OrderStatus status,
+            @Param("branchCode") String branchCode,
+            @Param("beforeDate") LocalDateTime beforeDate,
+            @Param("beforeId") String beforeId,
+            Limit limit);
+
+    @Query("SELECT o.orderId FROM orders o WHERE o.status = :status " +
+            "AND (o.orderDate > :afterDate OR (o.orderDate = :afterDate AND o.orderId > :afterId)) " +
+            "ORDER BY o.orderDate ASC, o.orderId ASC")
+    List<String> findFeedIdsByStatusAsc(
+            @Param("status") OrderStatus status,
+            @Param("afterDate") LocalDateTime afterDate,
+            @Param("afterId") String afterId,
+            Limit limit);
+
+    @Query("SELECT o.orderId FROM orders o WHERE o.status = :status " +
+            "AND (o.orderDate < :beforeDate OR (o.orderDate = :beforeDate AND o.orderId < :beforeId)) " +
+            "ORDER BY o.orderDate DESC, o.orderId DESC")
+    List<String> findFeedIdsByStatusDesc(
+            @Param("status") OrderStatus status,
+            @Param("beforeDate") LocalDateTime beforeDate,
+            @Param("beforeId") String beforeId,
+            Limit limit);
+
+    // Tải đơn kèm địa chỉ, chi nhánh và danh sách món trong một truy vấn
+    @EntityGraph(attributePaths = {"address", "branch", "orderItems"})
+    @Query("SELECT o FROM orders o WHERE o.orderId IN :orderIds")
+    List<Order> findAllWithDetailsByOrderIdIn(@Param("orderIds") Collection<String> orderIds);
     
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("SELECT o FROM orders o WHERE o.orderCode = :orderCode")
@@ -45,10 +110,29 @@ public interface OrderRepository extends JpaRepository<Order, String> {
             @Param("status") OrderStatus status
     );
 
+    // Doanh thu và số đơn theo ngày và chi nhánh (dùng để dựng lại bảng revenue_daily_rollup)
+    @Query("SELECT FUNCTION('DATE', o.orderDate), o.branch.branchCode, SUM(o.finalAmount), COUNT(o) " +
+            "FROM orders o WHERE o.orderDate BETWEEN :startDate AND :endDate AND o.status = :status " +
+            "GROUP BY FUNCTION('DATE', o.orderDate), o.branch.branchCode")
+    List<Object[]> findRevenueAndOrderCountByDateRangeAndBranch(
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate,
+            @Param("status") OrderStatus status
+    );
+
+    @Query("SELECT MIN(o.orderDate) FROM orders o WHERE o.status = :status")
+    Optional<LocalDateTime> findEarliestOrderDateByStatus(@Param("status") OrderStatus status);
+
     // Đếm tổng số đơn và số đơn đã hủy trong khoảng thời gian
     @Query("SELECT COUNT(o), SUM(CASE WHEN o.status = 'CANCELLED' THEN 1 ELSE 0 END) FROM orders o WHERE o.orderDate BETWEEN :startDate AND :endDate")
     List<Object[]> countTotalAndCancelledOrdersByDateRange(@Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
 
+    // Chuyển trạng thái có điều kiện: UPDATE đọc bản mới nhất và khóa dòng, nên khi hai request cùng chuyển
+    // từ một trạng thái thì request sau nhận 0 dòng thay vì ghi đè (và cộng doanh thu lần nữa)
+    @Modifying
+    @Query("UPDATE orders o SET o.status = :to WHERE o.orderId = :orderId AND o.status = :from")
+    int transitionStatus(@Param("orderId") String orderId, @Param("from") OrderStatus from, @Param("to") OrderStatus to);
+
     @Query("SELECT COUNT(o) FROM orders o WHERE o.customer.customerId = :customerId AND o.status = :status AND o.updatedAt >= :since")
     long countByCustomerAndStatusSince(
             @Param("customerId") String customerId,
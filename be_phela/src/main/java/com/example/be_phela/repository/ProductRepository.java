@@ -6,8 +6,10 @@ import com.example.be_phela.model.enums.ProductStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -30,4 +32,17 @@ public interface ProductRepository extends JpaRepository<Product, String> {
             @Param("categoryCode") String categoryCode,
             @Param("prefix") String prefix,
             Pageable pageable);
+
+    // Sản phẩm có ảnh nhưng chưa có bản thu nhỏ
+    List<Product> findByImageUrlIsNotNullAndImageThumbUrlIsNull();
+
+    // Chỉ ghi khi ảnh gốc chưa bị đổi trong lúc đang tạo bản thu nhỏ
+    @Transactional
+    @Modifying
+    @Query("UPDATE product p SET p.imageThumbUrl = :thumbUrl, p.imageMediumUrl = :mediumUrl " +
+            "WHERE p.productId = :productId AND p.imageUrl = :imageUrl")
+    int updateImageVariants(@Param("productId") String productId,
+                            @Param("imageUrl") String imageUrl,
+                            @Param("thumbUrl") String thumbUrl,
+                            @Param("mediumUrl") String mediumUrl);
 }
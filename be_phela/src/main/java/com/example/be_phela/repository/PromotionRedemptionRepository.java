@@ -0,0 +1,38 @@
+package com.example.be_phela.repository;
+
+import com.example.be_phela.model.PromotionRedemption;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface PromotionRedemptionRepository extends JpaRepository<PromotionRedemption, Long> {
+
+    // Số lượt đã dùng của từng khách hàng: [customerId, count]
+    @Query("SELECT r.customerId, COUNT(r) FROM promotion_redemption r WHERE r.promotionId = :promotionId GROUP BY r.customerId")
+    List<Object[]> countByCustomer(@Param("promotionId") String promotionId);
+
+    // Đọc bản mới nhất đã commit (locking read) thay vì snapshot của transaction; gọi sau khi đã khóa dòng promotion.
+    // Lượt của khuyến mãi có giới hạn được commit ngay khi giữ nên các đơn đang xử lý cũng được đếm
+    @Query(value = "SELECT COUNT(*) FROM promotion_redemption WHERE promotion_id = :promotionId " +
+            "AND customer_id = :customerId FOR SHARE", nativeQuery = true)
+    long countByPromotionAndCustomerForShare(@Param("promotionId") String promotionId,
+                                             @Param("customerId") String customerId);
+
+    List<PromotionRedemption> findByOrderId(String orderId);
+
+    // Lượt giữ của đơn không còn tồn tại (instance dừng giữa lúc giữ lượt và commit đơn, hoặc trả lượt thất bại)
+    @Modifying
+    @Query(value = "DELETE FROM promotion_redemption WHERE redeemed_at < :before " +
+            "AND NOT EXISTS (SELECT 1 FROM orders o WHERE o.order_id = promotion_redemption.order_id)", nativeQuery = true)
+    int deleteOrphaned(@Param("before") LocalDateTime before);
+
+    @Modifying
+    @Query("DELETE FROM promotion_redemption r WHERE r.orderId = :orderId")
+    int deleteByOrderId(@Param("orderId") String orderId);
+}
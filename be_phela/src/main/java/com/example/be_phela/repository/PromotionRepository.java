@@ -5,6 +5,9 @@ import com.example.be_phela.model.enums.PromotionStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
@@ -24,4 +27,38 @@ public interface PromotionRepository extends JpaRepository<Promotion, String> {
 
     // Lấy khuyến mãi theo trạng thái với phân trang (cho admin)
     Page<Promotion> findByStatus(PromotionStatus status, Pageable pageable);
+
+    List<Promotion> findByStatus(PromotionStatus status);
+
+    // Chuyển tất cả khuyến mãi ACTIVE đã qua endDate sang EXPIRED trong một câu lệnh
+    @Modifying
+    @Query("UPDATE promotion p SET p.status = com.example.be_phela.model.enums.PromotionStatus.EXPIRED, p.updatedAt = :now " +
+            "WHERE p.status = com.example.be_phela.model.enums.PromotionStatus.ACTIVE AND p.endDate <= :now")
+    int expireEndedBefore(@Param("now") LocalDateTime now);
+
+    // Giữ một lượt: chỉ tăng khi còn lượt, trả về 0 nếu đã hết. Chạy trong transaction giữ lượt ngắn
+    // (tách khỏi transaction tạo đơn) nên dòng promotion chỉ bị khóa trong vài câu lệnh.
+    // Native SQL vì redemption_count không được ghi qua entity (updatable = false)
+    @Modifying
+    @Query(value = "UPDATE promotion SET redemption_count = redemption_count + 1 WHERE promotion_id = :promotionId " +
+            "AND (max_redemptions IS NULL OR redemption_count < max_redemptions)", nativeQuery = true)
+    int incrementRedemptionCount(@Param("promotionId") String promotionId);
+
+    @Modifying
+    @Query(value = "UPDATE promotion SET redemption_count = redemption_count - 1 " +
+            "WHERE promotion_id = :promotionId AND redemption_count > 0", nativeQuery = true)
+    int decrementRedemptionCount(@Param("promotionId") String promotionId);
+
+    // Đặt redemption_count bằng số dòng promotion_redemption: lượt giữ và dòng lịch sử luôn được ghi cùng
+    // transaction nên số dòng là giá trị đúng; khuyến mãi không giới hạn không tăng cột này khi tạo đơn
+    @Modifying
+    @Query(value = "UPDATE promotion p SET p.redemption_count = " +
+            "(SELECT COUNT(*) FROM promotion_redemption r WHERE r.promotion_id = p.promotion_id)", nativeQuery = true)
+    int reconcileRedemptionCounts();
+
+    @Modifying
+    @Query(value = "UPDATE promotion p SET p.redemption_count = " +
+            "(SELECT COUNT(*) FROM promotion_redemption r WHERE r.promotion_id = p.promotion_id) " +
+            "WHERE p.promotion_id = :promotionId", nativeQuery = true)
+    int reconcileRedemptionCount(@Param("promotionId") String promotionId);
 }
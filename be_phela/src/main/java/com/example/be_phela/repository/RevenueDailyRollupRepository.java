@@ -0,0 +1,42 @@
+package com.example.be_phela.repository;
+
+import com.example.be_phela.model.RevenueDailyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface RevenueDailyRollupRepository extends JpaRepository<RevenueDailyRollup, Long> {
+
+    // Cộng dồn doanh thu của một đơn vào dòng (ngày, chi nhánh); tạo dòng mới nếu chưa có
+    @Modifying
+    @Query(value = "INSERT INTO revenue_daily_rollup (rollup_date, branch_code, revenue, order_count, updated_at) " +
+            "VALUES (:rollupDate, :branchCode, :revenue, :orderCount, NOW()) " +
+            "ON DUPLICATE KEY UPDATE revenue = revenue + VALUES(revenue), " +
+            "order_count = order_count + VALUES(order_count), updated_at = NOW()",
+            nativeQuery = true)
+    void upsertIncrement(
+            @Param("rollupDate") LocalDate rollupDate,
+            @Param("branchCode") String branchCode,
+            @Param("revenue") double revenue,
+            @Param("orderCount") long orderCount
+    );
+
+    // Doanh thu và số đơn theo ngày (cộng tất cả chi nhánh)
+    @Query("SELECT r.rollupDate, SUM(r.revenue), SUM(r.orderCount) FROM revenue_daily_rollup r " +
+            "WHERE r.rollupDate BETWEEN :startDate AND :endDate " +
+            "GROUP BY r.rollupDate ORDER BY r.rollupDate")
+    List<Object[]> sumRevenueAndOrderCountByDate(
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate
+    );
+
+    @Modifying
+    @Query("DELETE FROM revenue_daily_rollup r WHERE r.rollupDate BETWEEN :startDate AND :endDate")
+    int deleteByRollupDateBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+}
@@ -0,0 +1,38 @@
+package com.example.be_phela.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+// Sự kiện bảo mật ở dạng thô; chỉ được định dạng thành log trên luồng ghi nền
+public record SecurityEvent(Type type,
+                            long timestampMillis,
+                            String name,
+                            String username,
+                            String role,
+                            String details,
+                            String forwardedFor,
+                            String realIp,
+                            String remoteAddr,
+                            String userAgent,
+                            String path,
+                            String method) {
+
+    public enum Type {
+        AUTHENTICATION_SUCCESS,
+        AUTHENTICATION_FAILURE,
+        TOKEN_VALIDATION_FAILURE,
+        ACCESS_DENIED,
+        SUSPICIOUS_ACTIVITY,
+        CUSTOM
+    }
+
+    // IP dùng để giới hạn tần suất và khóa: chỉ lấy địa chỉ kết nối. Khi chạy sau proxy tin cậy,
+    // Tomcat (server.forward-headers-strategy=native) đã thay remoteAddr bằng IP client từ X-Forwarded-For.
+    // forwardedFor/realIp do client tự gửi được nên chỉ dùng để ghi log.
+    public String clientIp() {
+        return remoteAddr;
+    }
+
+    public static String resolveClientIp(HttpServletRequest request) {
+        return request.getRemoteAddr();
+    }
+}
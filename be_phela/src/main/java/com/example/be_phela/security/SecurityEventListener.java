@@ -0,0 +1,7 @@
+package com.example.be_phela.security;
+
+// Nhận sự kiện bảo mật đồng bộ trên luồng request; phải xử lý nhanh và không ném lỗi
+public interface SecurityEventListener {
+
+    void onSecurityEvent(SecurityEvent event);
+}
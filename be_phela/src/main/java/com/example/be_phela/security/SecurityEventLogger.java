@@ -1,113 +1,205 @@
 package com.example.be_phela.security;
 
+import com.example.be_phela.utils.RingBuffer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import jakarta.servlet.http.HttpServletRequest;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
+// Ghi nhận sự kiện bảo mật vào ring buffer; một luồng nền định dạng và ghi log
 @Slf4j
 @Component
 public class SecurityEventLogger {
 
     private static final String SECURITY_LOG_PREFIX = "[SECURITY]";
     private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int DRAIN_BATCH = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final RingBuffer<SecurityEvent> buffer;
+    // Tỉ lệ giữ lại AUTHENTICATION_SUCCESS (1.0 = ghi tất cả)
+    private final double successSampleRate;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    private final ObjectProvider<SecurityEventListener> listenerProvider;
+    private volatile List<SecurityEventListener> listeners = List.of();
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public SecurityEventLogger(@Value("${app.security.events.buffer-size:8192}") int bufferSize,
+                               @Value("${app.security.events.success-sample-rate:1.0}") double successSampleRate,
+                               MeterRegistry meterRegistry,
+                               ObjectProvider<SecurityEventListener> listenerProvider) {
+        this.buffer = new RingBuffer<>(bufferSize);
+        this.listenerProvider = listenerProvider;
+        this.successSampleRate = Math.max(0.0, Math.min(1.0, successSampleRate));
+
+        Gauge.builder("phela.security.events.queue.depth", buffer, RingBuffer::size)
+                .register(meterRegistry);
+        FunctionCounter.builder("phela.security.events.dropped", dropped, LongAdder::sum)
+                .register(meterRegistry);
+        FunctionCounter.builder("phela.security.events.sampled-out", sampledOut, LongAdder::sum)
+                .register(meterRegistry);
+        FunctionCounter.builder("phela.security.events.written", written, LongAdder::sum)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        listeners = listenerProvider.orderedStream().toList();
+        running = true;
+        writer = new Thread(this::drainLoop, "security-event-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(2));
+    }
 
     public void logAuthenticationSuccess(String username, String role, HttpServletRequest request) {
-        String logMessage = String.format(
-                "%s [%s] AUTHENTICATION_SUCCESS - User: %s, Role: %s, IP: %s, UserAgent: %s",
-                SECURITY_LOG_PREFIX,
-                LocalDateTime.now().format(TIMESTAMP_FORMAT),
-                username,
-                role,
-                getClientIpAddress(request),
-                getUserAgent(request)
-        );
-        log.info(logMessage);
+        publish(SecurityEvent.Type.AUTHENTICATION_SUCCESS, null, username, role, null, request);
     }
 
     public void logAuthenticationFailure(String reason, HttpServletRequest request) {
-        String logMessage = String.format(
-                "%s [%s] AUTHENTICATION_FAILURE - Reason: %s, IP: %s, UserAgent: %s, Path: %s",
-                SECURITY_LOG_PREFIX,
-                LocalDateTime.now().format(TIMESTAMP_FORMAT),
-                reason,
-                getClientIpAddress(request),
-                getUserAgent(request),
-                request.getRequestURI()
-        );
-        log.warn(logMessage);
+        publish(SecurityEvent.Type.AUTHENTICATION_FAILURE, null, null, null, reason, request);
+    }
+
+    public void logAuthenticationFailure(String username, String reason, HttpServletRequest request) {
+        publish(SecurityEvent.Type.AUTHENTICATION_FAILURE, null, username, null, reason, request);
     }
 
     public void logTokenValidationFailure(String tokenError, String username, HttpServletRequest request) {
-        String logMessage = String.format(
-                "%s [%s] TOKEN_VALIDATION_FAILURE - Error: %s, User: %s, IP: %s, Path: %s",
-                SECURITY_LOG_PREFIX,
-                LocalDateTime.now().format(TIMESTAMP_FORMAT),
-                tokenError,
-                username != null ? username : "unknown",
-                getClientIpAddress(request),
-                request.getRequestURI()
-        );
-        log.warn(logMessage);
+        publish(SecurityEvent.Type.TOKEN_VALIDATION_FAILURE, null, username, null, tokenError, request);
     }
 
     public void logAccessDenied(String username, String requestedResource, HttpServletRequest request) {
-        String logMessage = String.format(
-                "%s [%s] ACCESS_DENIED - User: %s, Resource: %s, IP: %s, Method: %s",
-                SECURITY_LOG_PREFIX,
-                LocalDateTime.now().format(TIMESTAMP_FORMAT),
-                username != null ? username : "anonymous",
-                requestedResource,
-                getClientIpAddress(request),
-                request.getMethod()
-        );
-        log.warn(logMessage);
+        publish(SecurityEvent.Type.ACCESS_DENIED, null, username, null, requestedResource, request);
     }
 
     public void logSuspiciousActivity(String activity, HttpServletRequest request) {
-        String logMessage = String.format(
-                "%s [%s] SUSPICIOUS_ACTIVITY - Activity: %s, IP: %s, UserAgent: %s, Path: %s",
-                SECURITY_LOG_PREFIX,
-                LocalDateTime.now().format(TIMESTAMP_FORMAT),
-                activity,
-                getClientIpAddress(request),
-                getUserAgent(request),
-                request.getRequestURI()
-        );
-        log.error(logMessage);
+        publish(SecurityEvent.Type.SUSPICIOUS_ACTIVITY, null, null, null, activity, request);
     }
 
     public void logSecurityEvent(String eventType, String details, HttpServletRequest request) {
-        String logMessage = String.format(
-                "%s [%s] %s - Details: %s, IP: %s, Path: %s",
-                SECURITY_LOG_PREFIX,
-                LocalDateTime.now().format(TIMESTAMP_FORMAT),
-                eventType,
-                details,
-                getClientIpAddress(request),
-                request.getRequestURI()
-        );
-        log.info(logMessage);
+        publish(SecurityEvent.Type.CUSTOM, eventType, null, null, details, request);
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public int getQueueDepth() {
+        return buffer.size();
     }
 
-    private String getClientIpAddress(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty() && !"unknown".equalsIgnoreCase(xForwardedFor)) {
-            return xForwardedFor.split(",")[0].trim();
+    // Luồng request chỉ đọc header, tạo record và báo cho listener; không định dạng chuỗi
+    private void publish(SecurityEvent.Type type, String name, String username, String role, String details,
+                         HttpServletRequest request) {
+        SecurityEvent event = new SecurityEvent(
+                type,
+                System.currentTimeMillis(),
+                name,
+                username,
+                role,
+                details,
+                request.getHeader("X-Forwarded-For"),
+                request.getHeader("X-Real-IP"),
+                request.getRemoteAddr(),
+                request.getHeader("User-Agent"),
+                request.getRequestURI(),
+                request.getMethod());
+        List<SecurityEventListener> current = listeners;
+        for (int i = 0, n = current.size(); i < n; i++) {
+            try {
+                current.get(i).onSecurityEvent(event);
+            } catch (RuntimeException e) {
+                log.error("Security event listener failed for {}", event.type(), e);
+            }
         }
+        if (type == SecurityEvent.Type.AUTHENTICATION_SUCCESS && successSampleRate < 1.0
+                && ThreadLocalRandom.current().nextDouble() >= successSampleRate) {
+            sampledOut.increment();
+            return;
+        }
+        if (!buffer.offer(event)) {
+            dropped.increment();
+        }
+    }
 
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isEmpty() && !"unknown".equalsIgnoreCase(xRealIp)) {
-            return xRealIp;
+    private void drainLoop() {
+        while (running) {
+            if (buffer.drain(this::write, DRAIN_BATCH) == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        // Ghi nốt các sự kiện còn lại khi tắt ứng dụng
+        while (buffer.drain(this::write, DRAIN_BATCH) > 0) {
+            // tiếp tục cho đến khi rỗng
         }
+    }
 
-        return request.getRemoteAddr();
+    private void write(SecurityEvent event) {
+        try {
+            String timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(event.timestampMillis()), ZoneId.systemDefault())
+                    .format(TIMESTAMP_FORMAT);
+            String userAgent = event.userAgent() != null ? event.userAgent() : "unknown";
+            switch (event.type()) {
+                case AUTHENTICATION_SUCCESS -> log.info(String.format(
+                        "%s [%s] AUTHENTICATION_SUCCESS - User: %s, Role: %s, IP: %s, UserAgent: %s",
+                        SECURITY_LOG_PREFIX, timestamp, event.username(), event.role(), ipOf(event), userAgent));
+                case AUTHENTICATION_FAILURE -> log.warn(String.format(
+                        "%s [%s] AUTHENTICATION_FAILURE - Reason: %s, IP: %s, UserAgent: %s, Path: %s",
+                        SECURITY_LOG_PREFIX, timestamp, event.details(), ipOf(event), userAgent, event.path()));
+                case TOKEN_VALIDATION_FAILURE -> log.warn(String.format(
+                        "%s [%s] TOKEN_VALIDATION_FAILURE - Error: %s, User: %s, IP: %s, Path: %s",
+                        SECURITY_LOG_PREFIX, timestamp, event.details(),
+                        event.username() != null ? event.username() : "unknown", ipOf(event), event.path()));
+                case ACCESS_DENIED -> log.warn(String.format(
+                        "%s [%s] ACCESS_DENIED - User: %s, Resource: %s, IP: %s, Method: %s",
+                        SECURITY_LOG_PREFIX, timestamp, event.username() != null ? event.username() : "anonymous",
+                        event.details(), ipOf(event), event.method()));
+                case SUSPICIOUS_ACTIVITY -> log.error(String.format(
+                        "%s [%s] SUSPICIOUS_ACTIVITY - Activity: %s, IP: %s, UserAgent: %s, Path: %s",
+                        SECURITY_LOG_PREFIX, timestamp, event.details(), ipOf(event), userAgent, event.path()));
+                case CUSTOM -> log.info(String.format(
+                        "%s [%s] %s - Details: %s, IP: %s, Path: %s",
+                        SECURITY_LOG_PREFIX, timestamp, event.name(), event.details(), ipOf(event), event.path()));
+            }
+            written.increment();
+        } catch (RuntimeException e) {
+            log.error("Failed to write security event {}", event.type(), e);
+        }
     }
 
-    private String getUserAgent(HttpServletRequest request) {
-        String userAgent = request.getHeader("User-Agent");
-        return userAgent != null ? userAgent : "unknown";
+    // Kèm header proxy do client gửi (không tin cậy) để tiện điều tra
+    private static String ipOf(SecurityEvent event) {
+        if (event.forwardedFor() == null && event.realIp() == null) {
+            return event.clientIp();
+        }
+        return event.clientIp() + " (X-Forwarded-For: " + event.forwardedFor() + ", X-Real-IP: " + event.realIp() + ")";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+package com.example.be_phela.security;
+
+import com.example.be_phela.controller.ChatController;
+import com.example.be_phela.exception.JwtException;
+import com.example.be_phela.filter.JwtAuthenticationFilter;
+import com.example.be_phela.model.Customer;
+import com.example.be_phela.repository.CustomerRepository;
+import com.example.be_phela.service.OrderEventPublisher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.Set;
+
+// /ws/** là permitAll nên phân quyền topic được làm ở tầng STOMP:
+// CONNECT mang header "Authorization: Bearer <jwt>" để gán user cho phiên, SUBSCRIBE được kiểm tra theo topic.
+// Từ chối bằng exception trong preSend: frame không tới broker nên subscription không được đăng ký.
+@Slf4j
+@Component
+public class StompAuthorizationInterceptor implements ChannelInterceptor {
+
+    private static final String CHAT_TOPIC_PREFIX = "/topic/chat/";
+    private static final String CUSTOMER_ID_ATTRIBUTE = "customerId";
+    private static final Set<String> STAFF_ROLES = Set.of("ROLE_ADMIN", "ROLE_SUPER_ADMIN", "ROLE_STAFF");
+
+    private final JwtAuthenticationFilter jwtAuthenticationFilter;
+    private final CustomerRepository customerRepository;
+
+    public StompAuthorizationInterceptor(JwtAuthenticationFilter jwtAuthenticationFilter,
+                                         CustomerRepository customerRepository) {
+        this.jwtAuthenticationFilter = jwtAuthenticationFilter;
+        this.customerRepository = customerRepository;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+        if (accessor.getCommand() == StompCommand.CONNECT || accessor.getCommand() == StompCommand.STOMP) {
+            authenticate(accessor);
+        } else if (accessor.getCommand() == StompCommand.SUBSCRIBE) {
+            authorizeSubscribe(accessor);
+        }
+        return message;
+    }
+
+    // Client chưa đăng nhập vẫn kết nối được (không có user); token sai thì từ chối kết nối
+    private void authenticate(StompHeaderAccessor accessor) {
+        String header = accessor.getFirstNativeHeader("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return;
+        }
+        Authentication authentication;
+        try {
+            authentication = jwtAuthenticationFilter.authenticateToken(header.substring(7));
+        } catch (JwtException e) {
+            throw new BadCredentialsException("Invalid STOMP CONNECT token: " + e.getMessage());
+        }
+        accessor.setUser(authentication);
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes != null && hasRole(authentication, "ROLE_CUSTOMER")) {
+            customerRepository.findByUsername(authentication.getName())
+                    .map(Customer::getCustomerId)
+                    .ifPresent(customerId -> attributes.put(CUSTOMER_ID_ATTRIBUTE, customerId));
+        }
+    }
+
+    private void authorizeSubscribe(StompHeaderAccessor accessor) {
+        String destination = accessor.getDestination();
+        if (destination == null) {
+            throw new AccessDeniedException("SUBSCRIBE without destination");
+        }
+        Principal user = accessor.getUser();
+        boolean allowed;
+        if (destination.equals(ChatController.ADMIN_TOPIC)
+                || destination.equals(OrderEventPublisher.ALL_TOPIC)
+                || destination.startsWith(OrderEventPublisher.BRANCH_TOPIC_PREFIX)) {
+            allowed = isStaff(user);
+        } else if (destination.startsWith(CHAT_TOPIC_PREFIX)) {
+            allowed = isStaff(user) || isOwner(accessor, destination.substring(CHAT_TOPIC_PREFIX.length()));
+        } else if (destination.startsWith(OrderEventPublisher.CUSTOMER_TOPIC_PREFIX)) {
+            allowed = isStaff(user)
+                    || isOwner(accessor, destination.substring(OrderEventPublisher.CUSTOMER_TOPIC_PREFIX.length()));
+        } else {
+            // Chỉ các topic ở trên được phép subscribe
+            allowed = false;
+        }
+        if (!allowed) {
+            log.warn("Denied STOMP SUBSCRIBE to {} for {} (session {})", destination,
+                    user != null ? user.getName() : "anonymous", accessor.getSessionId());
+            throw new AccessDeniedException("Not allowed to subscribe to " + destination);
+        }
+    }
+
+    private boolean isOwner(StompHeaderAccessor accessor, String customerId) {
+        Principal user = accessor.getUser();
+        if (!(user instanceof Authentication authentication) || !hasRole(authentication, "ROLE_CUSTOMER")
+                || customerId.isEmpty() || customerId.contains("/")) {
+            return false;
+        }
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        Object cached = attributes != null ? attributes.get(CUSTOMER_ID_ATTRIBUTE) : null;
+        if (cached != null) {
+            return customerId.equals(cached);
+        }
+        return customerRepository.findByUsername(authentication.getName())
+                .map(customer -> customerId.equals(customer.getCustomerId()))
+                .orElse(false);
+    }
+
+    private static boolean isStaff(Principal user) {
+        return user instanceof Authentication authentication && authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .anyMatch(STAFF_ROLES::contains);
+    }
+
+    private static boolean hasRole(Authentication authentication, String role) {
+        return authentication.getAuthorities().stream().anyMatch(authority -> role.equals(authority.getAuthority()));
+    }
+}
@@ -22,6 +22,7 @@ public class AddressService implements IAddressService {
 
     private final AddressRepository addressRepository;
     private final CustomerRepository customerRepository;
+    private final CartService cartService;
 
     @Override
     public List<AddressDTO> getAddressesByCustomerId(String customerId) {
@@ -61,6 +62,9 @@ public class AddressService implements IAddressService {
 
         // Lưu vào database (UUID sẽ tự động tạo bởi @UuidGenerator)
         address = addressRepository.save(address);
+        if (address.getIsDefault()) {
+            cartService.synchronizeCartAddressAndBranch(customerId);
+        }
         log.info("Address created successfully: {}", address.getAddressId());
         return convertToDTO(address);
     }
@@ -74,6 +78,8 @@ public class AddressService implements IAddressService {
         Address address = addressRepository.findById(addressId)
                 .orElseThrow(() -> new RuntimeException("Address not found with id: " + addressId));
 
+        boolean wasDefault = Boolean.TRUE.equals(address.getIsDefault());
+
         // Cập nhật thông tin địa chỉ
         address.setCity(addressCreateDTO.getCity());
         address.setDistrict(addressCreateDTO.getDistrict());
@@ -92,15 +98,25 @@ public class AddressService implements IAddressService {
 
         // Lưu lại
         address = addressRepository.save(address);
+        // Tọa độ hoặc địa chỉ mặc định thay đổi thì chi nhánh gần nhất của giỏ hàng cũng đổi
+        if (wasDefault || address.getIsDefault()) {
+            cartService.synchronizeCartAddressAndBranch(address.getCustomer().getCustomerId());
+        }
         log.info("Address updated successfully: {}", addressId);
         return convertToDTO(address);
     }
 
     @Override
+    @Transactional
     public void deleteAddress(String addressId) {
         log.info("Deleting address: {}", addressId);
         Address address = addressRepository.findById(addressId)
                 .orElseThrow(() -> new RuntimeException("Address not found with id: " + addressId));
+        if (address.getIsDefault()) {
+            // Gỡ địa chỉ khỏi giỏ hàng trước khi xóa
+            address.setIsDefault(false);
+            cartService.synchronizeCartAddressAndBranch(address.getCustomer().getCustomerId());
+        }
         addressRepository.delete(address);
         log.info("Address deleted successfully: {}", addressId);
     }
@@ -125,6 +141,7 @@ public class AddressService implements IAddressService {
         // Đặt địa chỉ này là mặc định
         address.setIsDefault(true);
         address = addressRepository.save(address);
+        cartService.synchronizeCartAddressAndBranch(customerId);
         log.info("Set default address successfully: {}", addressId);
         return convertToDTO(address);
     }
@@ -0,0 +1,103 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.utils.BoundedCache;
+import com.example.be_phela.utils.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+
+// Giới hạn tần suất theo token bucket cho các API công khai, mỗi client (user hoặc IP) một bucket cho từng policy.
+// Số bucket có giới hạn (max-buckets): khi đầy, bucket lâu không dùng bị xóa trước
+@Slf4j
+@Service
+public class ApiRateLimitService {
+
+    public record Policy(String name, String pathPrefix, double tokensPerSecond, double burst, Counter rejected) {
+    }
+
+    private final boolean enabled;
+    private final long idleNanos;
+    private final List<Policy> policies;
+    private final BoundedCache<String, TokenBucket> buckets;
+
+    public ApiRateLimitService(@Value("${app.rate-limit.enabled:true}") boolean enabled,
+                               @Value("${app.rate-limit.idle-timeout:10m}") Duration idleTimeout,
+                               @Value("${app.rate-limit.max-buckets:100000}") int maxBuckets,
+                               Environment environment,
+                               MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.idleNanos = idleTimeout.toNanos();
+        this.buckets = new BoundedCache<>(maxBuckets, null);
+        this.policies = List.of(
+                policy(environment, meterRegistry, "chat-upload", "/api/chat/uploadImage", 0.2, 5),
+                policy(environment, meterRegistry, "product", "/api/product/", 20, 40),
+                policy(environment, meterRegistry, "branch", "/api/branch/", 10, 20),
+                policy(environment, meterRegistry, "news", "/api/news/", 10, 20),
+                policy(environment, meterRegistry, "locations", "/api/locations", 10, 20));
+
+        Gauge.builder("phela.ratelimit.buckets", buckets, BoundedCache::size)
+                .register(meterRegistry);
+        FunctionCounter.builder("phela.ratelimit.buckets.evicted", buckets, BoundedCache::evictionCount)
+                .register(meterRegistry);
+    }
+
+    // Policy áp dụng cho đường dẫn, null nếu không giới hạn
+    public Policy policyFor(String uri) {
+        if (!enabled) {
+            return null;
+        }
+        for (int i = 0, n = policies.size(); i < n; i++) {
+            Policy policy = policies.get(i);
+            if (uri.startsWith(policy.pathPrefix())) {
+                return policy;
+            }
+        }
+        return null;
+    }
+
+    // Trả về 0 nếu được phép, ngược lại số millis client cần chờ
+    public long tryAcquire(Policy policy, String clientKey) {
+        long now = System.nanoTime();
+        TokenBucket bucket = buckets.computeIfAbsent(policy.name() + '|' + clientKey,
+                k -> new TokenBucket(policy.burst(), policy.tokensPerSecond(), now));
+        long waitNanos = bucket.tryConsume(now);
+        if (waitNanos == 0) {
+            return 0L;
+        }
+        policy.rejected().increment();
+        return Math.max(1L, Duration.ofNanos(waitNanos).toMillis());
+    }
+
+    int bucketCount() {
+        return buckets.size();
+    }
+
+    // Bucket không dùng lâu đã nạp đầy, xóa đi tương đương với tạo lại khi cần
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdle() {
+        long now = System.nanoTime();
+        int evicted = buckets.removeIf((key, bucket) -> bucket.idleNanos(now) > idleNanos);
+        if (evicted > 0) {
+            log.debug("Evicted {} idle rate limit buckets", evicted);
+        }
+    }
+
+    private static Policy policy(Environment environment, MeterRegistry meterRegistry, String name, String pathPrefix,
+                                 double defaultPerSecond, double defaultBurst) {
+        double perSecond = environment.getProperty("app.rate-limit." + name + ".per-second", Double.class, defaultPerSecond);
+        double burst = environment.getProperty("app.rate-limit." + name + ".burst", Double.class, defaultBurst);
+        Counter rejected = Counter.builder("phela.ratelimit.rejected")
+                .tag("policy", name)
+                .register(meterRegistry);
+        return new Policy(name, pathPrefix, perSecond, Math.max(1.0, burst), rejected);
+    }
+}
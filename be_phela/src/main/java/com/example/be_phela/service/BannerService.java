@@ -22,21 +22,23 @@ public class BannerService {
     private final FileStorageService fileStorageService;
 
 
-    @Transactional
+    // Không mở transaction ở đây: upload chạy trước, save tự mở transaction ngắn của nó
     public BannerResponseDTO createBanner(MultipartFile file) throws IOException {
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("Banner image file is required");
         }
         
-        String imageUrl = fileStorageService.storeBannerImage(file);
-        if (imageUrl == null) {
+        FileStorageService.StoredImage image = fileStorageService.storeBannerImage(file);
+        if (image == null || image.url() == null) {
             throw new IOException("Failed to upload banner image");
         }
         
         LocalDateTime now = LocalDateTime.now();
 
         Banner banner = Banner.builder()
-                .imageUrl(imageUrl)
+                .imageUrl(image.url())
+                .imageThumbUrl(image.thumbUrl())
+                .imageMediumUrl(image.mediumUrl())
                 .status(BannerStatus.ACTIVE)
                 .createdAt(now)
                 .updatedAt(now)
@@ -88,6 +90,8 @@ public class BannerService {
         return BannerResponseDTO.builder()
                 .bannerId(banner.getBannerId())
                 .imageUrl(banner.getImageUrl())
+                .imageThumbUrl(banner.getImageThumbUrl() != null ? banner.getImageThumbUrl() : banner.getImageUrl())
+                .imageMediumUrl(banner.getImageMediumUrl() != null ? banner.getImageMediumUrl() : banner.getImageUrl())
                 .createdAt(banner.getCreatedAt())
                 .status(banner.getStatus())
                 .build();
@@ -1,6 +1,7 @@
 package com.example.be_phela.service;
 
 import com.example.be_phela.dto.request.BranchCreateDTO;
+import com.example.be_phela.dto.response.NearbyBranchDTO;
 import com.example.be_phela.exception.DuplicateResourceException;
 import com.example.be_phela.exception.ResourceNotFoundException;
 import com.example.be_phela.interService.IBranchService;
@@ -9,6 +10,7 @@ import com.example.be_phela.model.Address;
 import com.example.be_phela.model.Branch;
 import com.example.be_phela.model.enums.ProductStatus;
 import com.example.be_phela.repository.BranchRepository;
+import com.example.be_phela.utils.BranchSpatialIndex;
 import com.example.be_phela.utils.DistanceCalculator;
 import jakarta.transaction.Transactional;
 import lombok.AccessLevel;
@@ -18,11 +20,18 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.Comparator;
 import java.util.DuplicateFormatFlagsException;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -33,6 +42,10 @@ public class BranchService implements IBranchService {
     BranchRepository branchRepository;
     BranchMapper branchMapper;
 
+    // Chỉ mục không gian của các chi nhánh SHOW, dựng lại lười sau mỗi lần thay đổi chi nhánh
+    AtomicLong spatialIndexVersion = new AtomicLong();
+    AtomicReference<SpatialIndexHolder> spatialIndex = new AtomicReference<>();
+
     @Override
     public String generateBranchCode() {
         long count = branchRepository.count(); // Đếm số lượng danh mục hiện có
@@ -55,6 +68,7 @@ public class BranchService implements IBranchService {
             branch.setStatus(ProductStatus.SHOW);
         }
         Branch savedBranch = branchRepository.save(branch);
+        invalidateSpatialIndex();
         log.info("Branch created successfully with code: {}", savedBranch.getBranchCode());
         return savedBranch;
 
@@ -85,6 +99,7 @@ public class BranchService implements IBranchService {
         existingBranch.setAddress(updatedBranchDTO.getAddress());
         existingBranch.setStatus(updatedBranchDTO.getStatus() != null ? updatedBranchDTO.getStatus() : ProductStatus.SHOW);
         Branch savedBranch = branchRepository.save(existingBranch);
+        invalidateSpatialIndex();
         log.info("Branch updated successfully with code: {}", savedBranch.getBranchCode());
         return savedBranch;
     }
@@ -108,6 +123,7 @@ public class BranchService implements IBranchService {
         Branch branch = getBranchByCode(branchCode);
         branch.setStatus(branch.getStatus() == ProductStatus.SHOW ? ProductStatus.HIDE : ProductStatus.SHOW);
         Branch updatedBranch = branchRepository.save(branch);
+        invalidateSpatialIndex();
         log.info("Branch status updated to {} for code: {}", updatedBranch.getStatus(), branchCode);
         return updatedBranch;
     }
@@ -120,7 +136,7 @@ public class BranchService implements IBranchService {
     @Override
     public Optional<Branch> findNearestBranch(Address address, List<Branch> branches) {
         if (address.getLatitude() == null || address.getLongitude() == null) {
-            throw new IllegalStateException("Địa chỉ cần có tọa độ hợp lệ để tìm chi nhánh gần nhất");
+            return findBranchInSameArea(address, branches);
         }
 
         return branches.stream()
@@ -133,4 +149,95 @@ public class BranchService implements IBranchService {
                 ));
     }
 
+    // Chi nhánh SHOW gần địa chỉ nhất, tra qua chỉ mục không gian
+    @Override
+    public Optional<Branch> findNearestBranch(Address address) {
+        if (address.getLatitude() == null || address.getLongitude() == null) {
+            return findBranchInSameArea(address, branchRepository.findByStatus(ProductStatus.SHOW));
+        }
+        List<BranchSpatialIndex.Hit> hits = getSpatialIndex().nearest(address.getLatitude(), address.getLongitude(), 1);
+        if (hits.isEmpty()) {
+            return Optional.empty();
+        }
+        return branchRepository.findById(hits.get(0).branchCode());
+    }
+
+    // Địa chỉ chưa có tọa độ: ưu tiên chi nhánh cùng quận, sau đó cùng thành phố
+    private Optional<Branch> findBranchInSameArea(Address address, List<Branch> branches) {
+        log.warn("Address {} has no coordinates, matching branch by district/city", address.getAddressId());
+        Comparator<Branch> byCode = Comparator.comparing(Branch::getBranchCode, Comparator.nullsLast(Comparator.naturalOrder()));
+        Optional<Branch> sameDistrict = branches.stream()
+                .filter(branch -> sameName(branch.getCity(), address.getCity())
+                        && sameName(branch.getDistrict(), address.getDistrict()))
+                .min(byCode);
+        if (sameDistrict.isPresent()) {
+            return sameDistrict;
+        }
+        return branches.stream()
+                .filter(branch -> sameName(branch.getCity(), address.getCity()))
+                .min(byCode);
+    }
+
+    private static boolean sameName(String left, String right) {
+        return left != null && right != null && left.trim().equalsIgnoreCase(right.trim());
+    }
+
+    @Override
+    public List<NearbyBranchDTO> findNearestBranches(double latitude, double longitude, int limit) {
+        return toNearbyBranches(getSpatialIndex().nearest(latitude, longitude, limit));
+    }
+
+    @Override
+    public List<NearbyBranchDTO> findBranchesWithinRadius(double latitude, double longitude, double radiusKm) {
+        return toNearbyBranches(getSpatialIndex().withinRadius(latitude, longitude, radiusKm));
+    }
+
+    private List<NearbyBranchDTO> toNearbyBranches(List<BranchSpatialIndex.Hit> hits) {
+        if (hits.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Branch> branches = branchRepository.findAllById(
+                        hits.stream().map(BranchSpatialIndex.Hit::branchCode).toList()).stream()
+                .collect(Collectors.toMap(Branch::getBranchCode, Function.identity()));
+        return hits.stream()
+                .filter(hit -> branches.containsKey(hit.branchCode()))
+                .map(hit -> NearbyBranchDTO.builder()
+                        .branch(branchMapper.toBranchRepositoryDTO(branches.get(hit.branchCode())))
+                        .distanceKm(hit.distanceKm())
+                        .build())
+                .toList();
+    }
+
+    private BranchSpatialIndex getSpatialIndex() {
+        long version = spatialIndexVersion.get();
+        SpatialIndexHolder holder = spatialIndex.get();
+        if (holder != null && holder.version() == version) {
+            return holder.index();
+        }
+        List<BranchSpatialIndex.Point> points = branchRepository.findByStatus(ProductStatus.SHOW).stream()
+                .filter(branch -> branch.getLatitude() != null && branch.getLongitude() != null)
+                .map(branch -> new BranchSpatialIndex.Point(branch.getBranchCode(), branch.getLatitude(), branch.getLongitude()))
+                .toList();
+        BranchSpatialIndex index = BranchSpatialIndex.build(points);
+        // Nếu có thay đổi trong lúc dựng, version đã tăng và lần gọi sau sẽ dựng lại
+        spatialIndex.set(new SpatialIndexHolder(version, index));
+        log.debug("Branch spatial index rebuilt with {} branches", index.size());
+        return index;
+    }
+
+    // Đánh dấu chỉ mục cũ ngay và một lần nữa sau khi transaction commit
+    private void invalidateSpatialIndex() {
+        spatialIndexVersion.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    spatialIndexVersion.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    private record SpatialIndexHolder(long version, BranchSpatialIndex index) {
+    }
 }
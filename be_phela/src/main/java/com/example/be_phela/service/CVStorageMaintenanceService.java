@@ -0,0 +1,191 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.dto.response.CVStorageMaintenanceDTO;
+import com.example.be_phela.repository.ApplicationRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Chuyển CV từ thư mục phẳng cũ (UUID.pdf) sang kho lưu theo nội dung và dọn các file không còn tham chiếu
+@Slf4j
+@Service
+@Lazy(false)
+@RequiredArgsConstructor
+public class CVStorageMaintenanceService {
+
+    private final CVStorageService cvStorageService;
+    private final ApplicationRepository applicationRepository;
+    // Cập nhật cvUrl từng file trong transaction riêng để một file lỗi không làm hỏng cả lần chạy
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Băm từng file ở thư mục gốc, đưa vào vị trí theo hash (hard link, không copy nếu được),
+     * cập nhật cvUrl của các Application rồi mới xóa file cũ. Chạy lại nhiều lần vẫn an toàn:
+     * file đã chuyển không còn ở thư mục gốc, file chuyển dở sẽ được xử lý lại.
+     */
+    public synchronized CVStorageMaintenanceDTO migrateFlatDirectory() {
+        long start = System.nanoTime();
+        int scanned = 0;
+        int migrated = 0;
+        int deduplicated = 0;
+        int referencesUpdated = 0;
+        int unreferenced = 0;
+        int failed = 0;
+        long bytesReclaimed = 0;
+
+        Path root = cvStorageService.getStorageLocation();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, Files::isRegularFile)) {
+            for (Path file : files) {
+                scanned++;
+                String oldUrl = cvStorageService.toCvUrl(file);
+                try {
+                    long size = Files.size(file);
+                    String hash = cvStorageService.hashFile(file);
+                    String extension = extensionOf(file);
+                    boolean existed = cvStorageService.placeContent(file, hash, extension, false);
+                    String newUrl = cvStorageService.contentUrl(hash, extension);
+
+                    Integer updated = transactionTemplate.execute(status -> applicationRepository.updateCvUrl(oldUrl, newUrl));
+                    int count = updated != null ? updated : 0;
+                    referencesUpdated += count;
+                    if (count == 0) {
+                        unreferenced++;
+                    }
+
+                    Files.delete(file);
+                    cvStorageService.invalidateMetadata(oldUrl);
+                    migrated++;
+                    if (existed) {
+                        deduplicated++;
+                        bytesReclaimed += size;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failed++;
+                    log.warn("Migrating CV file {} failed", file, e);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Không thể đọc thư mục CV: " + root, e);
+        }
+
+        CVStorageMaintenanceDTO result = CVStorageMaintenanceDTO.builder()
+                .operation("migrate")
+                .scanned(scanned)
+                .migrated(migrated)
+                .deduplicated(deduplicated)
+                .referencesUpdated(referencesUpdated)
+                .unreferenced(unreferenced)
+                .failed(failed)
+                .bytesReclaimed(bytesReclaimed)
+                .durationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                .build();
+        log.info("CV storage migration finished: {}", result);
+        return result;
+    }
+
+    /**
+     * Xóa file trong kho không còn Application nào tham chiếu và đã cũ hơn thời gian chờ,
+     * cùng các file tạm bị bỏ lại khi upload lỗi. File ở thư mục gốc (chưa migrate) không bị đụng tới.
+     */
+    public synchronized CVStorageMaintenanceDTO collectGarbage() {
+        long start = System.nanoTime();
+        long cutoff = System.currentTimeMillis() - cvStorageService.getOrphanGracePeriod().toMillis();
+        Set<String> referenced = new HashSet<>(applicationRepository.findDistinctCvUrls());
+        Path root = cvStorageService.getStorageLocation();
+        Path staging = cvStorageService.getStagingLocation();
+
+        int scanned = 0;
+        int unreferenced = 0;
+        int deleted = 0;
+        int failed = 0;
+        long bytesReclaimed = 0;
+
+        // Thư mục shard có dạng ab/cd/<hash>.<ext>, file nằm ở độ sâu 3
+        try (Stream<Path> paths = Files.find(root, 3,
+                (path, attributes) -> attributes.isRegularFile() && path.getNameCount() - root.getNameCount() == 3)) {
+            for (Path file : (Iterable<Path>) paths::iterator) {
+                if (file.startsWith(staging)) {
+                    continue;
+                }
+                scanned++;
+                if (referenced.contains(cvStorageService.toCvUrl(file))) {
+                    continue;
+                }
+                unreferenced++;
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() > cutoff) {
+                        continue;
+                    }
+                    long size = Files.size(file);
+                    if (cvStorageService.deleteCVFile(cvStorageService.toCvUrl(file))) {
+                        deleted++;
+                        bytesReclaimed += size;
+                    }
+                } catch (IOException e) {
+                    failed++;
+                    log.warn("Could not delete orphaned CV file {}", file, e);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Không thể đọc thư mục CV: " + root, e);
+        }
+
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(staging)) {
+            for (Path temp : temps) {
+                try {
+                    if (Files.getLastModifiedTime(temp).toMillis() <= cutoff) {
+                        bytesReclaimed += Files.size(temp);
+                        Files.deleteIfExists(temp);
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    failed++;
+                    log.warn("Could not delete stale CV staging file {}", temp, e);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not list CV staging directory {}", staging, e);
+        }
+
+        CVStorageMaintenanceDTO result = CVStorageMaintenanceDTO.builder()
+                .operation("gc")
+                .scanned(scanned)
+                .unreferenced(unreferenced)
+                .deleted(deleted)
+                .failed(failed)
+                .bytesReclaimed(bytesReclaimed)
+                .durationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                .build();
+        log.info("CV storage garbage collection finished: {}", result);
+        return result;
+    }
+
+    @Scheduled(cron = "${app.cv.gc-cron:0 15 4 * * *}")
+    public void scheduledGarbageCollection() {
+        try {
+            collectGarbage();
+        } catch (Exception e) {
+            log.error("Scheduled CV garbage collection failed", e);
+        }
+    }
+
+    private static String extensionOf(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot).toLowerCase(Locale.ROOT) : "";
+    }
+}
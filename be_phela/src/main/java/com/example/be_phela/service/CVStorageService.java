@@ -1,23 +1,63 @@
 package com.example.be_phela.service;
 
+import com.example.be_phela.repository.ApplicationRepository;
+import com.example.be_phela.utils.BoundedCache;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.UUID;
+import java.util.regex.Pattern;
 
+// CV được lưu theo nội dung: tên file là SHA-256 của bytes, chia vào thư mục con ab/cd/ theo 4 ký tự đầu.
+// Cùng một file nộp nhiều lần chỉ lưu một bản; số tham chiếu là số Application có cùng cvUrl.
+@Slf4j
 @Service
 public class CVStorageService {
 
+    static final String CV_URL_PREFIX = "/uploads/cv/";
+    static final String STAGING_DIR_NAME = ".staging";
+    private static final Pattern CONTENT_FILE_NAME = Pattern.compile("[0-9a-f]{64}\\.[a-z]+");
+
+    // Kết quả lưu nội dung: cvUrl mới và có trùng với file đã có hay không
+    public record StoredContent(String cvUrl, String sha256, long size, boolean deduplicated) {
+    }
+
+    // Thông tin file CV đã stat, dùng cho /info và để trả ETag/Last-Modified khi tải file
+    public record CVFileMetadata(String fileName, Path path, boolean exists, long size, long lastModifiedMillis,
+                                 String contentType, String etag) {
+    }
+
     // Thư mục lưu trữ CV files
     private final Path cvStorageLocation;
+    // File tạm khi đang ghi, cùng filesystem để có thể đổi tên nguyên tử
+    private final Path stagingLocation;
+
+    // File CV không bị sửa sau khi lưu (tên file là duy nhất) nên cache metadata an toàn; TTL chỉ để
+    // nhận ra file bị xóa/thay thế từ bên ngoài
+    private final BoundedCache<String, CVFileMetadata> metadataCache;
+
+    private final ApplicationRepository applicationRepository;
+    // File không còn tham chiếu chỉ bị xóa khi đã cũ hơn khoảng này, vì một upload trùng nội dung
+    // có thể vừa dùng lại file nhưng Application chưa được commit
+    private final Duration orphanGracePeriod;
 
     // Danh sách các định dạng file CV được chấp nhận
     private static final List<String> ALLOWED_CV_TYPES = Arrays.asList(
@@ -29,10 +69,19 @@ public class CVStorageService {
     // Kích thước file tối đa (5MB)
     private static final long MAX_FILE_SIZE = 5 * 1024 * 1024;
 
-    public CVStorageService(@Value("${app.cv.upload-dir:uploads/cv}") String uploadDir) {
+    public CVStorageService(@Value("${app.cv.upload-dir:uploads/cv}") String uploadDir,
+                            @Value("${app.cv.metadata-cache.max-entries:1000}") int metadataCacheSize,
+                            @Value("${app.cv.metadata-cache.ttl:5m}") Duration metadataCacheTtl,
+                            @Value("${app.cv.orphan-grace-period:1h}") Duration orphanGracePeriod,
+                            ApplicationRepository applicationRepository) {
         this.cvStorageLocation = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.stagingLocation = this.cvStorageLocation.resolve(STAGING_DIR_NAME);
+        this.metadataCache = new BoundedCache<>(metadataCacheSize, metadataCacheTtl);
+        this.applicationRepository = applicationRepository;
+        this.orphanGracePeriod = orphanGracePeriod;
         try {
             Files.createDirectories(this.cvStorageLocation);
+            Files.createDirectories(this.stagingLocation);
         } catch (Exception ex) {
             throw new RuntimeException("Không thể tạo thư mục lưu trữ CV: " + uploadDir, ex);
         }
@@ -45,28 +94,115 @@ public class CVStorageService {
         // Validate file
         validateCVFile(file);
 
-        try {
-            // Tạo tên file độc nhất
-            String originalFileName = file.getOriginalFilename();
-            String fileExtension = getFileExtension(originalFileName);
-            String fileName = "CV_" + UUID.randomUUID().toString() + "_" +
-                    System.currentTimeMillis() + fileExtension;
-
-            // Kiểm tra tên file an toàn
-            if (fileName.contains("..")) {
-                throw new RuntimeException("Tên file không hợp lệ: " + fileName);
+        String extension = getFileExtension(file.getOriginalFilename()).toLowerCase();
+        try (InputStream in = file.getInputStream()) {
+            StoredContent stored = storeContent(in, extension);
+            if (stored.deduplicated()) {
+                log.info("CV upload matched existing content {}", stored.cvUrl());
             }
+            return stored.cvUrl();
+        } catch (IOException ex) {
+            throw new RuntimeException("Không thể lưu file CV: " + file.getOriginalFilename(), ex);
+        }
+    }
 
-            // Lưu file
-            Path targetLocation = this.cvStorageLocation.resolve(fileName);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * Ghi stream vào file tạm và tính SHA-256 ngay trong lúc ghi, sau đó chuyển vào vị trí theo hash.
+     * Nếu đã có file cùng nội dung thì bỏ file tạm và dùng lại file cũ.
+     */
+    public StoredContent storeContent(InputStream in, String extension) throws IOException {
+        Path temp = Files.createTempFile(stagingLocation, "cv-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (DigestInputStream digestIn = new DigestInputStream(in, digest);
+                 OutputStream out = Files.newOutputStream(temp)) {
+                size = digestIn.transferTo(out);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            boolean deduplicated = placeContent(temp, hash, extension, true);
+            return new StoredContent(contentUrl(hash, extension), hash, size, deduplicated);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
 
-            // Trả về đường dẫn relative
-            return "/uploads/cv/" + fileName;
+    /**
+     * Đưa file nguồn vào vị trí theo hash. move=true thì đổi tên (file tạm), ngược lại tạo hard link
+     * (hoặc copy nếu filesystem không hỗ trợ) để file nguồn vẫn còn nguyên. Trả về true nếu nội dung đã có sẵn.
+     */
+    boolean placeContent(Path source, String hash, String extension, boolean move) throws IOException {
+        Path target = contentPath(hash, extension);
+        String cvUrl = contentUrl(hash, extension);
+        metadataCache.invalidate(cvUrl);
+        if (Files.exists(target)) {
+            // Cập nhật thời gian để dọn dẹp không xóa file vừa được dùng lại
+            Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            if (move) {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                try {
+                    Files.createLink(target, source);
+                } catch (UnsupportedOperationException | IOException e) {
+                    if (e instanceof FileAlreadyExistsException) {
+                        throw e;
+                    }
+                    Path temp = Files.createTempFile(stagingLocation, "cv-", ".tmp");
+                    Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            return false;
+        } catch (FileAlreadyExistsException e) {
+            // Một upload khác cùng nội dung vừa ghi xong
+            return true;
+        }
+    }
 
-        } catch (IOException ex) {
-            throw new RuntimeException("Không thể lưu file CV: " + file.getOriginalFilename(), ex);
+    /**
+     * Tính SHA-256 của file đã có trên đĩa
+     */
+    String hashFile(Path path) throws IOException {
+        MessageDigest digest = sha256();
+        try (DigestInputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
         }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    String contentUrl(String hash, String extension) {
+        return CV_URL_PREFIX + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + extension;
+    }
+
+    Path contentPath(String hash, String extension) {
+        return cvStorageLocation.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash + extension);
+    }
+
+    Path getStorageLocation() {
+        return cvStorageLocation;
+    }
+
+    Path getStagingLocation() {
+        return stagingLocation;
+    }
+
+    Duration getOrphanGracePeriod() {
+        return orphanGracePeriod;
+    }
+
+    String toCvUrl(Path path) {
+        return CV_URL_PREFIX + cvStorageLocation.relativize(path).toString().replace('\\', '/');
+    }
+
+    /**
+     * Số Application đang dùng file CV này
+     */
+    public long referenceCount(String cvUrl) {
+        return applicationRepository.countByCvUrl(cvUrl);
     }
 
     /**
@@ -113,19 +249,27 @@ public class CVStorageService {
     }
 
     /**
-     * Xóa file CV (nếu cần)
+     * Xóa file CV nếu không còn Application nào tham chiếu và file đã qua thời gian chờ.
+     * Gọi sau khi transaction xóa Application đã commit; file bị bỏ qua ở đây sẽ được job dọn dẹp xử lý.
      */
     public boolean deleteCVFile(String filePath) {
         try {
-            if (filePath != null && filePath.startsWith("/uploads/cv/")) {
-                String fileName = filePath.substring("/uploads/cv/".length());
-                Path path = this.cvStorageLocation.resolve(fileName);
-                return Files.deleteIfExists(path);
+            Path path = resolve(filePath);
+            if (path == null || referenceCount(filePath) > 0) {
+                return false;
             }
-            return false;
+            long age = System.currentTimeMillis() - Files.getLastModifiedTime(path).toMillis();
+            if (age < orphanGracePeriod.toMillis()) {
+                return false;
+            }
+            return Files.deleteIfExists(path);
         } catch (IOException e) {
-            System.err.println("Lỗi khi xóa file CV: " + e.getMessage());
+            log.warn("Lỗi khi xóa file CV {}: {}", filePath, e.getMessage());
             return false;
+        } finally {
+            if (filePath != null) {
+                metadataCache.invalidate(filePath);
+            }
         }
     }
 
@@ -133,31 +277,86 @@ public class CVStorageService {
      * Kiểm tra file có tồn tại không
      */
     public boolean fileExists(String filePath) {
-        try {
-            if (filePath != null && filePath.startsWith("/uploads/cv/")) {
-                String fileName = filePath.substring("/uploads/cv/".length());
-                Path path = this.cvStorageLocation.resolve(fileName);
-                return Files.exists(path);
-            }
-            return false;
-        } catch (Exception e) {
-            return false;
-        }
+        CVFileMetadata metadata = getMetadata(filePath);
+        return metadata != null && metadata.exists();
     }
 
     /**
      * Lấy kích thước file
      */
     public long getFileSize(String filePath) {
+        CVFileMetadata metadata = getMetadata(filePath);
+        return metadata != null ? metadata.size() : 0;
+    }
+
+    /**
+     * Metadata của file CV (lấy từ cache, chỉ stat filesystem khi chưa có); null nếu đường dẫn không hợp lệ
+     */
+    public CVFileMetadata getMetadata(String filePath) {
+        if (resolve(filePath) == null) {
+            return null;
+        }
+        return metadataCache.get(filePath, this::loadMetadata);
+    }
+
+    /**
+     * Bỏ metadata đã cache, ví dụ khi phát hiện file đã bị xóa lúc đang gửi
+     */
+    public void invalidateMetadata(String filePath) {
+        if (filePath != null) {
+            metadataCache.invalidate(filePath);
+        }
+    }
+
+    private CVFileMetadata loadMetadata(String filePath) {
+        Path path = resolve(filePath);
+        String fileName = path.getFileName().toString();
+        String contentType = getContentType(fileName);
         try {
-            if (filePath != null && filePath.startsWith("/uploads/cv/")) {
-                String fileName = filePath.substring("/uploads/cv/".length());
-                Path path = this.cvStorageLocation.resolve(fileName);
-                return Files.size(path);
-            }
-            return 0;
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long size = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            // File lưu theo nội dung thì hash chính là ETag, không đổi khi thời gian sửa được cập nhật
+            String etag = CONTENT_FILE_NAME.matcher(fileName).matches()
+                    ? "\"" + fileName.substring(0, 64) + "\""
+                    : "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+            return new CVFileMetadata(fileName, path, attributes.isRegularFile(), size, lastModified, contentType, etag);
         } catch (IOException e) {
-            return 0;
+            return new CVFileMetadata(fileName, path, false, 0, 0, contentType, null);
+        }
+    }
+
+    // Đường dẫn thật của file trong thư mục CV; null nếu URL không hợp lệ hoặc trỏ ra ngoài thư mục
+    private Path resolve(String filePath) {
+        if (filePath == null || !filePath.startsWith(CV_URL_PREFIX)) {
+            return null;
+        }
+        String fileName = filePath.substring(CV_URL_PREFIX.length());
+        if (fileName.isEmpty()) {
+            return null;
+        }
+        Path path = this.cvStorageLocation.resolve(fileName).normalize();
+        return path.startsWith(this.cvStorageLocation) ? path : null;
+    }
+
+    /**
+     * Xác định content type từ extension
+     */
+    private String getContentType(String fileName) {
+        String extension = fileName.substring(fileName.lastIndexOf(".") + 1).toLowerCase();
+        return switch (extension) {
+            case "pdf" -> "application/pdf";
+            case "doc" -> "application/msword";
+            case "docx" -> "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+            default -> "application/octet-stream";
+        };
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,149 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.model.Address;
+import com.example.be_phela.model.Branch;
+import com.example.be_phela.model.Cart;
+import com.example.be_phela.model.CartItem;
+import com.example.be_phela.model.Promotion;
+import com.example.be_phela.model.PromotionCart;
+import com.example.be_phela.model.enums.DiscountType;
+import com.example.be_phela.utils.DistanceCalculator;
+import com.example.be_phela.utils.PromotionIndex;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Tính giá giỏ hàng (tạm tính, phí ship, giảm giá) dùng chung cho xem giỏ hàng và tạo đơn
+@Component
+public class CartPricingEngine {
+
+    public static final double BASE_SHIPPING_FEE = 10000.0;
+    public static final double FEE_PER_KM = 2000.0;
+    public static final double FREE_SHIPPING_THRESHOLD = 500000.0;
+
+    public record AppliedPromotion(PromotionCart promotionCart, double discountAmount) {
+    }
+
+    // Khuyến mãi không đạt giá trị tối thiểu nằm trong rejectedPromotions
+    public record CartPricing(double subtotal,
+                              int itemCount,
+                              double distance,
+                              double shippingFee,
+                              double discount,
+                              double finalAmount,
+                              List<AppliedPromotion> appliedPromotions,
+                              List<PromotionCart> rejectedPromotions) {
+    }
+
+    // Một lượt duyệt qua sản phẩm và một lượt qua khuyến mãi, không sửa entity
+    public CartPricing price(Cart cart) {
+        double subtotal = 0.0;
+        int itemCount = 0;
+        List<CartItem> items = cart.getCartItems();
+        if (items != null) {
+            for (int i = 0, n = items.size(); i < n; i++) {
+                CartItem item = items.get(i);
+                subtotal += item.getAmount();
+                itemCount += item.getQuantity();
+            }
+        }
+
+        boolean hasCoordinates = hasCoordinates(cart.getAddress(), cart.getBranch());
+        double distance = hasCoordinates ? distance(cart.getAddress(), cart.getBranch()) : 0.0;
+        double shippingFee = shippingFee(subtotal, hasCoordinates, distance);
+
+        List<PromotionCart> promotionCarts = cart.getPromotionCarts();
+        List<AppliedPromotion> applied = Collections.emptyList();
+        List<PromotionCart> rejected = Collections.emptyList();
+        double discount = 0.0;
+        if (promotionCarts != null && !promotionCarts.isEmpty()) {
+            applied = new ArrayList<>(promotionCarts.size());
+            for (int i = 0, n = promotionCarts.size(); i < n; i++) {
+                PromotionCart pc = promotionCarts.get(i);
+                Promotion promotion = pc.getPromotion();
+                if (!meetsMinimumOrder(promotion, subtotal)) {
+                    if (rejected.isEmpty()) {
+                        rejected = new ArrayList<>(2);
+                    }
+                    rejected.add(pc);
+                    continue;
+                }
+                double discountAmount = discountFor(promotion, subtotal);
+                discount += discountAmount;
+                applied.add(new AppliedPromotion(pc, discountAmount));
+            }
+        }
+
+        return new CartPricing(subtotal, itemCount, distance, shippingFee, discount,
+                subtotal + shippingFee - discount, applied, rejected);
+    }
+
+    public double subtotal(Cart cart) {
+        double subtotal = 0.0;
+        List<CartItem> items = cart.getCartItems();
+        if (items != null) {
+            for (int i = 0, n = items.size(); i < n; i++) {
+                subtotal += items.get(i).getAmount();
+            }
+        }
+        return subtotal;
+    }
+
+    public boolean meetsMinimumOrder(Promotion promotion, double subtotal) {
+        return meetsMinimumOrder(promotion.getMinimumOrderAmount(), subtotal);
+    }
+
+    public boolean meetsMinimumOrder(PromotionIndex.Entry promotion, double subtotal) {
+        return meetsMinimumOrder(promotion.minimumOrderAmount(), subtotal);
+    }
+
+    public double discountFor(Promotion promotion, double subtotal) {
+        return discountFor(promotion.getDiscountType(), promotion.getDiscountValue(), promotion.getMaxDiscountAmount(), subtotal);
+    }
+
+    public double discountFor(PromotionIndex.Entry promotion, double subtotal) {
+        return discountFor(promotion.discountType(), promotion.discountValue(), promotion.maxDiscountAmount(), subtotal);
+    }
+
+    private static boolean meetsMinimumOrder(Double minimumOrderAmount, double subtotal) {
+        return minimumOrderAmount == null || subtotal >= minimumOrderAmount;
+    }
+
+    private static double discountFor(DiscountType discountType, Double discountValue, Double maxDiscountAmount,
+                                      double subtotal) {
+        if (discountType == DiscountType.PERCENTAGE) { //
+            double discount = subtotal * (discountValue / 100);
+            if (maxDiscountAmount != null) {
+                return Math.min(discount, maxDiscountAmount);
+            }
+            return discount;
+        }
+        return discountValue; //
+    }
+
+    // Miễn phí ship khi đạt ngưỡng; thiếu tọa độ thì tính phí cơ bản
+    public double shippingFee(double subtotal, boolean hasCoordinates, double distance) {
+        if (subtotal >= FREE_SHIPPING_THRESHOLD) { //
+            return 0.0;
+        }
+        if (!hasCoordinates) {
+            return BASE_SHIPPING_FEE; //
+        }
+        return Math.floor(BASE_SHIPPING_FEE + (distance * FEE_PER_KM)); //
+    }
+
+    private static boolean hasCoordinates(Address address, Branch branch) {
+        return address != null && branch != null &&
+                address.getLatitude() != null && address.getLongitude() != null &&
+                branch.getLatitude() != null && branch.getLongitude() != null;
+    }
+
+    private static double distance(Address address, Branch branch) {
+        return DistanceCalculator.calculateDistance(
+                address.getLatitude(), address.getLongitude(),
+                branch.getLatitude(), branch.getLongitude()
+        );
+    }
+}
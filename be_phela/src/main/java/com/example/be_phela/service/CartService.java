@@ -1,5 +1,6 @@
 package com.example.be_phela.service;
 
+import com.example.be_phela.dto.request.CartBatchUpdateDTO;
 import com.example.be_phela.dto.request.CartItemDTO;
 import com.example.be_phela.dto.response.AddressDTO;
 import com.example.be_phela.dto.response.BranchResponseDTO;
@@ -7,10 +8,8 @@ import com.example.be_phela.dto.response.CartResponseDTO;
 import com.example.be_phela.dto.response.PromotionResponseDTO;
 import com.example.be_phela.interService.ICartService;
 import com.example.be_phela.model.*;
-import com.example.be_phela.model.enums.DiscountType;
-import com.example.be_phela.model.enums.PromotionStatus;
 import com.example.be_phela.repository.*; //
-import com.example.be_phela.utils.DistanceCalculator;
+import com.example.be_phela.utils.PromotionIndex;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
@@ -21,7 +20,10 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -30,10 +32,6 @@ import java.util.stream.Collectors;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class CartService implements ICartService {
 
-    private static final double BASE_SHIPPING_FEE = 10000.0;
-    private static final double FEE_PER_KM = 2000.0;
-    private static final double FREE_SHIPPING_THRESHOLD = 500000.0;
-
     CartRepository cartRepository;
     PromotionRepository promotionRepository;
     CustomerRepository customerRepository;
@@ -42,6 +40,9 @@ public class CartService implements ICartService {
     AddressRepository addressRepository;
     BranchRepository branchRepository;
     BranchService branchService;
+    CartPricingEngine pricingEngine;
+    PromotionRegistry promotionRegistry;
+    PromotionRedemptionService promotionRedemptionService;
 
     @Transactional
     public Cart createCartForCustomer(String customerId) {
@@ -59,7 +60,7 @@ public class CartService implements ICartService {
 
         Optional<Branch> nearestBranch = Optional.empty();
         if (defaultAddress != null) {
-            nearestBranch = branchService.findNearestBranch(defaultAddress, branchService.getAllBranches());
+            nearestBranch = branchService.findNearestBranch(defaultAddress);
         }
 
         Cart cart = Cart.builder()
@@ -73,10 +74,15 @@ public class CartService implements ICartService {
         return cartRepository.save(cart); //
     }
 
+    // Gọi khi địa chỉ mặc định của khách thay đổi để giỏ hàng luôn trỏ đúng địa chỉ/chi nhánh
     @Transactional
     public void synchronizeCartAddressAndBranch(String customerId) {
-        Cart cart = cartRepository.findByCustomer_CustomerId(customerId)
-                .orElseThrow(() -> new RuntimeException("Cart not found for customer: " + customerId));
+        Optional<Cart> existingCart = cartRepository.findByCustomer_CustomerId(customerId);
+        if (existingCart.isEmpty()) {
+            log.debug("No cart to synchronize for customer: {}", customerId);
+            return;
+        }
+        Cart cart = existingCart.get();
 
         Address defaultAddress = addressRepository.findByCustomer_CustomerIdAndIsDefaultTrue(customerId)
                 .orElse(null);
@@ -84,7 +90,7 @@ public class CartService implements ICartService {
         if (defaultAddress != null) {
             cart.setAddress(defaultAddress);
             try {
-                Optional<Branch> nearestBranch = branchService.findNearestBranch(defaultAddress, branchService.getAllBranches());
+                Optional<Branch> nearestBranch = branchService.findNearestBranch(defaultAddress);
                 cart.setBranch(nearestBranch.orElse(null));
             } catch (IllegalStateException e) {
                 log.warn("No valid branch found for address: {}", defaultAddress.getAddressId());
@@ -99,28 +105,13 @@ public class CartService implements ICartService {
         cartRepository.save(cart); //
     }
 
-    @Transactional
+    // Chỉ đọc: địa chỉ/chi nhánh được đồng bộ khi khách đổi địa chỉ mặc định, không ghi lại ở đây
+    @Transactional(readOnly = true)
     @Override
     public CartResponseDTO getCartByCustomerId(String customerId) {
         Cart cart = cartRepository.findByCustomer_CustomerId(customerId) //
                 .orElseThrow(() -> new RuntimeException("Cart not found for customer: " + customerId));
 
-        Address defaultAddress = addressRepository.findByCustomer_CustomerIdAndIsDefaultTrue(customerId)
-                .orElse(null);
-        if (defaultAddress != null && (cart.getAddress() == null || !cart.getAddress().getAddressId().equals(defaultAddress.getAddressId()))) {
-            cart.setAddress(defaultAddress);
-            Optional<Branch> nearestBranch = branchService.findNearestBranch(defaultAddress, branchService.getAllBranches());
-            if (nearestBranch.isEmpty()) {
-                throw new RuntimeException("No valid branch found for the address");
-            }
-            cart.setBranch(nearestBranch.get());
-            cartRepository.save(cart); //
-        } else if (defaultAddress == null && cart.getAddress() != null) {
-            cart.setAddress(null);
-            cart.setBranch(null);
-            cartRepository.save(cart); //
-        }
-
         return buildCartResponseDTO(cart);
     }
 
@@ -144,8 +135,18 @@ public class CartService implements ICartService {
         Product product = productRepository.findById(cartItemDTO.getProductId())
                 .orElseThrow(() -> new RuntimeException("Product not found with id: " + cartItemDTO.getProductId()));
 
+        CartItem cartItem = upsertCartItem(cart, product, cartItemDTO);
+
+        repriceCart(cart); // Re-evaluate promotions after cart total changes
+        log.info("Added/Updated item in cart: {}. Product: {}, Quantity: {}", cartId, cartItemDTO.getProductId(), cartItemDTO.getQuantity());
+        cartRepository.save(cart); //
+        return cartItem;
+    }
+
+    // Thêm/cập nhật/xóa một dòng sản phẩm trên entity giỏ hàng, chưa tính lại tổng
+    private CartItem upsertCartItem(Cart cart, Product product, CartItemDTO cartItemDTO) {
         Optional<CartItem> existingItem = cart.getCartItems().stream()
-                .filter(item -> item.getProduct().getProductId().equals(cartItemDTO.getProductId()))
+                .filter(item -> item.getProduct().getProductId().equals(product.getProductId()))
                 .findFirst();
 
         CartItem cartItem;
@@ -172,50 +173,92 @@ public class CartService implements ICartService {
                     .build();
             cart.getCartItems().add(cartItem);
         }
-
-        cart.setTotalAmount(calculateCartTotalFromItems(cart));
-        reapplyAllPromotions(cart); // Re-evaluate promotions after cart total changes
-        log.info("Added/Updated item in cart: {}. Product: {}, Quantity: {}", cartId, cartItemDTO.getProductId(), cartItemDTO.getQuantity());
-        cartRepository.save(cart); //
         return cartItem;
     }
 
+    // Áp dụng nhiều thay đổi trong một transaction: tải giỏ hàng/sản phẩm một lần, tính tổng và khuyến mãi một lần
     @Override
     @Transactional
-    public void removeCartItem(String cartId, String cartItemId) {
+    public CartResponseDTO applyCartBatch(String cartId, CartBatchUpdateDTO batch) {
         Cart cart = cartRepository.findById(cartId)
                 .orElseThrow(() -> new RuntimeException("Cart not found with id: " + cartId));
 
-        CartItem itemToRemove = cartItemRepository.findById(cartItemId)
-                .orElseThrow(() -> new RuntimeException("Cart item not found with id: " + cartItemId));
-
-        if (!itemToRemove.getCart().getCartId().equals(cartId)) {
-            throw new RuntimeException("Cart item does not belong to this cart");
+        List<CartItemDTO> items = batch.getItems() != null ? batch.getItems() : List.of();
+        List<String> removeCartItemIds = batch.getRemoveCartItemIds() != null ? batch.getRemoveCartItemIds() : List.of();
+
+        // Kiểm tra toàn bộ batch trước khi sửa giỏ hàng: một dòng lỗi thì không dòng nào được áp dụng
+        Map<String, Product> products = Map.of();
+        if (!items.isEmpty()) {
+            Set<String> productIds = items.stream()
+                    .map(CartItemDTO::getProductId)
+                    .collect(Collectors.toSet());
+            products = productRepository.findAllById(productIds).stream()
+                    .collect(Collectors.toMap(Product::getProductId, Function.identity()));
+        }
+        for (CartItemDTO item : items) {
+            if (!products.containsKey(item.getProductId())) {
+                throw new RuntimeException("Product not found with id: " + item.getProductId());
+            }
+            if (item.getQuantity() == null) {
+                throw new IllegalArgumentException("Quantity is required for product: " + item.getProductId());
+            }
+            if (item.getQuantity() <= 0 && cart.getCartItems().stream()
+                    .noneMatch(cartItem -> cartItem.getProduct().getProductId().equals(item.getProductId()))) {
+                throw new IllegalArgumentException("Cannot add an item with quantity 0 or less.");
+            }
+        }
+        for (String cartItemId : removeCartItemIds) {
+            if (cart.getCartItems().stream().noneMatch(cartItem -> cartItemId.equals(cartItem.getCartItemId()))) {
+                throw new RuntimeException("Cart item " + cartItemId + " does not belong to this cart");
+            }
         }
 
-        cart.getCartItems().remove(itemToRemove);
-        cart.setTotalAmount(calculateCartTotalFromItems(cart));
-        reapplyAllPromotions(cart); // Re-evaluate promotions after cart total changes
-        log.info("Removed item from cart: {}. Cart item: {}", cartId, cartItemId);
-        cartRepository.save(cart); //
-    }
+        for (CartItemDTO item : items) {
+            upsertCartItem(cart, products.get(item.getProductId()), item);
+        }
+        removeCartItemIds.forEach(cartItemId -> detachCartItem(cart, cartItemId));
 
-    private double calculateShippingFee(Cart cart, double distance) {
-        double totalAmount = calculateCartTotalFromItems(cart);
-        if (totalAmount >= FREE_SHIPPING_THRESHOLD) { //
-            return 0.0;
+        if (batch.getAddressId() != null) {
+            assignAddress(cart, batch.getAddressId());
+        }
+        if (batch.getBranchCode() != null) {
+            assignBranch(cart, batch.getBranchCode());
         }
 
-        Address address = cart.getAddress();
-        Branch branch = cart.getBranch();
+        repriceCart(cart);
 
-        if (address == null || branch == null ||
-                address.getLatitude() == null || address.getLongitude() == null ||
-                branch.getLatitude() == null || branch.getLongitude() == null) {
-            return BASE_SHIPPING_FEE; //
+        if (batch.getRemovePromotionIds() != null) {
+            batch.getRemovePromotionIds().forEach(promotionId -> detachPromotion(cart, promotionId));
         }
+        if (batch.getPromotionCode() != null && !batch.getPromotionCode().isBlank()) {
+            attachPromotion(cart, batch.getPromotionCode());
+        }
+
+        log.info("Applied batch to cart {}: {} item change(s), {} removal(s)", cartId, items.size(),
+                removeCartItemIds.size());
+        return buildCartResponseDTO(cartRepository.save(cart));
+    }
+
+    @Override
+    @Transactional
+    public void removeCartItem(String cartId, String cartItemId) {
+        Cart cart = cartRepository.findById(cartId)
+                .orElseThrow(() -> new RuntimeException("Cart not found with id: " + cartId));
+
+        detachCartItem(cart, cartItemId);
+        repriceCart(cart); // Re-evaluate promotions after cart total changes
+        log.info("Removed item from cart: {}. Cart item: {}", cartId, cartItemId);
+        cartRepository.save(cart); //
+    }
+
+    // Tìm trong danh sách đã tải của giỏ hàng, không truy vấn lại từng dòng
+    private void detachCartItem(Cart cart, String cartItemId) {
+        CartItem itemToRemove = cart.getCartItems().stream()
+                .filter(item -> cartItemId.equals(item.getCartItemId()))
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Cart item " + cartItemId + " does not belong to this cart"));
 
-        return Math.floor(BASE_SHIPPING_FEE + (distance * FEE_PER_KM)); //
+        cart.getCartItems().remove(itemToRemove);
     }
 
     @Override
@@ -223,44 +266,50 @@ public class CartService implements ICartService {
     public void applyPromotionToCart(String cartId, String promotionCode) {
         Cart cart = cartRepository.findById(cartId)
                 .orElseThrow(() -> new RuntimeException("Cart not found with id: " + cartId));
-        Promotion promotion = promotionRepository.findByPromotionCode(promotionCode)
-                .orElseThrow(() -> new RuntimeException("Promotion not found with code: " + promotionCode));
+        attachPromotion(cart, promotionCode);
+        cartRepository.save(cart); //
+    }
 
-        log.info("Applying promotion {} to cart {}", promotionCode, cartId);
+    private void attachPromotion(Cart cart, String promotionCode) {
+        log.info("Applying promotion {} to cart {}", promotionCode, cart.getCartId());
 
-        if (promotion.getStatus() != PromotionStatus.ACTIVE ||
-                LocalDateTime.now().isBefore(promotion.getStartDate()) ||
-                LocalDateTime.now().isAfter(promotion.getEndDate())) {
-            log.warn("Promotion {} is not valid. Status: {}, Start: {}, End: {}",
-                    promotionCode, promotion.getStatus(), promotion.getStartDate(), promotion.getEndDate());
+        // Kiểm tra trên PromotionRegistry (bộ nhớ), không đọc lại Promotion từ DB
+        PromotionIndex.Entry promotion = promotionRegistry.findEffective(promotionCode, LocalDateTime.now());
+        if (promotion == null) {
+            log.warn("Promotion {} is not active or not within its validity period", promotionCode);
             throw new RuntimeException("Khuyến mãi không có hiệu lực hoặc đã hết hạn");
         }
 
         if (cart.getPromotionCarts().stream()
-                .anyMatch(pc -> pc.getPromotion().getPromotionId().equals(promotion.getPromotionId()))) {
-            log.warn("Promotion {} already applied to cart {}", promotionCode, cartId);
+                .anyMatch(pc -> pc.getPromotion().getPromotionId().equals(promotion.promotionId()))) {
+            log.warn("Promotion {} already applied to cart {}", promotionCode, cart.getCartId());
             throw new RuntimeException("Khuyến mãi đã được áp dụng vào giỏ hàng");
         }
 
-        double cartTotal = calculateCartTotalFromItems(cart);
+        if (promotionRedemptionService.isExhausted(promotion, cart.getCustomer().getCustomerId())) {
+            log.warn("Promotion {} has no redemptions left for cart {}", promotionCode, cart.getCartId());
+            throw new RuntimeException("Khuyến mãi đã hết lượt sử dụng");
+        }
 
-        if (promotion.getMinimumOrderAmount() != null && cartTotal < promotion.getMinimumOrderAmount()) {
+        double cartTotal = pricingEngine.subtotal(cart);
+
+        if (!pricingEngine.meetsMinimumOrder(promotion, cartTotal)) {
             log.warn("Cart total {} does not meet minimum order {} for promotion {}",
-                    cartTotal, promotion.getMinimumOrderAmount(), promotionCode);
+                    cartTotal, promotion.minimumOrderAmount(), promotionCode);
             throw new RuntimeException("Tổng số tiền trong giỏ hàng không đáp ứng yêu cầu đặt hàng tối thiểu");
         }
 
-        double discount = calculateDiscountAmount(promotion, cartTotal);
+        double discount = pricingEngine.discountFor(promotion, cartTotal);
 
         PromotionCart promotionCart = PromotionCart.builder()
-                .promotion(promotion)
+                // Chỉ cần khóa ngoại, getReferenceById không chạy SELECT
+                .promotion(promotionRepository.getReferenceById(promotion.promotionId()))
                 .cart(cart)
                 .discountAmount(discount)
                 .build();
         cart.getPromotionCarts().add(promotionCart);
 
-        cartRepository.save(cart); //
-        log.info("Promotion {} applied to cart {} with discount {}", promotionCode, cartId, discount);
+        log.info("Promotion {} applied to cart {} with discount {}", promotionCode, cart.getCartId(), discount);
     }
 
     @Override
@@ -269,48 +318,31 @@ public class CartService implements ICartService {
         Cart cart = cartRepository.findById(cartId)
                 .orElseThrow(() -> new RuntimeException("Cart not found with id: " + cartId));
 
+        detachPromotion(cart, promotionId);
+        cartRepository.save(cart); //
+    }
+
+    private void detachPromotion(Cart cart, String promotionId) {
         PromotionCart itemToRemove = cart.getPromotionCarts().stream()
                 .filter(pc -> pc.getPromotion().getPromotionId().equals(promotionId))
                 .findFirst()
                 .orElseThrow(() -> new RuntimeException("Promotion with id " + promotionId + " not found in cart"));
 
         cart.getPromotionCarts().remove(itemToRemove);
-        cartRepository.save(cart); //
     }
 
-    private double calculateDiscountAmount(Promotion promotion, double cartTotal) {
-        if (promotion.getDiscountType() == DiscountType.PERCENTAGE) { //
-            double discount = cartTotal * (promotion.getDiscountValue() / 100);
-            if (promotion.getMaxDiscountAmount() != null) {
-                return Math.min(discount, promotion.getMaxDiscountAmount());
-            }
-            return discount;
-        }
-        return promotion.getDiscountValue(); //
-    }
-
-    // Helper method to re-evaluate all applied promotions
-    private void reapplyAllPromotions(Cart cart) {
-        double cartTotal = calculateCartTotalFromItems(cart);
-        List<PromotionCart> promotionsToRemove = new ArrayList<>();
-
-        for (PromotionCart pc : cart.getPromotionCarts()) {
-            Promotion promotion = pc.getPromotion();
-            // Check if promotion is still valid
-            if (promotion.getMinimumOrderAmount() != null && cartTotal < promotion.getMinimumOrderAmount()) {
-                promotionsToRemove.add(pc);
-            } else {
-                // Recalculate discount amount
-                pc.setDiscountAmount(calculateDiscountAmount(promotion, cartTotal));
-            }
+    // Cập nhật tổng tiền và giảm giá đã lưu của giỏ hàng; khuyến mãi không còn đủ điều kiện bị gỡ
+    private void repriceCart(Cart cart) {
+        CartPricingEngine.CartPricing pricing = pricingEngine.price(cart);
+        cart.setTotalAmount(pricing.subtotal());
+        for (CartPricingEngine.AppliedPromotion applied : pricing.appliedPromotions()) {
+            applied.promotionCart().setDiscountAmount(applied.discountAmount());
         }
-        cart.getPromotionCarts().removeAll(promotionsToRemove);
+        cart.getPromotionCarts().removeAll(pricing.rejectedPromotions());
     }
 
     public double calculateCartTotalFromItems(Cart cart) {
-        return cart.getCartItems().stream()
-                .mapToDouble(CartItem::getAmount)
-                .sum();
+        return pricingEngine.subtotal(cart);
     }
 
     @Transactional(readOnly = true)
@@ -324,27 +356,14 @@ public class CartService implements ICartService {
     }
 
     @Override
-    @Transactional
+    @Transactional(readOnly = true)
     public Double calculateShippingFee(String cartId) {
         Cart cart = cartRepository.findById(cartId)
                 .orElseThrow(() -> new RuntimeException("Cart not found with id: " + cartId));
-
-        double distance = 0.0;
-        Address address = cart.getAddress();
-        Branch branch = cart.getBranch();
-
-        if (address != null && branch != null &&
-                address.getLatitude() != null && address.getLongitude() != null &&
-                branch.getLatitude() != null && branch.getLongitude() != null) {
-            distance = DistanceCalculator.calculateDistance(
-                    address.getLatitude(), address.getLongitude(),
-                    branch.getLatitude(), branch.getLongitude()
-            );
-        }
-        return calculateShippingFee(cart, distance);
+        return pricingEngine.price(cart).shippingFee();
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     @Override
     public List<CartItemDTO> getCartItems(String cartId) {
         Cart cart = cartRepository.findById(cartId)
@@ -365,6 +384,12 @@ public class CartService implements ICartService {
     public void updateCartAddress(String cartId, String addressId) {
         Cart cart = cartRepository.findById(cartId)
                 .orElseThrow(() -> new RuntimeException("Cart not found with id: " + cartId));
+        assignAddress(cart, addressId);
+        log.info("Updated address {} for cart {}", addressId, cartId);
+        cartRepository.save(cart); //
+    }
+
+    private void assignAddress(Cart cart, String addressId) {
         Address address = addressRepository.findById(addressId)
                 .orElseThrow(() -> new RuntimeException("Address not found with id: " + addressId));
 
@@ -375,14 +400,11 @@ public class CartService implements ICartService {
         cart.setAddress(address);
 
         try {
-            Optional<Branch> nearestBranch = branchService.findNearestBranch(address, branchService.getAllBranches());
+            Optional<Branch> nearestBranch = branchService.findNearestBranch(address);
             cart.setBranch(nearestBranch.orElse(null));
         } catch (IllegalStateException e) {
             throw new RuntimeException("No valid branch found for the address", e);
         }
-
-        log.info("Updated address {} for cart {}", addressId, cartId);
-        cartRepository.save(cart); //
     }
 
     @Override
@@ -390,15 +412,19 @@ public class CartService implements ICartService {
     public void updateCartBranch(String cartId, String branchCode) {
         Cart cart = cartRepository.findById(cartId)
                 .orElseThrow(() -> new RuntimeException("Cart not found with id: " + cartId));
+        assignBranch(cart, branchCode);
+        log.info("Updated branch {} for cart {}", branchCode, cartId);
+        cartRepository.save(cart); //
+    }
+
+    private void assignBranch(Cart cart, String branchCode) {
         Branch branch = branchRepository.findById(branchCode)
                 .orElseThrow(() -> new RuntimeException("Branch not found with code: " + branchCode));
-
         cart.setBranch(branch);
-        log.info("Updated branch {} for cart {}", branchCode, cartId);
-        cartRepository.save(cart); //
     }
 
     @Override
+    @Transactional(readOnly = true)
     public CartResponseDTO getCartByCartId(String cartId) {
         Cart cart = cartRepository.findById(cartId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy giỏ hàng với ID: " + cartId));
@@ -406,28 +432,34 @@ public class CartService implements ICartService {
         return buildCartResponseDTO(cart);
     }
 
+    // Tính giá trong bộ nhớ, không sửa entity: tổng tiền và khuyến mãi chỉ được lưu khi giỏ hàng thay đổi
     private CartResponseDTO buildCartResponseDTO(Cart cart) {
-        double totalAmount = calculateCartTotalFromItems(cart);
-
-        reapplyAllPromotions(cart); //
-        cartRepository.save(cart); //
-
-        double distance = 0.0;
-        if (cart.getAddress() != null && cart.getBranch() != null &&
-                cart.getAddress().getLatitude() != null && cart.getAddress().getLongitude() != null &&
-                cart.getBranch().getLatitude() != null && cart.getBranch().getLongitude() != null) {
-            distance = DistanceCalculator.calculateDistance(
-                    cart.getAddress().getLatitude(), cart.getAddress().getLongitude(),
-                    cart.getBranch().getLatitude(), cart.getBranch().getLongitude()
-            );
+        CartPricingEngine.CartPricing pricing = pricingEngine.price(cart);
+        double totalAmount = pricing.subtotal();
+        double distance = pricing.distance();
+        double shippingFee = pricing.shippingFee(); //
+        double discount = pricing.discount();
+        double finalAmount = pricing.finalAmount();
+
+        List<PromotionResponseDTO> promotionDTOs = new ArrayList<>(pricing.appliedPromotions().size());
+        for (CartPricingEngine.AppliedPromotion applied : pricing.appliedPromotions()) {
+            Promotion promotion = applied.promotionCart().getPromotion();
+            promotionDTOs.add(PromotionResponseDTO.builder()
+                    .promotionId(promotion.getPromotionId())
+                    .promotionCode(promotion.getPromotionCode())
+                    .name(promotion.getName())
+                    .description(promotion.getDescription())
+                    .discountType(promotion.getDiscountType())
+                    .discountValue(promotion.getDiscountValue())
+                    .minimumOrderAmount(promotion.getMinimumOrderAmount())
+                    .maxDiscountAmount(promotion.getMaxDiscountAmount())
+                    .discountAmount(applied.discountAmount())
+                    .startDate(promotion.getStartDate())
+                    .endDate(promotion.getEndDate())
+                    .status(promotion.getStatus())
+                    .build());
         }
 
-        double shippingFee = calculateShippingFee(cart, distance); //
-        double discount = cart.getPromotionCarts().stream()
-                .mapToDouble(PromotionCart::getDiscountAmount)
-                .sum();
-        double finalAmount = totalAmount + shippingFee - discount;
-
         AddressDTO addressDTO = cart.getAddress() != null ? AddressDTO.builder()
                 .addressId(cart.getAddress().getAddressId())
                 .city(cart.getAddress().getCity())
@@ -473,22 +505,7 @@ public class CartService implements ICartService {
                                 .note(item.getNote())
                                 .build())
                         .collect(Collectors.toList()))
-                .promotionCarts(cart.getPromotionCarts().stream()
-                        .map(pc -> PromotionResponseDTO.builder()
-                                .promotionId(pc.getPromotion().getPromotionId())
-                                .promotionCode(pc.getPromotion().getPromotionCode())
-                                .name(pc.getPromotion().getName())
-                                .description(pc.getPromotion().getDescription())
-                                .discountType(pc.getPromotion().getDiscountType())
-                                .discountValue(pc.getPromotion().getDiscountValue())
-                                .minimumOrderAmount(pc.getPromotion().getMinimumOrderAmount())
-                                .maxDiscountAmount(pc.getPromotion().getMaxDiscountAmount())
-                                .discountAmount(pc.getDiscountAmount())
-                                .startDate(pc.getPromotion().getStartDate())
-                                .endDate(pc.getPromotion().getEndDate())
-                                .status(pc.getPromotion().getStatus())
-                                .build())
-                        .collect(Collectors.toList()))
+                .promotionCarts(promotionDTOs)
                 .distance(distance)
                 .totalAmount(totalAmount)
                 .shippingFee(shippingFee)
@@ -24,6 +24,8 @@ import java.util.stream.Collectors;
 public class CategoryService implements ICategoryService {
     final CategoryRepository categoryRepository;
     final CategoryMapper categoryMapper;
+    final ProductCatalogCache productCatalogCache;
+
     @Override
     public String generateCategoryCode() {
         long count = categoryRepository.count();
@@ -37,23 +39,29 @@ public class CategoryService implements ICategoryService {
         category.setCategoryName(categoryDTO.getCategoryName());
         category.setDescription(categoryDTO.getDescription());
         Category savedCategory = categoryRepository.save(category);
+        productCatalogCache.invalidateCategories();
         return categoryMapper.toCategoryResponseDTO(savedCategory);
     }
 
     @Override
     public Page<CategoryResponseDTO> getAllCategories(Pageable pageable) {
-        Page<Category> categoryPage = categoryRepository.findAll(pageable);
-        List<CategoryResponseDTO> categoryDTOs = categoryPage.getContent().stream()
-                .map(categoryMapper::toCategoryResponseDTO)
-                .collect(Collectors.toList());
-        return new PageImpl<>(categoryDTOs, pageable, categoryPage.getTotalElements());
+        String cacheKey = pageable.getPageNumber() + ":" + pageable.getPageSize() + ":" + pageable.getSort();
+        return productCatalogCache.categoryPage(cacheKey, key -> {
+            Page<Category> categoryPage = categoryRepository.findAll(pageable);
+            List<CategoryResponseDTO> categoryDTOs = categoryPage.getContent().stream()
+                    .map(categoryMapper::toCategoryResponseDTO)
+                    .collect(Collectors.toList());
+            return new PageImpl<>(categoryDTOs, pageable, categoryPage.getTotalElements());
+        });
     }
 
     @Override
     public CategoryResponseDTO getCategoryByCode(String categoryCode) {
-        Category category = categoryRepository.findByCategoryCode(categoryCode)
-                .orElseThrow(() -> new RuntimeException("Category not found with code: " + categoryCode));
-        return categoryMapper.toCategoryResponseDTO(category);
+        return productCatalogCache.category(categoryCode, key -> {
+            Category category = categoryRepository.findByCategoryCode(categoryCode)
+                    .orElseThrow(() -> new RuntimeException("Category not found with code: " + categoryCode));
+            return categoryMapper.toCategoryResponseDTO(category);
+        });
     }
 
     @Override
@@ -63,6 +71,7 @@ public class CategoryService implements ICategoryService {
         existingCategory.setCategoryName(categoryDTO.getCategoryName());
         existingCategory.setDescription(categoryDTO.getDescription());
         Category updatedCategory = categoryRepository.save(existingCategory);
+        productCatalogCache.invalidateCategories();
         return categoryMapper.toCategoryResponseDTO(updatedCategory);
     }
 
@@ -71,6 +80,8 @@ public class CategoryService implements ICategoryService {
         Category category = categoryRepository.findByCategoryCode(categoryCode)
                 .orElseThrow(() -> new RuntimeException("Category not found with code: " + categoryCode));
         categoryRepository.delete(category);
+        // Xóa danh mục sẽ xóa luôn sản phẩm (cascade) nên phải xóa cả cache sản phẩm
+        productCatalogCache.invalidateAll();
     }
 
     @Override
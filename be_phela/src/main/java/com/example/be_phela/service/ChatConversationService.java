@@ -0,0 +1,212 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.dto.response.ChatHistoryDTO;
+import com.example.be_phela.dto.response.ConversationDTO;
+import com.example.be_phela.model.ChatMessage;
+import com.example.be_phela.repository.ChatConversationRepository;
+import com.example.be_phela.repository.ChatMessageRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Lịch sử chat phân trang theo con trỏ và bảng tóm tắt hội thoại (chat_conversation).
+// Tin nhắn và tóm tắt được ghi trong cùng một transaction cho mỗi lô của ChatMessageWriter.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ChatConversationService {
+
+    private static final String ADMIN_ID = "ADMIN";
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
+    private static final String INSERT_MESSAGE_SQL = "INSERT IGNORE INTO chat_message " +
+            "(id, content, sender_id, recipient_id, conversation_id, sender_name, timestamp, image_url) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    // Tin nhắn cuối chỉ bị thay khi tin mới hơn; last_message_at được gán sau cùng vì MySQL gán lần lượt từ trái sang phải
+    private static final String UPSERT_CONVERSATION_SQL = "INSERT INTO chat_conversation " +
+            "(conversation_id, last_message, last_message_at, last_sender_id, unread_by_admin, unread_by_customer) " +
+            "VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "last_message = IF(VALUES(last_message_at) >= last_message_at, VALUES(last_message), last_message), " +
+            "last_sender_id = IF(VALUES(last_message_at) >= last_message_at, VALUES(last_sender_id), last_sender_id), " +
+            "last_message_at = GREATEST(last_message_at, VALUES(last_message_at)), " +
+            "unread_by_admin = unread_by_admin + VALUES(unread_by_admin), " +
+            "unread_by_customer = unread_by_customer + VALUES(unread_by_customer)";
+
+    ChatMessageRepository chatMessageRepository;
+    ChatConversationRepository chatConversationRepository;
+    JdbcTemplate jdbcTemplate;
+    TransactionTemplate transactionTemplate;
+
+    public static String conversationOf(ChatMessage message) {
+        return ADMIN_ID.equals(message.getSenderId()) ? message.getRecipientId() : message.getSenderId();
+    }
+
+    // Ghi một lô tin nhắn và cập nhật tóm tắt: mỗi hội thoại một câu upsert cho cả lô.
+    // Tin nhắn đã có trong DB (ghi lại từ journal) bị bỏ qua để không cộng trùng số chưa đọc.
+    @Transactional
+    public void storeBatch(List<ChatMessage> batch) {
+        Set<String> existing = new HashSet<>(chatMessageRepository.findExistingIds(
+                batch.stream().map(ChatMessage::getId).toList()));
+        List<ChatMessage> fresh = new ArrayList<>(batch.size());
+        for (ChatMessage message : batch) {
+            if (existing.add(message.getId())) {
+                if (message.getConversationId() == null) {
+                    message.setConversationId(conversationOf(message));
+                }
+                if (message.getTimestamp() == null) {
+                    message.setTimestamp(LocalDateTime.now());
+                }
+                fresh.add(message);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL, fresh, fresh.size(), (ps, message) -> {
+            ps.setString(1, message.getId());
+            ps.setString(2, message.getContent());
+            ps.setString(3, message.getSenderId());
+            ps.setString(4, message.getRecipientId());
+            ps.setString(5, message.getConversationId());
+            ps.setString(6, message.getSenderName());
+            ps.setTimestamp(7, Timestamp.valueOf(message.getTimestamp()));
+            ps.setString(8, message.getImageUrl());
+        });
+
+        // Sắp theo id hội thoại để các lô luôn khóa dòng theo cùng thứ tự
+        Map<String, ConversationUpdate> updates = new TreeMap<>();
+        for (ChatMessage message : fresh) {
+            updates.computeIfAbsent(message.getConversationId(), id -> new ConversationUpdate()).add(message);
+        }
+        List<Map.Entry<String, ConversationUpdate>> rows = new ArrayList<>(updates.entrySet());
+        jdbcTemplate.batchUpdate(UPSERT_CONVERSATION_SQL, rows, rows.size(), (ps, row) -> {
+            ConversationUpdate update = row.getValue();
+            ps.setString(1, row.getKey());
+            ps.setString(2, update.last.getContent());
+            ps.setTimestamp(3, Timestamp.valueOf(update.lastAt()));
+            ps.setString(4, update.last.getSenderId());
+            ps.setInt(5, update.unreadByAdmin);
+            ps.setInt(6, update.unreadByCustomer);
+        });
+    }
+
+    // Trang lịch sử chat (cũ -> mới) kết thúc ngay trước con trỏ; không có con trỏ thì là trang mới nhất
+    @Transactional(readOnly = true)
+    public ChatHistoryDTO getHistory(String customerId, String cursor, int size) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_HISTORY_PAGE_SIZE);
+        HistoryCursor position = cursor == null || cursor.isBlank() ? HistoryCursor.LATEST : HistoryCursor.decode(cursor);
+        List<ChatMessage> newestFirst = chatMessageRepository.findHistoryBefore(
+                customerId, position.timestamp(), position.id(), Limit.of(pageSize + 1));
+
+        boolean hasMore = newestFirst.size() > pageSize;
+        List<ChatMessage> page = new ArrayList<>(hasMore ? newestFirst.subList(0, pageSize) : newestFirst);
+        String nextCursor = null;
+        if (hasMore) {
+            ChatMessage oldest = page.get(page.size() - 1);
+            nextCursor = new HistoryCursor(oldest.getTimestamp(), oldest.getId()).encode();
+        }
+        Collections.reverse(page);
+
+        return ChatHistoryDTO.builder()
+                .messages(page)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    @Transactional(readOnly = true)
+    public List<ConversationDTO> getConversations() {
+        return chatConversationRepository.findAllSummaries();
+    }
+
+    @Transactional
+    public void markRead(String customerId, boolean byAdmin) {
+        if (byAdmin) {
+            chatConversationRepository.markReadByAdmin(customerId);
+        } else {
+            chatConversationRepository.markReadByCustomer(customerId);
+        }
+    }
+
+    // Dữ liệu cũ: gán conversation_id cho tin nhắn và tạo tóm tắt còn thiếu, chỉ chạy khi còn tin nhắn chưa có conversation_id
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        try {
+            if (!chatMessageRepository.existsByConversationIdIsNull()) {
+                return;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                int messages = chatMessageRepository.backfillConversationIds();
+                int conversations = chatConversationRepository.backfillFromMessages();
+                log.info("Backfilled conversation id of {} chat messages and {} conversation summaries", messages, conversations);
+            });
+        } catch (Exception e) {
+            log.error("Backfilling chat conversations failed", e);
+        }
+    }
+
+    // Gộp các tin nhắn của một hội thoại trong lô
+    private static final class ConversationUpdate {
+        ChatMessage last;
+        int unreadByAdmin;
+        int unreadByCustomer;
+
+        void add(ChatMessage message) {
+            if (last == null || !message.getTimestamp().isBefore(last.getTimestamp())) {
+                last = message;
+            }
+            if (ADMIN_ID.equals(message.getSenderId())) {
+                unreadByCustomer++;
+            } else {
+                unreadByAdmin++;
+            }
+        }
+
+        LocalDateTime lastAt() {
+            return last.getTimestamp();
+        }
+    }
+
+    // Con trỏ lịch sử: "timestamp|id" mã hóa base64 url-safe
+    record HistoryCursor(LocalDateTime timestamp, String id) {
+        static final HistoryCursor LATEST = new HistoryCursor(LocalDateTime.of(9999, 12, 31, 23, 59), "");
+
+        String encode() {
+            String raw = timestamp + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static HistoryCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                return new HistoryCursor(LocalDateTime.parse(raw.substring(0, separator)), raw.substring(separator + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid history cursor");
+            }
+        }
+    }
+}
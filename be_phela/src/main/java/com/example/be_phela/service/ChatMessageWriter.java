@@ -0,0 +1,241 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.model.ChatMessage;
+import com.example.be_phela.utils.ChatJournal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Ghi tin nhắn chat vào DB phía sau (write-behind): tin nhắn được ghi vào ChatJournal rồi xếp hàng,
+// một thread riêng gom lô và ghi theo batch qua ChatConversationService, nên việc broadcast không phải chờ MySQL.
+// Hàng đợi có giới hạn; đầy thì người gửi chờ tối đa enqueue-timeout rồi bị từ chối.
+// Khi dừng ứng dụng hàng đợi được ghi hết; tin nhắn chưa kịp ghi (DB lỗi, tiến trình chết) nằm lại trong journal
+// và được ghi lại khi khởi động. Tin nhắn đã có id trong DB bị bỏ qua nên ghi lại nhiều lần không tạo bản trùng.
+@Slf4j
+@Service
+@Lazy(false)
+public class ChatMessageWriter implements SmartLifecycle {
+
+    private static final long IDLE_POLL_MILLIS = 1_000;
+    private static final long RETRY_BASE_MILLIS = 500;
+    private static final long RETRY_MAX_MILLIS = 30_000;
+
+    private record Pending(ChatMessage message, long segment) {
+    }
+
+    // Ghi một lô vào DB, ném lỗi nếu thất bại
+    private final Consumer<List<ChatMessage>> sink;
+    private final ChatJournal journal;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    // Số chỗ còn trống trong hàng đợi; được trả lại sau khi lô đã vào DB
+    private final Semaphore capacity;
+    private final int batchSize;
+    private final Duration enqueueTimeout;
+    private final Duration shutdownTimeout;
+    private final Counter rejected;
+    private final Counter dropped;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    @Autowired
+    public ChatMessageWriter(ChatConversationService chatConversationService,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.chat.journal-dir:data/chat-journal}") String journalDir,
+                             @Value("${app.chat.journal-segment-size:10000}") int segmentSize,
+                             @Value("${app.chat.write-queue-capacity:10000}") int queueCapacity,
+                             @Value("${app.chat.write-batch-size:200}") int batchSize,
+                             @Value("${app.chat.enqueue-timeout:2s}") Duration enqueueTimeout,
+                             @Value("${app.chat.shutdown-timeout:10s}") Duration shutdownTimeout) {
+        this(chatConversationService::storeBatch, openJournal(Path.of(journalDir), objectMapper, segmentSize),
+                meterRegistry, queueCapacity, batchSize, enqueueTimeout, shutdownTimeout);
+    }
+
+    ChatMessageWriter(Consumer<List<ChatMessage>> sink, ChatJournal journal, MeterRegistry meterRegistry,
+                      int queueCapacity, int batchSize, Duration enqueueTimeout, Duration shutdownTimeout) {
+        this.sink = sink;
+        this.journal = journal;
+        this.capacity = new Semaphore(queueCapacity);
+        this.batchSize = batchSize;
+        this.enqueueTimeout = enqueueTimeout;
+        this.shutdownTimeout = shutdownTimeout;
+        this.rejected = Counter.builder("phela.chat.write.rejected").register(meterRegistry);
+        this.dropped = Counter.builder("phela.chat.write.dropped").register(meterRegistry);
+        Gauge.builder("phela.chat.write.queue", queue, LinkedBlockingQueue::size)
+                .register(meterRegistry);
+    }
+
+    // Trả về ngay khi tin nhắn đã vào journal và hàng đợi; hàng đợi đầy quá enqueue-timeout thì ném lỗi
+    public void enqueue(ChatMessage message) {
+        try {
+            if (!capacity.tryAcquire(enqueueTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new IllegalStateException("Hệ thống chat đang quá tải, vui lòng thử lại sau");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing chat message", e);
+        }
+        long segment;
+        try {
+            segment = journal.append(message);
+        } catch (IOException e) {
+            capacity.release();
+            throw new UncheckedIOException("Could not journal chat message", e);
+        }
+        queue.add(new Pending(message, segment));
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::run, "chat-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // Chạy sau khi broker STOMP đã dừng (phase thấp hơn) nên không còn tin nhắn mới
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            worker.join(shutdownTimeout.toMillis());
+            if (worker.isAlive()) {
+                log.warn("Chat writer did not drain in {}, {} message(s) stay in the journal", shutdownTimeout, queue.size());
+                worker.interrupt();
+                worker.join(1_000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.error("Closing chat journal failed", e);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    private void run() {
+        try {
+            int recovered = journal.recover(batchSize, this::write);
+            if (recovered > 0) {
+                log.info("Recovered {} chat message(s) from the journal", recovered);
+            }
+        } catch (IOException e) {
+            log.error("Reading chat journal failed, leftover segments are kept for the next start", e);
+        }
+
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    journal.rotate();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                if (!write(batch.stream().map(Pending::message).toList())) {
+                    return;
+                }
+                acknowledge(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                log.error("Updating chat journal failed", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // true khi lô đã vào DB (hoặc tin nhắn lỗi dữ liệu đã bị bỏ); false khi bị dừng lúc DB vẫn lỗi
+    private boolean write(List<ChatMessage> batch) {
+        int attempt = 0;
+        while (true) {
+            try {
+                sink.accept(batch);
+                return true;
+            } catch (NonTransientDataAccessException e) {
+                // Lỗi dữ liệu (vd. nội dung quá dài): ghi từng tin để chỉ bỏ tin nhắn lỗi
+                if (batch.size() > 1) {
+                    for (ChatMessage message : batch) {
+                        if (!write(List.of(message))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+                dropped.increment();
+                log.error("Dropping chat message {} that cannot be stored", batch.get(0).getId(), e);
+                return true;
+            } catch (RuntimeException e) {
+                attempt++;
+                long delay = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << Math.min(attempt - 1, 16));
+                log.warn("Writing {} chat message(s) failed (attempt {}), retrying in {} ms", batch.size(), attempt, delay, e);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void acknowledge(List<Pending> batch) throws IOException {
+        Map<Long, Integer> perSegment = new HashMap<>();
+        for (Pending pending : batch) {
+            perSegment.merge(pending.segment(), 1, Integer::sum);
+        }
+        capacity.release(batch.size());
+        for (Map.Entry<Long, Integer> entry : perSegment.entrySet()) {
+            journal.persisted(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static ChatJournal openJournal(Path directory, ObjectMapper objectMapper, int segmentSize) {
+        try {
+            return new ChatJournal(directory, objectMapper, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open chat journal in " + directory, e);
+        }
+    }
+}
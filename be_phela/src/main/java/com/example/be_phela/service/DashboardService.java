@@ -2,21 +2,30 @@ package com.example.be_phela.service;
 
 import com.example.be_phela.dto.response.DashboardStatsDTO;
 import com.example.be_phela.dto.response.RevenueReportDTO;
+import com.example.be_phela.dto.response.RevenueRollupCheckDTO;
 import com.example.be_phela.model.enums.OrderStatus;
 import com.example.be_phela.repository.OrderItemRepository;
 import com.example.be_phela.repository.OrderRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
-import java.sql.Date;
 import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.temporal.TemporalAdjusters;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 @Service
@@ -26,6 +35,17 @@ public class DashboardService {
 
     private final OrderRepository orderRepository;
     private final OrderItemRepository orderItemRepository;
+    private final RevenueRollupService revenueRollupService;
+    private final ThreadPoolTaskExecutor dashboardExecutor;
+    private final MeterRegistry meterRegistry;
+
+    // Snapshot thống kê dùng chung cho mọi admin trong khoảng TTL
+    @Value("${app.dashboard.stats-ttl:30s}")
+    private Duration statsTtl;
+
+    private volatile StatsSnapshot statsSnapshot;
+    // Chỉ một luồng được tính lại snapshot tại một thời điểm (single-flight)
+    private final AtomicReference<CompletableFuture<DashboardStatsDTO>> statsRefresh = new AtomicReference<>();
 
     // Constants
     private static final int TOP_PRODUCTS_LIMIT = 5;
@@ -35,13 +55,10 @@ public class DashboardService {
         validatePeriod(period);
 
         try {
+            // Đọc từ bảng tổng hợp theo ngày thay vì GROUP BY trên toàn bộ bảng orders
             LocalDateTime[] dateRange = getDateRangeForPeriod(period);
-            List<Object[]> results = orderRepository.findRevenueAndOrderCountByDateRange(
-                    dateRange[0], dateRange[1], OrderStatus.DELIVERED);
-
-            List<RevenueReportDTO.DailyData> dailyData = results.stream()
-                    .map(this::mapToDailyData)
-                    .collect(Collectors.toList());
+            List<RevenueReportDTO.DailyData> dailyData = revenueRollupService.getDailyData(
+                    dateRange[0].toLocalDate(), dateRange[1].toLocalDate());
 
             double totalRevenue = dailyData.stream()
                     .mapToDouble(RevenueReportDTO.DailyData::getRevenue)
@@ -63,46 +80,105 @@ public class DashboardService {
     }
 
     public DashboardStatsDTO getDashboardStatistics() {
+        StatsSnapshot snapshot = statsSnapshot;
+        if (snapshot != null && !snapshot.isExpired(statsTtl)) {
+            return snapshot.stats();
+        }
+
+        CompletableFuture<DashboardStatsDTO> refresh = new CompletableFuture<>();
+        CompletableFuture<DashboardStatsDTO> inFlight = statsRefresh.compareAndExchange(null, refresh);
+        if (inFlight != null) {
+            // Đang có luồng khác tính lại: trả snapshot cũ nếu có, không thì chờ kết quả
+            return snapshot != null ? snapshot.stats() : awaitStats(inFlight);
+        }
+
         try {
-            // 1. Order status statistics
-            Map<String, Long> orderCountByStatus = getOrderCountByStatus();
+            DashboardStatsDTO stats = computeDashboardStatistics();
+            statsSnapshot = new StatsSnapshot(stats, System.nanoTime());
+            refresh.complete(stats);
+            return stats;
+        } catch (RuntimeException e) {
+            refresh.completeExceptionally(e);
+            throw e;
+        } finally {
+            statsRefresh.set(null);
+        }
+    }
 
-            // 2. Cancellation rate (last 30 days)
-            double cancellationRate = calculateCancellationRate();
+    private DashboardStatsDTO awaitStats(CompletableFuture<DashboardStatsDTO> inFlight) {
+        try {
+            return inFlight.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
 
-            // 3. Top selling products
-            List<DashboardStatsDTO.ProductStat> topSellingProducts = getTopSellingProducts();
+    // Bốn truy vấn thống kê độc lập chạy song song trên dashboardExecutor
+    private DashboardStatsDTO computeDashboardStatistics() {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            CompletableFuture<Map<String, Long>> orderCountByStatus =
+                    CompletableFuture.supplyAsync(this::getOrderCountByStatus, dashboardExecutor);
+            CompletableFuture<Double> cancellationRate =
+                    CompletableFuture.supplyAsync(this::calculateCancellationRate, dashboardExecutor);
+            CompletableFuture<List<DashboardStatsDTO.ProductStat>> topSellingProducts =
+                    CompletableFuture.supplyAsync(this::getTopSellingProducts, dashboardExecutor);
+            CompletableFuture<List<DashboardStatsDTO.CategoryStat>> productsSoldByCategory =
+                    CompletableFuture.supplyAsync(this::getProductsSoldByCategory, dashboardExecutor);
 
-            // 4. Products sold by category
-            List<DashboardStatsDTO.CategoryStat> productsSoldByCategory = getProductsSoldByCategory();
+            CompletableFuture.allOf(orderCountByStatus, cancellationRate, topSellingProducts, productsSoldByCategory)
+                    .join();
 
             return DashboardStatsDTO.builder()
-                    .orderCountByStatus(orderCountByStatus)
-                    .cancellationRate(cancellationRate)
-                    .topSellingProducts(topSellingProducts)
-                    .productsSoldByCategory(productsSoldByCategory)
+                    .orderCountByStatus(orderCountByStatus.join())
+                    .cancellationRate(cancellationRate.join())
+                    .topSellingProducts(topSellingProducts.join())
+                    .productsSoldByCategory(productsSoldByCategory.join())
+                    .generatedAt(LocalDateTime.now())
                     .build();
 
         } catch (Exception e) {
             log.error("Error generating dashboard statistics", e);
             throw new RuntimeException("Failed to generate dashboard statistics", e);
+        } finally {
+            sample.stop(Timer.builder("phela.dashboard.stats.compute")
+                    .description("Time to compute the dashboard statistics snapshot")
+                    .register(meterRegistry));
         }
     }
 
+    // Kiểm tra bảng tổng hợp doanh thu so với truy vấn trực tiếp cho một kỳ báo cáo
+    public RevenueRollupCheckDTO verifyRevenueRollup(String period) {
+        validatePeriod(period);
+        LocalDateTime[] dateRange = getDateRangeForPeriod(period);
+        return revenueRollupService.verify(dateRange[0].toLocalDate(), dateRange[1].toLocalDate());
+    }
+
+    public RevenueRollupCheckDTO rebuildRevenueRollup(LocalDate startDate, LocalDate endDate) {
+        if (startDate == null) {
+            int rows = revenueRollupService.rebuildAll();
+            return RevenueRollupCheckDTO.builder()
+                    .consistent(true)
+                    .rebuiltRows(rows)
+                    .mismatches(List.of())
+                    .build();
+        }
+        LocalDate end = endDate != null ? endDate : LocalDate.now();
+        if (end.isBefore(startDate)) {
+            throw new IllegalArgumentException("End date must not be before start date");
+        }
+        int rows = revenueRollupService.rebuild(startDate, end);
+        RevenueRollupCheckDTO check = revenueRollupService.verify(startDate, end);
+        check.setRebuiltRows(rows);
+        return check;
+    }
+
     private void validatePeriod(String period) {
         if (period == null || !VALID_PERIODS.contains(period.toLowerCase())) {
             throw new IllegalArgumentException("Invalid period. Must be one of: " + VALID_PERIODS);
         }
     }
 
-    private RevenueReportDTO.DailyData mapToDailyData(Object[] result) {
-        return RevenueReportDTO.DailyData.builder()
-                .date(((Date) result[0]).toLocalDate().toString())
-                .revenue(result[1] != null ? ((Double) result[1]).doubleValue() : 0.0)
-                .orderCount(result[2] != null ? (Long) result[2] : 0L)
-                .build();
-    }
-
     private Map<String, Long> getOrderCountByStatus() {
         return orderRepository.countOrdersByStatus().stream()
                 .collect(Collectors.toMap(
@@ -175,4 +251,10 @@ public class DashboardService {
         }
         return new LocalDateTime[]{startDate, now};
     }
-}
\ No newline at end of file
+
+    private record StatsSnapshot(DashboardStatsDTO stats, long computedAt) {
+        boolean isExpired(Duration ttl) {
+            return System.nanoTime() - computedAt > ttl.toNanos();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.model.EmailOutbox;
+import com.example.be_phela.model.enums.EmailStatus;
+import com.example.be_phela.repository.EmailOutboxRepository;
+import com.example.be_phela.utils.SendGridMailClient;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Gửi email từ bảng email_outbox trên mailExecutor: nhận một lô email đến hạn, gom các email cùng mẫu
+// thành một lần gọi SendGrid, lỗi tạm thời thì thử lại với thời gian chờ tăng dần.
+@Slf4j
+@Service
+@Lazy(false)
+public class EmailDispatcher {
+
+    private static final TypeReference<Map<String, String>> SUBSTITUTIONS_TYPE = new TypeReference<>() {};
+
+    private final EmailOutboxRepository outboxRepository;
+    private final SendGridMailClient mailClient;
+    private final ThreadPoolTaskExecutor mailExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final int batchSize;
+    private final int maxRecipientsPerCall;
+    private final int maxAttempts;
+    private final Duration retryBaseDelay;
+    private final Duration retryMaxDelay;
+    private final Duration claimTimeout;
+    private final Duration retention;
+
+    private final Counter sentCounter;
+    private final Counter retryCounter;
+    private final Counter failedCounter;
+    private final Timer callTimer;
+
+    // Chỉ một vòng quét chạy tại một thời điểm; wakeUp trong lúc đang quét sẽ được vòng hiện tại xử lý
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private final AtomicBoolean pollRequested = new AtomicBoolean();
+
+    public EmailDispatcher(EmailOutboxRepository outboxRepository,
+                           SendGridMailClient mailClient,
+                           ThreadPoolTaskExecutor mailExecutor,
+                           TransactionTemplate transactionTemplate,
+                           ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.mail.outbox.batch-size:100}") int batchSize,
+                           @Value("${app.mail.outbox.max-recipients-per-call:100}") int maxRecipientsPerCall,
+                           @Value("${app.mail.outbox.max-attempts:8}") int maxAttempts,
+                           @Value("${app.mail.outbox.retry-base-delay:30s}") Duration retryBaseDelay,
+                           @Value("${app.mail.outbox.retry-max-delay:1h}") Duration retryMaxDelay,
+                           @Value("${app.mail.outbox.claim-timeout:5m}") Duration claimTimeout,
+                           @Value("${app.mail.outbox.retention:7d}") Duration retention) {
+        this.outboxRepository = outboxRepository;
+        this.mailClient = mailClient;
+        this.mailExecutor = mailExecutor;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxRecipientsPerCall = Math.max(1, Math.min(maxRecipientsPerCall, SendGridMailClient.MAX_PERSONALIZATIONS));
+        this.maxAttempts = maxAttempts;
+        this.retryBaseDelay = retryBaseDelay;
+        this.retryMaxDelay = retryMaxDelay;
+        this.claimTimeout = claimTimeout;
+        this.retention = retention;
+        this.sentCounter = Counter.builder("phela.mail.sent").register(meterRegistry);
+        this.retryCounter = Counter.builder("phela.mail.retried").register(meterRegistry);
+        this.failedCounter = Counter.builder("phela.mail.failed").register(meterRegistry);
+        this.callTimer = Timer.builder("phela.mail.provider.call").register(meterRegistry);
+    }
+
+    // Gọi sau khi transaction ghi email đã commit để gửi ngay, không chờ lần quét định kỳ
+    public void wakeUp() {
+        pollRequested.set(true);
+        // Hàng đợi đầy thì không đẩy thêm (CallerRunsPolicy sẽ bắt thread request tự gửi), lần quét sau sẽ xử lý
+        if (polling.get() || mailExecutor.getThreadPoolExecutor().getQueue().remainingCapacity() == 0) {
+            return;
+        }
+        try {
+            mailExecutor.execute(this::pollSafely);
+        } catch (TaskRejectedException e) {
+            log.debug("Mail executor busy, outbox will be picked up by the next poll");
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.mail.outbox.poll-interval:5s}")
+    public void scheduledPoll() {
+        // Không chạy trên thread của scheduler để không chặn các job định kỳ khác
+        wakeUp();
+    }
+
+    // Dọn email đã gửi lâu ngày để bảng outbox không phình ra
+    @Scheduled(cron = "${app.mail.outbox.cleanup-cron:0 45 3 * * *}")
+    public void purgeSent() {
+        try {
+            Integer cleared = transactionTemplate.execute(status -> outboxRepository.clearFinishedSubstitutions());
+            Integer deleted = transactionTemplate.execute(status ->
+                    outboxRepository.deleteSentBefore(LocalDateTime.now().minus(retention)));
+            log.info("Purged {} sent emails from outbox, cleared substitutions of {}", deleted, cleared);
+        } catch (Exception e) {
+            log.error("Purging email outbox failed", e);
+        }
+    }
+
+    private void pollSafely() {
+        while (pollRequested.get() && polling.compareAndSet(false, true)) {
+            try {
+                pollRequested.set(false);
+                dispatchDue();
+            } catch (Exception e) {
+                log.error("Dispatching email outbox failed", e);
+            } finally {
+                polling.set(false);
+            }
+        }
+    }
+
+    /**
+     * Gửi tất cả email đến hạn, từng lô batchSize; trả về số email đã nhận xử lý
+     */
+    public int dispatchDue() {
+        LocalDateTime now = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status -> {
+            int released = outboxRepository.releaseStaleClaims(now.minus(claimTimeout));
+            if (released > 0) {
+                log.warn("Released {} emails left in SENDING for more than {}", released, claimTimeout);
+            }
+        });
+
+        int total = 0;
+        while (true) {
+            List<EmailOutbox> batch = claimBatch();
+            if (batch.isEmpty()) {
+                return total;
+            }
+            total += batch.size();
+
+            List<CompletableFuture<Void>> calls = new ArrayList<>();
+            for (List<EmailOutbox> group : groupByTemplate(batch)) {
+                calls.add(CompletableFuture.runAsync(() -> sendGroup(group), mailExecutor));
+            }
+            CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new)).join();
+
+            if (batch.size() < batchSize) {
+                return total;
+            }
+        }
+    }
+
+    private List<EmailOutbox> claimBatch() {
+        List<Long> ids = outboxRepository.findDueIds(EmailStatus.PENDING, LocalDateTime.now(), PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String token = UUID.randomUUID().toString();
+        return transactionTemplate.execute(status -> {
+            outboxRepository.claim(ids, token, LocalDateTime.now());
+            return outboxRepository.findByClaimToken(token);
+        });
+    }
+
+    // Gom các email có cùng tiêu đề và nội dung mẫu, mỗi nhóm tối đa maxRecipientsPerCall người nhận
+    private List<List<EmailOutbox>> groupByTemplate(List<EmailOutbox> batch) {
+        Map<List<String>, List<EmailOutbox>> byTemplate = new LinkedHashMap<>();
+        for (EmailOutbox email : batch) {
+            byTemplate.computeIfAbsent(List.of(email.getSubject(), email.getHtmlContent()), k -> new ArrayList<>())
+                    .add(email);
+        }
+        List<List<EmailOutbox>> groups = new ArrayList<>();
+        for (List<EmailOutbox> emails : byTemplate.values()) {
+            for (int i = 0; i < emails.size(); i += maxRecipientsPerCall) {
+                groups.add(emails.subList(i, Math.min(emails.size(), i + maxRecipientsPerCall)));
+            }
+        }
+        return groups;
+    }
+
+    private void sendGroup(List<EmailOutbox> group) {
+        try {
+            sendToProvider(group);
+        } catch (RuntimeException e) {
+            log.error("Sending {} emails failed unexpectedly", group.size(), e);
+            recordFailure(group, new SendGridMailClient.SendResult(0, false, e.toString()));
+        }
+    }
+
+    private void sendToProvider(List<EmailOutbox> group) {
+        EmailOutbox first = group.get(0);
+        List<SendGridMailClient.Recipient> recipients = group.stream()
+                .map(email -> new SendGridMailClient.Recipient(email.getRecipient(), readSubstitutions(email)))
+                .toList();
+
+        SendGridMailClient.SendResult result = callTimer.record(
+                () -> mailClient.send(first.getSubject(), first.getHtmlContent(), recipients));
+        if (result.success()) {
+            List<Long> ids = group.stream().map(EmailOutbox::getEmailId).toList();
+            transactionTemplate.executeWithoutResult(status -> outboxRepository.markSent(ids, LocalDateTime.now()));
+            sentCounter.increment(group.size());
+            return;
+        }
+
+        // Lỗi không tạm thời (vd 400) với nhiều người nhận: có thể chỉ một địa chỉ sai, gửi lại từng email
+        if (!result.retryable() && group.size() > 1) {
+            log.warn("SendGrid rejected a batch of {} emails ({}), sending them one by one", group.size(), result.error());
+            for (EmailOutbox email : group) {
+                sendToProvider(List.of(email));
+            }
+            return;
+        }
+        recordFailure(group, result);
+    }
+
+    private void recordFailure(List<EmailOutbox> group, SendGridMailClient.SendResult result) {
+        LocalDateTime now = LocalDateTime.now();
+        for (EmailOutbox email : group) {
+            int attempts = email.getAttempts() + 1;
+            email.setAttempts(attempts);
+            email.setClaimToken(null);
+            email.setLastError(truncate(result.error()));
+            if (result.retryable() && attempts < maxAttempts) {
+                email.setStatus(EmailStatus.PENDING);
+                email.setNextAttemptAt(now.plus(backoff(attempts)));
+                retryCounter.increment();
+            } else {
+                email.setStatus(EmailStatus.FAILED);
+                // Không gửi lại nữa nên không giữ OTP/token trong bảng
+                email.setSubstitutions(null);
+                failedCounter.increment();
+                log.error("Giving up on email {} to {} after {} attempts: {}",
+                        email.getEmailId(), email.getRecipient(), attempts, result.error());
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> outboxRepository.saveAll(group));
+        if (result.retryable()) {
+            log.warn("Sending {} emails failed, will retry: {}", group.size(), result.error());
+        }
+    }
+
+    // Tăng gấp đôi sau mỗi lần lỗi, tối đa retryMaxDelay, cộng thêm tối đa 20% ngẫu nhiên để các lô không dồn cùng lúc
+    private Duration backoff(int attempts) {
+        long base = retryBaseDelay.toMillis() << Math.min(attempts - 1, 20);
+        long delay = Math.min(base, retryMaxDelay.toMillis());
+        return Duration.ofMillis(delay + ThreadLocalRandom.current().nextLong(delay / 5 + 1));
+    }
+
+    private Map<String, String> readSubstitutions(EmailOutbox email) {
+        if (email.getSubstitutions() == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(email.getSubstitutions(), SUBSTITUTIONS_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Invalid substitutions for email " + email.getEmailId(), e);
+        }
+    }
+
+    private static String truncate(String error) {
+        String value = Objects.toString(error, "");
+        return value.length() > 1000 ? value.substring(0, 1000) : value;
+    }
+}
@@ -1,35 +1,48 @@
 package com.example.be_phela.service;
 
-import com.sendgrid.Method;
-import com.sendgrid.Request;
-import com.sendgrid.Response;
-import com.sendgrid.SendGrid;
-import com.sendgrid.helpers.mail.Mail;
-import com.sendgrid.helpers.mail.objects.Content;
-import com.sendgrid.helpers.mail.objects.Email;
+import com.example.be_phela.model.EmailOutbox;
+import com.example.be_phela.model.enums.EmailStatus;
+import com.example.be_phela.repository.EmailOutboxRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Map;
 
+// Email không được gửi trực tiếp: chỉ ghi vào email_outbox (cùng transaction với nghiệp vụ),
+// EmailDispatcher gửi sau khi commit. Nội dung là mẫu chung với khóa thay thế để gửi gộp được.
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class EmailService {
 
-    @Value("${SENDGRID_API_KEY}")
-    private String sendGridApiKey;
+    private static final String VERIFICATION_LINK_KEY = "-verification_link-";
+    private static final String OTP_KEY = "-otp-";
 
-    @Value("${spring.mail.username}")
-    private String fromEmail;
+    private final EmailOutboxRepository outboxRepository;
+    private final EmailDispatcher emailDispatcher;
+    private final ObjectMapper objectMapper;
 
     @Value("${app.base-url}")
     private String baseUrl;
 
     public void sendVerificationEmail(String to, String token) {
         String verificationLink = baseUrl + "/verify?token=" + token;
+        enqueue(to, "Xác nhận đăng ký tài khoản - Phê La", VERIFICATION_TEMPLATE,
+                Map.of(VERIFICATION_LINK_KEY, verificationLink));
+    }
+
+    public void sendOtpEmail(String to, String otp) {
+        enqueue(to, "Mã OTP đặt lại mật khẩu - Phê La", OTP_TEMPLATE, Map.of(OTP_KEY, otp));
+    }
 
-        String htmlContent = "<!DOCTYPE html>"
+    private static final String VERIFICATION_TEMPLATE = "<!DOCTYPE html>"
                 + "<html lang='vi'>"
                 + "<head>"
                 // ... (toàn bộ phần style CSS của bạn giữ nguyên)
@@ -46,7 +59,7 @@ public class EmailService {
                 + "    <div class='content'>"
                 + "        <p>Xin chào,</p>"
                 + "        <p>Cảm ơn bạn đã đăng ký tài khoản tại Phê La. Vui lòng nhấp vào nút bên dưới để xác nhận địa chỉ email của bạn:</p>"
-                + "        <p style='text-align: center;'><a href='" + verificationLink + "' class='button'>XÁC NHẬN EMAIL</a></p>"
+                + "        <p style='text-align: center;'><a href='" + VERIFICATION_LINK_KEY + "' class='button'>XÁC NHẬN EMAIL</a></p>"
                 + "        <p>Nếu bạn không thực hiện yêu cầu này, vui lòng bỏ qua email này.</p>"
                 + "        <p>Liên kết xác nhận sẽ hết hạn sau <strong>24 giờ</strong>.</p>"
                 + "        <div class='footer'><p>Trân trọng,<br>Đội ngũ Phê La</p><p>© 2024 Phê La. All rights reserved.</p></div>"
@@ -54,11 +67,7 @@ public class EmailService {
                 + "</body>"
                 + "</html>";
 
-        sendEmail(to, "Xác nhận đăng ký tài khoản - Phê La", htmlContent);
-    }
-
-    public void sendOtpEmail(String to, String otp) {
-        String htmlContent = "<!DOCTYPE html>"
+    private static final String OTP_TEMPLATE = "<!DOCTYPE html>"
                 + "<html lang='vi'>"
                 + "<head>"
                 // ... (toàn bộ phần style CSS của bạn giữ nguyên)
@@ -75,7 +84,7 @@ public class EmailService {
                 + "    <div class='content'>"
                 + "        <p>Xin chào,</p>"
                 + "        <p>Bạn đã yêu cầu đặt lại mật khẩu cho tài khoản của mình. Vui lòng sử dụng mã OTP sau để tiếp tục:</p>"
-                + "        <p class='otp-code'>" + otp + "</p>"
+                + "        <p class='otp-code'>" + OTP_KEY + "</p>"
                 + "        <p>Mã này sẽ hết hạn sau <strong>10 phút</strong>. Vui lòng không chia sẻ mã này với bất kỳ ai.</p>"
                 + "        <p>Nếu bạn không yêu cầu đặt lại mật khẩu, vui lòng bỏ qua email này.</p>"
                 + "        <div class='footer'><p>Trân trọng,<br>Đội ngũ Phê La</p><p>© 2024 Phê La. All rights reserved.</p></div>"
@@ -83,35 +92,36 @@ public class EmailService {
                 + "</body>"
                 + "</html>";
 
-        sendEmail(to, "Mã OTP đặt lại mật khẩu - Phê La", htmlContent);
-    }
-
-    // Phương thức private để gửi email, tránh lặp code
-    private void sendEmail(String to, String subject, String htmlContent) {
-        Email fromEmailObj = new Email(this.fromEmail);
-        Email toEmailObj = new Email(to);
-        Content content = new Content("text/html", htmlContent);
-        Mail mail = new Mail(fromEmailObj, subject, toEmailObj, content);
-
-        SendGrid sg = new SendGrid(sendGridApiKey);
-        Request request = new Request();
-
+    // Ghi email vào outbox; nếu đang trong transaction thì chỉ báo dispatcher sau khi commit,
+    // transaction rollback thì email cũng không được gửi
+    private void enqueue(String to, String subject, String template, Map<String, String> substitutions) {
+        String substitutionsJson;
         try {
-            request.setMethod(Method.POST);
-            request.setEndpoint("mail/send");
-            request.setBody(mail.build());
-
-            log.info("Sending email via SendGrid to: {}", to);
-            Response response = sg.api(request);
-
-            if (response.getStatusCode() >= 400) {
-                log.error("Failed to send email. Status Code: {}. Response Body: {}", response.getStatusCode(), response.getBody());
-            } else {
-                log.info("Email sent successfully to: {}. Status Code: {}", to, response.getStatusCode());
-            }
-        } catch (IOException ex) {
-            log.error("Error sending email to {}", to, ex);
-            throw new RuntimeException("Error sending email", ex);
+            substitutionsJson = objectMapper.writeValueAsString(substitutions);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize email substitutions", e);
+        }
+        EmailOutbox email = EmailOutbox.builder()
+                .recipient(to)
+                .subject(subject)
+                .htmlContent(template)
+                .substitutions(substitutionsJson)
+                .status(EmailStatus.PENDING)
+                .attempts(0)
+                .nextAttemptAt(LocalDateTime.now())
+                .build();
+        outboxRepository.save(email);
+        log.info("Queued email \"{}\" to {}", subject, to);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    emailDispatcher.wakeUp();
+                }
+            });
+        } else {
+            emailDispatcher.wakeUp();
         }
     }
-}
\ No newline at end of file
+}
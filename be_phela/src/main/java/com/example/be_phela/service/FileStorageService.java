@@ -2,46 +2,385 @@ package com.example.be_phela.service;
 
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.example.be_phela.utils.ImageVariantGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
+// Upload ảnh lên Cloudinary trên uploadExecutor. File multipart được chuyển sang thư mục tạm
+// (không đọc vào heap) rồi gửi lên dạng stream từ file.
+// Các service phải gọi ngoài transaction để không giữ connection DB trong lúc chờ upload.
+// Ảnh sản phẩm, banner, tin tức được tạo thêm bản thumb/medium ngay khi upload.
+@Slf4j
 @Service
 public class FileStorageService {
-    @Autowired
-    private Cloudinary cloudinary;
 
-    public String storeFile(MultipartFile file) throws IOException {
-        return uploadToCloudinary(file, "products");
+    public static final String THUMB = "thumb";
+    public static final String MEDIUM = "medium";
+
+    // URL ảnh gốc và các bản thu nhỏ; bản nào null thì dùng ảnh gốc
+    public record StoredImage(String url, String thumbUrl, String mediumUrl) {
+    }
+
+    private static final int DOWNLOAD_TIMEOUT_MILLIS = 15_000;
+    private static final long MAX_DOWNLOAD_BYTES = 20L * 1024 * 1024;
+
+    private final Cloudinary cloudinary;
+    private final ThreadPoolTaskExecutor uploadExecutor;
+    private final Path stagingDir;
+    private final Duration uploadTimeout;
+    private final MeterRegistry meterRegistry;
+    private final ImageVariantGenerator variantGenerator;
+    private final String deliveryHost;
+
+    public FileStorageService(Cloudinary cloudinary,
+                              ThreadPoolTaskExecutor uploadExecutor,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.upload.staging-dir:#{systemProperties['java.io.tmpdir']}}") String stagingDir,
+                              @Value("${app.upload.timeout:60s}") Duration uploadTimeout,
+                              @Value("${app.upload.variants.thumb-width:200}") int thumbWidth,
+                              @Value("${app.upload.variants.medium-width:640}") int mediumWidth,
+                              @Value("${app.upload.variants.format:webp}") String variantFormat,
+                              @Value("${app.upload.variants.quality:0.8}") float variantQuality,
+                              @Value("${app.upload.variants.max-pixels:40000000}") long variantMaxPixels,
+                              @Value("${cloudinary.delivery-host:res.cloudinary.com}") String deliveryHost) {
+        this.cloudinary = cloudinary;
+        this.uploadExecutor = uploadExecutor;
+        this.meterRegistry = meterRegistry;
+        this.stagingDir = Path.of(stagingDir);
+        this.uploadTimeout = uploadTimeout;
+        this.deliveryHost = deliveryHost;
+        this.variantGenerator = new ImageVariantGenerator(
+                Map.of(THUMB, thumbWidth, MEDIUM, mediumWidth), variantFormat, variantQuality, variantMaxPixels);
+        log.info("Image variants will be written as {}", variantGenerator.formatName());
+    }
+
+    public StoredImage storeFile(MultipartFile file) throws IOException {
+        return await(uploadWithVariantsAsync(file, "products"));
     }
 
-    public String storeNewsThumbnail(MultipartFile file) throws IOException {
-        return uploadToCloudinary(file, "news");
+    public StoredImage storeNewsThumbnail(MultipartFile file) throws IOException {
+        return await(uploadWithVariantsAsync(file, "news"));
     }
 
-    public String storeBannerImage(MultipartFile file) throws IOException {
-        return uploadToCloudinary(file, "banners");
+    public StoredImage storeBannerImage(MultipartFile file) throws IOException {
+        return await(uploadWithVariantsAsync(file, "banners"));
     }
 
-    public String storeChatImage(MultipartFile file) throws IOException { // Thêm phương thức này
-        return uploadToCloudinary(file, "chat");
+    public String storeChatImage(MultipartFile file) throws IOException {
+        return await(uploadAsync(file, "chat"));
     }
 
-    private String uploadToCloudinary(MultipartFile file, String folderName) throws IOException {
+    public List<String> storeChatImages(List<MultipartFile> files) throws IOException {
+        return await(uploadAllAsync(files, "chat"));
+    }
+
+    // File được chuyển sang thư mục tạm ngay trên thread gọi (vẫn còn trong request),
+    // việc upload chạy trên uploadExecutor. Kết quả null nếu file rỗng.
+    public CompletableFuture<String> uploadAsync(MultipartFile file, String folderName) throws IOException {
         if (file == null || file.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        File staged = stage(file);
+        UploadJob job = new UploadJob();
+        return job.cancelOnCancel(job.submit(() -> upload(staged, folderName), staged));
+    }
+
+    // Upload nhiều ảnh song song; danh sách URL giữ đúng thứ tự của files.
+    // Một ảnh lỗi hoặc cả lô bị hủy (quá hạn chờ) thì các ảnh còn lại cũng bị hủy.
+    public CompletableFuture<List<String>> uploadAllAsync(List<MultipartFile> files, String folderName) throws IOException {
+        List<CompletableFuture<String>> uploads = new ArrayList<>(files.size());
+        try {
+            for (MultipartFile file : files) {
+                uploads.add(uploadAsync(file, folderName));
+            }
+        } catch (IOException | RuntimeException e) {
+            uploads.forEach(upload -> upload.cancel(true));
+            throw e;
+        }
+        CompletableFuture<List<String>> all = CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> uploads.stream().map(CompletableFuture::join).toList());
+        for (CompletableFuture<String> upload : uploads) {
+            upload.whenComplete((url, error) -> {
+                if (error != null) {
+                    all.completeExceptionally(error);
+                }
+            });
+        }
+        all.whenComplete((urls, error) -> {
+            if (error != null) {
+                uploads.forEach(upload -> upload.cancel(true));
+            }
+        });
+        return all;
+    }
+
+    // Upload ảnh gốc cùng các bản thu nhỏ; các bản được tạo từ file tạm trước khi upload song song
+    public CompletableFuture<StoredImage> uploadWithVariantsAsync(MultipartFile file, String folderName) throws IOException {
+        if (file == null || file.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        File staged = stage(file);
+        UploadJob job = new UploadJob();
+        return job.cancelOnCancel(job.submit(() -> generateVariants(staged), staged)
+                .thenCompose(variants -> {
+                    CompletableFuture<String> original = job.submit(() -> upload(staged, folderName), staged);
+                    return combine(job, original, variants, folderName);
+                }));
+    }
+
+    // Tạo bản thu nhỏ cho ảnh đã có trên Cloudinary (dùng khi bổ sung cho dữ liệu cũ).
+    // Chỉ tải ảnh https từ host phân phối của Cloudinary thuộc cloud đang cấu hình, không theo redirect.
+    public CompletableFuture<StoredImage> generateVariantsAsync(String imageUrl, String folderName) {
+        UploadJob job = new UploadJob();
+        return job.cancelOnCancel(job.submit(() -> download(imageUrl), null)
+                .thenApply(staged -> {
+                    try {
+                        return generateVariants(staged);
+                    } finally {
+                        deleteQuietly(staged);
+                    }
+                })
+                .thenCompose(variants -> combine(job, CompletableFuture.completedFuture(imageUrl), variants, folderName)));
+    }
+
+    // Chờ kết quả upload, chuyển lỗi về IOException như API đồng bộ trước đây.
+    // Quá hạn thì hủy luôn các tác vụ còn lại của lần upload để chúng không chiếm uploadExecutor.
+    public <T> T await(CompletableFuture<T> upload) throws IOException {
+        try {
+            return upload.get(uploadTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            upload.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for image upload", e);
+        } catch (TimeoutException e) {
+            upload.cancel(true);
+            throw new IOException("Image upload timed out after " + uploadTimeout.toSeconds() + "s", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            throw new IOException("Image upload failed", cause);
+        }
+    }
+
+    private File stage(MultipartFile file) throws IOException {
+        Files.createDirectories(stagingDir);
+        Path staged = Files.createTempFile(stagingDir, "upload-", ".tmp");
+        try {
+            // Với file multipart đã nằm trên đĩa, transferTo chỉ di chuyển file tạm
+            file.transferTo(staged);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(staged);
+            throw e;
+        }
+        return staged.toFile();
+    }
+
+    private CompletableFuture<StoredImage> combine(UploadJob job, CompletableFuture<String> original,
+                                                   Map<String, File> variants, String folderName) {
+        CompletableFuture<String> thumb = uploadVariant(job, variants.get(THUMB), folderName);
+        CompletableFuture<String> medium = uploadVariant(job, variants.get(MEDIUM), folderName);
+        return CompletableFuture.allOf(original, thumb, medium)
+                .thenApply(ignored -> new StoredImage(original.join(), thumb.join(), medium.join()));
+    }
 
-            return null;
+    // Lỗi khi upload một bản thu nhỏ không làm hỏng cả lần upload, client sẽ dùng ảnh gốc
+    private CompletableFuture<String> uploadVariant(UploadJob job, File variant, String folderName) {
+        if (variant == null) {
+            return CompletableFuture.completedFuture(null);
         }
+        return job.submit(() -> upload(variant, folderName), variant)
+                .exceptionally(e -> {
+                    log.warn("Image variant upload to folder {} failed, falling back to original", folderName, e);
+                    return null;
+                });
+    }
 
-        Map uploadResult = cloudinary.uploader().upload(file.getBytes(), ObjectUtils.asMap(
-                "upload_preset", "phe_la",
-                "folder", folderName
-        ));
+    // Ảnh không đọc được (định dạng lạ, file hỏng) thì bỏ qua bản thu nhỏ
+    private Map<String, File> generateVariants(File source) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return variantGenerator.generate(source, stagingDir);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not generate image variants for {}", source, e);
+            return Map.of();
+        } finally {
+            sample.stop(Timer.builder("phela.upload.variants.generate")
+                    .register(meterRegistry));
+        }
+    }
 
-        return (String) uploadResult.get("secure_url");
+    private File download(String imageUrl) {
+        try {
+            Files.createDirectories(stagingDir);
+            URI uri = checkDownloadUri(imageUrl);
+            Path staged = Files.createTempFile(stagingDir, "download-", ".tmp");
+            HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+            connection.setInstanceFollowRedirects(false);
+            connection.setConnectTimeout(DOWNLOAD_TIMEOUT_MILLIS);
+            connection.setReadTimeout(DOWNLOAD_TIMEOUT_MILLIS);
+            try {
+                if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Download of " + uri + " returned HTTP " + connection.getResponseCode());
+                }
+                if (connection.getContentLengthLong() > MAX_DOWNLOAD_BYTES) {
+                    throw new IOException("Image at " + uri + " is larger than " + MAX_DOWNLOAD_BYTES + " bytes");
+                }
+                try (InputStream in = connection.getInputStream();
+                     OutputStream out = Files.newOutputStream(staged)) {
+                    // Content-Length có thể thiếu nên vẫn đếm số byte khi chép
+                    byte[] buffer = new byte[8192];
+                    long copied = 0;
+                    for (int n; (n = in.read(buffer)) != -1; ) {
+                        copied += n;
+                        if (copied > MAX_DOWNLOAD_BYTES) {
+                            throw new IOException("Image at " + uri + " is larger than " + MAX_DOWNLOAD_BYTES + " bytes");
+                        }
+                        out.write(buffer, 0, n);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(staged);
+                throw e;
+            } finally {
+                connection.disconnect();
+            }
+            return staged.toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Chặn SSRF: URL lấy từ DB nhưng không được tin, chỉ chấp nhận https://<deliveryHost>/<cloudName>/...
+    URI checkDownloadUri(String imageUrl) throws IOException {
+        URI uri;
+        try {
+            uri = new URI(imageUrl);
+        } catch (URISyntaxException | NullPointerException e) {
+            throw new IOException("Invalid image URL: " + imageUrl, e);
+        }
+        String cloudPath = "/" + cloudinary.config.cloudName + "/";
+        if (!"https".equalsIgnoreCase(uri.getScheme()) || !deliveryHost.equalsIgnoreCase(uri.getHost())
+                || uri.getPort() != -1 || uri.getUserInfo() != null
+                || uri.getRawPath() == null || !uri.getRawPath().startsWith(cloudPath)) {
+            throw new IOException("Refusing to download image outside https://" + deliveryHost + cloudPath + ": " + imageUrl);
+        }
+        return uri;
     }
 
-}
\ No newline at end of file
+    private String upload(File staged, String folderName) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            // Timeout socket của HTTP client để request bị bỏ dở không treo thread khi đã hết hạn chờ
+            Map uploadResult = cloudinary.uploader().upload(staged, ObjectUtils.asMap(
+                    "upload_preset", "phe_la",
+                    "folder", folderName,
+                    "timeout", (int) uploadTimeout.toMillis(),
+                    "connect_timeout", DOWNLOAD_TIMEOUT_MILLIS
+            ));
+            return (String) uploadResult.get("secure_url");
+        } catch (IOException e) {
+            log.error("Cloudinary upload to folder {} failed", folderName, e);
+            throw new UncheckedIOException(e);
+        } finally {
+            sample.stop(Timer.builder("phela.upload.duration")
+                    .tag("folder", folderName)
+                    .register(meterRegistry));
+            deleteQuietly(staged);
+        }
+    }
+
+    // Các tác vụ của một lần upload trên uploadExecutor. Khi future trả cho caller bị hủy (quá hạn chờ),
+    // tác vụ đang chờ trong hàng đợi bị bỏ, tác vụ đang chạy bị interrupt, bước sau chưa gửi thì không gửi nữa
+    // và file tạm được xóa.
+    private final class UploadJob {
+        private final List<Future<?>> tasks = new ArrayList<>(4);
+        private final List<File> files = new ArrayList<>(4);
+        private boolean cancelled;
+
+        <T> CompletableFuture<T> submit(Supplier<T> task, File staged) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            synchronized (this) {
+                if (cancelled) {
+                    if (staged != null) {
+                        deleteQuietly(staged);
+                    }
+                    result.cancel(false);
+                    return result;
+                }
+                if (staged != null) {
+                    files.add(staged);
+                }
+            }
+            // Gửi ngoài khóa: khi pool đầy, CallerRunsPolicy chạy luôn tác vụ trên thread gọi
+            // và cancel() từ thread khác không được phải chờ nó xong
+            Future<?> submitted = uploadExecutor.submit(() -> {
+                try {
+                    result.complete(task.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            synchronized (this) {
+                if (cancelled) {
+                    submitted.cancel(true);
+                } else {
+                    tasks.add(submitted);
+                }
+            }
+            return result;
+        }
+
+        <T> CompletableFuture<T> cancelOnCancel(CompletableFuture<T> result) {
+            result.whenComplete((value, error) -> {
+                if (result.isCancelled()) {
+                    cancel();
+                }
+            });
+            return result;
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+            tasks.forEach(task -> task.cancel(true));
+            files.forEach(FileStorageService::deleteQuietly);
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            log.warn("Could not delete staged upload {}", file, e);
+        }
+    }
+}
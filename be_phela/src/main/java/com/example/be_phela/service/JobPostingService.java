@@ -17,6 +17,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -32,6 +34,7 @@ public class JobPostingService implements IJobPostingService {
     JobPostingRepository jobPostingRepository;
     BranchRepository branchRepository;
     ApplicationRepository applicationRepository; // THÊM ApplicationRepository
+    CVStorageService cvStorageService;
 
     private String generateJobCode() {
         long count = jobPostingRepository.count();
@@ -225,7 +228,17 @@ public class JobPostingService implements IJobPostingService {
     @Transactional
     public void deleteJobPosting(String jobPostingId) {
         JobPosting jobPosting = getJobPostingById(jobPostingId);
+        // Application bị xóa theo cascade; file CV chỉ được dọn sau khi commit và khi không còn đơn khác dùng chung
+        List<String> cvUrls = applicationRepository.findCvUrlsByJobPostingId(jobPostingId);
         jobPostingRepository.delete(jobPosting);
+        if (!cvUrls.isEmpty() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cvUrls.forEach(cvStorageService::deleteCVFile);
+                }
+            });
+        }
     }
 
     @Override
@@ -1,43 +1,217 @@
 package com.example.be_phela.service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import com.example.be_phela.dto.response.District;
+import com.example.be_phela.dto.response.LocationSyncResultDTO;
 import com.example.be_phela.dto.response.Province;
 import com.example.be_phela.dto.response.Ward;
 import com.example.be_phela.interService.ILocationService;
 import com.example.be_phela.utils.LocationApiClient;
+import com.example.be_phela.utils.LocationIndex;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 
+// Cây tỉnh/huyện/xã được nạp một lần từ file snapshot (cùng định dạng với API ?depth=3)
+// và phục vụ từ bộ nhớ; chỉ gọi API bên ngoài khi chưa có snapshot hoặc khi refresh.
+@Slf4j
 @Service
-@RequiredArgsConstructor
+@Lazy(false)
 public class LocationService implements ILocationService {
 
+    private static final TypeReference<List<Province>> HIERARCHY_TYPE = new TypeReference<>() {};
+
     private final LocationApiClient locationApiClient;
+    private final ObjectMapper objectMapper;
+    // Snapshot trên đĩa, được ghi lại sau mỗi lần đồng bộ thành công
+    private final Path snapshotPath;
+    // Snapshot đóng gói kèm ứng dụng, dùng khi chưa có file trên đĩa
+    private final Resource bundledSnapshot;
+    private final boolean syncIfMissing;
+    private final Timer snapshotLoadTimer;
+
+    private volatile LocationIndex index;
+
+    public LocationService(LocationApiClient locationApiClient,
+                           ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.locations.snapshot-path:data/vn-locations.json}") String snapshotPath,
+                           @Value("${app.locations.bundled-snapshot:classpath:locations/vn-locations.json}") Resource bundledSnapshot,
+                           @Value("${app.locations.sync-if-missing:true}") boolean syncIfMissing) {
+        this.locationApiClient = locationApiClient;
+        this.objectMapper = objectMapper;
+        this.snapshotPath = Path.of(snapshotPath);
+        this.bundledSnapshot = bundledSnapshot;
+        this.syncIfMissing = syncIfMissing;
+        this.snapshotLoadTimer = Timer.builder("phela.locations.snapshot.load")
+                .register(meterRegistry);
+
+        Gauge.builder("phela.locations.wards", this, s -> s.index != null ? s.index.wardCount() : 0)
+                .register(meterRegistry);
+    }
 
     @Override
     public List<Province> getAllProvinces() {
-        return locationApiClient.fetchAllProvinces();
+        LocationIndex current = index;
+        if (current == null) {
+            return locationApiClient.fetchAllProvinces();
+        }
+        return current.provinces();
     }
 
     @Override
     public List<District> getDistrictsByProvince(int provinceCode) {
-        Province province = locationApiClient.fetchProvinceWithDistricts(provinceCode);
-        return Optional.ofNullable(province.getDistricts()).orElse(List.of());
+        LocationIndex current = index;
+        if (current == null) {
+            Province province = locationApiClient.fetchProvinceWithDistricts(provinceCode);
+            return Optional.ofNullable(province.getDistricts()).orElse(List.of());
+        }
+        return Optional.ofNullable(current.districtsOf(provinceCode)).orElse(List.of());
     }
 
     @Override
     public List<Ward> getWardsByDistrict(int districtCode) {
-        District district = locationApiClient.fetchDistrictWithWards(districtCode);
-        return Optional.ofNullable(district.getWards()).orElse(List.of());
+        LocationIndex current = index;
+        if (current == null) {
+            District district = locationApiClient.fetchDistrictWithWards(districtCode);
+            return Optional.ofNullable(district.getWards()).orElse(List.of());
+        }
+        return Optional.ofNullable(current.wardsOf(districtCode)).orElse(List.of());
     }
 
     @Override
     public List<Province> getLocationHierarchy() {
-        return locationApiClient.fetchLocationHierarchy();
+        LocationIndex current = index;
+        if (current == null) {
+            return locationApiClient.fetchLocationHierarchy();
+        }
+        return current.hierarchy();
+    }
+
+    // Nạp snapshot khi khởi động; chưa có snapshot thì đồng bộ một lần từ API và lưu lại
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        long start = System.nanoTime();
+        try {
+            String source = loadSnapshot();
+            if (source != null) {
+                long elapsed = System.nanoTime() - start;
+                snapshotLoadTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                log.info("Loaded location snapshot from {} in {} ms: {} provinces, {} districts, {} wards",
+                        source, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                        index.provinceCount(), index.districtCount(), index.wardCount());
+                return;
+            }
+            if (syncIfMissing) {
+                LocationSyncResultDTO result = refresh();
+                log.info("No location snapshot found, synced {} wards from remote API in {} ms",
+                        result.getWards(), result.getDurationMillis());
+            } else {
+                log.warn("No location snapshot found, location requests will call the remote API");
+            }
+        } catch (Exception e) {
+            log.error("Loading location snapshot failed, location requests will call the remote API", e);
+        }
+    }
+
+    // Tải lại toàn bộ cây từ API, so sánh với bản đang dùng rồi thay thế và ghi snapshot
+    @Override
+    public synchronized LocationSyncResultDTO refresh() {
+        long start = System.nanoTime();
+        List<Province> hierarchy = locationApiClient.fetchLocationHierarchy();
+        LocationIndex fresh = LocationIndex.of(hierarchy);
+        LocationIndex previous = index != null ? index : LocationIndex.of(List.of());
+        LocationIndex.Diff diff = previous.diff(fresh);
+
+        index = fresh;
+        if (!diff.isEmpty() || !Files.exists(snapshotPath)) {
+            writeSnapshot(hierarchy);
+        }
+
+        return LocationSyncResultDTO.builder()
+                .source("remote")
+                .provinces(fresh.provinceCount())
+                .districts(fresh.districtCount())
+                .wards(fresh.wardCount())
+                .changed(!diff.isEmpty())
+                .provinceChanges(toLevelChange(diff.provinces()))
+                .districtChanges(toLevelChange(diff.districts()))
+                .wardChanges(toLevelChange(diff.wards()))
+                .durationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                .build();
+    }
+
+    // Mặc định tắt ("-"); bật bằng app.locations.refresh-cron khi có nguồn dữ liệu để đối chiếu
+    @Scheduled(cron = "${app.locations.refresh-cron:-}")
+    public void scheduledRefresh() {
+        try {
+            LocationSyncResultDTO result = refresh();
+            if (result.isChanged()) {
+                log.info("Location hierarchy changed: provinces {}, districts {}, wards {}",
+                        result.getProvinceChanges(), result.getDistrictChanges(), result.getWardChanges());
+            }
+        } catch (Exception e) {
+            log.error("Scheduled location refresh failed", e);
+        }
+    }
+
+    // Trả về nguồn đã nạp, null nếu không có snapshot nào
+    private String loadSnapshot() throws IOException {
+        if (Files.isRegularFile(snapshotPath)) {
+            try (InputStream in = Files.newInputStream(snapshotPath)) {
+                index = LocationIndex.of(objectMapper.readValue(in, HIERARCHY_TYPE));
+            }
+            return snapshotPath.toString();
+        }
+        if (bundledSnapshot != null && bundledSnapshot.exists()) {
+            try (InputStream in = bundledSnapshot.getInputStream()) {
+                index = LocationIndex.of(objectMapper.readValue(in, HIERARCHY_TYPE));
+            }
+            return bundledSnapshot.getDescription();
+        }
+        return null;
+    }
+
+    // Ghi ra file tạm rồi đổi tên để không bao giờ để lại snapshot ghi dở
+    private void writeSnapshot(List<Province> hierarchy) {
+        try {
+            Path parent = snapshotPath.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+            objectMapper.writeValue(tmp.toFile(), hierarchy);
+            Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Failed to write location snapshot to {}", snapshotPath, e);
+        }
+    }
+
+    private static LocationSyncResultDTO.LevelChange toLevelChange(LocationIndex.LevelDiff diff) {
+        return LocationSyncResultDTO.LevelChange.builder()
+                .added(diff.added())
+                .removed(diff.removed())
+                .renamed(diff.renamed())
+                .build();
     }
 }
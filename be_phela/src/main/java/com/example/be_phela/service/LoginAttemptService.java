@@ -0,0 +1,187 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.repository.AdminRepository;
+import com.example.be_phela.repository.CustomerRepository;
+import com.example.be_phela.security.SecurityEvent;
+import com.example.be_phela.security.SecurityEventListener;
+import com.example.be_phela.utils.SlidingWindowCounterStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+// Phát hiện brute force trên đăng nhập / quên mật khẩu bằng bộ đếm cửa sổ trượt trong bộ nhớ.
+// Chỉ ghi DB khi một tài khoản vượt ngưỡng khóa tạm thời.
+@Slf4j
+@Service
+public class LoginAttemptService implements SecurityEventListener {
+
+    public enum Scope {
+        LOGIN,
+        PASSWORD_RESET
+    }
+
+    private static final int STRIPES = 64;
+    private static final long REQUEST_WINDOW_MILLIS = Duration.ofMinutes(1).toMillis();
+
+    private final CustomerRepository customerRepository;
+    private final AdminRepository adminRepository;
+    // Chỉ ghi DB trên thread riêng; bộ đếm cập nhật ngay trên thread request
+    private final Executor executor;
+
+    // Số request mỗi IP mỗi phút trên từng nhóm endpoint
+    private final SlidingWindowCounterStore requestsByIp;
+    // Số lần thất bại theo tài khoản và theo IP trong failure-window
+    private final SlidingWindowCounterStore failures;
+
+    private final int loginRequestsPerMinute;
+    private final int resetRequestsPerMinute;
+    private final int maxFailuresPerAccount;
+    private final int maxFailuresPerIp;
+    private final long lockoutMillis;
+
+    // Tài khoản đã được ghi failedLoginAttempts xuống DB, cần reset khi đăng nhập lại thành công
+    private final Set<String> persistedLockouts = ConcurrentHashMap.newKeySet();
+
+    public LoginAttemptService(CustomerRepository customerRepository,
+                               AdminRepository adminRepository,
+                               @Value("${app.security.abuse.login-requests-per-minute:20}") int loginRequestsPerMinute,
+                               @Value("${app.security.abuse.reset-requests-per-minute:5}") int resetRequestsPerMinute,
+                               @Value("${app.security.abuse.max-failures-per-account:5}") int maxFailuresPerAccount,
+                               @Value("${app.security.abuse.max-failures-per-ip:30}") int maxFailuresPerIp,
+                               @Value("${app.security.abuse.failure-window:15m}") Duration failureWindow,
+                               @Value("${app.security.abuse.lockout:15m}") Duration lockout,
+                               MeterRegistry meterRegistry,
+                               @Qualifier("securityExecutor") Executor executor) {
+        this.customerRepository = customerRepository;
+        this.adminRepository = adminRepository;
+        this.executor = executor;
+        this.loginRequestsPerMinute = loginRequestsPerMinute;
+        this.resetRequestsPerMinute = resetRequestsPerMinute;
+        this.maxFailuresPerAccount = maxFailuresPerAccount;
+        this.maxFailuresPerIp = maxFailuresPerIp;
+        this.lockoutMillis = lockout.toMillis();
+        this.requestsByIp = new SlidingWindowCounterStore(REQUEST_WINDOW_MILLIS, STRIPES);
+        this.failures = new SlidingWindowCounterStore(failureWindow.toMillis(), STRIPES);
+
+        Gauge.builder("phela.security.abuse.tracked-keys", this, s -> s.requestsByIp.size() + s.failures.size())
+                .register(meterRegistry);
+    }
+
+    // Gọi trước khi xử lý request; trả về số millis phải chờ, 0 nếu được phép
+    public long acquire(Scope scope, String ip) {
+        long now = System.currentTimeMillis();
+        long blockedUntil = failures.blockedUntil(ipKey(ip), now);
+        if (blockedUntil > 0) {
+            return blockedUntil - now;
+        }
+        int limit = scope == Scope.LOGIN ? loginRequestsPerMinute : resetRequestsPerMinute;
+        double count = requestsByIp.increment(scope.name() + '|' + ip, now);
+        if (count > limit) {
+            // Ước lượng thời gian để số request trong cửa sổ giảm xuống dưới ngưỡng
+            return Math.max(1000L, (long) ((count - limit) / limit * REQUEST_WINDOW_MILLIS));
+        }
+        return 0L;
+    }
+
+    // Số millis tài khoản còn bị khóa tạm thời, 0 nếu không bị khóa
+    public long lockedFor(Scope scope, String realm, String principal) {
+        if (principal == null || principal.isBlank()) {
+            return 0L;
+        }
+        long now = System.currentTimeMillis();
+        long blockedUntil = failures.blockedUntil(accountKey(scope, realm, principal), now);
+        return blockedUntil > 0 ? blockedUntil - now : 0L;
+    }
+
+    public void recordSuccess(Scope scope, String realm, String principal) {
+        String key = accountKey(scope, realm, principal);
+        failures.reset(key);
+        if (persistedLockouts.remove(key)) {
+            executor.execute(() -> persistFailedAttempts(realm, principal, 0));
+        }
+    }
+
+    // Chỉ đăng nhập / OTP sai mới được đếm theo IP và theo tài khoản. Token hết hạn (SPA vẫn gọi API bằng JWT cũ)
+    // không tính, nếu không cả IP / NAT đó sẽ bị chặn đăng nhập.
+    // Đếm đồng bộ (chỉ vài phép toán dưới khóa stripe) để không sự kiện nào bị bỏ khi bị tấn công dồn dập.
+    @Override
+    public void onSecurityEvent(SecurityEvent event) {
+        if (event.type() == SecurityEvent.Type.AUTHENTICATION_FAILURE) {
+            recordFailure(event);
+        }
+    }
+
+    private void recordFailure(SecurityEvent event) {
+        long now = System.currentTimeMillis();
+        recordIpFailure(event.clientIp(), now);
+
+        String principal = event.username();
+        if (principal == null || principal.isBlank() || event.path() == null) {
+            return;
+        }
+        Scope scope = event.path().contains("/forgot-password/") ? Scope.PASSWORD_RESET : Scope.LOGIN;
+        String realm = realmOf(event.path());
+        String key = accountKey(scope, realm, principal);
+        double count = failures.increment(key, now);
+        if (count >= maxFailuresPerAccount && failures.block(key, now + lockoutMillis, now)) {
+            log.warn("Temporarily locking {} {} after {} failed attempts", realm, principal, (int) count);
+            if (scope == Scope.LOGIN && persistedLockouts.add(key)) {
+                int attempts = (int) Math.ceil(count);
+                executor.execute(() -> persistFailedAttempts(realm, principal, attempts));
+            }
+        }
+    }
+
+    private void recordIpFailure(String ip, long now) {
+        if (ip == null) {
+            return;
+        }
+        String key = ipKey(ip);
+        double count = failures.increment(key, now);
+        if (count >= maxFailuresPerIp && failures.block(key, now + lockoutMillis, now)) {
+            log.warn("Temporarily blocking IP {} after {} failed attempts", ip, (int) count);
+        }
+    }
+
+    private void persistFailedAttempts(String realm, String principal, int attempts) {
+        try {
+            if ("admin".equals(realm)) {
+                adminRepository.updateFailedLoginAttempts(principal, attempts);
+            } else {
+                customerRepository.updateFailedLoginAttempts(principal, attempts);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to persist failed login attempts for {} {}", realm, principal, e);
+        }
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        int evicted = requestsByIp.evictIdle(now) + failures.evictIdle(now);
+        if (evicted > 0) {
+            log.debug("Evicted {} idle login attempt counters", evicted);
+        }
+    }
+
+    public static String realmOf(String path) {
+        return path != null && path.startsWith("/auth/admin/") ? "admin" : "customer";
+    }
+
+    private static String accountKey(Scope scope, String realm, String principal) {
+        return scope.name() + '|' + realm + '|' + principal.toLowerCase();
+    }
+
+    private static String ipKey(String ip) {
+        return "IP|" + ip;
+    }
+}
@@ -6,6 +6,7 @@ import com.example.be_phela.repository.NewsRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
@@ -19,12 +20,13 @@ public class NewsService {
 
     private final NewsRepository newsRepository;
     private final FileStorageService fileStorageService;
+    // Upload thumbnail chạy ngoài transaction để không giữ connection DB
+    private final TransactionTemplate transactionTemplate;
 
-    @Transactional
     public NewsResponseDTO createNews(String title, String summary, String content, MultipartFile thumbnail) throws IOException {
-        String thumbnailUrl = null;
+        FileStorageService.StoredImage stored = null;
         if (thumbnail != null && !thumbnail.isEmpty()) {
-            thumbnailUrl = fileStorageService.storeNewsThumbnail(thumbnail);
+            stored = fileStorageService.storeNewsThumbnail(thumbnail);
         }
 
         LocalDateTime now = LocalDateTime.now();
@@ -33,7 +35,9 @@ public class NewsService {
                 .title(title)
                 .summary(summary)
                 .content(content)
-                .thumbnailUrl(thumbnailUrl)
+                .thumbnailUrl(stored != null ? stored.url() : null)
+                .imageThumbUrl(stored != null ? stored.thumbUrl() : null)
+                .imageMediumUrl(stored != null ? stored.mediumUrl() : null)
                 .createdAt(now)
                 .updatedAt(now)
                 .build();
@@ -42,24 +46,35 @@ public class NewsService {
         return mapToResponseDTO(savedNews);
     }
 
-    @Transactional
     public NewsResponseDTO updateNews(String newsId, String title, String summary, String content, MultipartFile thumbnail) throws IOException {
-        News existingNews = newsRepository.findById(newsId)
-                .orElseThrow(() -> new RuntimeException("News not found with id: " + newsId));
+        if (!newsRepository.existsById(newsId)) {
+            throw new RuntimeException("News not found with id: " + newsId);
+        }
 
+        FileStorageService.StoredImage stored = null;
         if (thumbnail != null && !thumbnail.isEmpty()) {
-            String newThumbnailUrl = fileStorageService.storeNewsThumbnail(thumbnail);
-            existingNews.setThumbnailUrl(newThumbnailUrl);
+            stored = fileStorageService.storeNewsThumbnail(thumbnail);
             // Optional: Xóa ảnh cũ trên Cloudinary tại đây nếu cần
         }
 
-        existingNews.setTitle(title);
-        existingNews.setSummary(summary);
-        existingNews.setContent(content);
-        existingNews.setUpdatedAt(LocalDateTime.now());
-
-        News updatedNews = newsRepository.save(existingNews);
-        return mapToResponseDTO(updatedNews);
+        FileStorageService.StoredImage newThumbnail = stored;
+        return transactionTemplate.execute(status -> {
+            News existingNews = newsRepository.findById(newsId)
+                    .orElseThrow(() -> new RuntimeException("News not found with id: " + newsId));
+
+            if (newThumbnail != null) {
+                existingNews.setThumbnailUrl(newThumbnail.url());
+                existingNews.setImageThumbUrl(newThumbnail.thumbUrl());
+                existingNews.setImageMediumUrl(newThumbnail.mediumUrl());
+            }
+            existingNews.setTitle(title);
+            existingNews.setSummary(summary);
+            existingNews.setContent(content);
+            existingNews.setUpdatedAt(LocalDateTime.now());
+
+            News updatedNews = newsRepository.save(existingNews);
+            return mapToResponseDTO(updatedNews);
+        });
     }
 
     @Transactional
@@ -93,6 +108,8 @@ public class NewsService {
                 .summary(news.getSummary())
                 .content(news.getContent())
                 .thumbnailUrl(news.getThumbnailUrl())
+                .imageThumbUrl(news.getImageThumbUrl() != null ? news.getImageThumbUrl() : news.getThumbnailUrl())
+                .imageMediumUrl(news.getImageMediumUrl() != null ? news.getImageMediumUrl() : news.getThumbnailUrl())
                 .createdAt(news.getCreatedAt())
                 .updatedAt(news.getUpdatedAt())
                 .build();
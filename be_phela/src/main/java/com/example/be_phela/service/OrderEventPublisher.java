@@ -0,0 +1,63 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.dto.response.OrderStatusEventDTO;
+import com.example.be_phela.model.Order;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+
+// Đẩy sự kiện trạng thái đơn hàng lên broker STOMP sau khi transaction commit
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderEventPublisher {
+
+    // Màn hình quản lý đơn hàng của nhân viên nghe mọi chi nhánh
+    public static final String ALL_TOPIC = "/topic/orders";
+    public static final String BRANCH_TOPIC_PREFIX = "/topic/orders/branch/";
+    public static final String CUSTOMER_TOPIC_PREFIX = "/topic/orders/customer/";
+
+    public static final String CREATED = "CREATED";
+    public static final String STATUS_CHANGED = "STATUS_CHANGED";
+    public static final String PAYMENT_CONFIRMED = "PAYMENT_CONFIRMED";
+    public static final String REMOVED = "REMOVED";
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    // Gọi bên trong transaction của OrderService; chỉ đọc id nên không khởi tạo proxy lazy
+    public void publish(String type, Order order) {
+        applicationEventPublisher.publishEvent(OrderStatusEventDTO.builder()
+                .type(type)
+                .orderId(order.getOrderId())
+                .orderCode(order.getOrderCode())
+                .customerId(order.getCustomer() != null ? order.getCustomer().getCustomerId() : null)
+                .branchCode(order.getBranch() != null ? order.getBranch().getBranchCode() : null)
+                .status(order.getStatus())
+                .paymentStatus(order.getPaymentStatus())
+                .timestamp(LocalDateTime.now())
+                .build());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void broadcast(OrderStatusEventDTO event) {
+        try {
+            messagingTemplate.convertAndSend(ALL_TOPIC, event);
+            if (event.getBranchCode() != null) {
+                messagingTemplate.convertAndSend(BRANCH_TOPIC_PREFIX + event.getBranchCode(), event);
+            }
+            if (event.getCustomerId() != null) {
+                messagingTemplate.convertAndSend(CUSTOMER_TOPIC_PREFIX + event.getCustomerId(), event);
+            }
+        } catch (Exception e) {
+            // Lỗi đẩy thông báo không được làm hỏng luồng đặt hàng đã commit
+            log.warn("Failed to broadcast order event {} for order {}", event.getType(), event.getOrderCode(), e);
+        }
+    }
+}
@@ -11,14 +11,23 @@ import com.example.be_phela.repository.*;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -31,9 +40,15 @@ public class OrderService implements IOrderService {
     CartRepository cartRepository;
     BranchRepository branchRepository;
     CartService cartService;
+    CartPricingEngine pricingEngine;
     AddressRepository addressRepository;
     CustomerMapper customerMapper;
     AdminRepository adminRepository;
+    RevenueRollupService revenueRollupService;
+    OrderEventPublisher orderEventPublisher;
+    PromotionRedemptionService promotionRedemptionService;
+
+    private static final int MAX_FEED_PAGE_SIZE = 100;
 
     private String generateOrderCode() {
         String code;
@@ -72,14 +87,11 @@ public class OrderService implements IOrderService {
             throw new RuntimeException("This address does not belong to the customer.");
         }
 
-        double totalAmount = cartService.calculateCartTotalFromItems(cart);
-        double shippingFee = cartService.calculateShippingFee(cart.getCartId());
-
-        double totalDiscountFromPromos = cart.getPromotionCarts().stream()
-                .mapToDouble(PromotionCart::getDiscountAmount)
-                .sum();
-
-        double finalAmount = totalAmount + shippingFee - totalDiscountFromPromos;
+        CartPricingEngine.CartPricing pricing = pricingEngine.price(cart);
+        double totalAmount = pricing.subtotal();
+        double shippingFee = pricing.shippingFee();
+        double totalDiscountFromPromos = pricing.discount();
+        double finalAmount = pricing.finalAmount();
 
         Order order = Order.builder()
                 .orderCode(generateOrderCode())
@@ -110,10 +122,16 @@ public class OrderService implements IOrderService {
 
         Order savedOrder = orderRepository.save(order);
 
+        // Giữ lượt dùng khuyến mãi; hết lượt thì rollback cả đơn
+        promotionRedemptionService.redeem(savedOrder, pricing.appliedPromotions().stream()
+                .map(applied -> applied.promotionCart().getPromotion())
+                .toList());
+
         if (orderCreateDTO.getPaymentMethod() == PaymentMethod.COD) {
             cartService.clearCartItems(cart.getCartId());
         }
 
+        orderEventPublisher.publish(OrderEventPublisher.CREATED, savedOrder);
         return convertToResponseDTO(savedOrder);
     }
 
@@ -138,6 +156,7 @@ public class OrderService implements IOrderService {
         }
         order.setUpdatedAt(LocalDateTime.now());
         orderRepository.save(order);
+        orderEventPublisher.publish(OrderEventPublisher.PAYMENT_CONFIRMED, order);
 
         cartRepository.findByCustomer_CustomerId(order.getCustomer().getCustomerId())
             .ifPresent(cart -> cartService.clearCartItems(cart.getCartId()));
@@ -164,9 +183,12 @@ public class OrderService implements IOrderService {
         if (order.getStatus() == OrderStatus.DELIVERED || order.getStatus() == OrderStatus.CANCELLED) {
             throw new RuntimeException("Order cannot be cancelled in current status");
         }
+        transition(order, OrderStatus.CANCELLED);
         order.setStatus(OrderStatus.CANCELLED);
         order.setUpdatedAt(LocalDateTime.now());
         orderRepository.save(order);
+        orderEventPublisher.publish(OrderEventPublisher.STATUS_CHANGED, order);
+        promotionRedemptionService.releaseForOrder(order.getOrderId());
 
         // Hoàn lại điểm nếu đã tích
         if (order.getPaymentStatus() == PaymentStatus.COMPLETED) {
@@ -178,6 +200,14 @@ public class OrderService implements IOrderService {
         checkAndBlockCustomer(order.getCustomer());
     }
 
+    // Trạng thái đã đọc có thể vừa bị request khác đổi (hai nhân viên cùng bấm giao hàng / hủy):
+    // chỉ request chuyển được trạng thái trong DB mới được cộng doanh thu, hoàn điểm, trả khuyến mãi
+    private void transition(Order order, OrderStatus newStatus) {
+        if (orderRepository.transitionStatus(order.getOrderId(), order.getStatus(), newStatus) == 0) {
+            throw new RuntimeException("Order status was changed by another request, please reload.");
+        }
+    }
+
     private void checkAndBlockCustomer(Customer customer) {
         LocalDateTime threeMonthsAgo = LocalDateTime.now().minusMonths(3);
 
@@ -226,6 +256,7 @@ public class OrderService implements IOrderService {
         if (order.getStatus() == OrderStatus.DELIVERED || order.getStatus() == OrderStatus.CANCELLED) {
             throw new RuntimeException("Cannot change status of a completed or cancelled order.");
         }
+        transition(order, newStatus);
 
         order.setStatus(newStatus);
         if (newStatus == OrderStatus.DELIVERED) {
@@ -235,15 +266,34 @@ public class OrderService implements IOrderService {
             }
         }
         orderRepository.save(order);
+        orderEventPublisher.publish(OrderEventPublisher.STATUS_CHANGED, order);
+
+        // Cập nhật bảng tổng hợp doanh thu trong cùng transaction
+        if (newStatus == OrderStatus.DELIVERED) {
+            revenueRollupService.recordDelivered(order);
+        }
     }
 
     @Override
-    @Transactional
-    public List<OrderResponseDTO> getOrdersByCustomerId(String customerId) {
-        List<Order> orders = orderRepository.findByCustomer_CustomerIdOrderByOrderDateDesc(customerId);
-        return orders.stream()
-                .map(this::convertToResponseDTO)
-                .collect(Collectors.toList());
+    @Transactional(readOnly = true)
+    public Page<OrderResponseDTO> getOrdersByCustomerId(String customerId, Pageable pageable) {
+        return loadOrderPage(orderRepository.findOrderIdsByCustomerId(customerId, newestFirst(pageable)));
+    }
+
+    // Đơn mới nhất lên đầu; giới hạn kích thước trang để truy vấn chi tiết luôn có số dòng chặn trên
+    private static Pageable newestFirst(Pageable pageable) {
+        return PageRequest.of(pageable.getPageNumber(), Math.min(pageable.getPageSize(), MAX_FEED_PAGE_SIZE),
+                Sort.by(Sort.Direction.DESC, "orderDate"));
+    }
+
+    // Tải chi tiết cho một trang id đơn hàng: 1 truy vấn id + 1 truy vấn entity graph, giữ nguyên thứ tự trang
+    private Page<OrderResponseDTO> loadOrderPage(Page<String> orderIds) {
+        if (orderIds.isEmpty()) {
+            return orderIds.map(id -> null);
+        }
+        Map<String, Order> ordersById = orderRepository.findAllWithDetailsByOrderIdIn(orderIds.getContent()).stream()
+                .collect(Collectors.toMap(Order::getOrderId, Function.identity(), (a, b) -> a));
+        return orderIds.map(id -> convertToResponseDTO(ordersById.get(id)));
     }
 
     // Helper method: Chuyển đổi từ Order entity sang OrderResponseDTO
@@ -349,7 +399,13 @@ public class OrderService implements IOrderService {
             .orElseThrow(() -> new RuntimeException("Order not found with id: " + orderId));
 
         if (order.getPaymentStatus() == PaymentStatus.AWAITING_PAYMENT) {
+            if (order.getStatus() == OrderStatus.DELIVERED) {
+                revenueRollupService.recordRemoved(order);
+            }
             restoreCartFromOrder(order);
+            // Trả lượt khuyến mãi đã giữ khi tạo đơn, xóa promotion_redemption trước khi xóa đơn
+            promotionRedemptionService.releaseForOrder(order.getOrderId());
+            orderEventPublisher.publish(OrderEventPublisher.REMOVED, order);
             orderRepository.delete(order);
         }
     }
@@ -410,33 +466,86 @@ public class OrderService implements IOrderService {
         cartRepository.save(cart);
     }
 
-    // Lấy danh sách hóa đơn theo trạng thái
+    // Lấy danh sách hóa đơn theo trạng thái (có phân trang)
+    @Override
+    @Transactional(readOnly = true)
+    public Page<OrderResponseDTO> getOrdersByStatus(OrderStatus status, Pageable pageable) {
+        Pageable sorted = newestFirst(pageable);
+        // Chỉ áp dụng logic sắp xếp đặc biệt cho trạng thái CONFIRMED:
+        // ưu tiên các đơn hàng chỉ có 1 sản phẩm lên đầu, sau đó theo ngày đặt
+        Page<String> orderIds = status == OrderStatus.CONFIRMED
+                ? orderRepository.findOrderIdsByStatusSingleItemFirst(status, sorted)
+                : orderRepository.findOrderIdsByStatus(status, sorted);
+        return loadOrderPage(orderIds);
+    }
+
+    // Feed đơn hàng theo trạng thái (và chi nhánh) phân trang bằng con trỏ:
+    // trang N tốn chi phí như trang 1 vì chỉ quét tiếp từ vị trí (orderDate, orderId) cuối cùng
     @Override
-    public List<OrderResponseDTO> getOrdersByStatus(OrderStatus status) {
-        List<Order> orders = orderRepository.findByStatus(status);
-        // Chỉ áp dụng logic sắp xếp đặc biệt cho trạng thái CONFIRMED
-        if (status == OrderStatus.CONFIRMED) {
-            // Sắp xếp danh sách: ưu tiên các đơn hàng chỉ có 1 sản phẩm lên đầu
-            orders.sort((o1, o2) -> {
-                boolean o1HasOneProduct = o1.getOrderItems().size() == 1;
-                boolean o2HasOneProduct = o2.getOrderItems().size() == 1;
-
-                if (o1HasOneProduct && !o2HasOneProduct) {
-                    return -1;
-                } else if (!o1HasOneProduct && o2HasOneProduct) {
-                    return 1;
-                } else {
-                    // Nếu cả hai cùng có 1 sản phẩm hoặc cùng có nhiều sản phẩm,
-                    // có thể sắp xếp phụ theo ngày đặt hàng để đảm bảo tính nhất quán.
-                    // Ở đây tạm giữ nguyên thứ tự tương đối.
-                    return 0;
-                }
-            });
+    @Transactional(readOnly = true)
+    public OrderFeedDTO getOrderFeed(OrderStatus status, String branchCode, String cursor, int size, boolean descending) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_FEED_PAGE_SIZE);
+        FeedCursor position = cursor == null || cursor.isBlank()
+                ? (descending ? FeedCursor.LAST : FeedCursor.FIRST)
+                : FeedCursor.decode(cursor);
+        Limit limit = Limit.of(pageSize + 1);
+        boolean byBranch = branchCode != null && !branchCode.isBlank();
+
+        List<String> orderIds;
+        if (byBranch) {
+            orderIds = descending
+                    ? orderRepository.findFeedIdsByStatusAndBranchDesc(status, branchCode, position.orderDate(), position.orderId(), limit)
+                    : orderRepository.findFeedIdsByStatusAndBranchAsc(status, branchCode, position.orderDate(), position.orderId(), limit);
+        } else {
+            orderIds = descending
+                    ? orderRepository.findFeedIdsByStatusDesc(status, position.orderDate(), position.orderId(), limit)
+                    : orderRepository.findFeedIdsByStatusAsc(status, position.orderDate(), position.orderId(), limit);
         }
 
-        return orders.stream()
+        boolean hasMore = orderIds.size() > pageSize;
+        List<String> pageIds = hasMore ? orderIds.subList(0, pageSize) : orderIds;
+        Map<String, Order> ordersById = pageIds.isEmpty() ? Map.of()
+                : orderRepository.findAllWithDetailsByOrderIdIn(pageIds).stream()
+                        .collect(Collectors.toMap(Order::getOrderId, Function.identity(), (a, b) -> a));
+
+        List<OrderResponseDTO> orders = pageIds.stream()
+                .map(ordersById::get)
+                .filter(java.util.Objects::nonNull)
                 .map(this::convertToResponseDTO)
                 .collect(Collectors.toList());
+
+        String nextCursor = null;
+        if (hasMore && !orders.isEmpty()) {
+            OrderResponseDTO last = orders.get(orders.size() - 1);
+            nextCursor = new FeedCursor(last.getOrderDate(), last.getOrderId()).encode();
+        }
+
+        return OrderFeedDTO.builder()
+                .orders(orders)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    // Con trỏ feed: "orderDate|orderId" mã hóa base64 url-safe
+    private record FeedCursor(LocalDateTime orderDate, String orderId) {
+        static final FeedCursor FIRST = new FeedCursor(LocalDateTime.of(1970, 1, 1, 0, 0), "");
+        static final FeedCursor LAST = new FeedCursor(LocalDateTime.of(9999, 12, 31, 23, 59), "");
+
+        String encode() {
+            String raw = orderDate + "|" + orderId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static FeedCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                return new FeedCursor(LocalDateTime.parse(raw.substring(0, separator)), raw.substring(separator + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid feed cursor");
+            }
+        }
     }
 
     //Lấy thông tin khách hàng từ ID đơn hàng
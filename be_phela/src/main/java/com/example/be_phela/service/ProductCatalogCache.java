@@ -0,0 +1,124 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.dto.response.CategoryResponseDTO;
+import com.example.be_phela.dto.response.ProductResponseDTO;
+import com.example.be_phela.utils.BoundedCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+// Cache đọc danh mục sản phẩm trong bộ nhớ, bị xóa khi admin thay đổi sản phẩm/danh mục
+@Slf4j
+@Component
+public class ProductCatalogCache {
+
+    private final BoundedCache<String, ProductResponseDTO> productById;
+    private final BoundedCache<String, List<ProductResponseDTO>> productLists;
+    private final BoundedCache<String, Page<ProductResponseDTO>> productPages;
+    private final BoundedCache<String, CategoryResponseDTO> categoryByCode;
+    private final BoundedCache<String, Page<CategoryResponseDTO>> categoryPages;
+
+    public ProductCatalogCache(@Value("${app.cache.catalog.max-entries:1000}") int maxEntries,
+                               @Value("${app.cache.catalog.ttl:10m}") Duration ttl,
+                               MeterRegistry meterRegistry) {
+        this.productById = new BoundedCache<>(maxEntries, ttl);
+        this.productLists = new BoundedCache<>(Math.max(16, maxEntries / 10), ttl);
+        this.productPages = new BoundedCache<>(Math.max(16, maxEntries / 10), ttl);
+        this.categoryByCode = new BoundedCache<>(Math.max(16, maxEntries / 10), ttl);
+        this.categoryPages = new BoundedCache<>(Math.max(16, maxEntries / 10), ttl);
+
+        bindMetrics(meterRegistry, "product-by-id", productById);
+        bindMetrics(meterRegistry, "product-lists", productLists);
+        bindMetrics(meterRegistry, "product-pages", productPages);
+        bindMetrics(meterRegistry, "category-by-code", categoryByCode);
+        bindMetrics(meterRegistry, "category-pages", categoryPages);
+    }
+
+    // DTO là @Data (có setter) nên cache chỉ trả ra bản sao: caller sửa kết quả không làm hỏng bản trong cache
+    public ProductResponseDTO product(String productId, Function<String, ProductResponseDTO> loader) {
+        return copy(productById.get(productId, loader));
+    }
+
+    public List<ProductResponseDTO> productList(String key, Function<String, List<ProductResponseDTO>> loader) {
+        return productLists.get(key, loader).stream().map(ProductCatalogCache::copy).toList();
+    }
+
+    public Page<ProductResponseDTO> productPage(String key, Function<String, Page<ProductResponseDTO>> loader) {
+        return productPages.get(key, loader).map(ProductCatalogCache::copy);
+    }
+
+    public CategoryResponseDTO category(String categoryCode, Function<String, CategoryResponseDTO> loader) {
+        return copy(categoryByCode.get(categoryCode, loader));
+    }
+
+    public Page<CategoryResponseDTO> categoryPage(String key, Function<String, Page<CategoryResponseDTO>> loader) {
+        return categoryPages.get(key, loader).map(ProductCatalogCache::copy);
+    }
+
+    // Xóa cache sản phẩm; nếu đang trong transaction thì xóa thêm lần nữa sau khi commit
+    public void invalidateProducts() {
+        runNowAndAfterCommit(() -> {
+            productById.invalidateAll();
+            productLists.invalidateAll();
+            productPages.invalidateAll();
+        });
+    }
+
+    public void invalidateCategories() {
+        runNowAndAfterCommit(() -> {
+            categoryByCode.invalidateAll();
+            categoryPages.invalidateAll();
+        });
+    }
+
+    public void invalidateAll() {
+        invalidateProducts();
+        invalidateCategories();
+    }
+
+    private void runNowAndAfterCommit(Runnable action) {
+        action.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+        log.debug("Product catalog cache invalidated");
+    }
+
+    private static ProductResponseDTO copy(ProductResponseDTO product) {
+        return product == null ? null : product.toBuilder().build();
+    }
+
+    private static CategoryResponseDTO copy(CategoryResponseDTO category) {
+        return category == null ? null : category.toBuilder().build();
+    }
+
+    private static void bindMetrics(MeterRegistry registry, String name, BoundedCache<?, ?> cache) {
+        FunctionCounter.builder("phela.catalog.cache.hits", cache, BoundedCache::hitCount)
+                .tag("cache", name)
+                .register(registry);
+        FunctionCounter.builder("phela.catalog.cache.misses", cache, BoundedCache::missCount)
+                .tag("cache", name)
+                .register(registry);
+        FunctionCounter.builder("phela.catalog.cache.evictions", cache, BoundedCache::evictionCount)
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("phela.catalog.cache.size", cache, BoundedCache::size)
+                .tag("cache", name)
+                .register(registry);
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.be_phela.service;
 
 import com.example.be_phela.dto.request.ProductCreateDTO;
+import com.example.be_phela.dto.response.ImageVariantBackfillDTO;
+import com.example.be_phela.dto.response.ProductResponseDTO;
 import com.example.be_phela.interService.IProductService;
 import com.example.be_phela.mapper.ProductMapper;
 import com.example.be_phela.model.Category;
@@ -14,12 +16,20 @@ import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Service
@@ -30,6 +40,15 @@ public class ProductService implements IProductService {
     CategoryRepository categoryRepository;
     ProductMapper productMapper;
     FileStorageService fileStorageService;
+    ProductCatalogCache productCatalogCache;
+    // Upload ảnh chạy ngoài transaction, phần ghi DB mở transaction riêng sau đó
+    TransactionTemplate transactionTemplate;
+    // Thread điều phối backfill, tách khỏi uploadExecutor vì nó chờ các ảnh đang upload trên pool đó
+    ThreadPoolTaskExecutor backfillExecutor;
+    ThreadPoolTaskExecutor uploadExecutor;
+    AtomicBoolean backfillRunning = new AtomicBoolean();
+    AtomicReference<ImageVariantBackfillDTO> lastBackfill =
+            new AtomicReference<>(ImageVariantBackfillDTO.builder().build());
 
     // Tạo mã sản phẩm
     private String generateProductCode() {
@@ -43,54 +62,76 @@ public class ProductService implements IProductService {
 
     // Thêm sản phẩm mới
     @Override
-    @Transactional
     public Product createProduct(ProductCreateDTO productDTO, String categoryCode, MultipartFile image) throws IOException {
         Category category = categoryRepository.findByCategoryCode(categoryCode)
                 .orElseThrow(() -> new RuntimeException("Category not found with code: " + categoryCode));
 
-        // Upload ảnh lên Cloudinary và lấy URL
+        // Upload ảnh lên Cloudinary và lấy URL, không giữ connection DB trong lúc chờ
+        FileStorageService.StoredImage stored = null;
         if (image != null && !image.isEmpty()) {
             log.info("Uploading image for new product...");
-            String imageUrl = fileStorageService.storeFile(image);
-            log.info("Image URL received: {}", imageUrl);
-            productDTO.setImageUrl(imageUrl);
+            stored = fileStorageService.storeFile(image);
+            log.info("Image URL received: {}", stored.url());
+            productDTO.setImageUrl(stored.url());
         } else {
             log.debug("No image provided for new product.");
         }
 
-        Product product = productMapper.toProduct(productDTO);
-        product.setProductCode(generateProductCode());
-        product.setImageUrl(productDTO.getImageUrl());
-        product.setCategory(category);
-        product.setStatus(ProductStatus.SHOW); // Mặc định trạng thái là SHOW khi tạo mới
-        return productRepository.save(product);
+        FileStorageService.StoredImage variants = stored;
+        return transactionTemplate.execute(status -> {
+            Product product = productMapper.toProduct(productDTO);
+            product.setProductCode(generateProductCode());
+            product.setImageUrl(productDTO.getImageUrl());
+            if (variants != null) {
+                product.setImageThumbUrl(variants.thumbUrl());
+                product.setImageMediumUrl(variants.mediumUrl());
+            }
+            product.setCategory(category);
+            product.setStatus(ProductStatus.SHOW); // Mặc định trạng thái là SHOW khi tạo mới
+            Product savedProduct = productRepository.save(product);
+            productCatalogCache.invalidateProducts();
+            return savedProduct;
+        });
     }
 
     // Cập nhật sản phẩm
     @Override
-    @Transactional
     public Product updateProduct(String productId, ProductCreateDTO productDTO, String categoryCode, MultipartFile image) throws IOException {
-        Product existingProduct = productRepository.findById(productId)
-                .orElseThrow(() -> new RuntimeException("Product not found with id: " + productId));
-
+        if (!productRepository.existsById(productId)) {
+            throw new RuntimeException("Product not found with id: " + productId);
+        }
         Category category = categoryRepository.findByCategoryCode(categoryCode)
                 .orElseThrow(() -> new RuntimeException("Category not found with code: " + categoryCode));
 
-
+        FileStorageService.StoredImage stored = null;
         if (image != null && !image.isEmpty()) {
-            String newImageUrl = fileStorageService.storeFile(image);
-            productDTO.setImageUrl(newImageUrl);
-        } else if (productDTO.getImageUrl() != null) {
-            productDTO.setImageUrl(productDTO.getImageUrl());
+            stored = fileStorageService.storeFile(image);
+            productDTO.setImageUrl(stored.url());
         }
 
-        existingProduct.setProductName(productDTO.getProductName());
-        existingProduct.setDescription(productDTO.getDescription());
-        existingProduct.setOriginalPrice(productDTO.getOriginalPrice() != null ? productDTO.getOriginalPrice().doubleValue() : existingProduct.getOriginalPrice());
-        existingProduct.setImageUrl(productDTO.getImageUrl());
-        existingProduct.setCategory(category);
+        FileStorageService.StoredImage variants = stored;
+        return transactionTemplate.execute(status -> {
+            Product existingProduct = productRepository.findById(productId)
+                    .orElseThrow(() -> new RuntimeException("Product not found with id: " + productId));
+
+            existingProduct.setProductName(productDTO.getProductName());
+            existingProduct.setDescription(productDTO.getDescription());
+            existingProduct.setOriginalPrice(productDTO.getOriginalPrice() != null ? productDTO.getOriginalPrice().doubleValue() : existingProduct.getOriginalPrice());
+            if (variants != null) {
+                existingProduct.setImageThumbUrl(variants.thumbUrl());
+                existingProduct.setImageMediumUrl(variants.mediumUrl());
+            } else if (!Objects.equals(existingProduct.getImageUrl(), productDTO.getImageUrl())) {
+                // Đổi sang URL ảnh khác không qua upload thì các bản thu nhỏ cũ không còn đúng
+                existingProduct.setImageThumbUrl(null);
+                existingProduct.setImageMediumUrl(null);
+            }
+            existingProduct.setImageUrl(productDTO.getImageUrl());
+            existingProduct.setCategory(category);
 
-        return productRepository.save(existingProduct);
+            Product savedProduct = productRepository.save(existingProduct);
+            productCatalogCache.invalidateProducts();
+            return savedProduct;
+        });
     }
 
     // Chuyển trạng thái ẩn/hiện
@@ -101,7 +142,9 @@ public class ProductService implements IProductService {
                 .orElseThrow(() -> new RuntimeException("Product not found with id: " + productId));
 
         product.setStatus(product.getStatus() == ProductStatus.SHOW ? ProductStatus.HIDE : ProductStatus.SHOW);
-        return productRepository.save(product);
+        Product savedProduct = productRepository.save(product);
+        productCatalogCache.invalidateProducts();
+        return savedProduct;
     }
 
     // Lọc sản phẩm theo danh mục
@@ -123,7 +166,7 @@ public class ProductService implements IProductService {
             throw new RuntimeException("Cannot delete product with existing orders or cart items");
         }
         productRepository.delete(product);
-
+        productCatalogCache.invalidateProducts();
     }
 
     @Override
@@ -171,6 +214,115 @@ public class ProductService implements IProductService {
         return productRepository.findByCategory_CategoryCode(category.getCategoryCode(), pageable);
     }
 
+    // Các phương thức đọc cho storefront, phục vụ từ cache danh mục
+    @Override
+    public Page<ProductResponseDTO> getAllProductResponses(Pageable pageable) {
+        return productCatalogCache.productPage("all:" + pageKey(pageable),
+                key -> productRepository.findAll(pageable).map(productMapper::toProductResponseDTO));
+    }
+
+    @Override
+    public ProductResponseDTO getProductResponseById(String productId) {
+        return productCatalogCache.product(productId,
+                key -> productMapper.toProductResponseDTO(getProductById(productId)));
+    }
 
+    @Override
+    public List<ProductResponseDTO> getProductResponsesByCategory(String categoryCode) {
+        return productCatalogCache.productList("category:" + categoryCode,
+                key -> getProductsByCategory(categoryCode).stream()
+                        .map(productMapper::toProductResponseDTO)
+                        .toList());
+    }
 
+    @Override
+    public List<ProductResponseDTO> getProductResponsesByStatus(ProductStatus status) {
+        return productCatalogCache.productList("status:" + status,
+                key -> getProductsByStatus(status).stream()
+                        .map(productMapper::toProductResponseDTO)
+                        .toList());
+    }
+
+    // Chỉ một lần backfill chạy tại một thời điểm; false nếu đang có lần chạy khác
+    @Override
+    public boolean startImageVariantBackfill() {
+        if (!backfillRunning.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    lastBackfill.set(backfillImageVariants());
+                } catch (RuntimeException e) {
+                    log.error("Image variant backfill failed", e);
+                } finally {
+                    backfillRunning.set(false);
+                }
+            }, backfillExecutor);
+        } catch (RuntimeException e) {
+            backfillRunning.set(false);
+            throw e;
+        }
+        return true;
+    }
+
+    @Override
+    public ImageVariantBackfillDTO getImageVariantBackfillStatus() {
+        return lastBackfill.get().toBuilder().running(backfillRunning.get()).build();
+    }
+
+    // Tạo bản thu nhỏ cho các sản phẩm cũ. Mỗi đợt chỉ đưa vào uploadExecutor số ảnh bằng số thread của pool,
+    // để hàng đợi không đầy (CallerRunsPolicy) và thời gian chờ của mỗi ảnh không tính cả lúc xếp hàng
+    ImageVariantBackfillDTO backfillImageVariants() {
+        long start = System.nanoTime();
+        List<Product> candidates = productRepository.findByImageUrlIsNotNullAndImageThumbUrlIsNull();
+        int batchSize = Math.max(1, uploadExecutor.getCorePoolSize());
+
+        int updated = 0;
+        int skipped = 0;
+        int failed = 0;
+        List<CompletableFuture<FileStorageService.StoredImage>> futures = new ArrayList<>(batchSize);
+        for (int i = 0; i < candidates.size(); i++) {
+            if (i % batchSize == 0) {
+                futures.clear();
+                for (Product product : candidates.subList(i, Math.min(i + batchSize, candidates.size()))) {
+                    futures.add(fileStorageService.generateVariantsAsync(product.getImageUrl(), "products"));
+                }
+            }
+            Product product = candidates.get(i);
+            try {
+                FileStorageService.StoredImage variants = fileStorageService.await(futures.get(i % batchSize));
+                if (variants.thumbUrl() == null && variants.mediumUrl() == null) {
+                    skipped++;
+                } else if (productRepository.updateImageVariants(product.getProductId(), product.getImageUrl(),
+                        variants.thumbUrl(), variants.mediumUrl()) > 0) {
+                    updated++;
+                } else {
+                    skipped++;
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not generate image variants for product {}", product.getProductCode(), e);
+                failed++;
+            }
+        }
+        if (updated > 0) {
+            productCatalogCache.invalidateProducts();
+        }
+
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Image variant backfill: {} candidates, {} updated, {} skipped, {} failed in {} ms",
+                candidates.size(), updated, skipped, failed, durationMillis);
+        return ImageVariantBackfillDTO.builder()
+                .candidates(candidates.size())
+                .updated(updated)
+                .skipped(skipped)
+                .failed(failed)
+                .durationMillis(durationMillis)
+                .imagesPerSecond(durationMillis > 0 ? candidates.size() * 1000.0 / durationMillis : 0)
+                .build();
+    }
+
+    private String pageKey(Pageable pageable) {
+        return pageable.getPageNumber() + ":" + pageable.getPageSize() + ":" + pageable.getSort();
+    }
 }
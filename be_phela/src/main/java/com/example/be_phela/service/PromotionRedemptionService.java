@@ -0,0 +1,250 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.model.Order;
+import com.example.be_phela.model.Promotion;
+import com.example.be_phela.model.PromotionRedemption;
+import com.example.be_phela.repository.PromotionRedemptionRepository;
+import com.example.be_phela.repository.PromotionRepository;
+import com.example.be_phela.utils.PromotionIndex;
+import com.example.be_phela.utils.RedemptionCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Giới hạn lượt dùng khuyến mãi (tổng và theo khách hàng) khi tạo đơn.
+// Giới hạn được bảo đảm trong DB, đúng cả khi chạy nhiều instance. Khuyến mãi có giới hạn được giữ lượt trong
+// một transaction ngắn riêng: câu UPDATE có điều kiện trên promotion.redemption_count giữ lượt tổng, đếm
+// promotion_redemption của khách bằng locking read rồi ghi dòng promotion_redemption, commit ngay nên dòng
+// promotion không bị khóa suốt transaction tạo đơn. Đơn rollback thì lượt được trả trong một transaction khác;
+// lượt của đơn không còn tồn tại được dọn khi khởi động. Khuyến mãi không giới hạn chỉ ghi dòng lịch sử trong
+// transaction của đơn, không đụng tới dòng promotion. Bộ đếm trong bộ nhớ chỉ để từ chối sớm khi đã hết lượt.
+@Slf4j
+@Service
+@Lazy(false)
+public class PromotionRedemptionService {
+
+    // Chỉ dọn lượt giữ đủ cũ để không đụng tới đơn đang được tạo trên instance khác
+    private static final Duration ORPHAN_AGE = Duration.ofMinutes(10);
+
+    private final PromotionRedemptionRepository redemptionRepository;
+    private final PromotionRepository promotionRepository;
+    // Job gọi nội bộ không đi qua proxy nên mở transaction bằng template
+    private final TransactionTemplate transactionTemplate;
+    // Transaction riêng cho việc giữ và trả lượt, tách khỏi transaction của đơn hàng
+    private final TransactionTemplate separateTransaction;
+
+    // Bộ đếm kiểm tra sớm của instance này; có thể lệch với DB khi chạy nhiều instance
+    private final ConcurrentHashMap<String, RedemptionCounter> counters = new ConcurrentHashMap<>();
+
+    public PromotionRedemptionService(PromotionRedemptionRepository redemptionRepository,
+                                      PromotionRepository promotionRepository,
+                                      TransactionTemplate transactionTemplate) {
+        this.redemptionRepository = redemptionRepository;
+        this.promotionRepository = promotionRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.separateTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager(), transactionTemplate);
+        this.separateTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // Gọi trong transaction tạo đơn sau khi đơn đã được lưu; hết lượt thì ném lỗi để rollback cả đơn.
+    // Lượt đã giữ được trả lại nếu transaction rollback.
+    public void redeem(Order order, List<Promotion> promotions) {
+        if (promotions.isEmpty()) {
+            return;
+        }
+        String customerId = order.getCustomer().getCustomerId();
+        List<RedemptionCounter> acquired = new ArrayList<>(promotions.size());
+        for (Promotion promotion : promotions) {
+            RedemptionCounter counter = counter(promotion.getPromotionId());
+            if (!counter.tryAcquire(customerId, promotion.getMaxRedemptions(), promotion.getMaxRedemptionsPerCustomer())) {
+                acquired.forEach(c -> c.release(customerId));
+                throw exhausted(promotion, customerId);
+            }
+            acquired.add(counter);
+        }
+
+        List<Promotion> capped = promotions.stream().filter(PromotionRedemptionService::isCapped).toList();
+        try {
+            if (!capped.isEmpty()) {
+                reserve(order.getOrderId(), customerId, capped);
+            }
+        } catch (RuntimeException e) {
+            acquired.forEach(c -> c.release(customerId));
+            throw e;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        if (!capped.isEmpty()) {
+                            giveBack(order.getOrderId());
+                        }
+                        acquired.forEach(c -> c.release(customerId));
+                    }
+                }
+            });
+        }
+
+        List<Promotion> unlimited = promotions.stream().filter(promotion -> !isCapped(promotion)).toList();
+        if (!unlimited.isEmpty()) {
+            redemptionRepository.saveAll(redemptions(order.getOrderId(), customerId, unlimited));
+        }
+    }
+
+    // Giữ lượt của các khuyến mãi có giới hạn rồi commit ngay; hết lượt thì rollback mọi lượt vừa giữ
+    private void reserve(String orderId, String customerId, List<Promotion> capped) {
+        // Sắp theo id để các đơn luôn khóa dòng promotion theo cùng thứ tự
+        List<Promotion> ordered = capped.stream().sorted(Comparator.comparing(Promotion::getPromotionId)).toList();
+        separateTransaction.executeWithoutResult(status -> {
+            for (Promotion promotion : ordered) {
+                boolean granted = promotionRepository.incrementRedemptionCount(promotion.getPromotionId()) > 0
+                        && (promotion.getMaxRedemptionsPerCustomer() == null
+                        || redemptionRepository.countByPromotionAndCustomerForShare(promotion.getPromotionId(), customerId)
+                        < promotion.getMaxRedemptionsPerCustomer());
+                if (!granted) {
+                    // Instance khác đã dùng các lượt còn lại: nạp lại bộ đếm từ DB ở lần dùng sau
+                    counters.remove(promotion.getPromotionId());
+                    throw exhausted(promotion, customerId);
+                }
+            }
+            redemptionRepository.saveAll(redemptions(orderId, customerId, ordered));
+        });
+    }
+
+    // Đơn không được tạo: trả các lượt đã commit; thất bại thì lượt được dọn khi khởi động lại
+    private void giveBack(String orderId) {
+        try {
+            separateTransaction.executeWithoutResult(status -> releaseRedemptions(orderId));
+        } catch (RuntimeException e) {
+            log.error("Giving back promotion redemptions of order {} failed", orderId, e);
+        }
+    }
+
+    // Gọi trong transaction hủy đơn: trả lượt trong DB, xóa các lượt của đơn và trả lại bộ đếm sau khi commit
+    public void releaseForOrder(String orderId) {
+        List<PromotionRedemption> redemptions = releaseRedemptions(orderId);
+        // Bộ đếm chưa nạp thì không cần trả, lần nạp sau đọc từ DB đã xóa các dòng này
+        Map<PromotionRedemption, RedemptionCounter> loaded = new HashMap<>();
+        for (PromotionRedemption redemption : redemptions) {
+            RedemptionCounter counter = counters.get(redemption.getPromotionId());
+            if (counter != null) {
+                loaded.put(redemption, counter);
+            }
+        }
+        Runnable release = () -> loaded.forEach((redemption, counter) -> counter.release(redemption.getCustomerId()));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    release.run();
+                }
+            });
+        } else {
+            release.run();
+        }
+    }
+
+    // Giảm redemption_count của khuyến mãi có giới hạn và xóa các dòng promotion_redemption của đơn
+    private List<PromotionRedemption> releaseRedemptions(String orderId) {
+        List<PromotionRedemption> redemptions = redemptionRepository.findByOrderId(orderId);
+        if (redemptions.isEmpty()) {
+            return redemptions;
+        }
+        Set<String> capped = promotionRepository.findAllById(redemptions.stream()
+                        .map(PromotionRedemption::getPromotionId).toList()).stream()
+                .filter(PromotionRedemptionService::isCapped)
+                .map(Promotion::getPromotionId)
+                .collect(Collectors.toSet());
+        // Khóa dòng promotion trước rồi mới xóa promotion_redemption, cùng thứ tự với lúc giữ lượt
+        redemptions.stream()
+                .map(PromotionRedemption::getPromotionId)
+                .filter(capped::contains)
+                .sorted()
+                .forEach(promotionRepository::decrementRedemptionCount);
+        redemptionRepository.deleteByOrderId(orderId);
+        return redemptions;
+    }
+
+    // Kiểm tra nhanh khi áp mã vào giỏ hàng; khuyến mãi không giới hạn thì không cần nạp bộ đếm
+    public boolean isExhausted(PromotionIndex.Entry promotion, String customerId) {
+        if (promotion.maxRedemptions() == null && promotion.maxRedemptionsPerCustomer() == null) {
+            return false;
+        }
+        return counter(promotion.promotionId())
+                .isExhausted(customerId, promotion.maxRedemptions(), promotion.maxRedemptionsPerCustomer());
+    }
+
+    // Dọn lượt giữ của đơn không còn tồn tại rồi đặt lại redemption_count theo số dòng promotion_redemption
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        try {
+            Integer orphaned = transactionTemplate.execute(status ->
+                    redemptionRepository.deleteOrphaned(LocalDateTime.now().minus(ORPHAN_AGE)));
+            Integer updated = transactionTemplate.execute(status -> promotionRepository.reconcileRedemptionCounts());
+            log.info("Removed {} orphaned redemptions, reconciled redemption count of {} promotions", orphaned, updated);
+        } catch (Exception e) {
+            log.error("Reconciling promotion redemption counts failed", e);
+        }
+    }
+
+    // Khuyến mãi không giới hạn không tăng redemption_count khi tạo đơn; khi được đặt giới hạn thì đếm lại từ DB
+    public void reconcile(Promotion promotion) {
+        if (isCapped(promotion)) {
+            promotionRepository.reconcileRedemptionCount(promotion.getPromotionId());
+        }
+    }
+
+    private static boolean isCapped(Promotion promotion) {
+        return promotion.getMaxRedemptions() != null || promotion.getMaxRedemptionsPerCustomer() != null;
+    }
+
+    private static List<PromotionRedemption> redemptions(String orderId, String customerId, List<Promotion> promotions) {
+        return promotions.stream()
+                .map(promotion -> PromotionRedemption.builder()
+                        .promotionId(promotion.getPromotionId())
+                        .customerId(customerId)
+                        .orderId(orderId)
+                        .build())
+                .toList();
+    }
+
+    private static RuntimeException exhausted(Promotion promotion, String customerId) {
+        log.warn("Promotion {} has no redemptions left for customer {}", promotion.getPromotionCode(), customerId);
+        return new RuntimeException("Khuyến mãi " + promotion.getPromotionCode() + " đã hết lượt sử dụng");
+    }
+
+    private RedemptionCounter counter(String promotionId) {
+        return counters.computeIfAbsent(promotionId, this::load);
+    }
+
+    private RedemptionCounter load(String promotionId) {
+        Map<String, Integer> perCustomer = new HashMap<>();
+        int total = 0;
+        for (Object[] row : redemptionRepository.countByCustomer(promotionId)) {
+            int count = ((Number) row[1]).intValue();
+            perCustomer.put((String) row[0], count);
+            total += count;
+        }
+        log.debug("Loaded {} redemptions of promotion {}", total, promotionId);
+        return new RedemptionCounter(total, perCustomer);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.model.enums.PromotionStatus;
+import com.example.be_phela.repository.PromotionRepository;
+import com.example.be_phela.utils.PromotionIndex;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Danh sách khuyến mãi ACTIVE trong bộ nhớ; đọc khuyến mãi và kiểm tra khi áp dụng vào giỏ hàng không truy vấn DB.
+// Hiệu lực được tính theo thời gian lúc đọc, job định kỳ chỉ đồng bộ trạng thái EXPIRED xuống DB theo lô.
+@Slf4j
+@Service
+@Lazy(false)
+public class PromotionRegistry {
+
+    private final PromotionRepository promotionRepository;
+    // Job gọi nội bộ không đi qua proxy nên mở transaction bằng template
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile PromotionIndex index = PromotionIndex.empty();
+    private volatile boolean loaded;
+
+    public PromotionRegistry(PromotionRepository promotionRepository,
+                             TransactionTemplate transactionTemplate,
+                             MeterRegistry meterRegistry) {
+        this.promotionRepository = promotionRepository;
+        this.transactionTemplate = transactionTemplate;
+        Gauge.builder("phela.promotions.active", this, r -> r.index.size())
+                .register(meterRegistry);
+    }
+
+    // null nếu mã không tồn tại, không ACTIVE hoặc chưa/hết hiệu lực tại thời điểm time
+    public PromotionIndex.Entry findEffective(String promotionCode, LocalDateTime time) {
+        PromotionIndex.Entry entry = current().get(promotionCode);
+        return entry != null && entry.isEffectiveAt(time) ? entry : null;
+    }
+
+    public List<PromotionIndex.Entry> effectiveAt(LocalDateTime time) {
+        return current().effectiveAt(time);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.error("Loading active promotions failed, will retry on first read", e);
+        }
+    }
+
+    // Nạp lại toàn bộ, đồng thời nhận các thay đổi từ instance khác
+    @Scheduled(fixedDelayString = "${app.promotions.reload-interval:10m}", initialDelayString = "${app.promotions.reload-interval:10m}")
+    public synchronized void reload() {
+        LocalDateTime now = LocalDateTime.now();
+        index = PromotionIndex.of(promotionRepository.findByStatus(PromotionStatus.ACTIVE).stream()
+                .map(PromotionIndex.Entry::of)
+                .toList());
+        loaded = true;
+        log.info("Loaded {} active promotions, next start/end at {}", index.size(), index.nextBoundaryAfter(now));
+    }
+
+    // Đọc lại một khuyến mãi sau khi admin sửa; chạy tuần tự nên bản đọc sau cùng luôn là bản mới nhất trong DB
+    public synchronized void refresh(String promotionId) {
+        index = promotionRepository.findById(promotionId)
+                .map(promotion -> index.with(PromotionIndex.Entry.of(promotion)))
+                .orElseGet(() -> index.without(promotionId));
+    }
+
+    // Cập nhật sau khi transaction của admin commit để không đưa thay đổi chưa commit (hoặc bị rollback) vào bộ nhớ
+    public void refreshAfterCommit(String promotionId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    refresh(promotionId);
+                }
+            });
+        } else {
+            refresh(promotionId);
+        }
+    }
+
+    // Chỉ ghi DB khi có khuyến mãi vừa qua endDate: chuyển tất cả sang EXPIRED bằng một câu UPDATE
+    @Scheduled(fixedDelayString = "${app.promotions.lifecycle-check-interval:15s}")
+    public void expireEnded() {
+        LocalDateTime now = LocalDateTime.now();
+        if (!current().hasEndedAt(now)) {
+            return;
+        }
+        try {
+            Integer expired = transactionTemplate.execute(status -> promotionRepository.expireEndedBefore(now));
+            log.info("Expired {} promotions ended at or before {}", expired, now);
+            reload();
+        } catch (Exception e) {
+            log.error("Expiring ended promotions failed", e);
+        }
+    }
+
+    private PromotionIndex current() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    reload();
+                }
+            }
+        }
+        return index;
+    }
+}
@@ -25,6 +25,8 @@ import java.util.stream.Collectors;
 public class PromotionService implements IPromotionService {
     PromotionRepository promotionRepository;
     PromotionMapper promotionMapper;
+    PromotionRegistry promotionRegistry;
+    PromotionRedemptionService promotionRedemptionService;
 
     private String generatePromotionCode() {
         long count = promotionRepository.count();
@@ -43,6 +45,7 @@ public class PromotionService implements IPromotionService {
         Promotion promotion = promotionMapper.toPromotion(createDTO);
         promotion.setPromotionCode(generatePromotionCode());
         Promotion savedPromotion = promotionRepository.save(promotion);
+        promotionRegistry.refreshAfterCommit(savedPromotion.getPromotionId());
         return promotionMapper.toResponseDTO(savedPromotion);
     }
 
@@ -59,6 +62,9 @@ public class PromotionService implements IPromotionService {
 
         promotionMapper.updatePromotionFromDTO(createDTO, promotion);
         Promotion updatedPromotion = promotionRepository.save(promotion);
+        // Khuyến mãi có thể vừa được đặt giới hạn nên đếm lại lượt đã dùng
+        promotionRedemptionService.reconcile(updatedPromotion);
+        promotionRegistry.refreshAfterCommit(promotionId);
         return promotionMapper.toResponseDTO(updatedPromotion);
     }
 
@@ -69,6 +75,7 @@ public class PromotionService implements IPromotionService {
                 .orElseThrow(() -> new RuntimeException("Promotion not found with id: " + promotionId));
         promotion.setStatus(PromotionStatus.INACTIVE); // Đặt trạng thái INACTIVE thay vì xóa vật lý
         promotionRepository.save(promotion);
+        promotionRegistry.refreshAfterCommit(promotionId);
     }
 
     @Override
@@ -85,25 +92,10 @@ public class PromotionService implements IPromotionService {
         Page<Promotion> promotions = promotionRepository.findAll(pageable);
         return promotions.map(promotionMapper::toResponseDTO);
     }
+    // Đọc từ PromotionRegistry, không truy vấn DB; việc chuyển sang EXPIRED do job của registry đảm nhiệm
     @Override
-    @Transactional(readOnly = true)
     public List<PromotionResponseDTO> getActivePromotions() {
-        LocalDateTime now = LocalDateTime.now();
-
-        // Lấy các khuyến mãi ACTIVE và còn hạn
-        List<Promotion> activePromotions = promotionRepository.findByStatusAndStartDateBeforeAndEndDateAfter(
-                PromotionStatus.ACTIVE, now, now);
-
-        // Kiểm tra và cập nhật trạng thái tự động
-        List<Promotion> allPromotions = promotionRepository.findAll();
-        for (Promotion promotion : allPromotions) {
-            if (promotion.getStatus() == PromotionStatus.ACTIVE && now.isAfter(promotion.getEndDate())) {
-                promotion.setStatus(PromotionStatus.EXPIRED);
-                promotionRepository.save(promotion);
-            }
-        }
-
-        return activePromotions.stream()
+        return promotionRegistry.effectiveAt(LocalDateTime.now()).stream()
                 .map(promotionMapper::toResponseDTO)
                 .collect(Collectors.toList());
     }
@@ -0,0 +1,175 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.dto.response.RevenueReportDTO;
+import com.example.be_phela.dto.response.RevenueRollupCheckDTO;
+import com.example.be_phela.model.Order;
+import com.example.be_phela.model.RevenueDailyRollup;
+import com.example.be_phela.model.enums.OrderStatus;
+import com.example.be_phela.repository.OrderRepository;
+import com.example.be_phela.repository.RevenueDailyRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Bảng tổng hợp doanh thu theo ngày/chi nhánh, cập nhật tăng dần khi đơn chuyển sang DELIVERED
+@Slf4j
+@Service
+@Lazy(false)
+@RequiredArgsConstructor
+public class RevenueRollupService {
+
+    private final OrderRepository orderRepository;
+    private final RevenueDailyRollupRepository rollupRepository;
+    // Các job gọi nội bộ không đi qua proxy nên mở transaction bằng template
+    private final TransactionTemplate transactionTemplate;
+
+    // Sai số cho phép khi so sánh doanh thu (kiểu double)
+    private static final double REVENUE_TOLERANCE = 0.01;
+    private static final int NIGHTLY_CHECK_DAYS = 7;
+
+    // Gọi trong cùng transaction với việc cập nhật trạng thái đơn
+    public void recordDelivered(Order order) {
+        rollupRepository.upsertIncrement(
+                order.getOrderDate().toLocalDate(),
+                order.getBranch().getBranchCode(),
+                order.getFinalAmount(),
+                1L);
+    }
+
+    // Trừ lại khi một đơn đã DELIVERED bị xóa
+    public void recordRemoved(Order order) {
+        rollupRepository.upsertIncrement(
+                order.getOrderDate().toLocalDate(),
+                order.getBranch().getBranchCode(),
+                -order.getFinalAmount(),
+                -1L);
+    }
+
+    @Transactional(readOnly = true)
+    public List<RevenueReportDTO.DailyData> getDailyData(LocalDate startDate, LocalDate endDate) {
+        return rollupRepository.sumRevenueAndOrderCountByDate(startDate, endDate).stream()
+                .map(r -> RevenueReportDTO.DailyData.builder()
+                        .date(r[0].toString())
+                        .revenue(r[1] != null ? ((Number) r[1]).doubleValue() : 0.0)
+                        .orderCount(r[2] != null ? ((Number) r[2]).longValue() : 0L)
+                        .build())
+                .toList();
+    }
+
+    // Dựng lại bảng tổng hợp cho khoảng ngày từ dữ liệu đơn hàng gốc
+    @Transactional
+    public int rebuild(LocalDate startDate, LocalDate endDate) {
+        rollupRepository.deleteByRollupDateBetween(startDate, endDate);
+
+        List<RevenueDailyRollup> rollups = orderRepository.findRevenueAndOrderCountByDateRangeAndBranch(
+                        startDate.atStartOfDay(), endDate.atTime(LocalTime.MAX), OrderStatus.DELIVERED)
+                .stream()
+                .map(r -> RevenueDailyRollup.builder()
+                        .rollupDate(((Date) r[0]).toLocalDate())
+                        .branchCode((String) r[1])
+                        .revenue(r[2] != null ? ((Number) r[2]).doubleValue() : 0.0)
+                        .orderCount(r[3] != null ? ((Number) r[3]).longValue() : 0L)
+                        .build())
+                .toList();
+        rollupRepository.saveAll(rollups);
+
+        log.info("Rebuilt revenue rollup from {} to {}: {} rows", startDate, endDate, rollups.size());
+        return rollups.size();
+    }
+
+    @Transactional
+    public int rebuildAll() {
+        return orderRepository.findEarliestOrderDateByStatus(OrderStatus.DELIVERED)
+                .map(earliest -> rebuild(earliest.toLocalDate(), LocalDate.now()))
+                .orElse(0);
+    }
+
+    // So sánh bảng tổng hợp với truy vấn trực tiếp trên bảng orders
+    @Transactional(readOnly = true)
+    public RevenueRollupCheckDTO verify(LocalDate startDate, LocalDate endDate) {
+        Map<LocalDate, double[]> live = new TreeMap<>();
+        orderRepository.findRevenueAndOrderCountByDateRange(
+                        startDate.atStartOfDay(), endDate.atTime(LocalTime.MAX), OrderStatus.DELIVERED)
+                .forEach(r -> live.put(((Date) r[0]).toLocalDate(), new double[]{
+                        r[1] != null ? ((Number) r[1]).doubleValue() : 0.0,
+                        r[2] != null ? ((Number) r[2]).longValue() : 0L}));
+
+        Map<LocalDate, double[]> rolled = new TreeMap<>();
+        rollupRepository.sumRevenueAndOrderCountByDate(startDate, endDate)
+                .forEach(r -> rolled.put((LocalDate) r[0], new double[]{
+                        r[1] != null ? ((Number) r[1]).doubleValue() : 0.0,
+                        r[2] != null ? ((Number) r[2]).longValue() : 0L}));
+
+        TreeSet<LocalDate> dates = new TreeSet<>(live.keySet());
+        dates.addAll(rolled.keySet());
+
+        List<RevenueRollupCheckDTO.Mismatch> mismatches = new ArrayList<>();
+        for (LocalDate date : dates) {
+            double[] l = live.getOrDefault(date, new double[2]);
+            double[] r = rolled.getOrDefault(date, new double[2]);
+            if (Math.abs(l[0] - r[0]) > REVENUE_TOLERANCE || (long) l[1] != (long) r[1]) {
+                mismatches.add(RevenueRollupCheckDTO.Mismatch.builder()
+                        .date(date.toString())
+                        .liveRevenue(l[0])
+                        .rollupRevenue(r[0])
+                        .liveOrderCount((long) l[1])
+                        .rollupOrderCount((long) r[1])
+                        .build());
+            }
+        }
+
+        return RevenueRollupCheckDTO.builder()
+                .startDate(startDate.toString())
+                .endDate(endDate.toString())
+                .consistent(mismatches.isEmpty())
+                .mismatches(mismatches)
+                .build();
+    }
+
+    // Lần chạy đầu tiên: bảng tổng hợp còn trống thì backfill toàn bộ lịch sử
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        try {
+            if (rollupRepository.count() == 0) {
+                Integer rows = transactionTemplate.execute(status -> rebuildAll());
+                log.info("Revenue rollup backfill completed: {} rows", rows);
+            }
+        } catch (Exception e) {
+            log.error("Revenue rollup backfill failed", e);
+        }
+    }
+
+    // Hằng đêm kiểm tra 7 ngày gần nhất và dựng lại những ngày bị lệch
+    @Scheduled(cron = "${app.dashboard.rollup-check-cron:0 30 3 * * *}")
+    public void verifyAndRepairRecentDays() {
+        LocalDate endDate = LocalDate.now();
+        LocalDate startDate = endDate.minusDays(NIGHTLY_CHECK_DAYS - 1);
+        try {
+            RevenueRollupCheckDTO check = verify(startDate, endDate);
+            if (!check.isConsistent()) {
+                log.warn("Revenue rollup drift detected on {} day(s), rebuilding", check.getMismatches().size());
+                for (RevenueRollupCheckDTO.Mismatch mismatch : check.getMismatches()) {
+                    LocalDate date = LocalDate.parse(mismatch.getDate());
+                    transactionTemplate.executeWithoutResult(status -> rebuild(date, date));
+                }
+            }
+        } catch (Exception e) {
+            log.error("Revenue rollup consistency check failed", e);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.be_phela.utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Cache giới hạn số phần tử, có TTL tùy chọn và bộ đếm hit/miss/eviction.
+ * Đọc không khóa (ConcurrentHashMap, chỉ ghi lại thời điểm truy cập); khi vượt maxEntries,
+ * một thread xóa bớt khoảng 10% phần tử lâu không được đọc nhất (LRU gần đúng).
+ * Loader được gọi ngoài khóa nên các truy vấn DB không bị tuần tự hóa;
+ * kết quả load sẽ bị bỏ qua nếu cache bị invalidate trong lúc đang load.
+ */
+public class BoundedCache<K, V> {
+
+    // Bỏ qua cập nhật thời điểm truy cập nếu vừa cập nhật, giảm ghi vào cùng cache line khi một key được đọc liên tục
+    private static final long ACCESS_RESOLUTION_NANOS = 1_000_000;
+
+    private final int maxEntries;
+    // Số phần tử còn lại sau một lần dọn
+    private final int evictionTarget;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<K, Entry<V>> entries;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Tăng mỗi lần invalidate để loại bỏ kết quả load cũ
+    private final AtomicLong generation = new AtomicLong();
+
+    public BoundedCache(int maxEntries, Duration ttl) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.evictionTarget = maxEntries - maxEntries / 10;
+        this.ttlNanos = ttl == null || ttl.isZero() || ttl.isNegative() ? 0L : ttl.toNanos();
+        this.entries = new ConcurrentHashMap<>(Math.min(maxEntries, 1024));
+    }
+
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Entry<V> entry = lookup(key);
+        if (entry != null) {
+            return entry.value;
+        }
+        misses.increment();
+        long loadGeneration = generation.get();
+
+        V value = loader.apply(key);
+        if (value != null) {
+            Entry<V> loaded = new Entry<>(value, System.nanoTime());
+            entries.put(key, loaded);
+            if (generation.get() != loadGeneration) {
+                entries.remove(key, loaded);
+            } else {
+                evictIfFull();
+            }
+        }
+        return value;
+    }
+
+    // Như get nhưng mapping chạy trong ConcurrentHashMap.compute: mỗi key chỉ tạo một giá trị dù nhiều thread cùng miss.
+    // Dùng cho giá trị rẻ, không null (vd. token bucket)
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mapping) {
+        Entry<V> entry = lookup(key);
+        if (entry != null) {
+            return entry.value;
+        }
+        misses.increment();
+        long now = System.nanoTime();
+        Entry<V> current = entries.compute(key, (k, old) ->
+                old != null && !isExpired(old, now) ? old : new Entry<>(mapping.apply(k), now));
+        evictIfFull();
+        return current.value;
+    }
+
+    public Optional<V> getIfPresent(K key) {
+        Entry<V> entry = lookup(key);
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        return Optional.of(entry.value);
+    }
+
+    public void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.nanoTime()));
+        evictIfFull();
+    }
+
+    public void invalidate(K key) {
+        generation.incrementAndGet();
+        entries.remove(key);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    // Xóa các phần tử thỏa điều kiện, trả về số phần tử đã xóa
+    public int removeIf(BiPredicate<? super K, ? super V> condition) {
+        int removed = 0;
+        for (Map.Entry<K, Entry<V>> e : entries.entrySet()) {
+            if (condition.test(e.getKey(), e.getValue().value) && entries.remove(e.getKey(), e.getValue())) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    // Hit thì cập nhật thời điểm truy cập; phần tử hết hạn bị xóa và coi như miss
+    private Entry<V> lookup(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (isExpired(entry, now)) {
+            if (entries.remove(key, entry)) {
+                evictions.increment();
+            }
+            return null;
+        }
+        if (now - entry.lastAccess > ACCESS_RESOLUTION_NANOS) {
+            entry.lastAccess = now;
+        }
+        hits.increment();
+        return entry;
+    }
+
+    // Chỉ một thread dọn tại một thời điểm; các thread khác không chờ, lần ghi sau sẽ dọn tiếp
+    private void evictIfFull() {
+        if (entries.size() <= maxEntries || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int excess = entries.size() - evictionTarget;
+            if (excess <= 0) {
+                return;
+            }
+            // Chụp lại thời điểm truy cập vì lastAccess vẫn thay đổi trong lúc sắp xếp
+            List<Candidate<K, V>> snapshot = new ArrayList<>(entries.size());
+            entries.forEach((key, entry) -> snapshot.add(new Candidate<>(key, entry, entry.lastAccess)));
+            snapshot.sort(Comparator.comparingLong(Candidate::lastAccess));
+            for (int i = 0; i < excess && i < snapshot.size(); i++) {
+                Candidate<K, V> eldest = snapshot.get(i);
+                if (entries.remove(eldest.key(), eldest.entry())) {
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return ttlNanos > 0 && now - entry.loadedAt > ttlNanos;
+    }
+
+    private record Candidate<K, V>(K key, Entry<V> entry, long lastAccess) {
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long loadedAt;
+        volatile long lastAccess;
+
+        Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+            this.lastAccess = loadedAt;
+        }
+    }
+}
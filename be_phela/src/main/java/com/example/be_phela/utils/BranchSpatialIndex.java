@@ -0,0 +1,207 @@
+package com.example.be_phela.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Chỉ mục lưới (grid) bất biến trên tọa độ chi nhánh.
+ * Chỉ tính haversine cho các ô gần điểm truy vấn thay vì quét toàn bộ chi nhánh.
+ */
+public final class BranchSpatialIndex {
+
+    private static final double EARTH_RADIUS = 6371;
+    // Kích thước ô nhỏ nhất ~1km theo vĩ độ
+    private static final double MIN_CELL_DEGREES = 0.01;
+
+    public record Point(String branchCode, double latitude, double longitude) {
+    }
+
+    public record Hit(String branchCode, double distanceKm) {
+    }
+
+    private static final Point[] NO_POINTS = new Point[0];
+    private static final BranchSpatialIndex EMPTY =
+            new BranchSpatialIndex(new Point[0][], MIN_CELL_DEGREES, 0, 0, 0, 0, 0, 0);
+
+    // Lưới dày đặc rows x cols; kích thước ô chọn theo mật độ để mỗi ô có ~1 chi nhánh
+    private final Point[][] cells;
+    private final double cellDegrees;
+    private final int minRow;
+    private final int minCol;
+    private final int rows;
+    private final int cols;
+    private final double maxAbsLatitude;
+    private final int size;
+
+    private BranchSpatialIndex(Point[][] cells, double cellDegrees, int minRow, int minCol, int rows, int cols,
+                               double maxAbsLatitude, int size) {
+        this.cells = cells;
+        this.cellDegrees = cellDegrees;
+        this.minRow = minRow;
+        this.minCol = minCol;
+        this.rows = rows;
+        this.cols = cols;
+        this.maxAbsLatitude = maxAbsLatitude;
+        this.size = size;
+    }
+
+    public static BranchSpatialIndex build(Collection<Point> points) {
+        if (points.isEmpty()) {
+            return EMPTY;
+        }
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (Point point : points) {
+            minLat = Math.min(minLat, point.latitude());
+            maxLat = Math.max(maxLat, point.latitude());
+            minLon = Math.min(minLon, point.longitude());
+            maxLon = Math.max(maxLon, point.longitude());
+        }
+        double cellDegrees = Math.max(MIN_CELL_DEGREES,
+                Math.sqrt((maxLat - minLat) * (maxLon - minLon) / points.size()));
+
+        int minRow = cell(minLat, cellDegrees);
+        int minCol = cell(minLon, cellDegrees);
+        int rows = cell(maxLat, cellDegrees) - minRow + 1;
+        int cols = cell(maxLon, cellDegrees) - minCol + 1;
+
+        List<List<Point>> buckets = new ArrayList<>(rows * cols);
+        for (int i = 0; i < rows * cols; i++) {
+            buckets.add(null);
+        }
+        for (Point point : points) {
+            int i = (cell(point.latitude(), cellDegrees) - minRow) * cols + (cell(point.longitude(), cellDegrees) - minCol);
+            if (buckets.get(i) == null) {
+                buckets.set(i, new ArrayList<>(2));
+            }
+            buckets.get(i).add(point);
+        }
+        Point[][] cells = new Point[rows * cols][];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = buckets.get(i) == null ? NO_POINTS : buckets.get(i).toArray(NO_POINTS);
+        }
+        double maxAbsLatitude = Math.max(Math.abs(minLat), Math.abs(maxLat));
+        return new BranchSpatialIndex(cells, cellDegrees, minRow, minCol, rows, cols, maxAbsLatitude, points.size());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // k chi nhánh gần nhất, sắp xếp theo khoảng cách tăng dần
+    public List<Hit> nearest(double latitude, double longitude, int k) {
+        if (size == 0 || k <= 0) {
+            return List.of();
+        }
+        int row = cell(latitude, cellDegrees) - minRow;
+        int col = cell(longitude, cellDegrees) - minCol;
+        int maxRing = Math.max(Math.max(Math.abs(row), Math.abs(row - rows + 1)),
+                Math.max(Math.abs(col), Math.abs(col - cols + 1)));
+        double phiMax = Math.toRadians(Math.min(90.0, Math.max(maxAbsLatitude, Math.abs(latitude))));
+        // Chênh lệch kinh độ lớn nhất tới lưới: quá 180 độ thì khoảng cách thực đi vòng qua kinh tuyến 180
+        double maxLonDelta = Math.toRadians(Math.max(Math.abs(longitude - minCol * cellDegrees),
+                Math.abs((minCol + cols) * cellDegrees - longitude)));
+
+        List<Hit> best = new ArrayList<>(k + 1);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Các điểm ở vòng này cách điểm truy vấn ít nhất (ring - 1) ô
+            if (best.size() == k && lowerBoundKm(ring - 1, phiMax, maxLonDelta) > best.get(k - 1).distanceKm()) {
+                break;
+            }
+            int fromRow = Math.max(row - ring, 0);
+            int toRow = Math.min(row + ring, rows - 1);
+            for (int r = fromRow; r <= toRow; r++) {
+                boolean edgeRow = r == row - ring || r == row + ring;
+                if (edgeRow) {
+                    int fromCol = Math.max(col - ring, 0);
+                    int toCol = Math.min(col + ring, cols - 1);
+                    for (int c = fromCol; c <= toCol; c++) {
+                        scanCell(r * cols + c, latitude, longitude, best, k);
+                    }
+                } else {
+                    if (col - ring >= 0 && col - ring < cols) {
+                        scanCell(r * cols + col - ring, latitude, longitude, best, k);
+                    }
+                    if (ring > 0 && col + ring >= 0 && col + ring < cols) {
+                        scanCell(r * cols + col + ring, latitude, longitude, best, k);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private void scanCell(int index, double latitude, double longitude, List<Hit> best, int k) {
+        for (Point point : cells[index]) {
+            offer(best, k, new Hit(point.branchCode(), DistanceCalculator.calculateDistance(
+                    latitude, longitude, point.latitude(), point.longitude())));
+        }
+    }
+
+    // Các chi nhánh trong bán kính radiusKm, sắp xếp theo khoảng cách tăng dần
+    public List<Hit> withinRadius(double latitude, double longitude, double radiusKm) {
+        if (size == 0 || radiusKm < 0) {
+            return List.of();
+        }
+        double angular = radiusKm / EARTH_RADIUS;
+        double latDelta = Math.toDegrees(angular);
+        double phiMax = Math.toRadians(Math.min(90.0, Math.max(maxAbsLatitude, Math.abs(latitude) + latDelta)));
+        double sinHalf = Math.sin(angular / 2) / Math.cos(phiMax);
+        double lonDelta = sinHalf >= 1 ? 180 : Math.toDegrees(2 * Math.asin(sinHalf));
+
+        int fromRow = Math.max(cell(latitude - latDelta, cellDegrees) - minRow, 0);
+        int toRow = Math.min(cell(latitude + latDelta, cellDegrees) - minRow, rows - 1);
+        // Cửa sổ vắt qua kinh tuyến 180 thì quét mọi cột
+        boolean wraps = longitude - lonDelta < -180 || longitude + lonDelta > 180;
+        int fromCol = wraps ? 0 : Math.max(cell(longitude - lonDelta, cellDegrees) - minCol, 0);
+        int toCol = wraps ? cols - 1 : Math.min(cell(longitude + lonDelta, cellDegrees) - minCol, cols - 1);
+
+        List<Hit> hits = new ArrayList<>();
+        for (int r = fromRow; r <= toRow; r++) {
+            for (int c = fromCol; c <= toCol; c++) {
+                for (Point point : cells[r * cols + c]) {
+                    double distance = DistanceCalculator.calculateDistance(
+                            latitude, longitude, point.latitude(), point.longitude());
+                    if (distance <= radiusKm) {
+                        hits.add(new Hit(point.branchCode(), distance));
+                    }
+                }
+            }
+        }
+        hits.sort(Comparator.comparingDouble(Hit::distanceKm));
+        return hits;
+    }
+
+    private static void offer(List<Hit> best, int k, Hit hit) {
+        if (best.size() == k && hit.distanceKm() >= best.get(k - 1).distanceKm()) {
+            return;
+        }
+        int i = best.size();
+        while (i > 0 && best.get(i - 1).distanceKm() > hit.distanceKm()) {
+            i--;
+        }
+        best.add(i, hit);
+        if (best.size() > k) {
+            best.remove(k);
+        }
+    }
+
+    // Cận dưới (km) của khoảng cách tới một điểm cách ít nhất n ô theo vĩ độ hoặc kinh độ
+    private double lowerBoundKm(int n, double phiMax, double maxLonDelta) {
+        if (n <= 0) {
+            return 0;
+        }
+        double delta = Math.toRadians(n * cellDegrees);
+        double byLatitude = EARTH_RADIUS * delta;
+        // Góc kinh độ thực sự là min(d, 2pi - d) với d nằm trong [delta, maxLonDelta]
+        double lonAngle = Math.max(0.0, Math.min(Math.min(delta, Math.PI), 2 * Math.PI - maxLonDelta));
+        double byLongitude = 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.cos(phiMax) * Math.sin(lonAngle / 2)));
+        return Math.min(byLatitude, byLongitude);
+    }
+
+    private static int cell(double degrees, double cellDegrees) {
+        return (int) Math.floor(degrees / cellDegrees);
+    }
+}
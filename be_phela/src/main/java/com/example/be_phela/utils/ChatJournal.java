@@ -0,0 +1,171 @@
+package com.example.be_phela.utils;
+
+import com.example.be_phela.model.ChatMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Nhật ký append-only của tin nhắn chat chưa được ghi vào DB, chia thành các segment chat-&lt;seq&gt;.log (mỗi dòng một JSON).
+ * Segment bị xóa khi đã đóng và mọi tin nhắn trong đó đã vào DB; segment còn lại sau khi tiến trình dừng đột ngột
+ * được đọc lại bằng {@link #recover}. Mỗi lần append đều flush xuống OS nên không mất tin khi JVM bị kill.
+ */
+public final class ChatJournal implements Closeable {
+
+    private static final String PREFIX = "chat-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final int segmentSize;
+    // Segment có từ lần chạy trước, chỉ được đọc bởi recover
+    private final List<Path> leftovers;
+
+    // Số tin nhắn chưa vào DB của từng segment
+    private final Map<Long, Integer> pending = new HashMap<>();
+    private long currentSegment;
+    private BufferedWriter writer;
+    private int currentEntries;
+
+    public ChatJournal(Path directory, ObjectMapper objectMapper, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.leftovers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            files.forEach(leftovers::add);
+        }
+        leftovers.sort((a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)));
+        this.currentSegment = leftovers.isEmpty() ? 0 : sequenceOf(leftovers.get(leftovers.size() - 1));
+    }
+
+    // Trả về segment chứa tin nhắn, dùng khi báo đã ghi DB
+    public synchronized long append(ChatMessage message) throws IOException {
+        if (writer == null) {
+            currentSegment++;
+            currentEntries = 0;
+            writer = Files.newBufferedWriter(segmentPath(currentSegment), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+        writer.write(objectMapper.writeValueAsString(message));
+        writer.newLine();
+        writer.flush();
+        pending.merge(currentSegment, 1, Integer::sum);
+        long segment = currentSegment;
+        if (++currentEntries >= segmentSize) {
+            closeCurrent();
+        }
+        return segment;
+    }
+
+    public synchronized void persisted(long segment, int count) throws IOException {
+        int left = pending.merge(segment, -count, Integer::sum);
+        if (left <= 0) {
+            pending.remove(segment);
+            if (writer == null || segment != currentSegment) {
+                Files.deleteIfExists(segmentPath(segment));
+            }
+        }
+    }
+
+    // Đóng segment đang ghi (khi rảnh) để xóa được ngay nếu mọi tin nhắn đã vào DB
+    public synchronized void rotate() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        closeCurrent();
+        if (!pending.containsKey(currentSegment)) {
+            Files.deleteIfExists(segmentPath(currentSegment));
+        }
+    }
+
+    public synchronized int pendingSegments() {
+        return pending.size();
+    }
+
+    // Đọc các segment của lần chạy trước và chuyển cho sink theo lô; sink trả false thì dừng và giữ lại file.
+    // Không giữ lock nên append vẫn chạy trong lúc khôi phục. Dòng hỏng (ghi dở khi tiến trình chết) bị bỏ qua.
+    public int recover(int batchSize, Predicate<List<ChatMessage>> sink) throws IOException {
+        int recovered = 0;
+        for (Path file : List.copyOf(leftovers)) {
+            List<ChatMessage> batch = new ArrayList<>(batchSize);
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    ChatMessage message = parse(line);
+                    if (message == null) {
+                        continue;
+                    }
+                    batch.add(message);
+                    if (batch.size() >= batchSize) {
+                        if (!sink.test(batch)) {
+                            return recovered;
+                        }
+                        recovered += batch.size();
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                if (!sink.test(batch)) {
+                    return recovered;
+                }
+                recovered += batch.size();
+            }
+            Files.deleteIfExists(file);
+            leftovers.remove(file);
+        }
+        return recovered;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        rotate();
+    }
+
+    private ChatMessage parse(String line) {
+        if (line.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(line, ChatMessage.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void closeCurrent() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            writer = null;
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(PREFIX + segment + SUFFIX);
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
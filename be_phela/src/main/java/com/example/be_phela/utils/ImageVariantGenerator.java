@@ -0,0 +1,153 @@
+package com.example.be_phela.utils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tạo các bản thu nhỏ của ảnh bằng ImageIO/Java2D, không cần thư viện ngoài.
+ * Ảnh gốc được đọc một lần; mỗi bản được thu nhỏ từ bản lớn hơn liền trước và chỉ tạo
+ * khi ảnh gốc rộng hơn kích thước đích. Ghi WebP nếu có plugin ImageIO hỗ trợ, ngược lại JPEG.
+ * Kích thước ảnh được đọc từ header trước khi giải mã; ảnh vượt quá maxPixels bị từ chối
+ * để một file nhỏ nhưng khai báo kích thước lớn không chiếm hết heap.
+ */
+public class ImageVariantGenerator {
+
+    // Tên bản -> chiều rộng tối đa, sắp xếp từ lớn đến nhỏ
+    private final Map<String, Integer> widths;
+    private final String formatName;
+    private final String extension;
+    private final float quality;
+    private final long maxPixels;
+
+    public ImageVariantGenerator(Map<String, Integer> widths, String preferredFormat, float quality, long maxPixels) {
+        this.widths = new LinkedHashMap<>();
+        widths.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .forEach(e -> this.widths.put(e.getKey(), e.getValue()));
+        boolean webp = "webp".equalsIgnoreCase(preferredFormat) && ImageIO.getImageWritersByFormatName("webp").hasNext();
+        this.formatName = webp ? "webp" : "jpeg";
+        this.extension = webp ? ".webp" : ".jpg";
+        this.quality = Math.max(0.1f, Math.min(1.0f, quality));
+        this.maxPixels = maxPixels;
+    }
+
+    public String formatName() {
+        return formatName;
+    }
+
+    // Trả về tên bản -> file tạm trong directory; rỗng nếu không đọc được ảnh hoặc ảnh đã đủ nhỏ
+    public Map<String, File> generate(File source, Path directory) throws IOException {
+        BufferedImage image = read(source);
+        Map<String, File> variants = new LinkedHashMap<>();
+        if (image == null) {
+            return variants;
+        }
+        BufferedImage current = image;
+        try {
+            for (Map.Entry<String, Integer> entry : widths.entrySet()) {
+                int width = entry.getValue();
+                if (current.getWidth() <= width) {
+                    continue;
+                }
+                current = resize(current, width);
+                File target = Files.createTempFile(directory, "variant-" + entry.getKey() + "-", extension).toFile();
+                variants.put(entry.getKey(), target);
+                write(current, target);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (File file : variants.values()) {
+                Files.deleteIfExists(file.toPath());
+            }
+            throw e;
+        }
+        return variants;
+    }
+
+    // Giống ImageIO.read nhưng kiểm tra số pixel trước khi cấp phát bộ nhớ cho ảnh; null nếu không có reader
+    private BufferedImage read(File source) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    throw new IOException("Image of " + reader.getWidth(0) + "x" + reader.getHeight(0)
+                            + " exceeds the budget of " + maxPixels + " pixels");
+                }
+                return reader.read(0, reader.getDefaultReadParam());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Thu nhỏ theo từng bước tối đa 1/2 để giữ chất lượng khi dùng nội suy bilinear
+    private static BufferedImage resize(BufferedImage source, int targetWidth) {
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            try {
+                // JPEG không có kênh alpha nên nền trong suốt được phủ màu trắng
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, height);
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (width > targetWidth);
+        return current;
+    }
+
+    private void write(BufferedImage image, File target) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+        if (!writers.hasNext()) {
+            throw new IOException("No ImageIO writer for " + formatName);
+        }
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionTypes() != null && param.getCompressionType() == null) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
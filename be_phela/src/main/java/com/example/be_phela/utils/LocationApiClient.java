@@ -3,6 +3,7 @@ package com.example.be_phela.utils;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
@@ -15,36 +16,41 @@ import com.example.be_phela.dto.response.Province;
 import com.example.be_phela.dto.response.Ward;
 import com.example.be_phela.exception.LocationServiceException;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class LocationApiClient {
 
-    private static final String API_BASE_URL = "https://provinces.open-api.vn/api";
-    private static final String API_V1_BASE_URL = API_BASE_URL + "/v1";
-
     private final RestTemplate restTemplate;
+    // Cấu hình được để trỏ sang một bản sao nội bộ khi cần
+    private final String apiBaseUrl;
+    private final String apiV1BaseUrl;
+
+    public LocationApiClient(RestTemplate restTemplate,
+                             @Value("${app.locations.api-base-url:https://provinces.open-api.vn/api}") String apiBaseUrl) {
+        this.restTemplate = restTemplate;
+        this.apiBaseUrl = apiBaseUrl.endsWith("/") ? apiBaseUrl.substring(0, apiBaseUrl.length() - 1) : apiBaseUrl;
+        this.apiV1BaseUrl = this.apiBaseUrl + "/v1";
+    }
 
     public List<Province> fetchAllProvinces() {
-        String url = API_V1_BASE_URL + "/p/";
+        String url = apiV1BaseUrl + "/p/";
         return exchangeForObject(url, new ParameterizedTypeReference<List<Province>>() {});
     }
 
     public Province fetchProvinceWithDistricts(int provinceCode) {
-        String url = API_V1_BASE_URL + "/p/" + provinceCode + "?depth=2";
+        String url = apiV1BaseUrl + "/p/" + provinceCode + "?depth=2";
         return exchangeForObject(url, Province.class);
     }
 
     public District fetchDistrictWithWards(int districtCode) {
-        String url = API_V1_BASE_URL + "/d/" + districtCode + "?depth=2";
+        String url = apiV1BaseUrl + "/d/" + districtCode + "?depth=2";
         return exchangeForObject(url, District.class);
     }
 
     public List<Province> fetchLocationHierarchy() {
-        String url = API_BASE_URL + "/?depth=3";
+        String url = apiBaseUrl + "/?depth=3";
         return exchangeForObject(url, new ParameterizedTypeReference<List<Province>>() {});
     }
 
@@ -0,0 +1,192 @@
+package com.example.be_phela.utils;
+
+import com.example.be_phela.dto.response.District;
+import com.example.be_phela.dto.response.Province;
+import com.example.be_phela.dto.response.Ward;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chỉ mục bất biến của cây tỉnh/huyện/xã. Mã được lưu trong mảng int đã sắp xếp,
+ * tra cứu bằng tìm kiếm nhị phân; danh sách trả về được dựng sẵn một lần khi nạp.
+ */
+public final class LocationIndex {
+
+    public record LevelDiff(int added, int removed, int renamed) {
+    }
+
+    public record Diff(LevelDiff provinces, LevelDiff districts, LevelDiff wards) {
+        public boolean isEmpty() {
+            return provinces.added() + provinces.removed() + provinces.renamed()
+                    + districts.added() + districts.removed() + districts.renamed()
+                    + wards.added() + wards.removed() + wards.renamed() == 0;
+        }
+    }
+
+    private final List<Province> hierarchy;
+    private final List<Province> provinces;
+    private final int[] provinceCodes;
+    private final List<List<District>> districtsByProvince;
+    private final int[] districtCodes;
+    private final List<List<Ward>> wardsByDistrict;
+    private final int districtCount;
+    private final int wardCount;
+
+    private LocationIndex(List<Province> hierarchy) {
+        List<Province> sorted = new ArrayList<>(hierarchy);
+        sorted.sort(Comparator.comparingInt(Province::getCode));
+
+        List<Province> provinceList = new ArrayList<>(sorted.size());
+        this.provinceCodes = new int[sorted.size()];
+        this.districtsByProvince = new ArrayList<>(sorted.size());
+
+        List<District> allDistricts = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            Province province = sorted.get(i);
+            provinceCodes[i] = province.getCode();
+            provinceList.add(withoutDistricts(province));
+
+            List<District> districts = province.getDistricts() != null ? province.getDistricts() : List.of();
+            List<District> flat = new ArrayList<>(districts.size());
+            for (District district : districts) {
+                flat.add(withoutWards(district));
+                allDistricts.add(district);
+            }
+            districtsByProvince.add(List.copyOf(flat));
+        }
+
+        allDistricts.sort(Comparator.comparingInt(District::getCode));
+        this.districtCodes = new int[allDistricts.size()];
+        this.wardsByDistrict = new ArrayList<>(allDistricts.size());
+        int wards = 0;
+        for (int i = 0; i < allDistricts.size(); i++) {
+            District district = allDistricts.get(i);
+            districtCodes[i] = district.getCode();
+            List<Ward> districtWards = district.getWards() != null ? List.copyOf(district.getWards()) : List.of();
+            wardsByDistrict.add(districtWards);
+            wards += districtWards.size();
+        }
+
+        this.hierarchy = List.copyOf(sorted);
+        this.provinces = List.copyOf(provinceList);
+        this.districtCount = allDistricts.size();
+        this.wardCount = wards;
+    }
+
+    public static LocationIndex of(List<Province> hierarchy) {
+        return new LocationIndex(hierarchy);
+    }
+
+    public List<Province> hierarchy() {
+        return hierarchy;
+    }
+
+    public List<Province> provinces() {
+        return provinces;
+    }
+
+    // null nếu không có tỉnh với mã này
+    public List<District> districtsOf(int provinceCode) {
+        int i = Arrays.binarySearch(provinceCodes, provinceCode);
+        return i >= 0 ? districtsByProvince.get(i) : null;
+    }
+
+    // null nếu không có huyện với mã này
+    public List<Ward> wardsOf(int districtCode) {
+        int i = Arrays.binarySearch(districtCodes, districtCode);
+        return i >= 0 ? wardsByDistrict.get(i) : null;
+    }
+
+    public int provinceCount() {
+        return provinceCodes.length;
+    }
+
+    public int districtCount() {
+        return districtCount;
+    }
+
+    public int wardCount() {
+        return wardCount;
+    }
+
+    // So sánh với một bản khác theo mã và tên ở từng cấp
+    public Diff diff(LocationIndex other) {
+        Map<Integer, String> oldProvinces = new HashMap<>();
+        Map<Integer, String> oldDistricts = new HashMap<>();
+        Map<Integer, String> oldWards = new HashMap<>();
+        collect(this, oldProvinces, oldDistricts, oldWards);
+
+        Map<Integer, String> newProvinces = new HashMap<>();
+        Map<Integer, String> newDistricts = new HashMap<>();
+        Map<Integer, String> newWards = new HashMap<>();
+        collect(other, newProvinces, newDistricts, newWards);
+
+        return new Diff(levelDiff(oldProvinces, newProvinces),
+                levelDiff(oldDistricts, newDistricts),
+                levelDiff(oldWards, newWards));
+    }
+
+    private static void collect(LocationIndex index, Map<Integer, String> provinces,
+                                Map<Integer, String> districts, Map<Integer, String> wards) {
+        for (Province province : index.hierarchy) {
+            provinces.put(province.getCode(), province.getName());
+        }
+        for (List<District> list : index.districtsByProvince) {
+            for (District district : list) {
+                districts.put(district.getCode(), district.getName());
+            }
+        }
+        for (List<Ward> list : index.wardsByDistrict) {
+            for (Ward ward : list) {
+                wards.put(ward.getCode(), ward.getName());
+            }
+        }
+    }
+
+    private static LevelDiff levelDiff(Map<Integer, String> before, Map<Integer, String> after) {
+        int added = 0;
+        int renamed = 0;
+        for (Map.Entry<Integer, String> entry : after.entrySet()) {
+            String previous = before.get(entry.getKey());
+            if (previous == null) {
+                added++;
+            } else if (!previous.equals(entry.getValue())) {
+                renamed++;
+            }
+        }
+        int removed = 0;
+        for (Integer code : before.keySet()) {
+            if (!after.containsKey(code)) {
+                removed++;
+            }
+        }
+        return new LevelDiff(added, removed, renamed);
+    }
+
+    private static Province withoutDistricts(Province source) {
+        Province copy = new Province();
+        copy.setCode(source.getCode());
+        copy.setName(source.getName());
+        copy.setCodename(source.getCodename());
+        copy.setDivisionType(source.getDivisionType());
+        copy.setPhoneCode(source.getPhoneCode());
+        copy.setDistricts(List.of());
+        return copy;
+    }
+
+    private static District withoutWards(District source) {
+        District copy = new District();
+        copy.setCode(source.getCode());
+        copy.setName(source.getName());
+        copy.setCodename(source.getCodename());
+        copy.setDivisionType(source.getDivisionType());
+        copy.setProvinceCode(source.getProvinceCode());
+        copy.setWards(List.of());
+        return copy;
+    }
+}
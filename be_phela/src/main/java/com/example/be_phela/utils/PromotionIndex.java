@@ -0,0 +1,158 @@
+package com.example.be_phela.utils;
+
+import com.example.be_phela.model.Promotion;
+import com.example.be_phela.model.enums.DiscountType;
+import com.example.be_phela.model.enums.PromotionStatus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chỉ mục bất biến của các khuyến mãi ACTIVE, tra theo mã và theo thời gian.
+ * Khuyến mãi có hiệu lực trong khoảng [startDate, endDate); mọi thay đổi tạo ra một chỉ mục mới.
+ */
+public final class PromotionIndex {
+
+    // Bản sao chỉ đọc của Promotion, không giữ tham chiếu tới entity
+    public record Entry(String promotionId, String promotionCode, String name, String description,
+                        DiscountType discountType, Double discountValue, Double minimumOrderAmount,
+                        Double maxDiscountAmount, LocalDateTime startDate, LocalDateTime endDate,
+                        PromotionStatus status, Integer maxRedemptions, Integer maxRedemptionsPerCustomer) {
+
+        public static Entry of(Promotion promotion) {
+            return new Entry(promotion.getPromotionId(), promotion.getPromotionCode(), promotion.getName(),
+                    promotion.getDescription(), promotion.getDiscountType(), promotion.getDiscountValue(),
+                    promotion.getMinimumOrderAmount(), promotion.getMaxDiscountAmount(),
+                    promotion.getStartDate(), promotion.getEndDate(), promotion.getStatus(),
+                    promotion.getMaxRedemptions(), promotion.getMaxRedemptionsPerCustomer());
+        }
+
+        public boolean isEffectiveAt(LocalDateTime time) {
+            return status == PromotionStatus.ACTIVE && !time.isBefore(startDate) && time.isBefore(endDate);
+        }
+    }
+
+    private static final Comparator<Entry> BY_START = Comparator.comparing(Entry::startDate)
+            .thenComparing(Entry::promotionCode);
+
+    private static final PromotionIndex EMPTY = new PromotionIndex(List.of());
+
+    private final Map<String, Entry> byCode;
+    private final Map<String, Entry> byId;
+    // Sắp xếp theo startDate để chỉ duyệt những khuyến mãi đã bắt đầu
+    private final Entry[] byStart;
+    private final LocalDateTime[] starts;
+    // Mọi thời điểm bắt đầu/kết thúc, dùng để biết lần chuyển trạng thái tiếp theo
+    private final LocalDateTime[] boundaries;
+    private final LocalDateTime earliestEnd;
+
+    private PromotionIndex(Collection<Entry> entries) {
+        this.byCode = new HashMap<>(entries.size() * 2);
+        this.byId = new HashMap<>(entries.size() * 2);
+        List<Entry> active = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (entry.status() != PromotionStatus.ACTIVE) {
+                continue;
+            }
+            byCode.put(entry.promotionCode(), entry);
+            byId.put(entry.promotionId(), entry);
+            active.add(entry);
+        }
+        active.sort(BY_START);
+        this.byStart = active.toArray(Entry[]::new);
+        this.starts = new LocalDateTime[byStart.length];
+        this.boundaries = new LocalDateTime[byStart.length * 2];
+        LocalDateTime minEnd = null;
+        for (int i = 0; i < byStart.length; i++) {
+            starts[i] = byStart[i].startDate();
+            boundaries[2 * i] = byStart[i].startDate();
+            boundaries[2 * i + 1] = byStart[i].endDate();
+            if (minEnd == null || byStart[i].endDate().isBefore(minEnd)) {
+                minEnd = byStart[i].endDate();
+            }
+        }
+        Arrays.sort(boundaries);
+        this.earliestEnd = minEnd;
+    }
+
+    public static PromotionIndex empty() {
+        return EMPTY;
+    }
+
+    public static PromotionIndex of(Collection<Entry> entries) {
+        return entries.isEmpty() ? EMPTY : new PromotionIndex(entries);
+    }
+
+    // Chỉ mục mới với khuyến mãi được thêm/thay thế; khuyến mãi không còn ACTIVE sẽ bị bỏ ra
+    public PromotionIndex with(Entry entry) {
+        Map<String, Entry> entries = new HashMap<>(byId);
+        Entry previous = entries.remove(entry.promotionId());
+        if (previous == null && byCode.containsKey(entry.promotionCode())) {
+            entries.remove(byCode.get(entry.promotionCode()).promotionId());
+        }
+        entries.put(entry.promotionId(), entry);
+        return of(entries.values());
+    }
+
+    public PromotionIndex without(String promotionId) {
+        if (!byId.containsKey(promotionId)) {
+            return this;
+        }
+        Map<String, Entry> entries = new HashMap<>(byId);
+        entries.remove(promotionId);
+        return of(entries.values());
+    }
+
+    // null nếu không có khuyến mãi ACTIVE với mã này
+    public Entry get(String promotionCode) {
+        return byCode.get(promotionCode);
+    }
+
+    // Các khuyến mãi có hiệu lực tại thời điểm time, theo thứ tự bắt đầu
+    public List<Entry> effectiveAt(LocalDateTime time) {
+        int started = upperBound(starts, time);
+        List<Entry> result = new ArrayList<>(started);
+        for (int i = 0; i < started; i++) {
+            if (time.isBefore(byStart[i].endDate())) {
+                result.add(byStart[i]);
+            }
+        }
+        return result;
+    }
+
+    // Có khuyến mãi ACTIVE đã tới endDate, cần chuyển sang EXPIRED
+    public boolean hasEndedAt(LocalDateTime time) {
+        return earliestEnd != null && !time.isBefore(earliestEnd);
+    }
+
+    // Thời điểm bắt đầu/kết thúc gần nhất sau time; null nếu không còn
+    public LocalDateTime nextBoundaryAfter(LocalDateTime time) {
+        int i = upperBound(boundaries, time);
+        return i < boundaries.length ? boundaries[i] : null;
+    }
+
+    public int size() {
+        return byStart.length;
+    }
+
+    // Số phần tử <= time trong mảng đã sắp xếp
+    private static int upperBound(LocalDateTime[] sorted, LocalDateTime time) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].isAfter(time)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.be_phela.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Đếm lượt dùng của một khuyến mãi: tổng và theo từng khách hàng.
+ * Giữ chỗ bằng compare-and-set nên không khóa; không bao giờ vượt giới hạn dù nhiều luồng cùng giữ chỗ.
+ */
+public final class RedemptionCounter {
+
+    private final AtomicInteger total;
+    private final ConcurrentHashMap<String, AtomicInteger> perCustomer;
+
+    public RedemptionCounter(int total, Map<String, Integer> perCustomer) {
+        this.total = new AtomicInteger(total);
+        this.perCustomer = new ConcurrentHashMap<>(Math.max(16, perCustomer.size() * 2));
+        perCustomer.forEach((customerId, count) -> this.perCustomer.put(customerId, new AtomicInteger(count)));
+    }
+
+    // Giới hạn null là không giới hạn; false nếu đã hết lượt (không thay đổi gì)
+    public boolean tryAcquire(String customerId, Integer maxTotal, Integer maxPerCustomer) {
+        AtomicInteger mine = maxPerCustomer != null
+                ? perCustomer.computeIfAbsent(customerId, k -> new AtomicInteger())
+                : perCustomer.get(customerId);
+        if (mine != null && !incrementBelow(mine, maxPerCustomer)) {
+            return false;
+        }
+        if (!incrementBelow(total, maxTotal)) {
+            if (mine != null) {
+                mine.decrementAndGet();
+            }
+            return false;
+        }
+        if (mine == null) {
+            // Vẫn đếm theo khách hàng để giới hạn thêm về sau được tính đúng
+            perCustomer.computeIfAbsent(customerId, k -> new AtomicInteger()).incrementAndGet();
+        }
+        return true;
+    }
+
+    // Trả lại một lượt đã giữ (đơn bị hủy hoặc transaction rollback)
+    public void release(String customerId) {
+        total.updateAndGet(v -> Math.max(0, v - 1));
+        AtomicInteger mine = perCustomer.get(customerId);
+        if (mine != null) {
+            mine.updateAndGet(v -> Math.max(0, v - 1));
+        }
+    }
+
+    public boolean isExhausted(String customerId, Integer maxTotal, Integer maxPerCustomer) {
+        if (maxTotal != null && total.get() >= maxTotal) {
+            return true;
+        }
+        AtomicInteger mine = perCustomer.get(customerId);
+        return maxPerCustomer != null && mine != null && mine.get() >= maxPerCustomer;
+    }
+
+    public int total() {
+        return total.get();
+    }
+
+    public int countFor(String customerId) {
+        AtomicInteger mine = perCustomer.get(customerId);
+        return mine != null ? mine.get() : 0;
+    }
+
+    private static boolean incrementBelow(AtomicInteger counter, Integer max) {
+        if (max == null) {
+            counter.incrementAndGet();
+            return true;
+        }
+        int current;
+        do {
+            current = counter.get();
+            if (current >= max) {
+                return false;
+            }
+        } while (!counter.compareAndSet(current, current + 1));
+        return true;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.be_phela.utils;
+
+import com.sendgrid.Client;
+import com.sendgrid.Method;
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+import com.sendgrid.SendGrid;
+import com.sendgrid.helpers.mail.Mail;
+import com.sendgrid.helpers.mail.objects.Content;
+import com.sendgrid.helpers.mail.objects.Email;
+import com.sendgrid.helpers.mail.objects.Personalization;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Một client SendGrid dùng chung cho mọi lần gửi, với pool kết nối HTTP giữ sống giữa các lần gọi.
+ * Một lần gọi gửi cùng một mẫu tới nhiều người nhận: mỗi người là một personalization riêng
+ * (không thấy địa chỉ của nhau) với giá trị thay thế của riêng mình.
+ */
+@Slf4j
+@Component
+public class SendGridMailClient {
+
+    // Giới hạn của SendGrid cho một request mail/send
+    public static final int MAX_PERSONALIZATIONS = 1000;
+
+    public record Recipient(String email, Map<String, String> substitutions) {
+    }
+
+    // statusCode = 0 khi không kết nối được; retryable: lỗi tạm thời (mạng, 429, 5xx)
+    public record SendResult(int statusCode, boolean retryable, String error) {
+        public boolean success() {
+            return statusCode >= 200 && statusCode < 300;
+        }
+    }
+
+    private final SendGrid sendGrid;
+    private final CloseableHttpClient httpClient;
+    private final String fromEmail;
+
+    public SendGridMailClient(@Value("${SENDGRID_API_KEY}") String apiKey,
+                              @Value("${spring.mail.username}") String fromEmail,
+                              // Có thể trỏ sang một endpoint giả lập khi chạy thử (vd localhost:8025 với plain-http=true)
+                              @Value("${app.mail.sendgrid.host:api.sendgrid.com}") String host,
+                              @Value("${app.mail.sendgrid.plain-http:false}") boolean plainHttp,
+                              @Value("${app.mail.sendgrid.max-connections:8}") int maxConnections,
+                              @Value("${app.mail.sendgrid.timeout:10s}") Duration timeout) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        int timeoutMillis = (int) timeout.toMillis();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(timeoutMillis)
+                        .setConnectionRequestTimeout(timeoutMillis)
+                        .setSocketTimeout(timeoutMillis)
+                        .build())
+                .build();
+        this.sendGrid = new SendGrid(apiKey, new Client(httpClient, plainHttp));
+        this.sendGrid.setHost(host);
+        // Retry do outbox đảm nhiệm, không để client ngủ chờ trên worker
+        this.sendGrid.setRateLimitRetry(0);
+        this.fromEmail = fromEmail;
+    }
+
+    public SendResult send(String subject, String htmlContent, List<Recipient> recipients) {
+        if (recipients.isEmpty() || recipients.size() > MAX_PERSONALIZATIONS) {
+            throw new IllegalArgumentException("Recipients per call must be between 1 and " + MAX_PERSONALIZATIONS);
+        }
+        Mail mail = new Mail();
+        mail.setFrom(new Email(fromEmail));
+        mail.setSubject(subject);
+        mail.addContent(new Content("text/html", htmlContent));
+        for (Recipient recipient : recipients) {
+            Personalization personalization = new Personalization();
+            personalization.addTo(new Email(recipient.email()));
+            if (recipient.substitutions() != null) {
+                recipient.substitutions().forEach(personalization::addSubstitution);
+            }
+            mail.addPersonalization(personalization);
+        }
+
+        try {
+            Request request = new Request();
+            request.setMethod(Method.POST);
+            request.setEndpoint("mail/send");
+            request.setBody(mail.build());
+            Response response = sendGrid.api(request);
+            int status = response.getStatusCode();
+            if (status >= 400) {
+                boolean retryable = status == 429 || status >= 500;
+                return new SendResult(status, retryable, "HTTP " + status + ": " + response.getBody());
+            }
+            return new SendResult(status, false, null);
+        } catch (IOException e) {
+            return new SendResult(0, true, e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.warn("Could not close SendGrid HTTP client", e);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.be_phela.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bộ đếm cửa sổ trượt theo key, lưu trong bộ nhớ.
+ * Mỗi key chỉ giữ số đếm của cửa sổ hiện tại và cửa sổ trước, ước lượng số lần trong
+ * khoảng windowMillis gần nhất bằng cách nội suy. Map được chia thành nhiều stripe có
+ * khóa riêng để các key khác nhau không tranh chấp cùng một khóa.
+ */
+public class SlidingWindowCounterStore {
+
+    private final long windowMillis;
+    private final Stripe[] stripes;
+    private final int mask;
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final HashMap<String, Counter> counters = new HashMap<>();
+    }
+
+    private static final class Counter {
+        long windowStart;
+        int current;
+        int previous;
+        long blockedUntil;
+        long lastSeen;
+    }
+
+    public SlidingWindowCounterStore(long windowMillis, int stripes) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("windowMillis must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.windowMillis = windowMillis;
+        this.stripes = new Stripe[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    // Tăng bộ đếm và trả về số lần ước lượng trong cửa sổ (đã tính lần này)
+    public double increment(String key, long now) {
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            Counter counter = stripe.counters.computeIfAbsent(key, k -> new Counter());
+            roll(counter, now);
+            counter.current++;
+            counter.lastSeen = now;
+            return estimate(counter, now);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public double estimate(String key, long now) {
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            Counter counter = stripe.counters.get(key);
+            if (counter == null) {
+                return 0;
+            }
+            roll(counter, now);
+            return estimate(counter, now);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Thời điểm (epoch millis) hết bị chặn, 0 nếu không bị chặn
+    public long blockedUntil(String key, long now) {
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            Counter counter = stripe.counters.get(key);
+            return counter != null && counter.blockedUntil > now ? counter.blockedUntil : 0L;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Chặn key đến thời điểm until; trả về false nếu key đang bị chặn từ trước
+    public boolean block(String key, long until, long now) {
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            Counter counter = stripe.counters.computeIfAbsent(key, k -> new Counter());
+            boolean alreadyBlocked = counter.blockedUntil > now;
+            counter.blockedUntil = Math.max(counter.blockedUntil, until);
+            counter.lastSeen = now;
+            return !alreadyBlocked;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public boolean reset(String key) {
+        Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            return stripe.counters.remove(key) != null;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Xóa các key không còn hoạt động và không bị chặn
+    public int evictIdle(long now) {
+        int evicted = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                Iterator<Map.Entry<String, Counter>> it = stripe.counters.entrySet().iterator();
+                while (it.hasNext()) {
+                    Counter counter = it.next().getValue();
+                    if (counter.blockedUntil <= now && now - counter.lastSeen > 2 * windowMillis) {
+                        it.remove();
+                        evicted++;
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return evicted;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.counters.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private void roll(Counter counter, long now) {
+        long start = now - Math.floorMod(now, windowMillis);
+        if (start == counter.windowStart) {
+            return;
+        }
+        counter.previous = start - counter.windowStart == windowMillis ? counter.current : 0;
+        counter.current = 0;
+        counter.windowStart = start;
+    }
+
+    private double estimate(Counter counter, long now) {
+        double elapsed = (double) (now - counter.windowStart) / windowMillis;
+        return counter.previous * (1.0 - elapsed) + counter.current;
+    }
+
+    private Stripe stripeFor(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.be_phela.utils;
+
+/**
+ * Token bucket: nạp lại liên tục với tốc độ cố định, tối đa capacity token.
+ * Không dùng luồng nền; số token được tính lại mỗi lần gọi tryConsume.
+ */
+public final class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long lastRefillNanos;
+    private volatile long lastAccessNanos;
+
+    public TokenBucket(double capacity, double tokensPerSecond, long nowNanos) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefillNanos = nowNanos;
+        this.lastAccessNanos = nowNanos;
+    }
+
+    // Trả về 0 nếu lấy được token, ngược lại là số nanos cần chờ đến khi có token
+    public synchronized long tryConsume(long nowNanos) {
+        lastAccessNanos = nowNanos;
+        if (nowNanos > lastRefillNanos) {
+            tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) * tokensPerNano);
+            lastRefillNanos = nowNanos;
+        }
+        if (tokens >= 1.0) {
+            tokens -= 1.0;
+            return 0L;
+        }
+        return (long) Math.ceil((1.0 - tokens) / tokensPerNano);
+    }
+
+    public long idleNanos(long nowNanos) {
+        return nowNanos - lastAccessNanos;
+    }
+}
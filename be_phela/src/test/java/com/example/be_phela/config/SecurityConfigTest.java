@@ -0,0 +1,162 @@
+package com.example.be_phela.config;
+
+import com.example.be_phela.controller.CVStorageAdminController;
+import com.example.be_phela.controller.DashboardController;
+import com.example.be_phela.controller.LocationController;
+import com.example.be_phela.controller.OrderController;
+import com.example.be_phela.interService.ILocationService;
+import com.example.be_phela.security.SecurityEventLogger;
+import com.example.be_phela.service.AdminUserDetailsService;
+import com.example.be_phela.service.ApiRateLimitService;
+import com.example.be_phela.service.CVStorageMaintenanceService;
+import com.example.be_phela.service.CustomerUserDetailsService;
+import com.example.be_phela.service.DashboardService;
+import com.example.be_phela.service.LoginAttemptService;
+import com.example.be_phela.service.OrderService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Kiểm tra phân quyền theo URL trong SecurityConfig (không bật method security nên @PreAuthorize không được dùng)
+@SpringJUnitWebConfig(classes = {SecurityConfig.class, SecurityConfigTest.Web.class, LocationController.class,
+        CVStorageAdminController.class, DashboardController.class, OrderController.class})
+@TestPropertySource(properties = "jwt.signer-key=0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef")
+class SecurityConfigTest {
+
+    @Configuration
+    @EnableWebMvc
+    static class Web {
+    }
+
+    @MockitoBean
+    AdminUserDetailsService adminUserDetailsService;
+    @MockitoBean
+    CustomerUserDetailsService customerUserDetailsService;
+    @MockitoBean
+    SecurityEventLogger securityEventLogger;
+    @MockitoBean
+    LoginAttemptService loginAttemptService;
+    @MockitoBean
+    ApiRateLimitService apiRateLimitService;
+    @MockitoBean
+    ILocationService locationService;
+    @MockitoBean
+    CVStorageMaintenanceService cvStorageMaintenanceService;
+    @MockitoBean
+    DashboardService dashboardService;
+    @MockitoBean
+    OrderService orderService;
+
+    @Autowired
+    WebApplicationContext context;
+
+    MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+    }
+
+    @Test
+    @WithMockUser(roles = "CUSTOMER")
+    void customerCannotRefreshLocations() throws Exception {
+        mockMvc.perform(post("/api/locations/refresh")).andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void adminCannotRefreshLocations() throws Exception {
+        mockMvc.perform(post("/api/locations/refresh")).andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser(roles = "SUPER_ADMIN")
+    void superAdminCanRefreshLocations() throws Exception {
+        mockMvc.perform(post("/api/locations/refresh")).andExpect(status().isOk());
+    }
+
+    @Test
+    @WithMockUser(roles = "STAFF")
+    void staffCannotRunCvMaintenance() throws Exception {
+        mockMvc.perform(post("/api/admin/cv/migrate")).andExpect(status().isForbidden());
+        mockMvc.perform(post("/api/admin/cv/gc")).andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void adminCannotRunCvMaintenance() throws Exception {
+        mockMvc.perform(post("/api/admin/cv/migrate")).andExpect(status().isForbidden());
+        mockMvc.perform(post("/api/admin/cv/gc")).andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser(roles = "SUPER_ADMIN")
+    void superAdminCanRunCvMaintenance() throws Exception {
+        mockMvc.perform(post("/api/admin/cv/migrate")).andExpect(status().isOk());
+        mockMvc.perform(post("/api/admin/cv/gc")).andExpect(status().isOk());
+    }
+
+    @Test
+    @WithMockUser(roles = "CUSTOMER")
+    void customerCannotTouchRevenueRollup() throws Exception {
+        mockMvc.perform(get("/api/dashboard/revenue-rollup/verify")).andExpect(status().isForbidden());
+        mockMvc.perform(post("/api/dashboard/revenue-rollup/rebuild")).andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void adminCanVerifyButNotRebuildRevenueRollup() throws Exception {
+        mockMvc.perform(get("/api/dashboard/revenue-rollup/verify")).andExpect(status().isOk());
+        mockMvc.perform(post("/api/dashboard/revenue-rollup/rebuild")).andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser(roles = "SUPER_ADMIN")
+    void superAdminCanRebuildRevenueRollup() throws Exception {
+        mockMvc.perform(post("/api/dashboard/revenue-rollup/rebuild")).andExpect(status().isOk());
+    }
+
+    @Test
+    @WithMockUser(roles = "CUSTOMER")
+    void customerCannotReadTheOrderFeed() throws Exception {
+        mockMvc.perform(get("/api/order/feed/PENDING")).andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/order/feed/PENDING").param("branchCode", "B1")).andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser(roles = "DELIVERY_STAFF")
+    void deliveryStaffCannotReadTheOrderFeed() throws Exception {
+        mockMvc.perform(get("/api/order/feed/PENDING")).andExpect(status().isForbidden());
+    }
+
+    @Test
+    void anonymousCannotReadTheOrderFeed() throws Exception {
+        mockMvc.perform(get("/api/order/feed/PENDING")).andExpect(status().isForbidden());
+    }
+
+    @Test
+    @WithMockUser(roles = "STAFF")
+    void staffCanReadTheOrderFeed() throws Exception {
+        mockMvc.perform(get("/api/order/feed/PENDING")).andExpect(status().isOk());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void adminCanReadTheOrderFeed() throws Exception {
+        mockMvc.perform(get("/api/order/feed/CONFIRMED").param("direction", "desc")).andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,307 @@
+package com.example.be_phela.config;
+
+import com.example.be_phela.filter.JwtAuthenticationFilter;
+import com.example.be_phela.model.Customer;
+import com.example.be_phela.repository.CustomerRepository;
+import com.example.be_phela.security.SecurityEventLogger;
+import com.example.be_phela.security.StompAuthorizationInterceptor;
+import com.example.be_phela.service.OrderEventPublisher;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Tải fan-out qua toàn bộ đường đi STOMP của một node (giải mã frame, xác thực CONNECT, phân quyền SUBSCRIBE,
+// broker trong bộ nhớ, thread pool outbound) với nhiều phiên WebSocket giả lập.
+// Mặc định 300 + 300 phiên để chạy nhanh trong bộ test; chạy tải đầy đủ bằng -Dwebsocket.load.sessions=3000
+class WebSocketFanOutLoadTest {
+
+    private static final String SIGNER_KEY = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+    private static final int STAFF_SESSIONS = Integer.getInteger("websocket.load.sessions", 300);
+    private static final int CUSTOMER_SESSIONS = STAFF_SESSIONS;
+    // Mỗi lần từ chối SUBSCRIBE, Spring ghi một stack trace ở mức ERROR; chỉ thử với một phần khách hàng
+    private static final int DENIED_EVERY = 50;
+    private static final int BRANCH_EVENTS = 20;
+    private static final String BRANCH_TOPIC = OrderEventPublisher.BRANCH_TOPIC_PREFIX + "B1";
+
+    private AnnotationConfigWebApplicationContext context;
+
+    @AfterEach
+    void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void branchAndCustomerEventsReachEverySubscribedSessionAndNoOneElse() throws Exception {
+        context = startNode();
+        SubProtocolWebSocketHandler handler = context.getBean(SubProtocolWebSocketHandler.class);
+        SimpMessagingTemplate template = context.getBean("brokerMessagingTemplate", SimpMessagingTemplate.class);
+
+        List<StubSession> staff = new ArrayList<>();
+        List<StubSession> customers = new ArrayList<>();
+        for (int i = 0; i < STAFF_SESSIONS; i++) {
+            staff.add(open(handler, "staff-" + i, token("staff" + i, "STAFF")));
+        }
+        for (int i = 0; i < CUSTOMER_SESSIONS; i++) {
+            customers.add(open(handler, "customer-" + i, token("customer" + i, "CUSTOMER")));
+        }
+        awaitTrue(() -> countFrames(staff, "CONNECTED") == STAFF_SESSIONS
+                && countFrames(customers, "CONNECTED") == CUSTOMER_SESSIONS);
+
+        for (StubSession session : staff) {
+            subscribe(handler, session, "sub-0", BRANCH_TOPIC);
+        }
+        for (int i = 0; i < CUSTOMER_SESSIONS; i++) {
+            subscribe(handler, customers.get(i), "sub-0", OrderEventPublisher.CUSTOMER_TOPIC_PREFIX + "c" + i);
+            if (i % DENIED_EVERY == 0) {
+                // Thử nghe đơn hàng của khách bên cạnh: interceptor từ chối nên broker không đăng ký
+                subscribe(handler, customers.get(i), "sub-1",
+                        OrderEventPublisher.CUSTOMER_TOPIC_PREFIX + "c" + ((i + 1) % CUSTOMER_SESSIONS));
+            }
+        }
+        // Frame inbound được xử lý bất đồng bộ; chờ broker đăng ký xong mọi subscription hợp lệ
+        SubscriptionRegistry registry = context.getBean(SimpleBrokerMessageHandler.class).getSubscriptionRegistry();
+        awaitTrue(() -> subscribers(registry, BRANCH_TOPIC).size() == STAFF_SESSIONS
+                && subscribers(registry, OrderEventPublisher.CUSTOMER_TOPIC_PREFIX + "c" + (CUSTOMER_SESSIONS - 1))
+                .size() == 1);
+        Thread.sleep(200);
+        for (int i = 0; i < CUSTOMER_SESSIONS; i++) {
+            assertThat(subscribers(registry, OrderEventPublisher.CUSTOMER_TOPIC_PREFIX + "c" + i))
+                    .containsOnlyKeys("customer-" + i);
+        }
+
+        for (int e = 0; e < BRANCH_EVENTS; e++) {
+            template.convertAndSend(BRANCH_TOPIC, "branch event " + e);
+        }
+        for (int i = 0; i < CUSTOMER_SESSIONS; i++) {
+            template.convertAndSend(OrderEventPublisher.CUSTOMER_TOPIC_PREFIX + "c" + i, "order of c" + i);
+        }
+        int expected = STAFF_SESSIONS * BRANCH_EVENTS + CUSTOMER_SESSIONS;
+        awaitTrue(() -> countFrames(staff, "MESSAGE") + countFrames(customers, "MESSAGE") >= expected);
+
+        for (StubSession session : staff) {
+            assertThat(session.frames("MESSAGE")).isEqualTo(BRANCH_EVENTS);
+        }
+        for (int i = 0; i < CUSTOMER_SESSIONS; i++) {
+            StubSession session = customers.get(i);
+            assertThat(session.frames("MESSAGE")).isEqualTo(1);
+            assertThat(session.sent).anyMatch(frame -> frame.startsWith("MESSAGE") && frame.contains("subscription:sub-0"));
+        }
+        for (StubSession session : customers) {
+            assertThat(session.open).as("session %s", session.id).isTrue();
+        }
+    }
+
+    private AnnotationConfigWebApplicationContext startNode() {
+        CustomerRepository customerRepository = mock(CustomerRepository.class);
+        when(customerRepository.findByUsername(anyString())).thenAnswer(invocation -> {
+            String username = invocation.getArgument(0);
+            Customer customer = new Customer();
+            customer.setUsername(username);
+            customer.setCustomerId("c" + username.substring("customer".length()));
+            return Optional.of(customer);
+        });
+
+        AnnotationConfigWebApplicationContext node = new AnnotationConfigWebApplicationContext();
+        node.setServletContext(new MockServletContext());
+        node.getEnvironment().getPropertySources()
+                .addFirst(new MapPropertySource("test", Map.of("app.websocket.broker", "simple")));
+        node.addBeanFactoryPostProcessor(beanFactory -> {
+            beanFactory.setConversionService(ApplicationConversionService.getSharedInstance());
+            beanFactory.registerSingleton("stompAuthorizationInterceptor", new StompAuthorizationInterceptor(
+                    new JwtAuthenticationFilter(SIGNER_KEY, mock(SecurityEventLogger.class)), customerRepository));
+        });
+        node.register(WebSocketConfig.class);
+        node.refresh();
+        return node;
+    }
+
+    private static StubSession open(SubProtocolWebSocketHandler handler, String id, String token) throws Exception {
+        StubSession session = new StubSession(id);
+        handler.afterConnectionEstablished(session);
+        handler.handleMessage(session, new TextMessage("CONNECT\naccept-version:1.2\nheart-beat:0,0\n"
+                + "Authorization:Bearer " + token + "\n\n\0"));
+        return session;
+    }
+
+    private static void subscribe(SubProtocolWebSocketHandler handler, StubSession session, String subscriptionId,
+                                  String destination) throws Exception {
+        handler.handleMessage(session, new TextMessage("SUBSCRIBE\nid:" + subscriptionId + "\ndestination:"
+                + destination + "\n\n\0"));
+    }
+
+    private static MultiValueMap<String, String> subscribers(SubscriptionRegistry registry, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return registry.findSubscriptions(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    private static int countFrames(List<StubSession> sessions, String command) {
+        return sessions.stream().mapToInt(session -> session.frames(command)).sum();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("timed out").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static String token(String username, String role) throws Exception {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject(username)
+                .claim("role", role)
+                .expirationTime(new Date(System.currentTimeMillis() + 3_600_000))
+                .build();
+        JWSObject jws = new JWSObject(new JWSHeader(JWSAlgorithm.HS512), new Payload(claims.toJSONObject()));
+        jws.sign(new MACSigner(SIGNER_KEY.getBytes()));
+        return jws.serialize();
+    }
+
+    // Phiên WebSocket giả lập: ghi lại các frame node gửi cho client
+    private static final class StubSession implements WebSocketSession {
+        private final String id;
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+        private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+        private volatile boolean open = true;
+
+        StubSession(String id) {
+            this.id = id;
+        }
+
+        int frames(String command) {
+            AtomicInteger count = counts.get(command);
+            return count != null ? count.get() : 0;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            String frame = (String) message.getPayload();
+            sent.add(frame);
+            counts.computeIfAbsent(frame.substring(0, frame.indexOf('\n')), c -> new AtomicInteger()).incrementAndGet();
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return URI.create("ws://localhost/ws");
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return 64 * 1024;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return 64 * 1024;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+            open = false;
+        }
+    }
+}
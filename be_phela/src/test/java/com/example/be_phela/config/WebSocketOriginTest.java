@@ -0,0 +1,72 @@
+package com.example.be_phela.config;
+
+import com.example.be_phela.filter.JwtAuthenticationFilter;
+import com.example.be_phela.repository.CustomerRepository;
+import com.example.be_phela.security.SecurityEventLogger;
+import com.example.be_phela.security.StompAuthorizationInterceptor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.HttpRequestHandler;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class WebSocketOriginTest {
+
+    private AnnotationConfigWebApplicationContext context;
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void onlyConfiguredFrontendOriginsMayOpenTheEndpoint() throws Exception {
+        context = new AnnotationConfigWebApplicationContext();
+        context.setServletContext(new MockServletContext());
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                "cors.allowed-origins", "https://phela-customer.example, https://phela-admin.example")));
+        context.addBeanFactoryPostProcessor(beanFactory -> {
+            beanFactory.setConversionService(ApplicationConversionService.getSharedInstance());
+            beanFactory.registerSingleton("stompAuthorizationInterceptor", new StompAuthorizationInterceptor(
+                    new JwtAuthenticationFilter("0123456789abcdef".repeat(4), mock(SecurityEventLogger.class)),
+                    mock(CustomerRepository.class)));
+        });
+        context.register(WebSocketConfig.class);
+        context.refresh();
+
+        assertThat(info("https://phela-customer.example").getStatus()).isEqualTo(200);
+        assertThat(info("https://phela-admin.example").getStatus()).isEqualTo(200);
+        assertThat(info("https://evil.example").getStatus()).isEqualTo(403);
+        assertThat(info("http://localhost:3000").getStatus()).isEqualTo(403);
+    }
+
+    // SockJS kiểm tra Origin ngay ở /ws/info, trước khi mở kết nối WebSocket
+    private MockHttpServletResponse info(String origin) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ws/info");
+        request.setServerName("api.phela.example");
+        request.addHeader("Origin", origin);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HandlerExecutionChain chain = context.getBean("stompWebSocketHandlerMapping", HandlerMapping.class)
+                .getHandler(request);
+        assertThat(chain).isNotNull();
+        for (HandlerInterceptor interceptor : chain.getInterceptorList()) {
+            if (!interceptor.preHandle(request, response, chain.getHandler())) {
+                return response;
+            }
+        }
+        ((HttpRequestHandler) chain.getHandler()).handleRequest(request, response);
+        return response;
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.be_phela.config;
+
+import com.example.be_phela.filter.JwtAuthenticationFilter;
+import com.example.be_phela.repository.CustomerRepository;
+import com.example.be_phela.security.SecurityEventLogger;
+import com.example.be_phela.security.StompAuthorizationInterceptor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.tcp.ReconnectStrategy;
+import org.springframework.messaging.tcp.TcpConnection;
+import org.springframework.messaging.tcp.TcpConnectionHandler;
+import org.springframework.messaging.tcp.TcpOperations;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class WebSocketRelayMultiNodeTest {
+
+    private static final String TOPIC = "/topic/chat/c1";
+
+    private final List<AnnotationConfigWebApplicationContext> nodes = new ArrayList<>();
+    private final StandInStompBroker broker = new StandInStompBroker();
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(AnnotationConfigWebApplicationContext::close);
+        broker.shutdown();
+    }
+
+    @Test
+    void relayDeliversMessageSentOnNodeAToSubscriberOnNodeB() throws Exception {
+        AnnotationConfigWebApplicationContext nodeA = startNode("relay");
+        AnnotationConfigWebApplicationContext nodeB = startNode("relay");
+        awaitBrokerAvailable(nodeA);
+        awaitBrokerAvailable(nodeB);
+
+        BlockingQueue<Message<?>> received = connectAndSubscribe(nodeB, "client-b", TOPIC);
+        assertThat(broker.awaitSubscription(TOPIC, 5, TimeUnit.SECONDS)).isTrue();
+
+        nodeA.getBean("brokerMessagingTemplate", SimpMessagingTemplate.class).convertAndSend(TOPIC, "hello from A");
+
+        Message<?> message = nextMessage(received, 5);
+        assertThat(message).isNotNull();
+        assertThat(new String((byte[]) message.getPayload(), StandardCharsets.UTF_8)).isEqualTo("hello from A");
+        assertThat(StompHeaderAccessor.wrap(message).getSubscriptionId()).isEqualTo("sub-0");
+    }
+
+    @Test
+    void simpleBrokerKeepsSubscriptionsOnTheNodeThatOwnsThem() throws Exception {
+        AnnotationConfigWebApplicationContext nodeA = startNode("simple");
+        AnnotationConfigWebApplicationContext nodeB = startNode("simple");
+
+        BlockingQueue<Message<?>> received = connectAndSubscribe(nodeB, "client-b", TOPIC);
+        Thread.sleep(200);
+
+        nodeA.getBean("brokerMessagingTemplate", SimpMessagingTemplate.class).convertAndSend(TOPIC, "hello from A");
+        assertThat(nextMessage(received, 1)).isNull();
+
+        nodeB.getBean("brokerMessagingTemplate", SimpMessagingTemplate.class).convertAndSend(TOPIC, "hello from B");
+        assertThat(nextMessage(received, 5)).isNotNull();
+    }
+
+    private AnnotationConfigWebApplicationContext startNode(String brokerMode) {
+        AnnotationConfigWebApplicationContext context = new AnnotationConfigWebApplicationContext();
+        context.setServletContext(new MockServletContext());
+        context.getEnvironment().getPropertySources()
+                .addFirst(new MapPropertySource("test", Map.of("app.websocket.broker", brokerMode)));
+        // Chuyển "64KB", "10s" cho @Value như Spring Boot, và thay client reactor-netty bằng broker giả
+        context.addBeanFactoryPostProcessor(beanFactory -> {
+            beanFactory.setConversionService(ApplicationConversionService.getSharedInstance());
+            beanFactory.registerSingleton("stompBrokerTcpClient", broker.client());
+            beanFactory.registerSingleton("stompAuthorizationInterceptor", new StompAuthorizationInterceptor(
+                    new JwtAuthenticationFilter("0123456789abcdef0123456789abcdef", mock(SecurityEventLogger.class)),
+                    mock(CustomerRepository.class)));
+        });
+        context.register(WebSocketConfig.class);
+        context.refresh();
+        nodes.add(context);
+        return context;
+    }
+
+    // Giả lập một client STOMP đã kết nối WebSocket tới node: gửi CONNECT/SUBSCRIBE vào clientInboundChannel
+    // và thu các frame node gửi về trên clientOutboundChannel
+    private static BlockingQueue<Message<?>> connectAndSubscribe(AnnotationConfigWebApplicationContext node,
+                                                                 String sessionId, String destination) throws Exception {
+        MessageChannel inbound = node.getBean("clientInboundChannel", MessageChannel.class);
+        SubscribableChannel outbound = node.getBean("clientOutboundChannel", SubscribableChannel.class);
+        BlockingQueue<Message<?>> received = new LinkedBlockingQueue<>();
+        outbound.subscribe(received::add);
+
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setSessionId(sessionId);
+        connect.setAcceptVersion("1.2");
+        connect.setHeartbeat(0, 0);
+        inbound.send(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+        assertThat(received.poll(5, TimeUnit.SECONDS)).isNotNull();
+
+        StompHeaderAccessor subscribe = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        subscribe.setSessionId(sessionId);
+        subscribe.setSubscriptionId("sub-0");
+        subscribe.setDestination(destination);
+        // User của phiên do StompSubProtocolHandler gắn vào mỗi frame sau CONNECT
+        subscribe.setUser(new UsernamePasswordAuthenticationToken("admin", null,
+                List.of(new SimpleGrantedAuthority("ROLE_ADMIN"))));
+        inbound.send(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+        return received;
+    }
+
+    // Frame MESSAGE tiếp theo; broker trong bộ nhớ không gán header STOMP nên so theo loại SimpMessageType
+    private static Message<?> nextMessage(BlockingQueue<Message<?>> received, long seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < deadline) {
+            Message<?> message = received.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (message != null && SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    private static void awaitBrokerAvailable(AnnotationConfigWebApplicationContext node) throws InterruptedException {
+        AbstractBrokerMessageHandler relay = node.getBean("stompBrokerRelayMessageHandler", AbstractBrokerMessageHandler.class);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!relay.isBrokerAvailable() && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(relay.isBrokerAvailable()).isTrue();
+    }
+
+    /**
+     * Broker STOMP tối giản trong bộ nhớ, thay cho RabbitMQ/ActiveMQ: mỗi node kết nối qua TcpOperations riêng,
+     * frame được trao đổi dưới dạng Message (không qua socket). Hỗ trợ CONNECT, SUBSCRIBE, UNSUBSCRIBE, SEND, DISCONNECT.
+     */
+    static final class StandInStompBroker {
+
+        private record Subscription(Connection connection, String id) {
+        }
+
+        // Một thread xử lý mọi frame, giống thứ tự của một broker thật trên một kết nối
+        private final ExecutorService worker = Executors.newSingleThreadExecutor();
+        private final Map<String, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+        private final AtomicLong messageIds = new AtomicLong();
+
+        TcpOperations<byte[]> client() {
+            return new Client();
+        }
+
+        boolean awaitSubscription(String destination, long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (System.nanoTime() < deadline) {
+                if (!subscriptions.getOrDefault(destination, List.of()).isEmpty()) {
+                    return true;
+                }
+                Thread.sleep(10);
+            }
+            return false;
+        }
+
+        void shutdown() {
+            worker.shutdownNow();
+        }
+
+        private void receive(Connection connection, Message<byte[]> frame) {
+            StompHeaderAccessor in = StompHeaderAccessor.wrap(frame);
+            StompCommand command = in.getCommand();
+            if (command == null) {
+                return; // heartbeat
+            }
+            switch (command) {
+                case CONNECT, STOMP -> {
+                    StompHeaderAccessor connected = StompHeaderAccessor.create(StompCommand.CONNECTED);
+                    connected.setVersion("1.2");
+                    connected.setHeartbeat(0, 0);
+                    connection.deliver(connected, new byte[0]);
+                }
+                case SUBSCRIBE -> subscriptions.computeIfAbsent(in.getDestination(), d -> new CopyOnWriteArrayList<>())
+                        .add(new Subscription(connection, in.getSubscriptionId()));
+                case UNSUBSCRIBE -> subscriptions.values().forEach(list -> list.removeIf(s ->
+                        s.connection() == connection && s.id().equals(in.getSubscriptionId())));
+                case SEND -> {
+                    for (Subscription subscription : subscriptions.getOrDefault(in.getDestination(), List.of())) {
+                        StompHeaderAccessor out = StompHeaderAccessor.create(StompCommand.MESSAGE);
+                        out.setDestination(in.getDestination());
+                        out.setSubscriptionId(subscription.id());
+                        out.setMessageId(String.valueOf(messageIds.incrementAndGet()));
+                        if (in.getContentType() != null) {
+                            out.setContentType(in.getContentType());
+                        }
+                        subscription.connection().deliver(out, frame.getPayload());
+                    }
+                }
+                case DISCONNECT -> {
+                    connection.dropSubscriptions();
+                    connection.handler.afterConnectionClosed();
+                }
+                default -> {
+                }
+            }
+        }
+
+        private final class Client implements TcpOperations<byte[]> {
+            @Override
+            public CompletableFuture<Void> connectAsync(TcpConnectionHandler<byte[]> handler) {
+                Connection connection = new Connection(handler);
+                worker.execute(() -> handler.afterConnected(connection));
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public CompletableFuture<Void> connectAsync(TcpConnectionHandler<byte[]> handler, ReconnectStrategy strategy) {
+                return connectAsync(handler);
+            }
+
+            @Override
+            public CompletableFuture<Void> shutdownAsync() {
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+
+        private final class Connection implements TcpConnection<byte[]> {
+            private final TcpConnectionHandler<byte[]> handler;
+
+            Connection(TcpConnectionHandler<byte[]> handler) {
+                this.handler = handler;
+            }
+
+            @Override
+            public CompletableFuture<Void> sendAsync(Message<byte[]> message) {
+                worker.execute(() -> receive(this, message));
+                return CompletableFuture.completedFuture(null);
+            }
+
+            // Relay cần header có thể sửa (gán session id) như khi frame được StompDecoder tạo ra
+            void deliver(StompHeaderAccessor headers, byte[] payload) {
+                headers.setLeaveMutable(true);
+                handler.handleMessage(MessageBuilder.createMessage(payload, headers.getMessageHeaders()));
+            }
+
+            void dropSubscriptions() {
+                subscriptions.values().forEach(list -> list.removeIf(s -> s.connection() == this));
+            }
+
+            @Override
+            public void onReadInactivity(Runnable runnable, long duration) {
+            }
+
+            @Override
+            public void onWriteInactivity(Runnable runnable, long duration) {
+            }
+
+            @Override
+            public void close() {
+                dropSubscriptions();
+            }
+        }
+    }
+}
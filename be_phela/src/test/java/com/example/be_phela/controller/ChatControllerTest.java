@@ -0,0 +1,139 @@
+package com.example.be_phela.controller;
+
+import com.example.be_phela.filter.JwtAuthenticationFilter;
+import com.example.be_phela.model.Admin;
+import com.example.be_phela.model.ChatMessage;
+import com.example.be_phela.model.Customer;
+import com.example.be_phela.repository.AdminRepository;
+import com.example.be_phela.repository.CustomerRepository;
+import com.example.be_phela.security.SecurityEventLogger;
+import com.example.be_phela.security.StompAuthorizationInterceptor;
+import com.example.be_phela.service.ChatConversationService;
+import com.example.be_phela.service.ChatMessageWriter;
+import com.example.be_phela.service.FileStorageService;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDeniedException;
+
+import java.security.Principal;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatControllerTest {
+
+    private static final String SIGNER_KEY = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private final CustomerRepository customerRepository = mock(CustomerRepository.class);
+    private final AdminRepository adminRepository = mock(AdminRepository.class);
+    private final ChatMessageWriter chatMessageWriter = mock(ChatMessageWriter.class);
+    private final StompAuthorizationInterceptor interceptor = new StompAuthorizationInterceptor(
+            new JwtAuthenticationFilter(SIGNER_KEY, mock(SecurityEventLogger.class)), customerRepository);
+    private final ChatController controller = new ChatController(messagingTemplate, customerRepository,
+            adminRepository, mock(FileStorageService.class), chatMessageWriter, mock(ChatConversationService.class),
+            new SimpleMeterRegistry());
+
+    @Test
+    void customerMessageUsesTheAccountBehindTheConnectToken() throws Exception {
+        Customer alice = new Customer();
+        alice.setCustomerId("c1");
+        alice.setUsername("alice");
+        when(customerRepository.findByUsername("alice")).thenReturn(Optional.of(alice));
+
+        // Client gửi senderId/recipientId giả, server phải bỏ qua
+        ChatMessage message = ChatMessage.builder().content("xin chào").senderId("c2").recipientId("c2").build();
+        controller.sendMessage(message, connect(token("alice", "CUSTOMER")));
+
+        ChatMessage sent = enqueued();
+        assertThat(sent.getSenderId()).isEqualTo("c1");
+        assertThat(sent.getSenderName()).isEqualTo("alice");
+        assertThat(sent.getConversationId()).isEqualTo("c1");
+        assertThat(sent.getId()).isNotNull();
+        verify(messagingTemplate).convertAndSend("/topic/chat/c1", sent);
+        verify(messagingTemplate).convertAndSend(ChatController.ADMIN_TOPIC, sent);
+    }
+
+    @Test
+    void staffMessageGoesToTheRecipientConversation() throws Exception {
+        Admin admin = new Admin();
+        admin.setUsername("linh");
+        admin.setFullname("Nguyễn Linh");
+        when(adminRepository.findByUsername("linh")).thenReturn(Optional.of(admin));
+
+        ChatMessage message = ChatMessage.builder().content("Chào bạn").recipientId("c1").build();
+        controller.sendMessage(message, connect(token("linh", "STAFF")));
+
+        ChatMessage sent = enqueued();
+        assertThat(sent.getSenderId()).isEqualTo("ADMIN");
+        assertThat(sent.getSenderName()).isEqualTo("Nguyễn Linh");
+        assertThat(sent.getConversationId()).isEqualTo("c1");
+        verify(messagingTemplate).convertAndSend("/topic/chat/c1", sent);
+    }
+
+    @Test
+    void anonymousOrUnknownSendersAreRejected() throws Exception {
+        Principal anonymous = connect(null);
+        assertThat(anonymous).isNull();
+        assertThatThrownBy(() -> controller.sendMessage(ChatMessage.builder().content("x").build(), anonymous))
+                .isInstanceOf(AccessDeniedException.class);
+
+        when(customerRepository.findByUsername("ghost")).thenReturn(Optional.empty());
+        Principal ghost = connect(token("ghost", "CUSTOMER"));
+        assertThatThrownBy(() -> controller.sendMessage(ChatMessage.builder().content("x").build(), ghost))
+                .isInstanceOf(AccessDeniedException.class);
+
+        verify(chatMessageWriter, never()).enqueue(any());
+    }
+
+    private ChatMessage enqueued() {
+        ArgumentCaptor<ChatMessage> captor = ArgumentCaptor.forClass(ChatMessage.class);
+        verify(chatMessageWriter).enqueue(captor.capture());
+        return captor.getValue();
+    }
+
+    // Principal đúng như lúc chạy thật: do interceptor gán khi xử lý frame CONNECT
+    private Principal connect(String token) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId("s1");
+        accessor.setSessionAttributes(new HashMap<>());
+        if (token != null) {
+            accessor.addNativeHeader("Authorization", "Bearer " + token);
+        }
+        accessor.setLeaveMutable(true);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        interceptor.preSend(message, null);
+        return StompHeaderAccessor.wrap(message).getUser();
+    }
+
+    private static String token(String username, String role) throws Exception {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject(username)
+                .claim("role", role)
+                .expirationTime(new Date(System.currentTimeMillis() + 3_600_000))
+                .build();
+        JWSObject jws = new JWSObject(new JWSHeader(JWSAlgorithm.HS512), new Payload(claims.toJSONObject()));
+        jws.sign(new MACSigner(SIGNER_KEY.getBytes()));
+        return jws.serialize();
+    }
+}
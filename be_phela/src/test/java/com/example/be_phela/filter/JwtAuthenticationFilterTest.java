@@ -0,0 +1,224 @@
+package com.example.be_phela.filter;
+
+import com.example.be_phela.exception.JwtExpiredException;
+import com.example.be_phela.exception.JwtMalformedException;
+import com.example.be_phela.exception.JwtSignatureException;
+import com.example.be_phela.security.SecurityEventLogger;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.crypto.MACVerifier;
+import com.nimbusds.jose.jca.JCAContext;
+import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.jwt.JWTClaimsSet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class JwtAuthenticationFilterTest {
+
+    private static final String SIGNER_KEY = "0123456789abcdef".repeat(4);
+
+    private final CountingVerifier verifier = new CountingVerifier();
+    private final SecurityEventLogger securityEventLogger = mock(SecurityEventLogger.class);
+    private final JwtAuthenticationFilter filter = new JwtAuthenticationFilter(verifier, 100, securityEventLogger);
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void cachedTokenSkipsSignatureVerification() throws Exception {
+        String token = token("alice", "CUSTOMER", new Date(System.currentTimeMillis() + 3_600_000));
+
+        for (int i = 0; i < 5; i++) {
+            MockHttpServletResponse response = request(token);
+            assertThat(response.getStatus()).isEqualTo(200);
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            assertThat(authentication.getName()).isEqualTo("alice");
+            assertThat(authentication.getAuthorities()).extracting(Object::toString).containsExactly("ROLE_CUSTOMER");
+            SecurityContextHolder.clearContext();
+        }
+
+        assertThat(verifier.calls.get()).isEqualTo(1);
+        // Context và audit vẫn được ghi cho từng request
+        verify(securityEventLogger, times(5)).logAuthenticationSuccess(anyString(), anyString(), any());
+    }
+
+    @Test
+    void cachedTokenIsRejectedOnceItExpires() throws Exception {
+        // exp của JWT tính theo giây
+        long expiresAt = (System.currentTimeMillis() / 1000 + 2) * 1000;
+        String token = token("alice", "CUSTOMER", new Date(expiresAt));
+        assertThat(request(token).getStatus()).isEqualTo(200);
+        SecurityContextHolder.clearContext();
+
+        Thread.sleep(Math.max(0, expiresAt - System.currentTimeMillis()) + 50);
+        MockHttpServletResponse response = request(token);
+
+        assertThat(response.getStatus()).isEqualTo(401);
+        assertThat(response.getContentAsString()).contains("TOKEN_EXPIRED");
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        // Bị từ chối ngay từ cache, không verify lại
+        assertThat(verifier.calls.get()).isEqualTo(1);
+        // Lần sau token đã bị bỏ khỏi cache và bị kiểm tra exp sau khi verify
+        assertThat(request(token).getStatus()).isEqualTo(401);
+        assertThat(verifier.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void revokedTokenIsRejectedEvenThoughItWasCached() throws Exception {
+        Date expiresAt = new Date(System.currentTimeMillis() + 3_600_000);
+        String revoked = token("alice", "CUSTOMER", expiresAt);
+        String other = token("bob", "CUSTOMER", expiresAt);
+        assertThat(request(revoked).getStatus()).isEqualTo(200);
+        SecurityContextHolder.clearContext();
+
+        filter.revokeToken(revoked);
+        MockHttpServletResponse response = request(revoked);
+
+        assertThat(response.getStatus()).isEqualTo(401);
+        assertThat(response.getContentAsString()).contains("TOKEN_EXPIRED");
+        assertThatThrownBy(() -> filter.authenticateToken(revoked)).isInstanceOf(JwtExpiredException.class);
+        assertThat(request(other).getStatus()).isEqualTo(200);
+        // Thu hồi token rác không có tác dụng gì
+        filter.revokeToken("not-a-jwt");
+        assertThatThrownBy(() -> filter.authenticateToken("not-a-jwt")).isInstanceOf(JwtMalformedException.class);
+    }
+
+    @Test
+    void authenticateTokenSharesTheCacheWithTheHttpFilter() throws Exception {
+        String token = token("staff1", "STAFF", new Date(System.currentTimeMillis() + 3_600_000));
+        assertThat(request(token).getStatus()).isEqualTo(200);
+
+        UsernamePasswordAuthenticationToken authentication = filter.authenticateToken(token);
+
+        assertThat(authentication.isAuthenticated()).isTrue();
+        assertThat(authentication.getName()).isEqualTo("staff1");
+        assertThat(authentication.getAuthorities()).extracting(Object::toString).containsExactly("ROLE_STAFF");
+        assertThat(verifier.calls.get()).isEqualTo(1);
+
+        String forged = token.substring(0, token.lastIndexOf('.') + 1) + "c2lnbmF0dXJl";
+        assertThatThrownBy(() -> filter.authenticateToken(forged)).isInstanceOf(JwtSignatureException.class);
+        String noRole = token("staff2", null, new Date(System.currentTimeMillis() + 3_600_000));
+        assertThatThrownBy(() -> filter.authenticateToken(noRole)).isInstanceOf(JwtMalformedException.class);
+        // Token lỗi không được đưa vào cache
+        assertThatThrownBy(() -> filter.authenticateToken(forged)).isInstanceOf(JwtSignatureException.class);
+        assertThat(verifier.calls.get()).isEqualTo(4);
+    }
+
+    @Test
+    void publicEndpointsAndRequestsWithoutTokenPassThrough() throws Exception {
+        MockHttpServletRequest publicRequest = new MockHttpServletRequest("GET", "/api/product/get/p1");
+        publicRequest.addHeader("Authorization", "Bearer not-a-jwt");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(publicRequest, response, chain);
+        assertThat(chain.getRequest()).isSameAs(publicRequest);
+
+        MockHttpServletResponse anonymous = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/order/o1"), anonymous, new MockFilterChain());
+        assertThat(anonymous.getStatus()).isEqualTo(200);
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        assertThat(verifier.calls.get()).isZero();
+    }
+
+    @Test
+    void publicEndpointsPickUpAValidTokenButNeverRejectABadOne() throws Exception {
+        String token = token("alice", "CUSTOMER", new Date(System.currentTimeMillis() + 3_600_000));
+        MockHttpServletRequest withToken = new MockHttpServletRequest("GET", "/api/product/get/p1");
+        withToken.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(withToken, response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(SecurityContextHolder.getContext().getAuthentication().getName()).isEqualTo("alice");
+        SecurityContextHolder.clearContext();
+
+        String expired = token("alice", "CUSTOMER", new Date(System.currentTimeMillis() - 60_000));
+        MockHttpServletRequest withExpired = new MockHttpServletRequest("GET", "/api/news/n1");
+        withExpired.addHeader("Authorization", "Bearer " + expired);
+        MockHttpServletResponse expiredResponse = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(withExpired, expiredResponse, chain);
+
+        assertThat(expiredResponse.getStatus()).isEqualTo(200);
+        assertThat(chain.getRequest()).isSameAs(withExpired);
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        // Duyệt danh mục không sinh sự kiện audit
+        verify(securityEventLogger, never()).logAuthenticationSuccess(anyString(), anyString(), any());
+        verify(securityEventLogger, never()).logTokenValidationFailure(anyString(), any(), any());
+    }
+
+    private MockHttpServletResponse request(String token) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/order/o1");
+        request.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static String token(String username, String role, Date expiresAt) throws Exception {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject(username)
+                .claim("role", role)
+                .expirationTime(expiresAt)
+                .build();
+        JWSObject jws = new JWSObject(new JWSHeader(JWSAlgorithm.HS512), new Payload(claims.toJSONObject()));
+        jws.sign(new MACSigner(SIGNER_KEY.getBytes()));
+        return jws.serialize();
+    }
+
+    // Đếm số lần kiểm tra chữ ký thật sự được chạy
+    private static final class CountingVerifier implements JWSVerifier {
+        private final MACVerifier delegate;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        CountingVerifier() {
+            try {
+                delegate = new MACVerifier(SIGNER_KEY.getBytes());
+            } catch (JOSEException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean verify(JWSHeader header, byte[] signingInput, Base64URL signature) throws JOSEException {
+            calls.incrementAndGet();
+            return delegate.verify(header, signingInput, signature);
+        }
+
+        @Override
+        public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+            return delegate.supportedJWSAlgorithms();
+        }
+
+        @Override
+        public JCAContext getJCAContext() {
+            return delegate.getJCAContext();
+        }
+    }
+}
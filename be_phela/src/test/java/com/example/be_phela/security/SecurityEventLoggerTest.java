@@ -0,0 +1,149 @@
+package com.example.be_phela.security;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SecurityEventLoggerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountingListener listener = new CountingListener();
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/order/o1");
+
+    private final Logger writerLog = (Logger) LoggerFactory.getLogger(SecurityEventLogger.class);
+    private Level previousLevel;
+
+    @BeforeEach
+    void silenceWriter() {
+        // Sự kiện vẫn được định dạng và đếm, chỉ không in ra console
+        previousLevel = writerLog.getLevel();
+        writerLog.setLevel(Level.OFF);
+    }
+
+    @AfterEach
+    void restoreWriterLog() {
+        writerLog.setLevel(previousLevel);
+    }
+
+    @Test
+    void eventsBeyondCapacityAreCountedAsDropped() {
+        SecurityEventLogger logger = logger(16, 1.0);
+
+        for (int i = 0; i < 20; i++) {
+            logger.logAuthenticationFailure("bad password", request);
+        }
+
+        assertThat(logger.getQueueDepth()).isEqualTo(16);
+        assertThat(logger.getDroppedCount()).isEqualTo(4);
+        assertThat(counter("phela.security.events.dropped")).isEqualTo(4);
+        assertThat(meterRegistry.get("phela.security.events.queue.depth").gauge().value()).isEqualTo(16);
+    }
+
+    @Test
+    void stopDrainsEventsStillInTheBuffer() throws InterruptedException {
+        SecurityEventLogger logger = logger(1024, 1.0);
+        for (int i = 0; i < 1000; i++) {
+            logger.logAccessDenied("alice", "/api/admin", request);
+        }
+
+        logger.start();
+        logger.stop();
+
+        assertThat(counter("phela.security.events.written")).isEqualTo(1000);
+        assertThat(logger.getQueueDepth()).isZero();
+        assertThat(logger.getDroppedCount()).isZero();
+    }
+
+    @Test
+    void successEventsAreSampledButFailuresAndListenersSeeEverything() throws InterruptedException {
+        SecurityEventLogger logger = logger(1024, 0.0);
+        logger.start();
+
+        for (int i = 0; i < 100; i++) {
+            logger.logAuthenticationSuccess("alice", "CUSTOMER", request);
+        }
+        for (int i = 0; i < 10; i++) {
+            logger.logTokenValidationFailure("TOKEN_EXPIRED", "alice", request);
+        }
+        logger.stop();
+
+        assertThat(counter("phela.security.events.sampled-out")).isEqualTo(100);
+        assertThat(counter("phela.security.events.written")).isEqualTo(10);
+        // Listener (khóa đăng nhập, giới hạn tần suất) nhận đủ cả sự kiện bị lấy mẫu
+        assertThat(listener.received.sum()).isEqualTo(110);
+    }
+
+    @Test
+    void concurrentPublishersAreEitherWrittenOrCountedAsDropped() throws Exception {
+        SecurityEventLogger logger = logger(256, 1.0);
+        logger.start();
+        int threads = 8;
+        int perThread = 20_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            tasks.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    logger.logAuthenticationFailure("user" + i, "bad password", request);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> task : tasks) {
+                task.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        logger.stop();
+
+        long published = (long) threads * perThread;
+        assertThat(listener.received.sum()).isEqualTo(published);
+        assertThat(counter("phela.security.events.written") + logger.getDroppedCount()).isEqualTo(published);
+        assertThat(logger.getQueueDepth()).isZero();
+    }
+
+    private SecurityEventLogger logger(int bufferSize, double successSampleRate) {
+        @SuppressWarnings("unchecked")
+        ObjectProvider<SecurityEventListener> listeners = mock(ObjectProvider.class);
+        when(listeners.orderedStream()).thenAnswer(inv -> Stream.of(listener));
+        return new SecurityEventLogger(bufferSize, successSampleRate, meterRegistry, listeners);
+    }
+
+    private double counter(String name) {
+        return meterRegistry.get(name).functionCounter().count();
+    }
+
+    private static final class CountingListener implements SecurityEventListener {
+        private final LongAdder received = new LongAdder();
+
+        @Override
+        public void onSecurityEvent(SecurityEvent event) {
+            received.increment();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.be_phela.security;
+
+import com.example.be_phela.filter.JwtAuthenticationFilter;
+import com.example.be_phela.model.Customer;
+import com.example.be_phela.repository.CustomerRepository;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.Authentication;
+
+import java.security.Principal;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StompAuthorizationInterceptorTest {
+
+    private static final String SIGNER_KEY = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    private final CustomerRepository customerRepository = mock(CustomerRepository.class);
+    private final StompAuthorizationInterceptor interceptor = new StompAuthorizationInterceptor(
+            new JwtAuthenticationFilter(SIGNER_KEY, mock(SecurityEventLogger.class)), customerRepository);
+
+    @Test
+    void connectWithTokenAuthenticatesTheSessionAndRemembersTheCustomerId() throws Exception {
+        when(customerRepository.findByUsername("alice")).thenReturn(Optional.of(customer("c1", "alice")));
+        Map<String, Object> attributes = new HashMap<>();
+
+        Principal user = connect(token("alice", "CUSTOMER"), attributes);
+
+        assertThat(user).isInstanceOf(Authentication.class);
+        assertThat(user.getName()).isEqualTo("alice");
+        // SUBSCRIBE sau đó không cần tra DB lại
+        assertThatCode(() -> subscribe(user, attributes, "/topic/chat/c1")).doesNotThrowAnyException();
+        assertThatCode(() -> subscribe(user, attributes, "/topic/orders/customer/c1")).doesNotThrowAnyException();
+        verify(customerRepository, times(1)).findByUsername("alice");
+    }
+
+    @Test
+    void connectWithInvalidTokenIsRejected() throws Exception {
+        String forged = token("alice", "ADMIN").replaceFirst("\\.[^.]+$", ".c2lnbmF0dXJl");
+
+        assertThatThrownBy(() -> connect(forged, new HashMap<>())).isInstanceOf(BadCredentialsException.class);
+        assertThatThrownBy(() -> connect("not-a-jwt", new HashMap<>())).isInstanceOf(BadCredentialsException.class);
+    }
+
+    @Test
+    void anonymousSessionCannotSubscribeToAnyTopic() throws Exception {
+        Principal anonymous = connect(null, new HashMap<>());
+
+        assertThat(anonymous).isNull();
+        for (String destination : new String[]{"/topic/chat-admin", "/topic/chat/c1", "/topic/orders/customer/c1",
+                "/topic/orders", "/topic/orders/branch/B1"}) {
+            assertThatThrownBy(() -> subscribe(null, new HashMap<>(), destination))
+                    .isInstanceOf(AccessDeniedException.class);
+        }
+    }
+
+    @Test
+    void customerOnlySeesOwnConversationAndOrders() throws Exception {
+        when(customerRepository.findByUsername("alice")).thenReturn(Optional.of(customer("c1", "alice")));
+        Map<String, Object> attributes = new HashMap<>();
+        Principal alice = connect(token("alice", "CUSTOMER"), attributes);
+
+        for (String destination : new String[]{"/topic/chat-admin", "/topic/chat/c2", "/topic/orders/customer/c2",
+                "/topic/orders", "/topic/orders/branch/B1", "/topic/chat/*", "/topic/chat/**", "/topic/orders/customer/c1/x",
+                "/topic/**", "/queue/anything"}) {
+            assertThatThrownBy(() -> subscribe(alice, attributes, destination))
+                    .as(destination)
+                    .isInstanceOf(AccessDeniedException.class);
+        }
+    }
+
+    @Test
+    void staffCanSubscribeToEveryConversationAndBranch() throws Exception {
+        for (String role : new String[]{"ADMIN", "SUPER_ADMIN", "STAFF"}) {
+            Map<String, Object> attributes = new HashMap<>();
+            Principal staff = connect(token("staff-" + role, role), attributes);
+            for (String destination : new String[]{"/topic/chat-admin", "/topic/chat/c2", "/topic/orders/customer/c2",
+                    "/topic/orders", "/topic/orders/branch/B1"}) {
+                assertThatCode(() -> subscribe(staff, attributes, destination)).as(role + " " + destination)
+                        .doesNotThrowAnyException();
+            }
+        }
+        Principal delivery = connect(token("driver", "DELIVERY_STAFF"), new HashMap<>());
+        assertThatThrownBy(() -> subscribe(delivery, new HashMap<>(), "/topic/chat-admin"))
+                .isInstanceOf(AccessDeniedException.class);
+        assertThatThrownBy(() -> subscribe(delivery, new HashMap<>(), "/topic/orders"))
+                .isInstanceOf(AccessDeniedException.class);
+    }
+
+    private Principal connect(String token, Map<String, Object> attributes) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId("s1");
+        accessor.setSessionAttributes(attributes);
+        if (token != null) {
+            accessor.addNativeHeader("Authorization", "Bearer " + token);
+        }
+        accessor.setLeaveMutable(true);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        interceptor.preSend(message, null);
+        return StompHeaderAccessor.wrap(message).getUser();
+    }
+
+    private void subscribe(Principal user, Map<String, Object> attributes, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSessionId("s1");
+        accessor.setSessionAttributes(attributes);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination(destination);
+        accessor.setUser(user);
+        accessor.setLeaveMutable(true);
+        interceptor.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+    }
+
+    static String token(String username, String role) throws Exception {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject(username)
+                .claim("role", role)
+                .expirationTime(new Date(System.currentTimeMillis() + 3_600_000))
+                .build();
+        JWSObject jws = new JWSObject(new JWSHeader(JWSAlgorithm.HS512), new Payload(claims.toJSONObject()));
+        jws.sign(new MACSigner(SIGNER_KEY.getBytes()));
+        return jws.serialize();
+    }
+
+    private static Customer customer(String customerId, String username) {
+        Customer customer = new Customer();
+        customer.setCustomerId(customerId);
+        customer.setUsername(username);
+        return customer;
+    }
+}
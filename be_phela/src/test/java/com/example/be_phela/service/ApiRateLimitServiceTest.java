@@ -0,0 +1,175 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.filter.ApiRateLimitFilter;
+import com.example.be_phela.filter.JwtAuthenticationFilter;
+import com.example.be_phela.security.SecurityEventLogger;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ApiRateLimitServiceTest {
+
+    private static final String SIGNER_KEY = "0123456789abcdef".repeat(4);
+    private static final HttpServlet OK_SERVLET = new HttpServlet() {
+        @Override
+        protected void service(HttpServletRequest request, HttpServletResponse response) {
+            response.setStatus(200);
+        }
+    };
+
+    @Test
+    void burstIsAllowedThenClientMustWait() {
+        ApiRateLimitService service = service(new MockEnvironment(), 1_000);
+        // chat-upload: burst 5, nạp lại 0.2 token/giây nên thời gian chạy test không ảnh hưởng kết quả
+        ApiRateLimitService.Policy policy = service.policyFor("/api/chat/uploadImage");
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(service.tryAcquire(policy, "ip:203.0.113.7")).isZero();
+        }
+        assertThat(service.tryAcquire(policy, "ip:203.0.113.7")).isBetween(1L, 5_000L);
+        // Client khác có bucket riêng
+        assertThat(service.tryAcquire(policy, "ip:203.0.113.8")).isZero();
+    }
+
+    @Test
+    void rotatingForwardedForDoesNotMintNewBuckets() throws Exception {
+        ApiRateLimitService service = service(new MockEnvironment(), 1_000);
+        ApiRateLimitFilter filter = new ApiRateLimitFilter(service);
+
+        int limited = 0;
+        for (int i = 0; i < 100; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/chat/uploadImage");
+            request.setRemoteAddr("203.0.113.7");
+            request.addHeader("X-Forwarded-For", "198.51.100." + i);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(request, response, new MockFilterChain());
+            if (response.getStatus() == 429) {
+                limited++;
+                assertThat(response.getHeader("Retry-After")).isNotNull();
+            }
+        }
+
+        assertThat(limited).isEqualTo(95);
+        assertThat(service.bucketCount()).isEqualTo(1);
+    }
+
+    @Test
+    void bucketMapStaysBoundedAndKeepsActiveClients() throws Exception {
+        ApiRateLimitService service = service(new MockEnvironment(), 1_000);
+        ApiRateLimitService.Policy policy = service.policyFor("/api/chat/uploadImage");
+        String hot = "ip:203.0.113.7";
+        while (service.tryAcquire(policy, hot) == 0) {
+            // dùng hết burst của client đang hoạt động
+        }
+
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 500; i++) {
+                service.tryAcquire(policy, "ip:r" + round + "-" + i);
+            }
+            Thread.sleep(2);
+            service.tryAcquire(policy, hot);
+        }
+
+        assertThat(service.bucketCount()).isLessThanOrEqualTo(1_000);
+        // Bucket của client đang hoạt động không bị xóa nên không được nạp đầy lại
+        assertThat(service.tryAcquire(policy, hot)).isPositive();
+    }
+
+    @Test
+    void signedInUsersOnPublicEndpointsGetTheirOwnBuckets() throws Exception {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("app.rate-limit.product.per-second", "0.001")
+                .withProperty("app.rate-limit.product.burst", "2");
+        ApiRateLimitService service = service(environment, 1_000);
+        JwtAuthenticationFilter jwtFilter = new JwtAuthenticationFilter(SIGNER_KEY, mock(SecurityEventLogger.class));
+        ApiRateLimitFilter rateLimitFilter = new ApiRateLimitFilter(service);
+
+        // Hai user dùng chung một IP (NAT, wifi cửa hàng) không dùng chung hạn mức
+        assertThat(getProduct(jwtFilter, rateLimitFilter, token("alice"))).containsExactly(200, 200, 429);
+        assertThat(getProduct(jwtFilter, rateLimitFilter, token("bob"))).containsExactly(200, 200, 429);
+        assertThat(getProduct(jwtFilter, rateLimitFilter, null)).containsExactly(200, 200, 429);
+        assertThat(service.bucketCount()).isEqualTo(3);
+    }
+
+    @Test
+    void highLimitsNeverRejectAcrossManyClients() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("app.rate-limit.product.per-second", "1000000000")
+                .withProperty("app.rate-limit.product.burst", "1000000000");
+        ApiRateLimitService service = service(environment, 100_000);
+        String[] clients = new String[10_000];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = "ip:10.0." + (i / 256) + "." + (i % 256);
+        }
+
+        runAllowedPath(service, clients, 200_000);
+
+        assertThat(service.bucketCount()).isLessThanOrEqualTo(clients.length);
+    }
+
+    private static List<Integer> getProduct(JwtAuthenticationFilter jwtFilter, ApiRateLimitFilter rateLimitFilter,
+                                            String token) throws Exception {
+        List<Integer> statuses = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/product/get/p1");
+            request.setRemoteAddr("203.0.113.7");
+            if (token != null) {
+                request.addHeader("Authorization", "Bearer " + token);
+            }
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            try {
+                new MockFilterChain(OK_SERVLET, jwtFilter, rateLimitFilter).doFilter(request, response);
+            } finally {
+                SecurityContextHolder.clearContext();
+            }
+            statuses.add(response.getStatus());
+        }
+        return statuses;
+    }
+
+    private static String token(String username) throws Exception {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject(username)
+                .claim("role", "CUSTOMER")
+                .expirationTime(new Date(System.currentTimeMillis() + 3_600_000))
+                .build();
+        JWSObject jws = new JWSObject(new JWSHeader(JWSAlgorithm.HS512), new Payload(claims.toJSONObject()));
+        jws.sign(new MACSigner(SIGNER_KEY.getBytes()));
+        return jws.serialize();
+    }
+
+    private static void runAllowedPath(ApiRateLimitService service, String[] clients, int operations) {
+        long rejected = 0;
+        for (int i = 0; i < operations; i++) {
+            ApiRateLimitService.Policy policy = service.policyFor("/api/product/customer/get/" + (i & 7));
+            rejected += service.tryAcquire(policy, clients[ThreadLocalRandom.current().nextInt(clients.length)]);
+        }
+        assertThat(rejected).isZero();
+    }
+
+    private static ApiRateLimitService service(MockEnvironment environment, int maxBuckets) {
+        return new ApiRateLimitService(true, Duration.ofMinutes(10), maxBuckets, environment, new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.mapper.BranchMapper;
+import com.example.be_phela.model.Address;
+import com.example.be_phela.model.Branch;
+import com.example.be_phela.model.enums.ProductStatus;
+import com.example.be_phela.repository.BranchRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BranchServiceTest {
+
+    private final BranchRepository branchRepository = mock(BranchRepository.class);
+    private final BranchService service = new BranchService(branchRepository, mock(BranchMapper.class));
+
+    private final Branch hoanKiem = branch("CH0002", "Hà Nội", "Hoàn Kiếm", 21.0285, 105.8542);
+    private final Branch cauGiay = branch("CH0001", "Hà Nội", "Cầu Giấy", 21.0362, 105.7906);
+    private final Branch quan1 = branch("CH0003", "Hồ Chí Minh", "Quận 1", 10.7769, 106.7009);
+
+    @BeforeEach
+    void setUp() {
+        List<Branch> branches = List.of(hoanKiem, cauGiay, quan1);
+        when(branchRepository.findByStatus(ProductStatus.SHOW)).thenReturn(branches);
+        for (Branch branch : branches) {
+            when(branchRepository.findById(branch.getBranchCode())).thenReturn(Optional.of(branch));
+        }
+    }
+
+    @Test
+    void nearestBranchUsesCoordinatesWhenTheAddressHasThem() {
+        Address nearHoanKiem = address("Hồ Chí Minh", "Quận 1", 21.03, 105.85);
+
+        assertThat(service.findNearestBranch(nearHoanKiem)).contains(hoanKiem);
+        assertThat(service.findNearestBranch(nearHoanKiem, List.of(cauGiay, quan1))).contains(cauGiay);
+    }
+
+    @Test
+    void addressWithoutCoordinatesFallsBackToDistrictThenCity() {
+        // Địa chỉ cũ chưa có tọa độ vẫn được gán chi nhánh, không ném lỗi
+        assertThat(service.findNearestBranch(address(" hà nội", "HOÀN KIẾM", null, null))).contains(hoanKiem);
+        assertThat(service.findNearestBranch(address("Hà Nội", "Tây Hồ", null, 105.8))).contains(cauGiay);
+        assertThat(service.findNearestBranch(address("Đà Nẵng", "Hải Châu", null, null))).isEmpty();
+
+        Address quan3 = address("Hồ Chí Minh", "Quận 3", null, null);
+        assertThat(service.findNearestBranch(quan3, List.of(hoanKiem, quan1))).contains(quan1);
+        assertThat(service.findNearestBranch(quan3, List.of(hoanKiem))).isEmpty();
+    }
+
+    private static Branch branch(String code, String city, String district, double latitude, double longitude) {
+        return Branch.builder()
+                .branchCode(code)
+                .branchName("Phê La " + district)
+                .city(city)
+                .district(district)
+                .latitude(latitude)
+                .longitude(longitude)
+                .status(ProductStatus.SHOW)
+                .build();
+    }
+
+    private static Address address(String city, String district, Double latitude, Double longitude) {
+        return Address.builder()
+                .city(city)
+                .district(district)
+                .latitude(latitude)
+                .longitude(longitude)
+                .build();
+    }
+}
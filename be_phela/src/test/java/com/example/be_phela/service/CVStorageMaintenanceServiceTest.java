@@ -0,0 +1,153 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.dto.response.CVStorageMaintenanceDTO;
+import com.example.be_phela.repository.ApplicationRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CVStorageMaintenanceServiceTest {
+
+    private static final byte[] RESUME = "%PDF-1.7 resume".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] COVER_LETTER = "PK docx cover letter".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path uploadDir;
+
+    private final ApplicationRepository applicationRepository = mock(ApplicationRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    @Test
+    void migrationRewritesCvUrlsBeforeRemovingTheFlatFiles() throws Exception {
+        CVStorageService storage = storage();
+        Path first = Files.write(uploadDir.resolve("3f0c.pdf"), RESUME);
+        Path duplicate = Files.write(uploadDir.resolve("9a71.PDF"), RESUME);
+        Path letter = Files.write(uploadDir.resolve("b2d4.docx"), COVER_LETTER);
+        String resumeUrl = storage.contentUrl(storage.hashFile(first), ".pdf");
+        String letterUrl = storage.contentUrl(storage.hashFile(letter), ".docx");
+        when(applicationRepository.updateCvUrl(anyString(), anyString())).thenAnswer(inv -> {
+            // File cũ chỉ bị xóa sau khi cvUrl đã được cập nhật
+            assertThat(uploadDir.resolve(inv.<String>getArgument(0).substring("/uploads/cv/".length()))).exists();
+            assertThat(storage.fileExists(inv.getArgument(1))).isTrue();
+            return inv.getArgument(0).equals("/uploads/cv/9a71.PDF") ? 0 : 1;
+        });
+
+        CVStorageMaintenanceDTO result = new CVStorageMaintenanceService(storage, applicationRepository,
+                new TransactionTemplate(transactionManager)).migrateFlatDirectory();
+
+        verify(applicationRepository).updateCvUrl("/uploads/cv/3f0c.pdf", resumeUrl);
+        verify(applicationRepository).updateCvUrl("/uploads/cv/9a71.PDF", resumeUrl);
+        verify(applicationRepository).updateCvUrl("/uploads/cv/b2d4.docx", letterUrl);
+        assertThat(first).doesNotExist();
+        assertThat(duplicate).doesNotExist();
+        assertThat(letter).doesNotExist();
+        assertThat(blobs()).containsExactlyInAnyOrder(
+                uploadDir.resolve(resumeUrl.substring("/uploads/cv/".length())),
+                uploadDir.resolve(letterUrl.substring("/uploads/cv/".length())));
+        assertThat(result.getScanned()).isEqualTo(3);
+        assertThat(result.getMigrated()).isEqualTo(3);
+        assertThat(result.getDeduplicated()).isEqualTo(1);
+        assertThat(result.getReferencesUpdated()).isEqualTo(2);
+        assertThat(result.getUnreferenced()).isEqualTo(1);
+        assertThat(result.getFailed()).isZero();
+        assertThat(result.getBytesReclaimed()).isEqualTo(RESUME.length);
+    }
+
+    @Test
+    void failedUpdateKeepsTheOriginalAndARerunFinishesTheMigration() throws Exception {
+        CVStorageService storage = storage();
+        Path ok = Files.write(uploadDir.resolve("ok.pdf"), RESUME);
+        Path broken = Files.write(uploadDir.resolve("broken.docx"), COVER_LETTER);
+        when(applicationRepository.updateCvUrl(eq("/uploads/cv/ok.pdf"), anyString())).thenReturn(1);
+        when(applicationRepository.updateCvUrl(eq("/uploads/cv/broken.docx"), anyString()))
+                .thenThrow(new IllegalStateException("deadlock"))
+                .thenReturn(1);
+        CVStorageMaintenanceService maintenance = new CVStorageMaintenanceService(storage, applicationRepository,
+                new TransactionTemplate(transactionManager));
+
+        CVStorageMaintenanceDTO failed = maintenance.migrateFlatDirectory();
+
+        assertThat(failed.getMigrated()).isEqualTo(1);
+        assertThat(failed.getFailed()).isEqualTo(1);
+        assertThat(ok).doesNotExist();
+        // Application vẫn trỏ tới file cũ nên file cũ phải còn nguyên
+        assertThat(broken).exists().hasBinaryContent(COVER_LETTER);
+        verify(transactionManager).rollback(any());
+
+        CVStorageMaintenanceDTO rerun = maintenance.migrateFlatDirectory();
+
+        assertThat(rerun.getScanned()).isEqualTo(1);
+        assertThat(rerun.getMigrated()).isEqualTo(1);
+        assertThat(rerun.getFailed()).isZero();
+        assertThat(broken).doesNotExist();
+        assertThat(blobs()).hasSize(2);
+    }
+
+    @Test
+    void garbageCollectionKeepsReferencedAndRecentBlobs() throws Exception {
+        CVStorageService storage = storage();
+        String referenced = storage.storeContent(new ByteArrayInputStream(RESUME), ".pdf").cvUrl();
+        String orphan = storage.storeContent(new ByteArrayInputStream(COVER_LETTER), ".docx").cvUrl();
+        String fresh = storage.storeContent(new ByteArrayInputStream("fresh".getBytes(StandardCharsets.UTF_8)), ".pdf").cvUrl();
+        Path flat = Files.write(uploadDir.resolve("legacy.pdf"), RESUME);
+        Path staleTemp = Files.write(storage.getStagingLocation().resolve("cv-1.tmp"), RESUME);
+        for (Path path : List.of(path(referenced), path(orphan), flat, staleTemp)) {
+            age(path);
+        }
+        when(applicationRepository.findDistinctCvUrls()).thenReturn(List.of(referenced));
+        when(applicationRepository.countByCvUrl(referenced)).thenReturn(1L);
+
+        CVStorageMaintenanceDTO result = new CVStorageMaintenanceService(storage, applicationRepository,
+                new TransactionTemplate(transactionManager)).collectGarbage();
+
+        assertThat(path(referenced)).exists();
+        assertThat(path(fresh)).exists();
+        assertThat(path(orphan)).doesNotExist();
+        assertThat(staleTemp).doesNotExist();
+        // File chưa migrate ở thư mục gốc không thuộc phạm vi dọn dẹp
+        assertThat(flat).exists();
+        assertThat(result.getScanned()).isEqualTo(3);
+        assertThat(result.getUnreferenced()).isEqualTo(2);
+        assertThat(result.getDeleted()).isEqualTo(2);
+        assertThat(result.getBytesReclaimed()).isEqualTo(COVER_LETTER.length + RESUME.length);
+    }
+
+    private CVStorageService storage() {
+        return new CVStorageService(uploadDir.toString(), 100, Duration.ofMinutes(5), Duration.ofHours(1),
+                applicationRepository);
+    }
+
+    private Path path(String cvUrl) {
+        return uploadDir.resolve(cvUrl.substring("/uploads/cv/".length()));
+    }
+
+    private static void age(Path path) throws Exception {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - Duration.ofHours(2).toMillis()));
+    }
+
+    // File trong các thư mục shard ab/cd/
+    private List<Path> blobs() throws Exception {
+        try (Stream<Path> files = Files.find(uploadDir, 3, (path, attributes) -> attributes.isRegularFile()
+                && uploadDir.relativize(path).getNameCount() == 3)) {
+            return files.toList();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.repository.ApplicationRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CVStorageServiceTest {
+
+    private static final byte[] RESUME = "%PDF-1.7 resume of Nguyen Van A".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path uploadDir;
+
+    private final ApplicationRepository applicationRepository = mock(ApplicationRepository.class);
+
+    @Test
+    void identicalUploadsAreStoredOnceUnderTheirHash() throws Exception {
+        CVStorageService service = service();
+
+        String first = service.storeCVFile(pdf("cv.pdf", RESUME));
+        String second = service.storeCVFile(pdf("CV-final (1).PDF", RESUME));
+        String other = service.storeCVFile(pdf("cv.pdf", "%PDF-1.7 another resume".getBytes(StandardCharsets.UTF_8)));
+
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(RESUME));
+        assertThat(first).isEqualTo(second)
+                .isEqualTo("/uploads/cv/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + ".pdf");
+        assertThat(other).isNotEqualTo(first);
+        assertThat(blobs()).hasSize(2);
+        assertThat(Files.readAllBytes(service.contentPath(hash, ".pdf"))).isEqualTo(RESUME);
+        // Không để lại file tạm
+        try (Stream<Path> staging = Files.list(service.getStagingLocation())) {
+            assertThat(staging).isEmpty();
+        }
+        assertThat(service.getMetadata(first).etag()).isEqualTo("\"" + hash + "\"");
+        assertThat(service.getFileSize(first)).isEqualTo(RESUME.length);
+    }
+
+    @Test
+    void secondStoreOfTheSameContentReportsDeduplication() throws Exception {
+        CVStorageService service = service();
+
+        CVStorageService.StoredContent first = service.storeContent(new ByteArrayInputStream(RESUME), ".pdf");
+        Path blob = service.contentPath(first.sha256(), ".pdf");
+        Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis() - Duration.ofDays(1).toMillis()));
+        CVStorageService.StoredContent second = service.storeContent(new ByteArrayInputStream(RESUME), ".pdf");
+
+        assertThat(first.deduplicated()).isFalse();
+        assertThat(second.deduplicated()).isTrue();
+        assertThat(second.cvUrl()).isEqualTo(first.cvUrl());
+        assertThat(second.size()).isEqualTo(RESUME.length);
+        // File dùng lại được làm mới thời gian để không bị dọn khi Application chưa kịp commit
+        assertThat(Files.getLastModifiedTime(blob).toMillis())
+                .isGreaterThan(System.currentTimeMillis() - Duration.ofMinutes(1).toMillis());
+    }
+
+    @Test
+    void deleteKeepsReferencedAndRecentFiles() throws Exception {
+        CVStorageService service = service();
+        String cvUrl = service.storeCVFile(pdf("cv.pdf", RESUME));
+        Path blob = service.contentPath(service.storeContent(new ByteArrayInputStream(RESUME), ".pdf").sha256(), ".pdf");
+
+        // Còn trong thời gian chờ
+        assertThat(service.deleteCVFile(cvUrl)).isFalse();
+
+        Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis() - Duration.ofHours(2).toMillis()));
+        when(applicationRepository.countByCvUrl(cvUrl)).thenReturn(1L);
+        assertThat(service.deleteCVFile(cvUrl)).isFalse();
+        assertThat(blob).exists();
+
+        when(applicationRepository.countByCvUrl(cvUrl)).thenReturn(0L);
+        assertThat(service.deleteCVFile(cvUrl)).isTrue();
+        assertThat(blob).doesNotExist();
+        assertThat(service.fileExists(cvUrl)).isFalse();
+    }
+
+    @Test
+    void rejectsPathsOutsideTheStorageDirectory() {
+        CVStorageService service = service();
+
+        assertThat(service.getMetadata("/uploads/cv/../../etc/passwd")).isNull();
+        assertThat(service.deleteCVFile("/uploads/cv/../secret.pdf")).isFalse();
+        assertThatThrownBy(() -> service.storeCVFile(new MockMultipartFile("file", "cv.exe", "application/pdf", RESUME)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private CVStorageService service() {
+        return new CVStorageService(uploadDir.toString(), 100, Duration.ofMinutes(5), Duration.ofHours(1),
+                applicationRepository);
+    }
+
+    // File trong các thư mục shard ab/cd/
+    private List<Path> blobs() throws Exception {
+        try (Stream<Path> files = Files.find(uploadDir, 3, (path, attributes) -> attributes.isRegularFile()
+                && uploadDir.relativize(path).getNameCount() == 3)) {
+            return files.toList();
+        }
+    }
+
+    private static MockMultipartFile pdf(String name, byte[] content) {
+        return new MockMultipartFile("file", name, "application/pdf", content);
+    }
+}
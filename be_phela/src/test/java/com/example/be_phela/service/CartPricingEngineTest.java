@@ -0,0 +1,257 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.model.Address;
+import com.example.be_phela.model.Branch;
+import com.example.be_phela.model.Cart;
+import com.example.be_phela.model.CartItem;
+import com.example.be_phela.model.Promotion;
+import com.example.be_phela.model.PromotionCart;
+import com.example.be_phela.model.enums.DiscountType;
+import com.example.be_phela.utils.DistanceCalculator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class CartPricingEngineTest {
+
+    private static final double[] HANOI_HOME = {21.0285, 105.8542};
+    private static final double[] HANOI_BRANCH = {21.0380, 105.8340};
+    private static final double[] SAIGON_HOME = {10.7769, 106.7009};
+    private static final double[] SAIGON_BRANCH = {10.8231, 106.6297};
+
+    private final CartPricingEngine engine = new CartPricingEngine();
+
+    // Giá trị tính bằng công thức cũ của CartService/OrderService (trước khi gom vào CartPricingEngine)
+    @Test
+    void goldenValues() {
+        // Không có tọa độ: phí cơ bản; 10% của 125.000 bị chặn ở 10.000
+        assertPricing(cart(null, null, items(90_000, 35_000), percentage(10, 10_000.0, null)),
+                125_000, 10_000, 10_000, 125_000);
+        // Từ 500.000 miễn phí ship; giảm cố định 50.000 với đơn tối thiểu 500.000
+        assertPricing(cart(HANOI_HOME, HANOI_BRANCH, items(400_000, 200_000), fixed(50_000, 500_000.0)),
+                600_000, 0, 50_000, 550_000);
+        // 2,3476 km: floor(10.000 + 2,3476 x 2.000) = 14.695
+        assertPricing(cart(HANOI_HOME, HANOI_BRANCH, items(80_000)),
+                80_000, 14_695, 0, 94_695);
+        // Chưa đạt đơn tối thiểu: khuyến mãi bị loại, không giảm
+        CartPricingEngine.CartPricing rejected = engine.price(
+                cart(HANOI_HOME, HANOI_BRANCH, items(80_000), fixed(20_000, 100_000.0)));
+        assertThat(rejected.discount()).isZero();
+        assertThat(rejected.rejectedPromotions()).hasSize(1);
+        assertThat(rejected.finalAmount()).isEqualTo(94_695);
+        // 9,3204 km, hai khuyến mãi cộng dồn: 20% không giới hạn + 15.000
+        assertPricing(cart(SAIGON_HOME, SAIGON_BRANCH, items(150_000, 50_000),
+                        percentage(20, null, null), fixed(15_000, null)),
+                200_000, 28_640, 55_000, 173_640);
+        // Giỏ rỗng
+        assertPricing(cart(null, null, items()), 0, 10_000, 0, 10_000);
+    }
+
+    @Test
+    void matchesThePreviousFormulasOnRandomCarts() {
+        Random random = new Random(20_250_301);
+        for (int n = 0; n < 20_000; n++) {
+            Cart cart = randomCart(random);
+
+            CartPricingEngine.CartPricing pricing = engine.price(cart);
+            LegacyPricing legacy = LegacyPricing.of(cart);
+
+            // DoubleStream.sum dùng phép cộng bù sai số nên chỉ khác ở bit cuối
+            assertThat(pricing.subtotal()).isCloseTo(legacy.total, within(1e-6));
+            assertThat(pricing.shippingFee()).isCloseTo(legacy.shippingFee, within(1e-6));
+            assertThat(pricing.discount()).isCloseTo(legacy.discount, within(1e-6));
+            assertThat(pricing.finalAmount()).isCloseTo(legacy.finalAmount, within(1e-6));
+            assertThat(pricing.appliedPromotions()).extracting(CartPricingEngine.AppliedPromotion::promotionCart)
+                    .containsExactlyElementsOf(legacy.applied);
+        }
+    }
+
+    // Không có JMH trong project: đo thô bằng nanoTime sau khi khởi động JIT, chỉ in kết quả để so sánh.
+    // Không chạy mặc định: mvn test -Dtest=CartPricingEngineTest -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkAgainstPreviousFormulas() {
+        Random random = new Random(7);
+        List<Cart> carts = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            carts.add(randomCart(random));
+        }
+        double sink = 0;
+        for (int warmup = 0; warmup < 20; warmup++) {
+            sink += runEngine(carts) + runLegacy(carts);
+        }
+
+        int rounds = 50;
+        long engineNanos = 0;
+        long legacyNanos = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            sink += runEngine(carts);
+            long middle = System.nanoTime();
+            sink += runLegacy(carts);
+            engineNanos += middle - start;
+            legacyNanos += System.nanoTime() - middle;
+        }
+        double pricedCarts = (double) rounds * carts.size();
+        System.out.printf("Cart pricing: engine %.0f ns/cart, previous formulas %.0f ns/cart (checksum %.0f)%n",
+                engineNanos / pricedCarts, legacyNanos / pricedCarts, sink);
+        assertThat(sink).isPositive();
+    }
+
+    private double runEngine(List<Cart> carts) {
+        double sum = 0;
+        for (Cart cart : carts) {
+            sum += engine.price(cart).finalAmount();
+        }
+        return sum;
+    }
+
+    private static double runLegacy(List<Cart> carts) {
+        double sum = 0;
+        for (Cart cart : carts) {
+            sum += LegacyPricing.of(cart).finalAmount;
+        }
+        return sum;
+    }
+
+    private void assertPricing(Cart cart, double subtotal, double shippingFee, double discount, double finalAmount) {
+        CartPricingEngine.CartPricing pricing = engine.price(cart);
+        assertThat(pricing.subtotal()).isEqualTo(subtotal);
+        assertThat(pricing.shippingFee()).isEqualTo(shippingFee);
+        assertThat(pricing.discount()).isEqualTo(discount);
+        assertThat(pricing.finalAmount()).isEqualTo(finalAmount);
+
+        LegacyPricing legacy = LegacyPricing.of(cart);
+        assertThat(legacy.total).isEqualTo(subtotal);
+        assertThat(legacy.shippingFee).isEqualTo(shippingFee);
+        assertThat(legacy.discount).isEqualTo(discount);
+        assertThat(legacy.finalAmount).isEqualTo(finalAmount);
+    }
+
+    private static Cart randomCart(Random random) {
+        List<CartItem> items = new ArrayList<>();
+        for (int i = random.nextInt(8); i > 0; i--) {
+            int quantity = 1 + random.nextInt(5);
+            items.add(CartItem.builder().quantity(quantity).amount(quantity * (25_000 + random.nextInt(60) * 1_000.0)).build());
+        }
+        List<PromotionCart> promotions = new ArrayList<>();
+        for (int i = random.nextInt(4); i > 0; i--) {
+            Double minimum = random.nextBoolean() ? null : random.nextInt(40) * 10_000.0;
+            promotions.add(random.nextBoolean()
+                    ? percentage(5 + random.nextInt(30), random.nextBoolean() ? null : 5_000.0 + random.nextInt(50) * 1_000, minimum)
+                    : fixed(5_000 + random.nextInt(40) * 1_000, minimum));
+        }
+        boolean located = random.nextInt(4) != 0;
+        double[] home = {10 + random.nextDouble() * 12, 104 + random.nextDouble() * 4};
+        double[] branch = {home[0] + random.nextGaussian() * 0.05, home[1] + random.nextGaussian() * 0.05};
+        Cart cart = cart(located ? home : null, located ? branch : null, items);
+        cart.setPromotionCarts(promotions);
+        return cart;
+    }
+
+    private static Cart cart(double[] home, double[] branch, List<CartItem> items, PromotionCart... promotions) {
+        return Cart.builder()
+                .cartItems(items)
+                .promotionCarts(new ArrayList<>(List.of(promotions)))
+                .address(home == null ? null : Address.builder().latitude(home[0]).longitude(home[1]).build())
+                .branch(branch == null ? null : Branch.builder().latitude(branch[0]).longitude(branch[1]).build())
+                .build();
+    }
+
+    private static List<CartItem> items(double... amounts) {
+        List<CartItem> items = new ArrayList<>();
+        for (double amount : amounts) {
+            items.add(CartItem.builder().quantity(1).amount(amount).build());
+        }
+        return items;
+    }
+
+    private static PromotionCart percentage(double percent, Double maxDiscount, Double minimumOrder) {
+        return PromotionCart.builder().promotion(Promotion.builder().discountType(DiscountType.PERCENTAGE)
+                .discountValue(percent).maxDiscountAmount(maxDiscount).minimumOrderAmount(minimumOrder).build()).build();
+    }
+
+    private static PromotionCart fixed(double amount, Double minimumOrder) {
+        return PromotionCart.builder().promotion(Promotion.builder().discountType(DiscountType.FIXED_AMOUNT)
+                .discountValue(amount).minimumOrderAmount(minimumOrder).build()).build();
+    }
+
+    // Bản sao công thức của CartService.buildCartResponseDTO/calculateShippingFee trước khi có CartPricingEngine
+    private static final class LegacyPricing {
+        double total;
+        double shippingFee;
+        double discount;
+        double finalAmount;
+        List<PromotionCart> applied = new ArrayList<>();
+
+        static LegacyPricing of(Cart cart) {
+            LegacyPricing result = new LegacyPricing();
+            result.total = calculateCartTotalFromItems(cart);
+            double distance = calculateDistance(cart);
+            result.shippingFee = calculateShippingFee(cart, distance);
+            for (PromotionCart pc : cart.getPromotionCarts()) {
+                Promotion promotion = pc.getPromotion();
+                if (!meetsMinimumOrder(promotion, result.total)) {
+                    continue;
+                }
+                result.discount += calculateDiscountAmount(promotion, result.total);
+                result.applied.add(pc);
+            }
+            result.finalAmount = result.total + result.shippingFee - result.discount;
+            return result;
+        }
+
+        private static double calculateCartTotalFromItems(Cart cart) {
+            return cart.getCartItems().stream().mapToDouble(CartItem::getAmount).sum();
+        }
+
+        private static double calculateShippingFee(Cart cart, double distance) {
+            double totalAmount = calculateCartTotalFromItems(cart);
+            if (totalAmount >= 500000.0) {
+                return 0.0;
+            }
+            Address address = cart.getAddress();
+            Branch branch = cart.getBranch();
+            if (address == null || branch == null ||
+                    address.getLatitude() == null || address.getLongitude() == null ||
+                    branch.getLatitude() == null || branch.getLongitude() == null) {
+                return 10000.0;
+            }
+            return Math.floor(10000.0 + (distance * 2000.0));
+        }
+
+        private static double calculateDistance(Cart cart) {
+            Address address = cart.getAddress();
+            Branch branch = cart.getBranch();
+            if (address == null || branch == null ||
+                    address.getLatitude() == null || address.getLongitude() == null ||
+                    branch.getLatitude() == null || branch.getLongitude() == null) {
+                return 0.0;
+            }
+            return DistanceCalculator.calculateDistance(
+                    address.getLatitude(), address.getLongitude(),
+                    branch.getLatitude(), branch.getLongitude());
+        }
+
+        private static boolean meetsMinimumOrder(Promotion promotion, double cartTotal) {
+            return promotion.getMinimumOrderAmount() == null || cartTotal >= promotion.getMinimumOrderAmount();
+        }
+
+        private static double calculateDiscountAmount(Promotion promotion, double cartTotal) {
+            if (promotion.getDiscountType() == DiscountType.PERCENTAGE) {
+                double discount = cartTotal * (promotion.getDiscountValue() / 100);
+                if (promotion.getMaxDiscountAmount() != null) {
+                    return Math.min(discount, promotion.getMaxDiscountAmount());
+                }
+                return discount;
+            }
+            return promotion.getDiscountValue();
+        }
+    }
+}
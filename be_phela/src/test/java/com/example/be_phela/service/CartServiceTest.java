@@ -0,0 +1,220 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.dto.request.CartBatchUpdateDTO;
+import com.example.be_phela.dto.request.CartItemDTO;
+import com.example.be_phela.dto.response.CartResponseDTO;
+import com.example.be_phela.model.Cart;
+import com.example.be_phela.model.CartItem;
+import com.example.be_phela.model.Customer;
+import com.example.be_phela.model.Product;
+import com.example.be_phela.model.Promotion;
+import com.example.be_phela.model.PromotionCart;
+import com.example.be_phela.model.enums.DiscountType;
+import com.example.be_phela.repository.AddressRepository;
+import com.example.be_phela.repository.BranchRepository;
+import com.example.be_phela.repository.CartItemRepository;
+import com.example.be_phela.repository.CartRepository;
+import com.example.be_phela.repository.CustomerRepository;
+import com.example.be_phela.repository.ProductRepository;
+import com.example.be_phela.repository.PromotionRepository;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CartServiceTest {
+
+    private static final Product MILK_TEA = product("milk-tea", 30_000);
+    private static final Product LATTE = product("latte", 50_000);
+    private static final Product CAKE = product("cake", 20_000);
+    private static final Product MATCHA = product("matcha", 40_000);
+
+    private final CartRepository cartRepository = mock(CartRepository.class);
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final CartService service = new CartService(cartRepository, mock(PromotionRepository.class),
+            mock(CustomerRepository.class), productRepository, mock(CartItemRepository.class),
+            mock(AddressRepository.class), mock(BranchRepository.class), mock(BranchService.class),
+            new CartPricingEngine(), mock(PromotionRegistry.class), mock(PromotionRedemptionService.class));
+
+    private Cart cart;
+
+    @BeforeEach
+    void setUp() {
+        // 2 trà sữa + 1 latte + 1 bánh = 130.000; giảm 10.000 cho đơn từ 100.000, giảm 20% cho đơn từ 200.000
+        cart = Cart.builder()
+                .cartId("cart-1")
+                .customer(Customer.builder().customerId("c1").build())
+                .cartItems(new ArrayList<>(List.of(
+                        item("ci-milk-tea", MILK_TEA, 2),
+                        item("ci-latte", LATTE, 1),
+                        item("ci-cake", CAKE, 1))))
+                .promotionCarts(new ArrayList<>(List.of(
+                        promotion("p-fixed", DiscountType.FIXED_AMOUNT, 10_000, 100_000.0),
+                        promotion("p-percent", DiscountType.PERCENTAGE, 20, 200_000.0))))
+                .totalAmount(130_000.0)
+                .build();
+        for (CartItem cartItem : cart.getCartItems()) {
+            cartItem.setCart(cart);
+        }
+        when(cartRepository.findById("cart-1")).thenReturn(Optional.of(cart));
+        when(cartRepository.save(any(Cart.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(productRepository.findAllById(anyCollection())).thenAnswer(inv -> {
+            Collection<String> ids = inv.getArgument(0);
+            return Stream.of(MILK_TEA, LATTE, CAKE, MATCHA).filter(p -> ids.contains(p.getProductId())).toList();
+        });
+    }
+
+    @Test
+    void mixedBatchAddsUpdatesAndRemovesThenRepricesOnce() {
+        CartResponseDTO response = service.applyCartBatch("cart-1", CartBatchUpdateDTO.builder()
+                .items(List.of(
+                        line("milk-tea", 3),   // cập nhật số lượng
+                        line("matcha", 2),     // thêm mới
+                        line("latte", 0)))     // số lượng 0 là xóa
+                .removeCartItemIds(List.of("ci-cake"))
+                .build());
+
+        assertThat(cart.getCartItems())
+                .extracting(cartItem -> cartItem.getProduct().getProductId(), CartItem::getQuantity, CartItem::getAmount)
+                .containsExactly(
+                        tuple("milk-tea", 3, 90_000.0),
+                        tuple("matcha", 2, 80_000.0));
+        // 170.000 vẫn dưới 200.000 nên khuyến mãi 20% bị gỡ, chỉ còn giảm 10.000; không có tọa độ nên phí ship cơ bản
+        assertThat(cart.getTotalAmount()).isEqualTo(170_000.0);
+        assertThat(cart.getPromotionCarts()).extracting(pc -> pc.getPromotion().getPromotionId())
+                .containsExactly("p-fixed");
+        assertThat(cart.getPromotionCarts().get(0).getDiscountAmount()).isEqualTo(10_000.0);
+        assertThat(response.getTotalAmount()).isEqualTo(170_000.0);
+        assertThat(response.getShippingFee()).isEqualTo(10_000.0);
+        assertThat(response.getFinalAmount()).isEqualTo(170_000.0);
+        assertThat(response.getCartItems()).hasSize(2);
+        verify(cartRepository).save(cart);
+    }
+
+    @Test
+    void unknownProductLeavesTheCartUntouched() {
+        CartBatchUpdateDTO batch = CartBatchUpdateDTO.builder()
+                .items(List.of(line("milk-tea", 5), line("matcha", 1), line("missing", 1)))
+                .removeCartItemIds(List.of("ci-cake"))
+                .build();
+
+        assertThatThrownBy(() -> service.applyCartBatch("cart-1", batch))
+                .hasMessageContaining("Product not found with id: missing");
+
+        assertUnchanged();
+    }
+
+    @Test
+    void invalidLineLaterInTheBatchLeavesEarlierLinesUnapplied() {
+        // Thêm mới với số lượng 0 là lỗi
+        assertThatThrownBy(() -> service.applyCartBatch("cart-1", CartBatchUpdateDTO.builder()
+                .items(List.of(line("milk-tea", 5), line("latte", 0), line("matcha", 0)))
+                .build()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertUnchanged();
+
+        // Xóa dòng không thuộc giỏ hàng này
+        assertThatThrownBy(() -> service.applyCartBatch("cart-1", CartBatchUpdateDTO.builder()
+                .items(List.of(line("milk-tea", 5)))
+                .removeCartItemIds(List.of("ci-cake", "ci-other-cart"))
+                .build()))
+                .hasMessageContaining("ci-other-cart");
+        assertUnchanged();
+
+        assertThatThrownBy(() -> service.applyCartBatch("cart-1", CartBatchUpdateDTO.builder()
+                .items(List.of(line("milk-tea", 5), line("matcha", null)))
+                .build()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertUnchanged();
+    }
+
+    @Test
+    void batchRequestRejectsNullLinesAndMissingFields() {
+        try (ValidatorFactory factory = Validation.buildDefaultValidatorFactory()) {
+            Validator validator = factory.getValidator();
+
+            assertThat(validator.validate(CartBatchUpdateDTO.builder()
+                    .items(List.of(line("milk-tea", 0)))
+                    .removeCartItemIds(List.of("ci-cake"))
+                    .build())).isEmpty();
+
+            List<CartItemDTO> items = new ArrayList<>();
+            items.add(null);
+            items.add(CartItemDTO.builder().productId(" ").build());
+            Set<ConstraintViolation<CartBatchUpdateDTO>> violations = validator.validate(CartBatchUpdateDTO.builder()
+                    .items(items)
+                    .removeCartItemIds(List.of(""))
+                    .build());
+            assertThat(violations).extracting(violation -> violation.getPropertyPath().toString())
+                    .containsExactlyInAnyOrder("items[0].<list element>", "items[1].productId",
+                            "items[1].quantity", "removeCartItemIds[0].<list element>");
+        }
+    }
+
+    @AfterEach
+    void noStrayProductLookups() {
+        verify(productRepository, never()).findById(any());
+    }
+
+    private void assertUnchanged() {
+        assertThat(cart.getCartItems())
+                .extracting(cartItem -> cartItem.getProduct().getProductId(), CartItem::getQuantity)
+                .containsExactly(
+                        tuple("milk-tea", 2),
+                        tuple("latte", 1),
+                        tuple("cake", 1));
+        assertThat(cart.getPromotionCarts()).hasSize(2);
+        assertThat(cart.getTotalAmount()).isEqualTo(130_000.0);
+        verify(cartRepository, never()).save(any(Cart.class));
+    }
+
+    private static CartItemDTO line(String productId, Integer quantity) {
+        return CartItemDTO.builder().productId(productId).quantity(quantity).build();
+    }
+
+    private static CartItem item(String cartItemId, Product product, int quantity) {
+        return CartItem.builder()
+                .cartItemId(cartItemId)
+                .product(product)
+                .quantity(quantity)
+                .amount(product.getOriginalPrice() * quantity)
+                .build();
+    }
+
+    private static Product product(String productId, double price) {
+        return Product.builder().productId(productId).productName(productId).originalPrice(price).build();
+    }
+
+    private PromotionCart promotion(String promotionId, DiscountType type, double value, Double minimumOrder) {
+        return PromotionCart.builder()
+                .cart(cart)
+                .promotion(Promotion.builder()
+                        .promotionId(promotionId)
+                        .promotionCode("KM-" + promotionId)
+                        .discountType(type)
+                        .discountValue(value)
+                        .minimumOrderAmount(minimumOrder)
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.dto.response.ChatHistoryDTO;
+import com.example.be_phela.model.ChatMessage;
+import com.example.be_phela.repository.ChatConversationRepository;
+import com.example.be_phela.repository.ChatMessageRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatConversationServiceTest {
+
+    private static final LocalDateTime NOON = LocalDateTime.of(2025, 3, 1, 12, 0);
+    private static final Comparator<ChatMessage> HISTORY_ORDER =
+            Comparator.comparing(ChatMessage::getTimestamp).thenComparing(ChatMessage::getId);
+
+    private final ChatMessageRepository chatMessageRepository = mock(ChatMessageRepository.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ChatConversationService service = new ChatConversationService(chatMessageRepository,
+            mock(ChatConversationRepository.class), jdbcTemplate, mock(TransactionTemplate.class));
+
+    @Test
+    void cursorRoundTripsAndRejectsGarbage() {
+        ChatConversationService.HistoryCursor cursor =
+                new ChatConversationService.HistoryCursor(NOON.withNano(123_456_000), "a|b-7");
+
+        assertThat(ChatConversationService.HistoryCursor.decode(cursor.encode())).isEqualTo(cursor);
+        // Giây bằng 0 thì LocalDateTime.toString bỏ phần giây
+        ChatConversationService.HistoryCursor minute = new ChatConversationService.HistoryCursor(NOON, "id");
+        assertThat(ChatConversationService.HistoryCursor.decode(minute.encode())).isEqualTo(minute);
+        assertThat(cursor.encode()).doesNotContain("+", "/", "=");
+
+        assertThatThrownBy(() -> ChatConversationService.HistoryCursor.decode("not a cursor"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ChatConversationService.HistoryCursor.decode("bm8tc2VwYXJhdG9y"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void pagingVisitsEveryMessageOnceWhenTimestampsCollide() {
+        // Nhiều tin nhắn cùng timestamp nằm vắt qua ranh giới trang: chỉ phân biệt được bằng id
+        List<ChatMessage> stored = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 137; i++) {
+            LocalDateTime at = NOON.plusSeconds(random.nextInt(4));
+            stored.add(message(String.format("m%03d", random.nextInt(1_000)) + "-" + i, "c1", at));
+        }
+        stored.add(message("other", "c2", NOON));
+        answerHistoryQueries(stored);
+
+        List<ChatMessage> visited = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            ChatHistoryDTO page = service.getHistory("c1", cursor, 10);
+            // Mỗi trang trả về theo thứ tự cũ -> mới, trang sau cũ hơn trang trước
+            assertThat(page.getMessages()).isSortedAccordingTo(HISTORY_ORDER);
+            visited.addAll(0, page.getMessages());
+            cursor = page.getNextCursor();
+            assertThat(page.isHasMore()).isEqualTo(cursor != null);
+            pages++;
+        } while (cursor != null);
+
+        List<ChatMessage> expected = stored.stream().filter(m -> m.getConversationId().equals("c1"))
+                .sorted(HISTORY_ORDER).toList();
+        assertThat(visited).containsExactlyElementsOf(expected);
+        assertThat(pages).isEqualTo(14);
+    }
+
+    @Test
+    void pageSizeIsClamped() {
+        answerHistoryQueries(List.of());
+
+        service.getHistory("c1", null, 10_000);
+        service.getHistory("c1", null, 0);
+
+        verify(chatMessageRepository).findHistoryBefore(eq("c1"), any(), any(), eq(Limit.of(101)));
+        verify(chatMessageRepository).findHistoryBefore(eq("c1"), any(), any(), eq(Limit.of(2)));
+    }
+
+    @Test
+    void replayedMessagesAreNotCountedAsUnreadAgain() throws Exception {
+        // m1 đã được ghi ở lần trước (ghi lại từ journal), m2 bị lặp trong cùng lô
+        when(chatMessageRepository.findExistingIds(anyCollection())).thenReturn(List.of("m1"));
+        List<ChatMessage> batch = List.of(
+                message("m1", "c1", NOON),
+                message("m2", "c1", NOON.plusSeconds(1)),
+                message("m2", "c1", NOON.plusSeconds(1)),
+                reply("m3", "c1", NOON.plusSeconds(2)),
+                message("m4", "c2", NOON));
+
+        service.storeBatch(batch);
+
+        Map<String, PreparedStatement> upserts = captureUpserts();
+        assertThat(upserts).containsOnlyKeys("c1", "c2");
+        verify(upserts.get("c1")).setInt(5, 1);
+        verify(upserts.get("c1")).setInt(6, 1);
+        verify(upserts.get("c1")).setString(2, "reply m3");
+        verify(upserts.get("c2")).setInt(5, 1);
+        verify(upserts.get("c2")).setInt(6, 0);
+    }
+
+    @Test
+    void batchThatWasAlreadyStoredWritesNothing() {
+        when(chatMessageRepository.findExistingIds(anyCollection())).thenReturn(List.of("m1", "m2"));
+
+        service.storeBatch(List.of(message("m1", "c1", NOON), message("m2", "c1", NOON)));
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyCollection(), anyInt(), any());
+    }
+
+    // Giả lập câu truy vấn keyset của ChatMessageRepository.findHistoryBefore
+    private void answerHistoryQueries(List<ChatMessage> stored) {
+        when(chatMessageRepository.findHistoryBefore(anyString(), any(), any(), any())).thenAnswer(invocation -> {
+            String conversationId = invocation.getArgument(0);
+            LocalDateTime beforeTime = invocation.getArgument(1);
+            String beforeId = invocation.getArgument(2);
+            Limit limit = invocation.getArgument(3);
+            return stored.stream()
+                    .filter(m -> m.getConversationId().equals(conversationId))
+                    .filter(m -> m.getTimestamp().isBefore(beforeTime)
+                            || (m.getTimestamp().isEqual(beforeTime) && m.getId().compareTo(beforeId) < 0))
+                    .sorted(HISTORY_ORDER.reversed())
+                    .limit(limit.max())
+                    .toList();
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, PreparedStatement> captureUpserts() throws Exception {
+        var rows = ArgumentCaptor.forClass(Collection.class);
+        var setter = ArgumentCaptor.forClass(ParameterizedPreparedStatementSetter.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO chat_conversation"),
+                rows.capture(), anyInt(), setter.capture());
+        Map<String, PreparedStatement> statements = new TreeMap<>();
+        for (Object row : rows.getValue()) {
+            PreparedStatement ps = mock(PreparedStatement.class);
+            setter.getValue().setValues(ps, row);
+            statements.put(((Map.Entry<String, ?>) row).getKey(), ps);
+        }
+        return statements;
+    }
+
+    private static ChatMessage message(String id, String customerId, LocalDateTime at) {
+        return ChatMessage.builder().id(id).content("message " + id).senderId(customerId).recipientId("ADMIN")
+                .conversationId(customerId).senderName("Customer").timestamp(at).build();
+    }
+
+    private static ChatMessage reply(String id, String customerId, LocalDateTime at) {
+        return ChatMessage.builder().id(id).content("reply " + id).senderId("ADMIN").recipientId(customerId)
+                .conversationId(customerId).senderName("Admin").timestamp(at).build();
+    }
+}
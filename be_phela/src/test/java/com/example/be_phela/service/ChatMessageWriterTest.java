@@ -0,0 +1,168 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.model.ChatMessage;
+import com.example.be_phela.utils.ChatJournal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatMessageWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    // Bảng chat_message giả lập, khóa theo id như INSERT IGNORE
+    private final Map<String, ChatMessage> table = new ConcurrentHashMap<>();
+
+    @TempDir
+    Path journalDir;
+
+    @Test
+    void stopFlushesEverythingQueuedAndClearsTheJournal() throws Exception {
+        ChatMessageWriter writer = writer(this::store, 10_000, Duration.ofSeconds(10));
+        writer.start();
+        List<ChatMessage> sent = IntStream.range(0, 2_000).mapToObj(i -> message("m" + i)).toList();
+        sent.forEach(writer::enqueue);
+        writer.stop();
+
+        assertThat(table.keySet()).containsExactlyInAnyOrderElementsOf(sent.stream().map(ChatMessage::getId).toList());
+        assertThat(segments()).isEmpty();
+    }
+
+    @Test
+    void messagesNotWrittenBeforeShutdownAreRecoveredOnNextStart() throws Exception {
+        // DB không ghi được cho đến khi ứng dụng bị dừng
+        ChatMessageWriter failing = writer(batch -> {
+            throw new TransientDataAccessResourceException("database is down");
+        }, 10_000, Duration.ofMillis(300));
+        failing.start();
+        List<ChatMessage> sent = IntStream.range(0, 50).mapToObj(i -> message("m" + i)).toList();
+        sent.forEach(failing::enqueue);
+        failing.stop();
+        assertThat(table).isEmpty();
+        assertThat(segments()).isNotEmpty();
+
+        // Dòng ghi dở khi tiến trình chết không làm hỏng phần còn lại
+        Files.writeString(segments().get(0), "{\"id\":\"trunc", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        ChatMessageWriter restarted = writer(this::store, 10_000, Duration.ofSeconds(10));
+        restarted.start();
+        restarted.stop();
+
+        assertThat(table.keySet()).containsExactlyInAnyOrderElementsOf(sent.stream().map(ChatMessage::getId).toList());
+        assertThat(segments()).isEmpty();
+    }
+
+    @Test
+    void replayingAPartlyWrittenSegmentDoesNotDuplicateMessages() throws Exception {
+        ChatJournal journal = new ChatJournal(journalDir, objectMapper, 100);
+        List<ChatMessage> sent = IntStream.range(0, 10).mapToObj(i -> message("m" + i)).toList();
+        for (ChatMessage message : sent) {
+            journal.append(message);
+        }
+        journal.close();
+        // Lần chạy trước đã ghi một phần segment vào DB rồi mới chết
+        sent.subList(0, 4).forEach(m -> table.put(m.getId(), m));
+
+        ChatMessageWriter writer = writer(this::store, 10_000, Duration.ofSeconds(10));
+        writer.start();
+        writer.stop();
+
+        assertThat(table).hasSize(10);
+    }
+
+    @Test
+    void fullQueueRejectsAfterTimeoutWithoutLosingAcceptedMessages() throws Exception {
+        CountDownLatch databaseSlow = new CountDownLatch(1);
+        ChatMessageWriter writer = writer(batch -> {
+            await(databaseSlow);
+            store(batch);
+        }, 10, Duration.ofSeconds(10));
+        writer.start();
+        List<ChatMessage> accepted = IntStream.range(0, 10).mapToObj(i -> message("m" + i)).toList();
+        accepted.forEach(writer::enqueue);
+
+        assertThatThrownBy(() -> writer.enqueue(message("overflow"))).isInstanceOf(IllegalStateException.class);
+
+        databaseSlow.countDown();
+        writer.stop();
+        assertThat(table.keySet()).containsExactlyInAnyOrderElementsOf(accepted.stream().map(ChatMessage::getId).toList());
+    }
+
+    @Test
+    void messageThatCannotBeStoredDoesNotBlockTheRest() throws Exception {
+        ChatMessageWriter writer = writer(batch -> {
+            if (batch.stream().anyMatch(m -> m.getContent().length() > 255)) {
+                throw new DataIntegrityViolationException("Data too long for column 'content'");
+            }
+            store(batch);
+        }, 10_000, Duration.ofSeconds(10));
+        ChatMessage tooLong = message("too-long");
+        tooLong.setContent("x".repeat(300));
+        List<ChatMessage> good = IntStream.range(0, 20).mapToObj(i -> message("m" + i)).toList();
+        good.subList(0, 10).forEach(writer::enqueue);
+        writer.enqueue(tooLong);
+        good.subList(10, 20).forEach(writer::enqueue);
+        writer.start();
+        writer.stop();
+
+        assertThat(table.keySet()).containsExactlyInAnyOrderElementsOf(good.stream().map(ChatMessage::getId).toList());
+        assertThat(segments()).isEmpty();
+    }
+
+    private ChatMessageWriter writer(Consumer<List<ChatMessage>> sink, int capacity, Duration shutdownTimeout)
+            throws IOException {
+        return new ChatMessageWriter(sink, new ChatJournal(journalDir, objectMapper, 16), new SimpleMeterRegistry(),
+                capacity, 32, Duration.ofMillis(200), shutdownTimeout);
+    }
+
+    private void store(List<ChatMessage> batch) {
+        batch.forEach(m -> table.putIfAbsent(m.getId(), m));
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ChatMessage message(String content) {
+        return ChatMessage.builder()
+                .id(UUID.randomUUID().toString())
+                .content(content)
+                .senderId("c1")
+                .recipientId("ADMIN")
+                .senderName("customer")
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.model.EmailOutbox;
+import com.example.be_phela.model.enums.EmailStatus;
+import com.example.be_phela.repository.EmailOutboxRepository;
+import com.example.be_phela.utils.SendGridMailClient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// EmailDispatcher chạy với bảng email_outbox giả lập trong bộ nhớ (các câu UPDATE được làm lại như JPQL)
+// và SendGridMailClient giả có độ trễ/lỗi điều khiển được
+class EmailDispatcherTest {
+
+    private static final String OTP_TEMPLATE = "<p>Mã OTP của bạn: -otp-</p>";
+
+    private final Map<Long, EmailOutbox> table = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final EmailOutboxRepository repository = mock(EmailOutboxRepository.class);
+    private final SendGridMailClient mailClient = mock(SendGridMailClient.class);
+    private final AtomicInteger providerCalls = new AtomicInteger();
+    private final ThreadPoolTaskExecutor mailExecutor = new ThreadPoolTaskExecutor();
+    // Phản hồi của SendGrid cho mỗi lần gọi, theo danh sách người nhận
+    private volatile Function<List<SendGridMailClient.Recipient>, SendGridMailClient.SendResult> provider =
+            recipients -> new SendGridMailClient.SendResult(202, false, null);
+
+    EmailDispatcherTest() {
+        mailExecutor.setCorePoolSize(4);
+        mailExecutor.setQueueCapacity(32);
+        mailExecutor.initialize();
+        fakeTable();
+        when(mailClient.send(anyString(), anyString(), anyList())).thenAnswer(invocation -> {
+            providerCalls.incrementAndGet();
+            return provider.apply(invocation.getArgument(2));
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        mailExecutor.shutdown();
+    }
+
+    @Test
+    void sentEmailsLoseTheirSubstitutions() throws Exception {
+        assertThat(EmailOutboxRepository.class.getMethod("markSent", Collection.class, LocalDateTime.class)
+                .getAnnotation(Query.class).value()).contains("e.substitutions = NULL");
+        EmailOutbox email = enqueue("a@example.com", "123456");
+
+        dispatcher(8, Duration.ofMillis(1)).dispatchDue();
+
+        assertThat(email.getStatus()).isEqualTo(EmailStatus.SENT);
+        assertThat(email.getSubstitutions()).isNull();
+    }
+
+    @Test
+    void thousandsOfEmailsAreBatchedIntoFewProviderCalls() {
+        // Mỗi lần gọi SendGrid mất 20 ms; gửi từng email sẽ tốn 3000 x 20 ms = 60 s
+        provider = recipients -> {
+            sleep(20);
+            return new SendGridMailClient.SendResult(202, false, null);
+        };
+        for (int i = 0; i < 3_000; i++) {
+            enqueue("user" + i + "@example.com", String.format("%06d", i));
+        }
+
+        long start = System.nanoTime();
+        int dispatched = dispatcher(8, Duration.ofMillis(1)).dispatchDue();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertThat(dispatched).isEqualTo(3_000);
+        assertThat(table.values()).allSatisfy(email -> {
+            assertThat(email.getStatus()).isEqualTo(EmailStatus.SENT);
+            assertThat(email.getSubstitutions()).isNull();
+        });
+        // Lô 100 email cùng mẫu = 1 lần gọi
+        assertThat(providerCalls.get()).isEqualTo(30);
+        assertThat(elapsed).isLessThan(Duration.ofSeconds(10));
+        System.out.printf("Outbox dispatch: 3000 emails, %d provider calls in %d ms (%.0f emails/s)%n",
+                providerCalls.get(), elapsed.toMillis(), 3_000 * 1000.0 / Math.max(1, elapsed.toMillis()));
+    }
+
+    @Test
+    void transientProviderFailureIsRetriedWithSubstitutionsIntact() {
+        EmailOutbox email = enqueue("a@example.com", "654321");
+        provider = recipients -> new SendGridMailClient.SendResult(503, true, "Service Unavailable");
+        EmailDispatcher dispatcher = dispatcher(8, Duration.ofMillis(1));
+
+        dispatcher.dispatchDue();
+
+        assertThat(email.getStatus()).isEqualTo(EmailStatus.PENDING);
+        assertThat(email.getAttempts()).isEqualTo(1);
+        assertThat(email.getLastError()).contains("Service Unavailable");
+        assertThat(email.getSubstitutions()).contains("654321");
+
+        provider = recipients -> {
+            assertThat(recipients.get(0).substitutions()).containsEntry("-otp-", "654321");
+            return new SendGridMailClient.SendResult(202, false, null);
+        };
+        sleep(10);
+        dispatcher.dispatchDue();
+
+        assertThat(email.getStatus()).isEqualTo(EmailStatus.SENT);
+        assertThat(email.getAttempts()).isEqualTo(2);
+        assertThat(email.getSubstitutions()).isNull();
+    }
+
+    @Test
+    void rejectedBatchIsSplitAndOnlyTheBadAddressFails() {
+        EmailOutbox good1 = enqueue("a@example.com", "111111");
+        EmailOutbox bad = enqueue("not-an-address", "222222");
+        EmailOutbox good2 = enqueue("b@example.com", "333333");
+        provider = recipients -> recipients.stream().anyMatch(r -> r.email().equals("not-an-address"))
+                ? new SendGridMailClient.SendResult(400, false, "invalid email")
+                : new SendGridMailClient.SendResult(202, false, null);
+
+        dispatcher(8, Duration.ofMillis(1)).dispatchDue();
+
+        assertThat(List.of(good1, good2)).allSatisfy(email -> {
+            assertThat(email.getStatus()).isEqualTo(EmailStatus.SENT);
+            assertThat(email.getSubstitutions()).isNull();
+        });
+        assertThat(bad.getStatus()).isEqualTo(EmailStatus.FAILED);
+        assertThat(bad.getSubstitutions()).isNull();
+        assertThat(bad.getLastError()).isEqualTo("invalid email");
+    }
+
+    @Test
+    void emailThatKeepsFailingGivesUpAndDropsSubstitutions() {
+        EmailOutbox email = enqueue("a@example.com", "999999");
+        provider = recipients -> new SendGridMailClient.SendResult(503, true, "Service Unavailable");
+        EmailDispatcher dispatcher = dispatcher(3, Duration.ofMillis(1));
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            dispatcher.dispatchDue();
+            sleep(10);
+        }
+
+        assertThat(email.getStatus()).isEqualTo(EmailStatus.FAILED);
+        assertThat(email.getAttempts()).isEqualTo(3);
+        assertThat(email.getSubstitutions()).isNull();
+        assertThat(providerCalls.get()).isEqualTo(3);
+    }
+
+    @Test
+    void claimAbandonedByACrashedWorkerIsSentAfterTheTimeout() {
+        EmailOutbox stuck = enqueue("a@example.com", "123123");
+        stuck.setStatus(EmailStatus.SENDING);
+        stuck.setClaimToken("dead-worker");
+        stuck.setClaimedAt(LocalDateTime.now().minusMinutes(10));
+        EmailOutbox recent = enqueue("b@example.com", "456456");
+        recent.setStatus(EmailStatus.SENDING);
+        recent.setClaimToken("live-worker");
+        recent.setClaimedAt(LocalDateTime.now());
+
+        dispatcher(8, Duration.ofMillis(1)).dispatchDue();
+
+        assertThat(stuck.getStatus()).isEqualTo(EmailStatus.SENT);
+        // Lô của worker khác vẫn còn trong thời hạn thì không bị gửi lặp
+        assertThat(recent.getStatus()).isEqualTo(EmailStatus.SENDING);
+        assertThat(providerCalls.get()).isEqualTo(1);
+    }
+
+    private EmailDispatcher dispatcher(int maxAttempts, Duration retryBaseDelay) {
+        return new EmailDispatcher(repository, mailClient, mailExecutor, new TransactionTemplate(new NoOpTransactionManager()),
+                new ObjectMapper(), new SimpleMeterRegistry(), 100, 100, maxAttempts, retryBaseDelay,
+                Duration.ofSeconds(1), Duration.ofMinutes(5), Duration.ofDays(7));
+    }
+
+    private EmailOutbox enqueue(String recipient, String otp) {
+        EmailOutbox email = EmailOutbox.builder()
+                .emailId(ids.incrementAndGet())
+                .recipient(recipient)
+                .subject("Mã OTP")
+                .htmlContent(OTP_TEMPLATE)
+                .substitutions("{\"-otp-\":\"" + otp + "\"}")
+                .status(EmailStatus.PENDING)
+                .attempts(0)
+                .nextAttemptAt(LocalDateTime.now())
+                .build();
+        table.put(email.getEmailId(), email);
+        return email;
+    }
+
+    // Các câu truy vấn của EmailOutboxRepository trên map; synchronized thay cho khóa dòng của DB
+    private void fakeTable() {
+        when(repository.releaseStaleClaims(any())).thenAnswer(invocation -> {
+            LocalDateTime cutoff = invocation.getArgument(0);
+            synchronized (table) {
+                int released = 0;
+                for (EmailOutbox email : table.values()) {
+                    if (email.getStatus() == EmailStatus.SENDING && email.getClaimedAt().isBefore(cutoff)) {
+                        email.setStatus(EmailStatus.PENDING);
+                        email.setClaimToken(null);
+                        released++;
+                    }
+                }
+                return released;
+            }
+        });
+        when(repository.findDueIds(any(), any(), any())).thenAnswer(invocation -> {
+            EmailStatus status = invocation.getArgument(0);
+            LocalDateTime now = invocation.getArgument(1);
+            Pageable pageable = invocation.getArgument(2);
+            return table.values().stream()
+                    .filter(e -> e.getStatus() == status && !e.getNextAttemptAt().isAfter(now))
+                    .sorted(Comparator.comparing(EmailOutbox::getNextAttemptAt).thenComparing(EmailOutbox::getEmailId))
+                    .limit(pageable.getPageSize())
+                    .map(EmailOutbox::getEmailId)
+                    .toList();
+        });
+        when(repository.claim(anyCollection(), anyString(), any())).thenAnswer(invocation -> {
+            Collection<Long> claimed = invocation.getArgument(0);
+            synchronized (table) {
+                int count = 0;
+                for (Long id : claimed) {
+                    EmailOutbox email = table.get(id);
+                    if (email.getStatus() == EmailStatus.PENDING) {
+                        email.setStatus(EmailStatus.SENDING);
+                        email.setClaimToken(invocation.getArgument(1));
+                        email.setClaimedAt(invocation.getArgument(2));
+                        count++;
+                    }
+                }
+                return count;
+            }
+        });
+        when(repository.findByClaimToken(anyString())).thenAnswer(invocation -> table.values().stream()
+                .filter(e -> invocation.getArgument(0).equals(e.getClaimToken()))
+                .sorted(Comparator.comparing(EmailOutbox::getEmailId))
+                .toList());
+        when(repository.markSent(anyCollection(), any())).thenAnswer(invocation -> {
+            Set<Long> sent = Set.copyOf(invocation.<Collection<Long>>getArgument(0));
+            synchronized (table) {
+                for (Long id : sent) {
+                    EmailOutbox email = table.get(id);
+                    email.setStatus(EmailStatus.SENT);
+                    email.setSentAt(invocation.getArgument(1));
+                    email.setAttempts(email.getAttempts() + 1);
+                    email.setClaimToken(null);
+                    email.setLastError(null);
+                    email.setSubstitutions(null);
+                }
+                return sent.size();
+            }
+        });
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<EmailOutbox> saved = invocation.getArgument(0);
+            saved.forEach(email -> table.put(email.getEmailId(), email));
+            return saved;
+        });
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class NoOpTransactionManager implements PlatformTransactionManager {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.filter.AuthRateLimitFilter;
+import com.example.be_phela.repository.AdminRepository;
+import com.example.be_phela.repository.CustomerRepository;
+import com.example.be_phela.security.SecurityEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class LoginAttemptServiceTest {
+
+    private static final int MAX_FAILURES_PER_IP = 5;
+
+    private final LoginAttemptService service = new LoginAttemptService(mock(CustomerRepository.class),
+            mock(AdminRepository.class), 1_000, 1_000, 100, MAX_FAILURES_PER_IP,
+            Duration.ofMinutes(15), Duration.ofMinutes(15), new SimpleMeterRegistry(), Runnable::run);
+
+    @Test
+    void clientIpIgnoresForwardedHeadersSentByTheClient() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/auth/customer/login");
+        request.setRemoteAddr("203.0.113.7");
+        request.addHeader("X-Forwarded-For", "198.51.100.1");
+        request.addHeader("X-Real-IP", "198.51.100.2");
+
+        assertThat(SecurityEvent.resolveClientIp(request)).isEqualTo("203.0.113.7");
+        assertThat(event(SecurityEvent.Type.AUTHENTICATION_FAILURE, "203.0.113.7", "198.51.100.1").clientIp())
+                .isEqualTo("203.0.113.7");
+    }
+
+    @Test
+    void rotatingForwardedForDoesNotEscapeTheIpBlock() {
+        for (int i = 0; i < MAX_FAILURES_PER_IP; i++) {
+            service.onSecurityEvent(event(SecurityEvent.Type.AUTHENTICATION_FAILURE, "203.0.113.7", "10.0.0." + i));
+        }
+
+        assertThat(service.acquire(LoginAttemptService.Scope.LOGIN, "203.0.113.7")).isPositive();
+        // IP nạn nhân được ghi vào header không bị chặn theo
+        assertThat(service.acquire(LoginAttemptService.Scope.LOGIN, "10.0.0.1")).isZero();
+    }
+
+    @Test
+    void expiredTokensDoNotBlockLoginFromTheSameIp() {
+        for (int i = 0; i < MAX_FAILURES_PER_IP * 10; i++) {
+            service.onSecurityEvent(event(SecurityEvent.Type.TOKEN_VALIDATION_FAILURE, "203.0.113.7", null));
+        }
+
+        assertThat(service.acquire(LoginAttemptService.Scope.LOGIN, "203.0.113.7")).isZero();
+    }
+
+    @Test
+    void blockedIpGetsTooManyRequestsWithRetryAfter() throws Exception {
+        for (int i = 0; i < MAX_FAILURES_PER_IP; i++) {
+            service.onSecurityEvent(event(SecurityEvent.Type.AUTHENTICATION_FAILURE, "203.0.113.7", null));
+        }
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/auth/customer/login");
+        request.setRemoteAddr("203.0.113.7");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        new AuthRateLimitFilter(service).doFilter(request, response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader("Retry-After")).isNotNull();
+        assertThat(response.getContentAsString()).contains("RATE_LIMITED").contains("\"timestamp\"");
+    }
+
+    @Test
+    void accountIsLockedAtTheFailureThresholdAndPersistedOnce() {
+        CustomerRepository customers = mock(CustomerRepository.class);
+        List<Runnable> persists = new ArrayList<>();
+        LoginAttemptService lockout = new LoginAttemptService(customers, mock(AdminRepository.class), 1_000, 1_000,
+                3, 1_000, Duration.ofMinutes(15), Duration.ofMinutes(15), new SimpleMeterRegistry(), persists::add);
+
+        lockout.onSecurityEvent(failure("alice"));
+        lockout.onSecurityEvent(failure("Alice"));
+        assertThat(lockout.lockedFor(LoginAttemptService.Scope.LOGIN, "customer", "alice")).isZero();
+
+        lockout.onSecurityEvent(failure("alice"));
+        assertThat(lockout.lockedFor(LoginAttemptService.Scope.LOGIN, "customer", "ALICE"))
+                .isPositive().isLessThanOrEqualTo(Duration.ofMinutes(15).toMillis());
+        assertThat(lockout.lockedFor(LoginAttemptService.Scope.LOGIN, "customer", "bob")).isZero();
+        assertThat(lockout.lockedFor(LoginAttemptService.Scope.LOGIN, "admin", "alice")).isZero();
+        assertThat(lockout.lockedFor(LoginAttemptService.Scope.PASSWORD_RESET, "customer", "alice")).isZero();
+
+        // Thất bại tiếp khi đang khóa không ghi DB thêm lần nữa
+        lockout.onSecurityEvent(failure("alice"));
+        assertThat(persists).hasSize(1);
+        verifyNoInteractions(customers);
+        persists.get(0).run();
+        verify(customers).updateFailedLoginAttempts("alice", 3);
+
+        lockout.recordSuccess(LoginAttemptService.Scope.LOGIN, "customer", "alice");
+        assertThat(lockout.lockedFor(LoginAttemptService.Scope.LOGIN, "customer", "alice")).isZero();
+        assertThat(persists).hasSize(2);
+        persists.get(1).run();
+        verify(customers).updateFailedLoginAttempts("alice", 0);
+    }
+
+    // Executor ghi DB bỏ hết tác vụ (hàng đợi đầy) nhưng mọi thất bại vẫn được đếm
+    @Test
+    void failuresAreCountedEvenWhenThePersistExecutorDropsTasks() {
+        LoginAttemptService lockout = new LoginAttemptService(mock(CustomerRepository.class),
+                mock(AdminRepository.class), 1_000, 1_000, 3, MAX_FAILURES_PER_IP, Duration.ofMinutes(15),
+                Duration.ofMinutes(15), new SimpleMeterRegistry(), task -> { });
+
+        for (int i = 0; i < 3; i++) {
+            lockout.onSecurityEvent(failure("alice"));
+        }
+        for (int i = 3; i < MAX_FAILURES_PER_IP; i++) {
+            lockout.onSecurityEvent(failure("user" + i));
+        }
+
+        assertThat(lockout.lockedFor(LoginAttemptService.Scope.LOGIN, "customer", "alice")).isPositive();
+        assertThat(lockout.acquire(LoginAttemptService.Scope.LOGIN, "203.0.113.7")).isPositive();
+    }
+
+    private static SecurityEvent failure(String username) {
+        return new SecurityEvent(SecurityEvent.Type.AUTHENTICATION_FAILURE, System.currentTimeMillis(), null,
+                username, null, "BAD_CREDENTIALS", null, null, "203.0.113.7", "test", "/auth/customer/login", "POST");
+    }
+
+    private static SecurityEvent event(SecurityEvent.Type type, String remoteAddr, String forwardedFor) {
+        return new SecurityEvent(type, System.currentTimeMillis(), null, null, null, "BAD_CREDENTIALS",
+                forwardedFor, null, remoteAddr, "test", "/auth/customer/login", "POST");
+    }
+}
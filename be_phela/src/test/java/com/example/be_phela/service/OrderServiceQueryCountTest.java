@@ -0,0 +1,228 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.dto.response.OrderResponseDTO;
+import com.example.be_phela.mapper.CustomerMapper;
+import com.example.be_phela.model.Address;
+import com.example.be_phela.model.Branch;
+import com.example.be_phela.model.Category;
+import com.example.be_phela.model.Customer;
+import com.example.be_phela.model.Order;
+import com.example.be_phela.model.OrderItem;
+import com.example.be_phela.model.Product;
+import com.example.be_phela.model.enums.OrderStatus;
+import com.example.be_phela.model.enums.PaymentMethod;
+import com.example.be_phela.model.enums.PaymentStatus;
+import com.example.be_phela.model.enums.ProductStatus;
+import com.example.be_phela.model.enums.Roles;
+import com.example.be_phela.model.enums.Status;
+import com.example.be_phela.repository.AddressRepository;
+import com.example.be_phela.repository.AdminRepository;
+import com.example.be_phela.repository.BranchRepository;
+import com.example.be_phela.repository.CartRepository;
+import com.example.be_phela.repository.CategoryRepository;
+import com.example.be_phela.repository.CustomerRepository;
+import com.example.be_phela.repository.OrderItemRepository;
+import com.example.be_phela.repository.OrderRepository;
+import com.example.be_phela.repository.ProductRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+// Số câu SQL khi tải danh sách đơn hàng, đếm bằng Hibernate Statistics trên MySQL thật:
+// không phụ thuộc số đơn trong trang, Customer và Product chỉ được đọc id (không lazy load).
+// Chạy khi có TEST_MYSQL_URL như PromotionRedemptionMySqlTest; bảng được tạo lại mỗi lần chạy.
+@EnabledIfEnvironmentVariable(named = "TEST_MYSQL_URL", matches = ".+")
+@DataJpaTest(properties = {
+        "spring.datasource.url=${TEST_MYSQL_URL}",
+        "spring.datasource.username=${TEST_MYSQL_USER:root}",
+        "spring.datasource.password=${TEST_MYSQL_PASSWORD:}",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OrderServiceQueryCountTest {
+
+    private static final int ORDERS = 40;
+
+    @Autowired
+    OrderRepository orderRepository;
+    @Autowired
+    OrderItemRepository orderItemRepository;
+    @Autowired
+    CustomerRepository customerRepository;
+    @Autowired
+    AddressRepository addressRepository;
+    @Autowired
+    BranchRepository branchRepository;
+    @Autowired
+    ProductRepository productRepository;
+    @Autowired
+    CategoryRepository categoryRepository;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private OrderService service;
+    private Statistics statistics;
+    private TransactionTemplate readOnly;
+    private String customerId;
+
+    @BeforeEach
+    void setUp() {
+        service = new OrderService(orderRepository, customerRepository, mock(CartRepository.class),
+                branchRepository, mock(CartService.class), mock(CartPricingEngine.class), addressRepository,
+                mock(CustomerMapper.class), mock(AdminRepository.class), mock(RevenueRollupService.class),
+                mock(OrderEventPublisher.class), mock(PromotionRedemptionService.class));
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        // Giống @Transactional(readOnly = true) trên các hàm đọc của OrderService
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        customerId = new TransactionTemplate(transactionManager).execute(status -> seed());
+    }
+
+    @AfterEach
+    void cleanUp() {
+        orderItemRepository.deleteAllInBatch();
+        orderRepository.deleteAllInBatch();
+        addressRepository.deleteAllInBatch();
+        customerRepository.deleteAllInBatch();
+        productRepository.deleteAllInBatch();
+        categoryRepository.deleteAllInBatch();
+        branchRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void statusPageStatementCountDoesNotGrowWithThePageSize() {
+        List<Long> counts = new ArrayList<>();
+        for (int size : new int[]{1, 10, ORDERS}) {
+            Page<OrderResponseDTO> page = load(() -> service.getOrdersByStatus(OrderStatus.PENDING, PageRequest.of(0, size)));
+
+            assertThat(page.getContent()).hasSize(size)
+                    .allSatisfy(order -> assertThat(order.getOrderItems()).hasSize(2));
+            assertThat(page.getTotalElements()).isEqualTo(ORDERS);
+            counts.add(statistics.getPrepareStatementCount());
+            assertNoLazyLoads();
+        }
+
+        // Truy vấn id + count + truy vấn entity graph
+        assertThat(counts).containsOnly(3L);
+    }
+
+    @Test
+    void customerPageStatementCountDoesNotGrowWithThePageSize() {
+        List<Long> counts = new ArrayList<>();
+        for (int size : new int[]{1, 10, ORDERS}) {
+            Page<OrderResponseDTO> page = load(() -> service.getOrdersByCustomerId(customerId, PageRequest.of(0, size)));
+
+            assertThat(page.getContent()).hasSize(size)
+                    .allSatisfy(order -> assertThat(order.getCustomerId()).isEqualTo(customerId));
+            counts.add(statistics.getPrepareStatementCount());
+            assertNoLazyLoads();
+        }
+
+        assertThat(counts).containsOnly(3L);
+    }
+
+    private <T> T load(Supplier<T> query) {
+        statistics.clear();
+        return readOnly.execute(status -> query.get());
+    }
+
+    private void assertNoLazyLoads() {
+        for (Class<?> entity : List.of(Customer.class, Product.class, Category.class)) {
+            assertThat(statistics.getEntityStatistics(entity.getName()).getLoadCount()).as(entity.getSimpleName()).isZero();
+        }
+    }
+
+    private String seed() {
+        Category category = categoryRepository.save(Category.builder()
+                .categoryCode("QC-TEA")
+                .categoryName("Trà")
+                .build());
+        List<Product> products = productRepository.saveAll(List.of(
+                product("QC-P1", "Trà sữa Phê La", category),
+                product("QC-P2", "Ô Long Nhài Sữa", category)));
+        Branch branch = branchRepository.save(Branch.builder()
+                .branchCode("QC-B1")
+                .branchName("Phê La Hồ Gươm")
+                .latitude(21.0285)
+                .longitude(105.8542)
+                .city("Hà Nội")
+                .district("Hoàn Kiếm")
+                .address("1 Đinh Tiên Hoàng")
+                .status(ProductStatus.SHOW)
+                .build());
+        Customer customer = customerRepository.save(Customer.builder()
+                .customerCode("QC-C1")
+                .username("querycount")
+                .gender("Nữ")
+                .password("not-a-real-hash")
+                .email("querycount@example.com")
+                .role(Roles.CUSTOMER)
+                .status(Status.ACTIVE)
+                .build());
+        Address address = addressRepository.save(Address.builder()
+                .city("Hà Nội")
+                .district("Hoàn Kiếm")
+                .ward("Hàng Trống")
+                .recipientName("Nguyễn Văn A")
+                .phone("0900000000")
+                .detailedAddress("2 Lê Thái Tổ")
+                .isDefault(true)
+                .customer(customer)
+                .build());
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            Order order = Order.builder()
+                    .orderCode("QC-ORD-" + i)
+                    .totalAmount(110_000.0)
+                    .shippingFee(10_000.0)
+                    .finalAmount(120_000.0)
+                    .customer(customer)
+                    .address(address)
+                    .branch(branch)
+                    .status(OrderStatus.PENDING)
+                    .paymentMethod(PaymentMethod.COD)
+                    .paymentStatus(PaymentStatus.PENDING)
+                    .build();
+            order.setOrderItems(List.of(
+                    OrderItem.builder().order(order).product(products.get(0)).quantity(2).amount(60_000.0).build(),
+                    OrderItem.builder().order(order).product(products.get(1)).quantity(1).amount(50_000.0).build()));
+            orders.add(order);
+        }
+        orderRepository.saveAll(orders);
+        return customer.getCustomerId();
+    }
+
+    private static Product product(String code, String name, Category category) {
+        return Product.builder()
+                .productCode(code)
+                .productName(name)
+                .originalPrice(50_000.0)
+                .status(ProductStatus.SHOW)
+                .category(category)
+                .build();
+    }
+}
@@ -0,0 +1,337 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.dto.response.OrderFeedDTO;
+import com.example.be_phela.dto.response.OrderResponseDTO;
+import com.example.be_phela.mapper.CustomerMapper;
+import com.example.be_phela.model.Address;
+import com.example.be_phela.model.Admin;
+import com.example.be_phela.model.Branch;
+import com.example.be_phela.model.Cart;
+import com.example.be_phela.model.Customer;
+import com.example.be_phela.model.Order;
+import com.example.be_phela.model.enums.OrderStatus;
+import com.example.be_phela.model.enums.PaymentMethod;
+import com.example.be_phela.model.enums.PaymentStatus;
+import com.example.be_phela.model.enums.Roles;
+import com.example.be_phela.repository.AddressRepository;
+import com.example.be_phela.repository.AdminRepository;
+import com.example.be_phela.repository.BranchRepository;
+import com.example.be_phela.repository.CartRepository;
+import com.example.be_phela.repository.CustomerRepository;
+import com.example.be_phela.repository.OrderRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderServiceTest {
+
+    private final OrderRepository orderRepository = mock(OrderRepository.class);
+    private final CartRepository cartRepository = mock(CartRepository.class);
+    private final PromotionRedemptionService promotionRedemptionService = mock(PromotionRedemptionService.class);
+    private final AdminRepository adminRepository = mock(AdminRepository.class);
+    private final RevenueRollupService revenueRollupService = mock(RevenueRollupService.class);
+    private final OrderService service = new OrderService(orderRepository, mock(CustomerRepository.class),
+            cartRepository, mock(BranchRepository.class), mock(CartService.class), mock(CartPricingEngine.class),
+            mock(AddressRepository.class), mock(CustomerMapper.class), adminRepository,
+            revenueRollupService, mock(OrderEventPublisher.class), promotionRedemptionService);
+
+    @Test
+    void paymentFailureReleasesPromotionRedemptionsBeforeDeletingTheOrder() {
+        Order order = order(PaymentStatus.AWAITING_PAYMENT);
+        when(orderRepository.findById("o1")).thenReturn(Optional.of(order));
+
+        service.rollbackOrderDueToPaymentFailure("o1");
+
+        InOrder inOrder = inOrder(promotionRedemptionService, orderRepository);
+        inOrder.verify(promotionRedemptionService).releaseForOrder("o1");
+        inOrder.verify(orderRepository).delete(order);
+    }
+
+    @Test
+    void paidOrderIsNotRolledBack() {
+        Order order = order(PaymentStatus.COMPLETED);
+        when(orderRepository.findById("o1")).thenReturn(Optional.of(order));
+
+        service.rollbackOrderDueToPaymentFailure("o1");
+
+        verify(promotionRedemptionService, never()).releaseForOrder(any());
+        verify(orderRepository, never()).delete(any());
+    }
+
+    // Hai nhân viên cùng bấm "đã giao" cho một đơn: chỉ một request được cộng doanh thu
+    @Test
+    void concurrentDeliveredUpdatesRecordRevenueOnce() throws Exception {
+        AtomicReference<OrderStatus> row = new AtomicReference<>(OrderStatus.DELIVERING);
+        CyclicBarrier bothRead = new CyclicBarrier(2);
+        when(orderRepository.findById("o1")).thenAnswer(inv -> {
+            Order order = Order.builder()
+                    .orderId("o1")
+                    .status(row.get())
+                    .paymentMethod(PaymentMethod.BANK_TRANSFER)
+                    .paymentStatus(PaymentStatus.COMPLETED)
+                    .build();
+            bothRead.await(5, TimeUnit.SECONDS);
+            return Optional.of(order);
+        });
+        // UPDATE ... WHERE status = :from trên một dòng: chỉ một request thấy trạng thái cũ
+        when(orderRepository.transitionStatus(eq("o1"), any(), any()))
+                .thenAnswer(inv -> row.compareAndSet(inv.getArgument(1), inv.getArgument(2)) ? 1 : 0);
+        for (String username : new String[]{"shipper1", "shipper2"}) {
+            Admin admin = new Admin();
+            admin.setUsername(username);
+            admin.setRole(Roles.DELIVERY_STAFF);
+            when(adminRepository.findByUsername(username)).thenReturn(Optional.of(admin));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> updates = List.of(
+                    pool.submit(() -> service.updateOrderStatus("o1", OrderStatus.DELIVERED, "shipper1")),
+                    pool.submit(() -> service.updateOrderStatus("o1", OrderStatus.DELIVERED, "shipper2")));
+            int failed = 0;
+            for (Future<?> update : updates) {
+                try {
+                    update.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause()).hasMessageContaining("changed by another request");
+                    failed++;
+                }
+            }
+            assertThat(failed).isEqualTo(1);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(row.get()).isEqualTo(OrderStatus.DELIVERED);
+        verify(revenueRollupService, times(1)).recordDelivered(any());
+        verify(orderRepository, times(1)).save(any());
+    }
+
+    @Test
+    void cancelLosingTheRaceToDeliveryChangesNothing() {
+        Order order = order(PaymentStatus.COMPLETED);
+        order.setStatus(OrderStatus.DELIVERING);
+        when(orderRepository.findById("o1")).thenReturn(Optional.of(order));
+        // Đơn vừa được giao bởi request khác
+        when(orderRepository.transitionStatus("o1", OrderStatus.DELIVERING, OrderStatus.CANCELLED)).thenReturn(0);
+
+        assertThatThrownBy(() -> service.cancelOrder("o1")).hasMessageContaining("changed by another request");
+
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.DELIVERING);
+        verify(orderRepository, never()).save(any());
+        verify(promotionRedemptionService, never()).releaseForOrder(any());
+    }
+
+    @Test
+    void feedPagesForwardThroughEveryOrderOnce() {
+        List<Order> orders = feedOrders();
+        answerFeed(orders);
+
+        List<String> seen = readFeed(null, false);
+
+        assertThat(seen).containsExactlyElementsOf(orders.stream()
+                .filter(order -> order.getStatus() == OrderStatus.PENDING)
+                .sorted(FEED_ORDER)
+                .map(Order::getOrderId)
+                .toList());
+    }
+
+    @Test
+    void feedPagesBackwardThroughEveryOrderOnce() {
+        List<Order> orders = feedOrders();
+        answerFeed(orders);
+
+        List<String> seen = readFeed(null, true);
+
+        assertThat(seen).containsExactlyElementsOf(orders.stream()
+                .filter(order -> order.getStatus() == OrderStatus.PENDING)
+                .sorted(FEED_ORDER.reversed())
+                .map(Order::getOrderId)
+                .toList());
+    }
+
+    @Test
+    void feedFiltersByBranchOnlyWhenABranchIsGiven() {
+        List<Order> orders = feedOrders();
+        answerFeed(orders);
+
+        assertThat(readFeed("B2", false)).isNotEmpty().allSatisfy(id ->
+                assertThat(orders.stream().filter(order -> order.getOrderId().equals(id)).findFirst().orElseThrow()
+                        .getBranch().getBranchCode()).isEqualTo("B2"));
+        assertThat(readFeed("B2", true)).hasSize((int) orders.stream()
+                .filter(order -> order.getStatus() == OrderStatus.PENDING
+                        && order.getBranch().getBranchCode().equals("B2"))
+                .count());
+        verify(orderRepository, never()).findFeedIdsByStatusAsc(any(), any(), any(), any());
+
+        service.getOrderFeed(OrderStatus.PENDING, " ", null, 5, false);
+        verify(orderRepository).findFeedIdsByStatusAsc(eq(OrderStatus.PENDING), any(), eq(""), eq(Limit.of(6)));
+    }
+
+    @Test
+    void feedClampsThePageSize() {
+        answerFeed(feedOrders());
+
+        assertThat(service.getOrderFeed(OrderStatus.PENDING, null, null, 0, false).getOrders()).hasSize(1);
+        service.getOrderFeed(OrderStatus.PENDING, null, null, 10_000, true);
+        verify(orderRepository).findFeedIdsByStatusDesc(eq(OrderStatus.PENDING), any(), eq(""), eq(Limit.of(101)));
+    }
+
+    @Test
+    void malformedCursorsAreRejected() {
+        answerFeed(feedOrders());
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        for (String cursor : new String[]{"not base64!", encoder.encodeToString("no-separator".getBytes()),
+                encoder.encodeToString("yesterday|o1".getBytes())}) {
+            assertThatThrownBy(() -> service.getOrderFeed(OrderStatus.PENDING, null, cursor, 5, false))
+                    .as(cursor)
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Invalid feed cursor");
+        }
+    }
+
+    @Test
+    void orderPagesAreNewestFirstAndKeepTheIdQueryOrder() {
+        List<Order> orders = feedOrders().subList(0, 5);
+        when(orderRepository.findOrderIdsByStatus(eq(OrderStatus.PENDING), any())).thenAnswer(inv ->
+                new PageImpl<>(orders.stream().map(Order::getOrderId).toList(), inv.getArgument(1), orders.size()));
+        // Truy vấn chi tiết (IN) trả về theo thứ tự bất kỳ
+        when(orderRepository.findAllWithDetailsByOrderIdIn(anyCollection())).thenReturn(orders.reversed());
+
+        Page<OrderResponseDTO> page = service.getOrdersByStatus(OrderStatus.PENDING, PageRequest.of(0, 5));
+
+        ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(orderRepository).findOrderIdsByStatus(eq(OrderStatus.PENDING), pageable.capture());
+        assertThat(pageable.getValue().getSort()).isEqualTo(Sort.by(Sort.Direction.DESC, "orderDate"));
+        assertThat(page.getContent()).extracting(OrderResponseDTO::getOrderId)
+                .containsExactlyElementsOf(orders.stream().map(Order::getOrderId).toList());
+    }
+
+    @Test
+    void oversizedOrderPageIsClamped() {
+        when(orderRepository.findOrderIdsByCustomerId(eq("c1"), any())).thenReturn(Page.empty());
+
+        service.getOrdersByCustomerId("c1", PageRequest.of(0, 10_000));
+
+        ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(orderRepository).findOrderIdsByCustomerId(eq("c1"), pageable.capture());
+        assertThat(pageable.getValue().getPageSize()).isEqualTo(100);
+    }
+
+    private static final Comparator<Order> FEED_ORDER =
+            Comparator.comparing(Order::getOrderDate).thenComparing(Order::getOrderId);
+
+    // Đọc hết feed theo con trỏ, kiểm tra mỗi trang đúng kích thước và con trỏ cuối là null
+    private List<String> readFeed(String branchCode, boolean descending) {
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            OrderFeedDTO page = service.getOrderFeed(OrderStatus.PENDING, branchCode, cursor, 3, descending);
+            assertThat(page.getOrders().size()).isLessThanOrEqualTo(3);
+            assertThat(page.getNextCursor() != null).isEqualTo(page.isHasMore());
+            page.getOrders().forEach(order -> seen.add(order.getOrderId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertThat(seen).doesNotHaveDuplicates();
+        return seen;
+    }
+
+    // Giả lập các truy vấn feed theo đúng điều kiện JPQL trên danh sách đơn trong bộ nhớ
+    private void answerFeed(List<Order> orders) {
+        when(orderRepository.findFeedIdsByStatusAsc(any(), any(), any(), any())).thenAnswer(inv ->
+                feed(orders, inv.getArgument(0), null, inv.getArgument(1), inv.getArgument(2), inv.getArgument(3), false));
+        when(orderRepository.findFeedIdsByStatusDesc(any(), any(), any(), any())).thenAnswer(inv ->
+                feed(orders, inv.getArgument(0), null, inv.getArgument(1), inv.getArgument(2), inv.getArgument(3), true));
+        when(orderRepository.findFeedIdsByStatusAndBranchAsc(any(), any(), any(), any(), any())).thenAnswer(inv ->
+                feed(orders, inv.getArgument(0), inv.getArgument(1), inv.getArgument(2), inv.getArgument(3), inv.getArgument(4), false));
+        when(orderRepository.findFeedIdsByStatusAndBranchDesc(any(), any(), any(), any(), any())).thenAnswer(inv ->
+                feed(orders, inv.getArgument(0), inv.getArgument(1), inv.getArgument(2), inv.getArgument(3), inv.getArgument(4), true));
+        when(orderRepository.findAllWithDetailsByOrderIdIn(anyCollection())).thenAnswer(inv -> {
+            Collection<String> ids = inv.getArgument(0);
+            return orders.stream().filter(order -> ids.contains(order.getOrderId())).toList();
+        });
+    }
+
+    private static List<String> feed(List<Order> orders, OrderStatus status, String branchCode, LocalDateTime date,
+                                     String orderId, Limit limit, boolean descending) {
+        Comparator<Order> order = descending ? FEED_ORDER.reversed() : FEED_ORDER;
+        Order position = Order.builder().orderDate(date).orderId(orderId).build();
+        return orders.stream()
+                .filter(o -> o.getStatus() == status)
+                .filter(o -> branchCode == null || o.getBranch().getBranchCode().equals(branchCode))
+                .filter(o -> order.compare(o, position) > 0)
+                .sorted(order)
+                .limit(limit.max())
+                .map(Order::getOrderId)
+                .toList();
+    }
+
+    // Nhiều đơn trùng orderDate (kể cả phần nano giây) để con trỏ phải so tiếp theo orderId
+    private static List<Order> feedOrders() {
+        List<Order> orders = new ArrayList<>();
+        LocalDateTime base = LocalDateTime.of(2025, 3, 1, 12, 0, 0, 123_456_789);
+        for (int i = 0; i < 23; i++) {
+            orders.add(Order.builder()
+                    .orderId(String.format("o%02d", (i * 7) % 23))
+                    .orderCode("ORD" + i)
+                    .customer(new Customer())
+                    .address(Address.builder().addressId("a1").build())
+                    .branch(Branch.builder().branchCode(i % 3 == 0 ? "B2" : "B1").build())
+                    .status(i % 5 == 4 ? OrderStatus.CONFIRMED : OrderStatus.PENDING)
+                    .orderDate(base.plusSeconds(i / 4))
+                    .orderItems(new ArrayList<>())
+                    .build());
+        }
+        return orders;
+    }
+
+    private Order order(PaymentStatus paymentStatus) {
+        Customer customer = new Customer();
+        customer.setCustomerId("c1");
+        Cart cart = new Cart();
+        cart.setCartItems(new ArrayList<>());
+        when(cartRepository.findByCustomer_CustomerId("c1")).thenReturn(Optional.of(cart));
+        return Order.builder()
+                .orderId("o1")
+                .orderCode("ORD000000001")
+                .customer(customer)
+                .status(OrderStatus.PENDING)
+                .paymentMethod(PaymentMethod.BANK_TRANSFER)
+                .paymentStatus(paymentStatus)
+                .orderItems(new ArrayList<>())
+                .build();
+    }
+}
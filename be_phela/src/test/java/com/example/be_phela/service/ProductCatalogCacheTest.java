@@ -0,0 +1,82 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.dto.response.CategoryResponseDTO;
+import com.example.be_phela.dto.response.ProductResponseDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProductCatalogCacheTest {
+
+    private final ProductCatalogCache cache = new ProductCatalogCache(100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+
+    @Test
+    void callersCannotChangeTheCachedProduct() {
+        AtomicInteger loads = new AtomicInteger();
+
+        ProductResponseDTO first = cache.product("p1", id -> {
+            loads.incrementAndGet();
+            return product(id, 45_000.0);
+        });
+        // Ví dụ: controller áp giá khuyến mãi lên DTO trả về
+        first.setOriginalPrice(0.0);
+        first.setProductName("changed");
+        ProductResponseDTO second = cache.product("p1", id -> product(id, -1.0));
+
+        assertThat(loads).hasValue(1);
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getOriginalPrice()).isEqualTo(45_000.0);
+        assertThat(second.getProductName()).isEqualTo("Trà sữa p1");
+    }
+
+    @Test
+    void listsAndPagesHandOutFreshElements() {
+        List<ProductResponseDTO> list = cache.productList("category:TEA",
+                key -> List.of(product("p1", 45_000.0), product("p2", 55_000.0)));
+        list.get(0).setOriginalPrice(0.0);
+        assertThatThrownBy(() -> list.add(product("p3", 1.0))).isInstanceOf(UnsupportedOperationException.class);
+
+        Page<ProductResponseDTO> page = cache.productPage("all:0:20",
+                key -> new PageImpl<>(List.of(product("p1", 45_000.0)), PageRequest.of(0, 20), 1));
+        page.getContent().get(0).setImageUrl(null);
+
+        assertThat(cache.productList("category:TEA", key -> List.of()))
+                .extracting(ProductResponseDTO::getOriginalPrice)
+                .containsExactly(45_000.0, 55_000.0);
+        Page<ProductResponseDTO> again = cache.productPage("all:0:20", key -> Page.empty());
+        assertThat(again.getContent()).extracting(ProductResponseDTO::getImageUrl)
+                .containsExactly("https://res.cloudinary.com/phela/p1.jpg");
+        assertThat(again.getTotalElements()).isEqualTo(1);
+        assertThat(again.getPageable()).isEqualTo(PageRequest.of(0, 20));
+    }
+
+    @Test
+    void callersCannotChangeTheCachedCategory() {
+        cache.category("TEA", code -> new CategoryResponseDTO(code, "Trà", "Trà sữa")).setCategoryName("changed");
+        cache.categoryPage("0:20", key -> new PageImpl<>(List.of(new CategoryResponseDTO("TEA", "Trà", null))))
+                .getContent().get(0).setCategoryName("changed");
+
+        assertThat(cache.category("TEA", code -> null).getCategoryName()).isEqualTo("Trà");
+        assertThat(cache.categoryPage("0:20", key -> Page.empty()).getContent())
+                .extracting(CategoryResponseDTO::getCategoryName)
+                .containsExactly("Trà");
+    }
+
+    private static ProductResponseDTO product(String productId, double price) {
+        return ProductResponseDTO.builder()
+                .productId(productId)
+                .productName("Trà sữa " + productId)
+                .originalPrice(price)
+                .imageUrl("https://res.cloudinary.com/phela/" + productId + ".jpg")
+                .build();
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.config.ExecutorConfig;
+import com.example.be_phela.dto.response.ImageVariantBackfillDTO;
+import com.example.be_phela.mapper.ProductMapper;
+import com.example.be_phela.model.Product;
+import com.example.be_phela.repository.CategoryRepository;
+import com.example.be_phela.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProductServiceBackfillTest {
+
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final FileStorageService fileStorageService = mock(FileStorageService.class);
+    private final ThreadPoolTaskExecutor backfillExecutor = new ExecutorConfig().backfillExecutor();
+    private final ThreadPoolTaskExecutor uploadExecutor = new ThreadPoolTaskExecutor();
+
+    @AfterEach
+    void tearDown() {
+        backfillExecutor.shutdown();
+        uploadExecutor.shutdown();
+    }
+
+    @Test
+    void backfillRunsOffTheUploadPoolAndOnlyOnceAtATime() throws Exception {
+        ProductService service = service(3);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<String> thread = new AtomicReference<>();
+        List<Product> products = IntStream.range(0, 10).mapToObj(i -> Product.builder()
+                .productId("p" + i).productCode("SP" + i).imageUrl("https://img/" + i).build()).toList();
+        when(productRepository.findByImageUrlIsNotNullAndImageThumbUrlIsNull()).thenAnswer(invocation -> {
+            thread.set(Thread.currentThread().getName());
+            release.await();
+            return products;
+        });
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(fileStorageService.generateVariantsAsync(anyString(), any())).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return variantsOnUploadPool(invocation.getArgument(0));
+        });
+        when(fileStorageService.await(any())).thenAnswer(invocation -> {
+            inFlight.decrementAndGet();
+            return await(invocation.getArgument(0));
+        });
+        when(productRepository.updateImageVariants(anyString(), anyString(), any(), any())).thenReturn(1);
+
+        // Thread request trả về ngay, lần gọi thứ hai trong lúc đang chạy bị từ chối
+        assertThat(service.startImageVariantBackfill()).isTrue();
+        assertThat(service.startImageVariantBackfill()).isFalse();
+        assertThat(service.getImageVariantBackfillStatus().isRunning()).isTrue();
+
+        release.countDown();
+        ImageVariantBackfillDTO status = awaitFinished(service);
+
+        assertThat(thread.get()).startsWith("backfill-");
+        assertThat(status.getCandidates()).isEqualTo(10);
+        assertThat(status.getUpdated()).isEqualTo(10);
+        // Mỗi đợt đưa vào pool tối đa số ảnh bằng số thread của pool
+        assertThat(maxInFlight.get()).isEqualTo(3);
+        assertThat(service.startImageVariantBackfill()).isTrue();
+    }
+
+    // Pool upload chỉ có một thread: nếu thread điều phối chiếm nó thì ảnh nào cũng phải chờ hết timeout
+    @Test
+    void backfillFinishesWithASingleUploadThread() throws Exception {
+        ProductService service = service(1);
+        when(productRepository.findByImageUrlIsNotNullAndImageThumbUrlIsNull()).thenReturn(IntStream.range(0, 4)
+                .mapToObj(i -> Product.builder().productId("p" + i).productCode("SP" + i).imageUrl("https://img/" + i).build())
+                .toList());
+        when(fileStorageService.generateVariantsAsync(anyString(), any()))
+                .thenAnswer(invocation -> variantsOnUploadPool(invocation.getArgument(0)));
+        when(fileStorageService.await(any())).thenAnswer(invocation -> await(invocation.getArgument(0)));
+        when(productRepository.updateImageVariants(anyString(), anyString(), any(), any())).thenReturn(1);
+
+        assertThat(service.startImageVariantBackfill()).isTrue();
+        ImageVariantBackfillDTO status = awaitFinished(service);
+
+        assertThat(status.getUpdated()).isEqualTo(4);
+        assertThat(status.getFailed()).isZero();
+    }
+
+    private ProductService service(int uploadThreads) {
+        uploadExecutor.setCorePoolSize(uploadThreads);
+        uploadExecutor.setThreadNamePrefix("upload-");
+        uploadExecutor.initialize();
+        return new ProductService(productRepository, mock(CategoryRepository.class), mock(ProductMapper.class),
+                fileStorageService, mock(ProductCatalogCache.class), mock(TransactionTemplate.class),
+                backfillExecutor, uploadExecutor);
+    }
+
+    private CompletableFuture<FileStorageService.StoredImage> variantsOnUploadPool(String imageUrl) {
+        return CompletableFuture.supplyAsync(() -> new FileStorageService.StoredImage(imageUrl, "thumb", "medium"),
+                uploadExecutor);
+    }
+
+    // Như FileStorageService.await: hết hạn chờ thì ảnh được tính là lỗi
+    private static Object await(CompletableFuture<?> future) throws IOException {
+        try {
+            return future.get(2, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IOException("Image upload timed out", e);
+        }
+    }
+
+    private ImageVariantBackfillDTO awaitFinished(ProductService service) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        ImageVariantBackfillDTO status;
+        while ((status = service.getImageVariantBackfillStatus()).isRunning()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+        return status;
+    }
+}
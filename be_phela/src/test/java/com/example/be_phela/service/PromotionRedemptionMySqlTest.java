@@ -0,0 +1,229 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.model.Customer;
+import com.example.be_phela.model.Order;
+import com.example.be_phela.model.Promotion;
+import com.example.be_phela.model.enums.DiscountType;
+import com.example.be_phela.model.enums.PromotionStatus;
+import com.example.be_phela.repository.PromotionRedemptionRepository;
+import com.example.be_phela.repository.PromotionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Giới hạn lượt khuyến mãi với SQL thật trên MySQL (native query dùng cú pháp MySQL).
+// Chạy khi có TEST_MYSQL_URL, ví dụ jdbc:mysql://localhost:3306/phela_test; bảng được tạo lại mỗi lần chạy.
+@EnabledIfEnvironmentVariable(named = "TEST_MYSQL_URL", matches = ".+")
+@DataJpaTest(properties = {
+        "spring.datasource.url=${TEST_MYSQL_URL}",
+        "spring.datasource.username=${TEST_MYSQL_USER:root}",
+        "spring.datasource.password=${TEST_MYSQL_PASSWORD:}",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(PromotionRedemptionService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PromotionRedemptionMySqlTest {
+
+    @Autowired
+    PromotionRedemptionService service;
+    @Autowired
+    PromotionRepository promotionRepository;
+    @Autowired
+    PromotionRedemptionRepository redemptionRepository;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM promotion_redemption");
+        jdbcTemplate.update("DELETE FROM promotion");
+    }
+
+    @Test
+    void reservationDoesNotHoldThePromotionRowUntilTheOrderCommits() throws Exception {
+        Promotion promotion = promotion(10, null);
+        CountDownLatch reserved = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            // Đơn thứ nhất giữ lượt rồi chưa commit (đang chờ tạo link thanh toán...)
+            Future<?> slowOrder = pool.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+                service.redeem(order("c1"), List.of(promotion));
+                reserved.countDown();
+                await(finish);
+            }));
+            assertThat(reserved.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // Đơn thứ hai cùng khuyến mãi không phải chờ đơn thứ nhất commit
+            Future<?> fastOrder = pool.submit(() -> transactionTemplate.executeWithoutResult(status ->
+                    service.redeem(order("c2"), List.of(promotion))));
+            fastOrder.get(5, TimeUnit.SECONDS);
+
+            finish.countDown();
+            slowOrder.get(10, TimeUnit.SECONDS);
+        } finally {
+            finish.countDown();
+            pool.shutdownNow();
+        }
+        assertThat(redemptionCount(promotion)).isEqualTo(2);
+        assertThat(rows(promotion)).isEqualTo(2);
+    }
+
+    @Test
+    void concurrentCheckoutsNeverExceedLimits() throws Exception {
+        Promotion promotion = promotion(20, 2);
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            tasks.add(pool.submit(() -> {
+                start.await();
+                for (int n = 0; n < 40; n++) {
+                    String customerId = "c" + ThreadLocalRandom.current().nextInt(15);
+                    // Một phần đơn bị rollback sau khi đã giữ lượt
+                    boolean fail = ThreadLocalRandom.current().nextInt(4) == 0;
+                    try {
+                        transactionTemplate.executeWithoutResult(status -> {
+                            service.redeem(order(customerId), List.of(promotion));
+                            if (fail) {
+                                throw new IllegalStateException("payment failed");
+                            }
+                        });
+                    } catch (RuntimeException ignored) {
+                        // hết lượt hoặc đơn lỗi
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get(2, TimeUnit.MINUTES);
+        }
+        pool.shutdown();
+
+        assertThat(rows(promotion)).isEqualTo(20);
+        assertThat(redemptionCount(promotion)).isEqualTo(20);
+        List<Map<String, Object>> perCustomer = jdbcTemplate.queryForList(
+                "SELECT customer_id, COUNT(*) AS used FROM promotion_redemption WHERE promotion_id = ? GROUP BY customer_id",
+                promotion.getPromotionId());
+        assertThat(perCustomer).allSatisfy(row -> assertThat(((Number) row.get("used")).intValue()).isLessThanOrEqualTo(2));
+    }
+
+    @Test
+    void rolledBackOrderGivesBackItsReservation() {
+        Promotion promotion = promotion(1, null);
+
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+            service.redeem(order("c1"), List.of(promotion));
+            throw new IllegalStateException("payment failed");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(redemptionCount(promotion)).isZero();
+        assertThat(rows(promotion)).isZero();
+
+        transactionTemplate.executeWithoutResult(status -> service.redeem(order("c2"), List.of(promotion)));
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status ->
+                service.redeem(order("c3"), List.of(promotion)))).hasMessageContaining("hết lượt");
+        assertThat(redemptionCount(promotion)).isEqualTo(1);
+    }
+
+    @Test
+    void unlimitedPromotionOnlyRecordsHistoryAndCancelDoesNotDecrement() {
+        Promotion promotion = promotion(null, null);
+        Order order = order("c1");
+
+        transactionTemplate.executeWithoutResult(status -> service.redeem(order, List.of(promotion)));
+        assertThat(rows(promotion)).isEqualTo(1);
+        assertThat(redemptionCount(promotion)).isZero();
+
+        transactionTemplate.executeWithoutResult(status -> service.releaseForOrder(order.getOrderId()));
+        assertThat(rows(promotion)).isZero();
+        assertThat(redemptionCount(promotion)).isZero();
+    }
+
+    @Test
+    void startupRemovesOldReservationsOfMissingOrdersAndRecountsUsage() {
+        Promotion capped = promotion(5, null);
+        Promotion unlimited = promotion(null, null);
+        transactionTemplate.executeWithoutResult(status -> service.redeem(order("c1"), List.of(capped, unlimited)));
+        transactionTemplate.executeWithoutResult(status -> service.redeem(order("c2"), List.of(capped, unlimited)));
+        // Instance dừng sau khi giữ lượt: đơn không tồn tại trong bảng orders
+        jdbcTemplate.update("UPDATE promotion_redemption SET redeemed_at = ? WHERE customer_id = 'c1'",
+                LocalDateTime.now().minusHours(1));
+
+        service.reconcileOnStartup();
+
+        // Lượt vừa giữ của c2 còn mới nên được giữ lại dù đơn chưa có trong bảng orders
+        assertThat(rows(capped)).isEqualTo(1);
+        assertThat(redemptionCount(capped)).isEqualTo(1);
+        assertThat(redemptionCount(unlimited)).isEqualTo(1);
+    }
+
+    private int redemptionCount(Promotion promotion) {
+        return jdbcTemplate.queryForObject("SELECT redemption_count FROM promotion WHERE promotion_id = ?",
+                Integer.class, promotion.getPromotionId());
+    }
+
+    private int rows(Promotion promotion) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM promotion_redemption WHERE promotion_id = ?",
+                Integer.class, promotion.getPromotionId());
+    }
+
+    private Promotion promotion(Integer maxRedemptions, Integer maxPerCustomer) {
+        return promotionRepository.save(Promotion.builder()
+                .promotionCode("KM" + UUID.randomUUID().toString().substring(0, 8))
+                .name("Khuyến mãi")
+                .discountType(DiscountType.FIXED_AMOUNT)
+                .discountValue(10_000.0)
+                .startDate(LocalDateTime.now().minusDays(1))
+                .endDate(LocalDateTime.now().plusDays(1))
+                .status(PromotionStatus.ACTIVE)
+                .maxRedemptions(maxRedemptions)
+                .maxRedemptionsPerCustomer(maxPerCustomer)
+                .build());
+    }
+
+    private static Order order(String customerId) {
+        Customer customer = new Customer();
+        customer.setCustomerId(customerId);
+        Order order = new Order();
+        order.setOrderId(UUID.randomUUID().toString());
+        order.setCustomer(customer);
+        return order;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.model.Customer;
+import com.example.be_phela.model.Order;
+import com.example.be_phela.model.Promotion;
+import com.example.be_phela.model.PromotionRedemption;
+import com.example.be_phela.repository.PromotionRedemptionRepository;
+import com.example.be_phela.repository.PromotionRepository;
+import com.example.be_phela.utils.PromotionIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Thứ tự transaction khi giữ lượt; giới hạn lượt với SQL thật được kiểm tra trong PromotionRedemptionMySqlTest
+class PromotionRedemptionServiceTest {
+
+    private final List<String> log = new ArrayList<>();
+    private final RecordingTransactionManager transactionManager = new RecordingTransactionManager();
+    private final TransactionTemplate orderTransaction = new TransactionTemplate(transactionManager);
+    private final PromotionRedemptionRepository redemptionRepository = mock(PromotionRedemptionRepository.class);
+    private final PromotionRepository promotionRepository = mock(PromotionRepository.class);
+    private final PromotionRedemptionService service =
+            new PromotionRedemptionService(redemptionRepository, promotionRepository, orderTransaction);
+
+    @Test
+    void unlimitedPromotionIsRecordedInTheOrderTransactionWithoutTouchingThePromotionRow() {
+        record();
+        Promotion promotion = promotion("p1", null, null);
+
+        orderTransaction.executeWithoutResult(status -> service.redeem(order("o1", "c1"), List.of(promotion)));
+
+        verify(promotionRepository, never()).incrementRedemptionCount(anyString());
+        verify(redemptionRepository, never()).countByPromotionAndCustomerForShare(anyString(), anyString());
+        assertThat(log).containsExactly("begin 1", "saveAll [p1] in 1", "commit 1");
+    }
+
+    @Test
+    void cappedPromotionIsReservedInAShortTransactionCommittedBeforeTheOrder() {
+        record();
+        when(promotionRepository.incrementRedemptionCount("p1")).thenAnswer(inv -> {
+            log.add("increment p1 in " + transactionManager.depth());
+            return 1;
+        });
+        Promotion capped = promotion("p1", 10, null);
+        Promotion unlimited = promotion("p2", null, null);
+
+        orderTransaction.executeWithoutResult(status -> {
+            service.redeem(order("o1", "c1"), List.of(unlimited, capped));
+            log.add("order continues");
+        });
+
+        assertThat(log).containsExactly("begin 1", "begin 2", "increment p1 in 2", "saveAll [p1] in 2", "commit 2",
+                "saveAll [p2] in 1", "order continues", "commit 1");
+    }
+
+    @Test
+    void rolledBackOrderGivesBackItsReservationInAnotherTransaction() {
+        record();
+        when(promotionRepository.incrementRedemptionCount("p1")).thenReturn(1);
+        Promotion promotion = promotion("p1", 10, 2);
+        when(promotionRepository.findAllById(List.of("p1"))).thenReturn(List.of(promotion));
+        when(redemptionRepository.findByOrderId("o1")).thenReturn(List.of(redemption("p1", "c1", "o1")));
+        when(promotionRepository.decrementRedemptionCount("p1")).thenAnswer(inv -> {
+            log.add("decrement p1 in " + transactionManager.depth());
+            return 1;
+        });
+
+        assertThatThrownBy(() -> orderTransaction.executeWithoutResult(status -> {
+            service.redeem(order("o1", "c1"), List.of(promotion));
+            throw new IllegalStateException("payment link failed");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(log).containsExactly("begin 1", "begin 2", "saveAll [p1] in 2", "commit 2", "rollback 1",
+                "begin 2", "decrement p1 in 2", "commit 2");
+        verify(redemptionRepository).deleteByOrderId("o1");
+        assertThat(service.isExhausted(PromotionIndex.Entry.of(promotion), "c1")).isFalse();
+    }
+
+    @Test
+    void exhaustedReservationRollsBackAndReleasesTheInMemoryCounter() {
+        record();
+        Promotion first = promotion("p1", 1, null);
+        Promotion second = promotion("p2", 1, null);
+        when(promotionRepository.incrementRedemptionCount("p1")).thenReturn(1);
+        // Instance khác đã dùng lượt cuối của p2
+        when(promotionRepository.incrementRedemptionCount("p2")).thenReturn(0);
+
+        assertThatThrownBy(() -> orderTransaction.executeWithoutResult(status ->
+                service.redeem(order("o1", "c1"), List.of(second, first))))
+                .hasMessageContaining("hết lượt");
+
+        assertThat(log).containsExactly("begin 1", "begin 2", "rollback 2", "rollback 1");
+        verify(redemptionRepository, never()).findByOrderId(anyString());
+        assertThat(service.isExhausted(PromotionIndex.Entry.of(first), "c1")).isFalse();
+    }
+
+    @Test
+    void perCustomerLimitCountsCommittedReservations() {
+        record();
+        when(promotionRepository.incrementRedemptionCount("p1")).thenReturn(1);
+        when(redemptionRepository.countByPromotionAndCustomerForShare("p1", "c1")).thenReturn(1L);
+
+        assertThatThrownBy(() -> orderTransaction.executeWithoutResult(status ->
+                service.redeem(order("o1", "c1"), List.of(promotion("p1", null, 1)))))
+                .hasMessageContaining("hết lượt");
+        assertThat(log).containsExactly("begin 1", "begin 2", "rollback 2", "rollback 1");
+    }
+
+    @Test
+    void cancelledOrderDecrementsOnlyCappedPromotions() {
+        Promotion capped = promotion("p1", 10, null);
+        Promotion unlimited = promotion("p2", null, null);
+        when(redemptionRepository.findByOrderId("o1"))
+                .thenReturn(List.of(redemption("p2", "c1", "o1"), redemption("p1", "c1", "o1")));
+        when(promotionRepository.findAllById(List.of("p2", "p1"))).thenReturn(List.of(unlimited, capped));
+
+        service.releaseForOrder("o1");
+
+        verify(promotionRepository).decrementRedemptionCount("p1");
+        verify(promotionRepository, never()).decrementRedemptionCount("p2");
+        verify(redemptionRepository).deleteByOrderId("o1");
+    }
+
+    @Test
+    void reconcileOnlyCountsCappedPromotions() {
+        service.reconcile(promotion("p1", null, null));
+        verify(promotionRepository, never()).reconcileRedemptionCount(anyString());
+
+        service.reconcile(promotion("p2", 5, null));
+        verify(promotionRepository).reconcileRedemptionCount("p2");
+    }
+
+    private void record() {
+        when(redemptionRepository.saveAll(anyList())).thenAnswer(inv -> {
+            List<PromotionRedemption> rows = inv.getArgument(0);
+            log.add("saveAll " + rows.stream().map(PromotionRedemption::getPromotionId).toList()
+                    + " in " + transactionManager.depth());
+            return rows;
+        });
+        when(redemptionRepository.countByCustomer(anyString())).thenReturn(List.of());
+        when(redemptionRepository.findByOrderId(anyString())).thenReturn(List.of());
+        when(promotionRepository.findAllById(anyList())).thenReturn(List.of());
+    }
+
+    // Transaction giả: ghi lại begin/commit/rollback theo độ sâu, hỗ trợ REQUIRES_NEW (treo transaction ngoài)
+    private final class RecordingTransactionManager extends AbstractPlatformTransactionManager {
+
+        private final ThreadLocal<Integer> depth = ThreadLocal.withInitial(() -> 0);
+
+        int depth() {
+            return depth.get();
+        }
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object[]{depth.get()};
+        }
+
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return (Integer) ((Object[]) transaction)[0] > 0;
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            depth.set(depth.get() + 1);
+            log.add("begin " + depth.get());
+        }
+
+        @Override
+        protected Object doSuspend(Object transaction) {
+            return depth.get();
+        }
+
+        @Override
+        protected void doResume(Object transaction, Object suspendedResources) {
+            depth.set((Integer) suspendedResources);
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            log.add("commit " + depth.get());
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            log.add("rollback " + depth.get());
+        }
+
+        @Override
+        protected void doCleanupAfterCompletion(Object transaction) {
+            depth.set(depth.get() - 1);
+        }
+    }
+
+    private static Order order(String orderId, String customerId) {
+        Customer customer = new Customer();
+        customer.setCustomerId(customerId);
+        Order order = new Order();
+        order.setOrderId(orderId);
+        order.setCustomer(customer);
+        return order;
+    }
+
+    private static PromotionRedemption redemption(String promotionId, String customerId, String orderId) {
+        return PromotionRedemption.builder().promotionId(promotionId).customerId(customerId).orderId(orderId).build();
+    }
+
+    private static Promotion promotion(String id, Integer maxRedemptions, Integer maxPerCustomer) {
+        Promotion promotion = new Promotion();
+        promotion.setPromotionId(id);
+        promotion.setPromotionCode("KM" + id);
+        promotion.setMaxRedemptions(maxRedemptions);
+        promotion.setMaxRedemptionsPerCustomer(maxPerCustomer);
+        return promotion;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.be_phela.service;
+
+import com.example.be_phela.model.Promotion;
+import com.example.be_phela.model.enums.DiscountType;
+import com.example.be_phela.model.enums.PromotionStatus;
+import com.example.be_phela.repository.PromotionRepository;
+import com.example.be_phela.utils.PromotionIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PromotionRegistryTest {
+
+    // Bảng promotion giả lập; mỗi lần đọc trả về bản sao như một lần SELECT
+    private final Map<String, Promotion> table = new ConcurrentHashMap<>();
+    private PromotionRepository repository;
+    private PromotionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(PromotionRepository.class);
+        when(repository.findById(anyString())).thenAnswer(inv ->
+                Optional.ofNullable(table.get(inv.<String>getArgument(0))).map(PromotionRegistryTest::copy));
+        when(repository.findByStatus(any(PromotionStatus.class))).thenAnswer(inv -> table.values().stream()
+                .filter(p -> p.getStatus() == inv.getArgument(0))
+                .map(PromotionRegistryTest::copy)
+                .toList());
+        registry = new PromotionRegistry(repository, mock(TransactionTemplate.class), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void readsComeFromMemoryAfterLoad() {
+        LocalDateTime now = LocalDateTime.now();
+        table.put("p1", promotion("p1", "KM0001", now.minusDays(1), now.plusDays(1), PromotionStatus.ACTIVE));
+        registry.reload();
+
+        assertThat(registry.findEffective("KM0001", now)).isNotNull();
+        assertThat(registry.findEffective("KM0001", now.plusDays(1))).isNull();
+        assertThat(registry.findEffective("KM9999", now)).isNull();
+        verify(repository, never()).findByPromotionCode(anyString());
+    }
+
+    @Test
+    void expireEndedDoesNotTouchDatabaseBeforeAnyBoundary() {
+        LocalDateTime now = LocalDateTime.now();
+        table.put("p1", promotion("p1", "KM0001", now.minusDays(1), now.plusDays(1), PromotionStatus.ACTIVE));
+        registry.reload();
+
+        registry.expireEnded();
+
+        verify(repository, never()).expireEndedBefore(any());
+    }
+
+    @Test
+    void concurrentAdminUpdatesEndWithLatestCommittedState() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        int promotions = 20;
+        for (int i = 0; i < promotions; i++) {
+            String id = "p" + i;
+            table.put(id, promotion(id, "KM" + i, now.minusDays(1), now.plusDays(1), PromotionStatus.ACTIVE));
+        }
+        registry.reload();
+
+        // Mỗi luồng ghi vào "DB" rồi gọi refresh như sau khi commit; thứ tự refresh giữa các luồng là ngẫu nhiên
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            tasks.add(pool.submit(() -> {
+                start.await();
+                for (int n = 0; n < 500; n++) {
+                    String id = "p" + ThreadLocalRandom.current().nextInt(promotions);
+                    PromotionStatus status = ThreadLocalRandom.current().nextBoolean()
+                            ? PromotionStatus.ACTIVE : PromotionStatus.INACTIVE;
+                    table.compute(id, (key, p) -> {
+                        Promotion updated = copy(p);
+                        updated.setStatus(status);
+                        updated.setEndDate(now.plusDays(1 + ThreadLocalRandom.current().nextInt(30)));
+                        return updated;
+                    });
+                    registry.refresh(id);
+                    // Đọc đồng thời trong lúc đang cập nhật
+                    registry.effectiveAt(now);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        pool.shutdown();
+
+        for (Promotion p : table.values()) {
+            PromotionIndex.Entry entry = registry.findEffective(p.getPromotionCode(), now);
+            if (p.getStatus() == PromotionStatus.ACTIVE) {
+                assertThat(entry).isNotNull();
+                assertThat(entry.endDate()).isEqualTo(p.getEndDate());
+            } else {
+                assertThat(entry).isNull();
+            }
+        }
+        long active = table.values().stream().filter(p -> p.getStatus() == PromotionStatus.ACTIVE).count();
+        assertThat(registry.effectiveAt(now)).hasSize((int) active);
+    }
+
+    private static Promotion promotion(String id, String code, LocalDateTime start, LocalDateTime end,
+                                       PromotionStatus status) {
+        return Promotion.builder()
+                .promotionId(id)
+                .promotionCode(code)
+                .name(code)
+                .discountType(DiscountType.FIXED_AMOUNT)
+                .discountValue(10000.0)
+                .startDate(start)
+                .endDate(end)
+                .status(status)
+                .build();
+    }
+
+    private static Promotion copy(Promotion p) {
+        return promotion(p.getPromotionId(), p.getPromotionCode(), p.getStartDate(), p.getEndDate(), p.getStatus());
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.be_phela.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BoundedCacheTest {
+
+    @Test
+    void evictsEntriesThatWereNotReadRecently() throws Exception {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(100, null);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "v" + i);
+        }
+        // Đọc lại nửa đầu để nửa sau trở thành phần tử lâu không dùng
+        Thread.sleep(5);
+        for (int i = 0; i < 50; i++) {
+            assertThat(cache.getIfPresent(i)).contains("v" + i);
+        }
+        Thread.sleep(5);
+        cache.put(100, "v100");
+
+        assertThat(cache.size()).isLessThanOrEqualTo(100);
+        for (int i = 0; i < 50; i++) {
+            assertThat(cache.getIfPresent(i)).contains("v" + i);
+        }
+        assertThat(cache.getIfPresent(100)).contains("v100");
+        assertThat(cache.evictionCount()).isPositive();
+    }
+
+    @Test
+    void loadFinishedAfterInvalidateIsDiscarded() {
+        BoundedCache<String, String> cache = new BoundedCache<>(10, null);
+        String value = cache.get("k", key -> {
+            cache.invalidate(key);
+            return "stale";
+        });
+
+        assertThat(value).isEqualTo("stale");
+        assertThat(cache.getIfPresent("k")).isEmpty();
+    }
+
+    @Test
+    void concurrentReadersAndWritersStayWithinBounds() throws Exception {
+        int maxEntries = 1_000;
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(maxEntries, null);
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            tasks.add(pool.submit(() -> {
+                start.await();
+                for (int n = 0; n < 50_000; n++) {
+                    int key = ThreadLocalRandom.current().nextInt(5_000);
+                    Integer cached = cache.get(key, k -> k * 2);
+                    assertThat(cached).isEqualTo(key * 2);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        pool.shutdown();
+
+        // Mỗi thread có thể thêm một phần tử trong lúc thread khác đang dọn
+        assertThat(cache.size()).isLessThanOrEqualTo(maxEntries + threads);
+        assertThat(cache.hitCount() + cache.missCount()).isEqualTo(threads * 50_000L);
+    }
+}
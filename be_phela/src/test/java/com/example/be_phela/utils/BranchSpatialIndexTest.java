@@ -0,0 +1,184 @@
+package com.example.be_phela.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BranchSpatialIndexTest {
+
+    // Các cụm chi nhánh quanh Hà Nội, Đà Nẵng, TP.HCM
+    private static final double[][] CITIES = {{21.03, 105.85}, {16.05, 108.20}, {10.78, 106.70}};
+
+    @Test
+    void nearestAndRadiusMatchLinearScanOnRandomBranches() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<BranchSpatialIndex.Point> points = randomPoints(random, 1 + random.nextInt(random.nextBoolean() ? 20 : 2_000));
+            BranchSpatialIndex index = BranchSpatialIndex.build(points);
+            assertThat(index.size()).isEqualTo(points.size());
+
+            for (int q = 0; q < 50; q++) {
+                double[] query = randomQuery(random, 3);
+                List<BranchSpatialIndex.Hit> expected = linearScan(points, query[0], query[1]);
+
+                int k = 1 + random.nextInt(10);
+                List<BranchSpatialIndex.Hit> nearest = index.nearest(query[0], query[1], k);
+                // Cùng hàm haversine nên khoảng cách phải trùng khớp tuyệt đối; trùng khoảng cách thì thứ tự có thể khác
+                assertThat(nearest).extracting(BranchSpatialIndex.Hit::distanceKm)
+                        .as("round %d query %s k %d", round, query, k)
+                        .containsExactlyElementsOf(expected.subList(0, Math.min(k, expected.size()))
+                                .stream().map(BranchSpatialIndex.Hit::distanceKm).toList());
+
+                double radius = random.nextDouble() * (random.nextBoolean() ? 5 : 300);
+                List<BranchSpatialIndex.Hit> within = index.withinRadius(query[0], query[1], radius);
+                assertThat(within).extracting(BranchSpatialIndex.Hit::branchCode)
+                        .as("round %d query %s radius %f", round, query, radius)
+                        .containsExactlyInAnyOrderElementsOf(expected.stream()
+                                .filter(hit -> hit.distanceKm() <= radius).map(BranchSpatialIndex.Hit::branchCode).toList());
+                assertThat(within).isSortedAccordingTo(Comparator.comparingDouble(BranchSpatialIndex.Hit::distanceKm));
+            }
+        }
+    }
+
+    @Test
+    void queriesAcrossTheAntimeridianMatchLinearScan() {
+        Random random = new Random(180);
+        List<BranchSpatialIndex.Point> points = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            double longitude = 170 + random.nextDouble() * 20;
+            points.add(new BranchSpatialIndex.Point("B" + i, -20 + random.nextDouble() * 10,
+                    longitude >= 180 ? longitude - 360 : longitude));
+        }
+        BranchSpatialIndex index = BranchSpatialIndex.build(points);
+
+        for (int q = 0; q < 500; q++) {
+            double latitude = -25 + random.nextDouble() * 20;
+            double longitude = random.nextBoolean() ? 175 + random.nextDouble() * 5 : -180 + random.nextDouble() * 5;
+            List<BranchSpatialIndex.Hit> expected = linearScan(points, latitude, longitude);
+
+            assertThat(index.nearest(latitude, longitude, 3)).extracting(BranchSpatialIndex.Hit::distanceKm)
+                    .containsExactlyElementsOf(expected.subList(0, 3).stream().map(BranchSpatialIndex.Hit::distanceKm).toList());
+            assertThat(index.withinRadius(latitude, longitude, 200)).extracting(BranchSpatialIndex.Hit::branchCode)
+                    .containsExactlyInAnyOrderElementsOf(expected.stream()
+                            .filter(hit -> hit.distanceKm() <= 200).map(BranchSpatialIndex.Hit::branchCode).toList());
+        }
+    }
+
+    @Test
+    void emptyIndexAndDegenerateArguments() {
+        BranchSpatialIndex empty = BranchSpatialIndex.build(List.of());
+        assertThat(empty.nearest(21.0, 105.8, 3)).isEmpty();
+        assertThat(empty.withinRadius(21.0, 105.8, 10)).isEmpty();
+
+        BranchSpatialIndex single = BranchSpatialIndex.build(List.of(new BranchSpatialIndex.Point("B1", 21.0, 105.8)));
+        assertThat(single.nearest(21.0, 105.8, 0)).isEmpty();
+        assertThat(single.withinRadius(21.0, 105.8, -1)).isEmpty();
+        assertThat(single.nearest(-33.9, 151.2, 5)).extracting(BranchSpatialIndex.Hit::branchCode).containsExactly("B1");
+        assertThat(single.withinRadius(21.0, 105.8, 0)).extracting(BranchSpatialIndex.Hit::branchCode).containsExactly("B1");
+    }
+
+    // Không có JMH trong project: đo thô bằng nanoTime, chỉ in kết quả để so sánh với quét tuyến tính.
+    // Không chạy mặc định: mvn test -Dtest=BranchSpatialIndexTest -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkAgainstLinearScan() {
+        Random random = new Random(7);
+        List<BranchSpatialIndex.Point> points = randomPoints(random, 5_000);
+        BranchSpatialIndex index = BranchSpatialIndex.build(points);
+        double[][] queries = new double[1_000][];
+        // Địa chỉ giao hàng thực tế nằm trong nước
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = randomQuery(random, 2);
+        }
+
+        double sink = 0;
+        for (int warmup = 0; warmup < 3; warmup++) {
+            sink += runIndex(index, queries) + runLinear(points, queries);
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < 5; round++) {
+            sink += runIndex(index, queries);
+        }
+        long middle = System.nanoTime();
+        for (int round = 0; round < 5; round++) {
+            sink += runLinear(points, queries);
+        }
+        long end = System.nanoTime();
+        double lookups = 5.0 * queries.length;
+        System.out.printf("Nearest branch over %d branches: index %.0f ns/query, linear scan %.0f ns/query (checksum %.0f)%n",
+                points.size(), (middle - start) / lookups, (end - middle) / lookups, sink);
+        assertThat(sink).isPositive();
+    }
+
+    private static double runIndex(BranchSpatialIndex index, double[][] queries) {
+        double sum = 0;
+        for (double[] query : queries) {
+            sum += index.nearest(query[0], query[1], 1).get(0).distanceKm();
+        }
+        return sum;
+    }
+
+    private static double runLinear(List<BranchSpatialIndex.Point> points, double[][] queries) {
+        double sum = 0;
+        for (double[] query : queries) {
+            double best = Double.MAX_VALUE;
+            for (BranchSpatialIndex.Point point : points) {
+                best = Math.min(best, DistanceCalculator.calculateDistance(
+                        query[0], query[1], point.latitude(), point.longitude()));
+            }
+            sum += best;
+        }
+        return sum;
+    }
+
+    private static List<BranchSpatialIndex.Hit> linearScan(List<BranchSpatialIndex.Point> points, double latitude, double longitude) {
+        List<BranchSpatialIndex.Hit> hits = new ArrayList<>(points.size());
+        for (BranchSpatialIndex.Point point : points) {
+            hits.add(new BranchSpatialIndex.Hit(point.branchCode(), DistanceCalculator.calculateDistance(
+                    latitude, longitude, point.latitude(), point.longitude())));
+        }
+        hits.sort(Comparator.comparingDouble(BranchSpatialIndex.Hit::distanceKm));
+        return hits;
+    }
+
+    // Phần lớn chi nhánh nằm trong cụm thành phố, một phần rải khắp Việt Nam, đôi khi trùng tọa độ
+    private static List<BranchSpatialIndex.Point> randomPoints(Random random, int count) {
+        List<BranchSpatialIndex.Point> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double latitude;
+            double longitude;
+            if (i > 0 && random.nextInt(20) == 0) {
+                BranchSpatialIndex.Point twin = points.get(random.nextInt(i));
+                latitude = twin.latitude();
+                longitude = twin.longitude();
+            } else if (random.nextInt(4) == 0) {
+                latitude = 8.5 + random.nextDouble() * 15;
+                longitude = 102 + random.nextDouble() * 7.5;
+            } else {
+                double[] city = CITIES[random.nextInt(CITIES.length)];
+                latitude = city[0] + random.nextGaussian() * 0.08;
+                longitude = city[1] + random.nextGaussian() * 0.08;
+            }
+            points.add(new BranchSpatialIndex.Point("B" + i, latitude, longitude));
+        }
+        return points;
+    }
+
+    // Điểm truy vấn trong thành phố, rải khắp cả nước, hoặc ở rất xa vùng chỉ mục
+    private static double[] randomQuery(Random random, int kinds) {
+        return switch (random.nextInt(kinds)) {
+            case 0 -> {
+                double[] city = CITIES[random.nextInt(CITIES.length)];
+                yield new double[]{city[0] + random.nextGaussian() * 0.1, city[1] + random.nextGaussian() * 0.1};
+            }
+            case 1 -> new double[]{8 + random.nextDouble() * 16, 101 + random.nextDouble() * 9};
+            default -> new double[]{-60 + random.nextDouble() * 130, -170 + random.nextDouble() * 340};
+        };
+    }
+}
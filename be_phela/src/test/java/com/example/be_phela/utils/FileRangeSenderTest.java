@@ -0,0 +1,96 @@
+package com.example.be_phela.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileRangeSenderTest {
+
+    private static final String CONTENT = "0123456789";
+    private static final String ETAG = "\"cv-1\"";
+    private static final long LAST_MODIFIED = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void validRangesArePartialContent() throws IOException {
+        assertPartial(send("bytes=2-4"), "bytes 2-4/10", "234");
+        assertPartial(send("bytes=7-"), "bytes 7-9/10", "789");
+        assertPartial(send("bytes=-3"), "bytes 7-9/10", "789");
+        assertPartial(send("bytes=8-100"), "bytes 8-9/10", "89");
+        assertPartial(send("bytes=-100"), "bytes 0-9/10", CONTENT);
+        assertPartial(send("bytes=5-5"), "bytes 5-5/10", "5");
+    }
+
+    // RFC 9110 14.2: range không hợp lệ về cú pháp thì bỏ qua header Range và trả 200 toàn bộ nội dung
+    @Test
+    void invalidRangesAreIgnored() throws IOException {
+        for (String range : new String[]{"bytes=5-3", "bytes=9-0", "bytes=-", "bytes=a-b", "bytes=+1-2",
+                "bytes=1--2", "bytes=1-2,4-5", "items=0-1", "bytes=", "bytes=3"}) {
+            MockHttpServletResponse response = send(range);
+            assertThat(response.getStatus()).as(range).isEqualTo(200);
+            assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).as(range).isNull();
+            assertThat(response.getContentAsString()).as(range).isEqualTo(CONTENT);
+        }
+    }
+
+    @Test
+    void rangesPastTheEndAreNotSatisfiable() throws IOException {
+        for (String range : new String[]{"bytes=10-", "bytes=10-20", "bytes=-0"}) {
+            MockHttpServletResponse response = send(range);
+            assertThat(response.getStatus()).as(range).isEqualTo(416);
+            assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).as(range).isEqualTo("bytes */10");
+            assertThat(response.getContentAsByteArray()).as(range).isEmpty();
+        }
+    }
+
+    @Test
+    void staleIfRangeSendsTheWholeFile() throws IOException {
+        MockHttpServletRequest request = request("bytes=2-4");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"cv-0\"");
+        MockHttpServletResponse response = send(request);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+
+        request = request("bytes=2-4");
+        request.addHeader(HttpHeaders.IF_RANGE, ETAG);
+        assertPartial(send(request), "bytes 2-4/10", "234");
+    }
+
+    private static void assertPartial(MockHttpServletResponse response, String contentRange, String body)
+            throws IOException {
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo(contentRange);
+        assertThat(response.getContentLengthLong()).isEqualTo(body.length());
+        assertThat(response.getContentAsString()).isEqualTo(body);
+    }
+
+    private MockHttpServletResponse send(String range) throws IOException {
+        return send(request(range));
+    }
+
+    private MockHttpServletResponse send(MockHttpServletRequest request) throws IOException {
+        Path file = directory.resolve("cv.pdf");
+        Files.writeString(file, CONTENT, StandardCharsets.US_ASCII);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FileRangeSender.send(request, response, file, CONTENT.length(), LAST_MODIFIED, ETAG,
+                "application/pdf", null);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String range) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/cv/download");
+        request.addHeader(HttpHeaders.RANGE, range);
+        return request;
+    }
+}
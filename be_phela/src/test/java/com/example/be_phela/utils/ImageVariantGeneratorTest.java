@@ -0,0 +1,67 @@
+package com.example.be_phela.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImageVariantGeneratorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void generatesOnlyVariantsNarrowerThanTheSource() throws Exception {
+        File source = png(300, 200, BufferedImage.TYPE_INT_RGB);
+        ImageVariantGenerator generator = generator(60_000);
+
+        Map<String, File> variants = generator.generate(source, directory);
+
+        assertThat(variants).containsOnlyKeys("thumb", "medium");
+        assertThat(ImageIO.read(variants.get("medium")).getWidth()).isEqualTo(100);
+        assertThat(ImageIO.read(variants.get("thumb")).getWidth()).isEqualTo(50);
+        assertThat(generator.generate(png(40, 40, BufferedImage.TYPE_INT_RGB), directory)).isEmpty();
+    }
+
+    @Test
+    void imageOverThePixelBudgetIsRejectedBeforeDecoding() throws Exception {
+        // 10000x10000 đen trắng nén PNG chỉ vài chục KB nhưng giải mã ra RGB cần ~400 MB
+        File bomb = png(10_000, 10_000, BufferedImage.TYPE_BYTE_BINARY);
+        assertThat(Files.size(bomb.toPath())).isLessThan(1_000_000);
+
+        assertThatThrownBy(() -> generator(40_000_000).generate(bomb, directory))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("10000x10000");
+        assertThatThrownBy(() -> generator(59_999).generate(png(300, 200, BufferedImage.TYPE_INT_RGB), directory))
+                .isInstanceOf(IOException.class);
+        try (var files = Files.list(directory)) {
+            assertThat(files.filter(f -> f.getFileName().toString().startsWith("variant-"))).isEmpty();
+        }
+    }
+
+    @Test
+    void unreadableFileYieldsNoVariants() throws Exception {
+        File text = Files.writeString(directory.resolve("not-an-image.png"), "hello").toFile();
+
+        assertThat(generator(40_000_000).generate(text, directory)).isEmpty();
+    }
+
+    private static ImageVariantGenerator generator(long maxPixels) {
+        return new ImageVariantGenerator(Map.of("thumb", 50, "medium", 100), "jpeg", 0.8f, maxPixels);
+    }
+
+    private File png(int width, int height, int type) throws IOException {
+        File file = Files.createTempFile(directory, "source-", ".png").toFile();
+        ImageIO.write(new BufferedImage(width, height, type), "png", file);
+        return file;
+    }
+}
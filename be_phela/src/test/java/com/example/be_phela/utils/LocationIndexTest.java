@@ -0,0 +1,144 @@
+package com.example.be_phela.utils;
+
+import com.example.be_phela.dto.response.District;
+import com.example.be_phela.dto.response.Province;
+import com.example.be_phela.dto.response.Ward;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class LocationIndexTest {
+
+    @Test
+    void lookupsMatchLinearScanOfTheHierarchy() {
+        Random random = new Random(42);
+        List<Province> hierarchy = randomHierarchy(random, 63);
+        LocationIndex index = LocationIndex.of(hierarchy);
+
+        for (int code = 0; code <= 1_000; code++) {
+            List<District> expected = scanDistricts(hierarchy, code);
+            List<District> actual = index.districtsOf(code);
+            if (expected == null) {
+                assertThat(actual).isNull();
+            } else {
+                assertThat(actual).extracting(District::getCode, District::getName)
+                        .containsExactlyElementsOf(expected.stream()
+                                .map(d -> tuple(d.getCode(), d.getName())).toList());
+                assertThat(actual).allSatisfy(d -> assertThat(d.getWards()).isEmpty());
+            }
+        }
+        for (int code = 0; code <= 100_000; code += 7) {
+            assertThat(index.wardsOf(code)).isEqualTo(scanWards(hierarchy, code));
+        }
+        for (District district : hierarchy.get(5).getDistricts()) {
+            assertThat(index.wardsOf(district.getCode())).isEqualTo(district.getWards());
+        }
+    }
+
+    @Test
+    void provincesAreSortedAndCarryNoChildren() {
+        List<Province> hierarchy = randomHierarchy(new Random(7), 20);
+        LocationIndex index = LocationIndex.of(hierarchy);
+
+        assertThat(index.provinces()).extracting(Province::getCode).isSorted();
+        assertThat(index.provinces()).allSatisfy(p -> assertThat(p.getDistricts()).isEmpty());
+        assertThat(index.provinceCount()).isEqualTo(20);
+        assertThat(index.districtCount()).isEqualTo(hierarchy.stream().mapToInt(p -> p.getDistricts().size()).sum());
+        assertThat(index.wardCount()).isEqualTo(hierarchy.stream()
+                .flatMap(p -> p.getDistricts().stream()).mapToInt(d -> d.getWards().size()).sum());
+    }
+
+    @Test
+    void diffCountsAddedRemovedAndRenamedEntries() {
+        List<Province> before = randomHierarchy(new Random(1), 5);
+        List<Province> after = randomHierarchy(new Random(1), 5);
+        after.remove(0);
+        after.get(0).setName("Renamed");
+        District newDistrict = district(999, 1, "New district", List.of(ward(99_999, "New ward")));
+        after.get(1).setDistricts(append(after.get(1).getDistricts(), newDistrict));
+
+        LocationIndex.Diff diff = LocationIndex.of(before).diff(LocationIndex.of(after));
+
+        int removedDistricts = before.get(0).getDistricts().size();
+        int removedWards = before.get(0).getDistricts().stream().mapToInt(d -> d.getWards().size()).sum();
+        assertThat(diff.provinces()).isEqualTo(new LocationIndex.LevelDiff(0, 1, 1));
+        assertThat(diff.districts()).isEqualTo(new LocationIndex.LevelDiff(1, removedDistricts, 0));
+        assertThat(diff.wards()).isEqualTo(new LocationIndex.LevelDiff(1, removedWards, 0));
+        assertThat(LocationIndex.of(before).diff(LocationIndex.of(before)).isEmpty()).isTrue();
+    }
+
+    // Mã không liên tục và thứ tự ngẫu nhiên như dữ liệu thật
+    private static List<Province> randomHierarchy(Random random, int provinces) {
+        List<Province> result = new ArrayList<>();
+        int districtCode = 1;
+        int wardCode = 1;
+        for (int p = 0; p < provinces; p++) {
+            int provinceCode = 1 + p * 2;
+            List<District> districts = new ArrayList<>();
+            for (int d = random.nextInt(12); d >= 0; d--) {
+                districtCode += 1 + random.nextInt(3);
+                List<Ward> wards = new ArrayList<>();
+                for (int w = random.nextInt(20); w >= 0; w--) {
+                    wardCode += 1 + random.nextInt(5);
+                    wards.add(ward(wardCode, "Ward " + wardCode));
+                }
+                districts.add(district(districtCode, provinceCode, "District " + districtCode, wards));
+            }
+            Province province = new Province();
+            province.setCode(provinceCode);
+            province.setName("Province " + provinceCode);
+            province.setDistricts(districts);
+            result.add(province);
+        }
+        Collections.shuffle(result, random);
+        return result;
+    }
+
+    private static List<District> scanDistricts(List<Province> hierarchy, int provinceCode) {
+        for (Province province : hierarchy) {
+            if (province.getCode() == provinceCode) {
+                return province.getDistricts();
+            }
+        }
+        return null;
+    }
+
+    private static List<Ward> scanWards(List<Province> hierarchy, int districtCode) {
+        for (Province province : hierarchy) {
+            for (District district : province.getDistricts()) {
+                if (district.getCode() == districtCode) {
+                    return district.getWards();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static District district(int code, int provinceCode, String name, List<Ward> wards) {
+        District district = new District();
+        district.setCode(code);
+        district.setProvinceCode(provinceCode);
+        district.setName(name);
+        district.setWards(wards);
+        return district;
+    }
+
+    private static Ward ward(int code, String name) {
+        Ward ward = new Ward();
+        ward.setCode(code);
+        ward.setName(name);
+        return ward;
+    }
+
+    private static <T> List<T> append(List<T> list, T item) {
+        List<T> copy = new ArrayList<>(list);
+        copy.add(item);
+        return copy;
+    }
+}
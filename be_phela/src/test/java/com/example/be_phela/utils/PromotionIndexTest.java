@@ -0,0 +1,89 @@
+package com.example.be_phela.utils;
+
+import com.example.be_phela.model.enums.DiscountType;
+import com.example.be_phela.model.enums.PromotionStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PromotionIndexTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 6, 1, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2025, 6, 30, 23, 59, 59);
+
+    private static PromotionIndex.Entry entry(String id, String code, LocalDateTime start, LocalDateTime end,
+                                              PromotionStatus status) {
+        return new PromotionIndex.Entry(id, code, code, null, DiscountType.PERCENTAGE, 10.0, null, null,
+                start, end, status, null, null);
+    }
+
+    @Test
+    void effectiveFromStartInclusiveUntilEndExclusive() {
+        PromotionIndex index = PromotionIndex.of(List.of(entry("p1", "KM0001", START, END, PromotionStatus.ACTIVE)));
+
+        assertThat(index.effectiveAt(START.minusNanos(1))).isEmpty();
+        assertThat(index.effectiveAt(START)).extracting(PromotionIndex.Entry::promotionCode).containsExactly("KM0001");
+        assertThat(index.effectiveAt(END.minusNanos(1))).hasSize(1);
+        assertThat(index.effectiveAt(END)).isEmpty();
+
+        assertThat(index.get("KM0001").isEffectiveAt(START)).isTrue();
+        assertThat(index.get("KM0001").isEffectiveAt(END)).isFalse();
+    }
+
+    @Test
+    void onlyActivePromotionsAreIndexed() {
+        PromotionIndex index = PromotionIndex.of(List.of(
+                entry("p1", "KM0001", START, END, PromotionStatus.ACTIVE),
+                entry("p2", "KM0002", START, END, PromotionStatus.INACTIVE),
+                entry("p3", "KM0003", START, END, PromotionStatus.EXPIRED)));
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.get("KM0002")).isNull();
+        assertThat(index.get("KM0003")).isNull();
+    }
+
+    @Test
+    void effectivePromotionsAreOrderedByStart() {
+        PromotionIndex index = PromotionIndex.of(List.of(
+                entry("p2", "KM0002", START.plusDays(2), END, PromotionStatus.ACTIVE),
+                entry("p1", "KM0001", START, END, PromotionStatus.ACTIVE),
+                entry("p3", "KM0003", START.plusDays(20), END, PromotionStatus.ACTIVE)));
+
+        assertThat(index.effectiveAt(START.plusDays(5)))
+                .extracting(PromotionIndex.Entry::promotionCode)
+                .containsExactly("KM0001", "KM0002");
+    }
+
+    @Test
+    void reportsEndedPromotionsAndNextBoundary() {
+        PromotionIndex index = PromotionIndex.of(List.of(
+                entry("p1", "KM0001", START, END, PromotionStatus.ACTIVE),
+                entry("p2", "KM0002", START.plusDays(1), END.plusDays(1), PromotionStatus.ACTIVE)));
+
+        assertThat(index.hasEndedAt(END.minusNanos(1))).isFalse();
+        assertThat(index.hasEndedAt(END)).isTrue();
+        assertThat(index.nextBoundaryAfter(START.minusDays(1))).isEqualTo(START);
+        assertThat(index.nextBoundaryAfter(START)).isEqualTo(START.plusDays(1));
+        assertThat(index.nextBoundaryAfter(END)).isEqualTo(END.plusDays(1));
+        assertThat(index.nextBoundaryAfter(END.plusDays(1))).isNull();
+        assertThat(PromotionIndex.empty().hasEndedAt(END)).isFalse();
+    }
+
+    @Test
+    void withReplacesByIdAndDropsDeactivatedPromotions() {
+        PromotionIndex index = PromotionIndex.of(List.of(entry("p1", "KM0001", START, END, PromotionStatus.ACTIVE)));
+
+        PromotionIndex extended = index.with(entry("p1", "KM0001", START, END.plusDays(10), PromotionStatus.ACTIVE));
+        assertThat(extended.size()).isEqualTo(1);
+        assertThat(extended.effectiveAt(END.plusDays(1))).hasSize(1);
+        // Chỉ mục cũ không bị thay đổi
+        assertThat(index.effectiveAt(END.plusDays(1))).isEmpty();
+
+        PromotionIndex deactivated = extended.with(entry("p1", "KM0001", START, END, PromotionStatus.INACTIVE));
+        assertThat(deactivated.get("KM0001")).isNull();
+        assertThat(deactivated.without("p1").size()).isZero();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.be_phela.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RingBufferTest {
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertThat(new RingBuffer<>(2).capacity()).isEqualTo(2);
+        assertThat(new RingBuffer<>(5).capacity()).isEqualTo(8);
+        assertThat(new RingBuffer<>(8192).capacity()).isEqualTo(8192);
+        assertThatThrownBy(() -> new RingBuffer<>(1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void offerFailsWhenFullAndSlotsAreReusedAfterPoll() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(buffer.offer(i)).isTrue();
+        }
+        assertThat(buffer.offer(4)).isFalse();
+        assertThat(buffer.size()).isEqualTo(4);
+
+        assertThat(buffer.poll()).isZero();
+        assertThat(buffer.offer(4)).isTrue();
+
+        List<Integer> drained = new ArrayList<>();
+        assertThat(buffer.drain(drained::add, 3)).isEqualTo(3);
+        assertThat(drained).containsExactly(1, 2, 3);
+        assertThat(buffer.drain(drained::add, 10)).isEqualTo(1);
+        assertThat(drained).containsExactly(1, 2, 3, 4);
+        assertThat(buffer.poll()).isNull();
+        assertThat(buffer.size()).isZero();
+    }
+
+    @Test
+    void concurrentProducersAndConsumersNeitherLoseNorDuplicateValues() throws Exception {
+        int producers = 4;
+        int consumers = 4;
+        int perProducer = 100_000;
+        int total = producers * perProducer;
+        // Buffer nhỏ để producer thường xuyên gặp hàng đợi đầy
+        RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        AtomicIntegerArray received = new AtomicIntegerArray(total);
+        AtomicLong consumed = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(producers + consumers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            tasks.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perProducer; i++) {
+                    Integer value = producer * perProducer + i;
+                    while (!buffer.offer(value)) {
+                        Thread.yield();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            tasks.add(pool.submit(() -> {
+                // Mỗi consumer phải thấy giá trị của cùng một producer theo đúng thứ tự đã ghi
+                int[] last = new int[producers];
+                Arrays.fill(last, -1);
+                start.await();
+                while (consumed.get() < total) {
+                    Integer value = buffer.poll();
+                    if (value == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    int producer = value / perProducer;
+                    assertThat(value % perProducer).isGreaterThan(last[producer]);
+                    last[producer] = value % perProducer;
+                    received.incrementAndGet(value);
+                    consumed.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> task : tasks) {
+                task.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(consumed.get()).isEqualTo(total);
+        List<Integer> notExactlyOnce = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            if (received.get(i) != 1) {
+                notExactlyOnce.add(i);
+            }
+        }
+        assertThat(notExactlyOnce).isEmpty();
+        assertThat(buffer.poll()).isNull();
+        assertThat(buffer.size()).isZero();
+    }
+}
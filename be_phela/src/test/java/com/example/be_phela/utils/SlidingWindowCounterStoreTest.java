@@ -0,0 +1,109 @@
+package com.example.be_phela.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SlidingWindowCounterStoreTest {
+
+    private static final long WINDOW = 60_000;
+    // Đầu một cửa sổ để phép nội suy dễ tính
+    private static final long T0 = 1_700_000_040_000L - Math.floorMod(1_700_000_040_000L, WINDOW);
+
+    private final SlidingWindowCounterStore store = new SlidingWindowCounterStore(WINDOW, 8);
+
+    @Test
+    void countsWithinTheCurrentWindow() {
+        assertThat(store.increment("k", T0)).isEqualTo(1.0);
+        assertThat(store.increment("k", T0 + 1_000)).isEqualTo(2.0);
+        assertThat(store.increment("k", T0 + 59_000)).isEqualTo(3.0);
+        assertThat(store.estimate("k", T0 + 59_000)).isEqualTo(3.0);
+        assertThat(store.estimate("other", T0)).isZero();
+    }
+
+    @Test
+    void previousWindowIsInterpolated() {
+        for (int i = 0; i < 10; i++) {
+            store.increment("k", T0 + i);
+        }
+        // Đi được 1/4 cửa sổ mới: còn 3/4 số đếm của cửa sổ trước
+        assertThat(store.estimate("k", T0 + WINDOW + WINDOW / 4)).isCloseTo(7.5, within(1e-9));
+        assertThat(store.increment("k", T0 + WINDOW + WINDOW / 2)).isCloseTo(6.0, within(1e-9));
+        // Bỏ qua trọn một cửa sổ thì không còn gì từ trước
+        assertThat(store.estimate("k", T0 + 3 * WINDOW)).isZero();
+    }
+
+    @Test
+    void blockLastsUntilTheGivenTimeAndReportsTheFirstBlockOnly() {
+        assertThat(store.blockedUntil("k", T0)).isZero();
+        assertThat(store.block("k", T0 + 5_000, T0)).isTrue();
+        assertThat(store.block("k", T0 + 3_000, T0 + 1_000)).isFalse();
+        assertThat(store.blockedUntil("k", T0 + 4_999)).isEqualTo(T0 + 5_000);
+        assertThat(store.blockedUntil("k", T0 + 5_000)).isZero();
+        // Hết hạn chặn thì lần chặn sau lại là lần đầu
+        assertThat(store.block("k", T0 + 10_000, T0 + 6_000)).isTrue();
+    }
+
+    @Test
+    void resetForgetsCountsAndBlocks() {
+        store.increment("k", T0);
+        store.block("k", T0 + 5_000, T0);
+
+        assertThat(store.reset("k")).isTrue();
+        assertThat(store.reset("k")).isFalse();
+        assertThat(store.estimate("k", T0)).isZero();
+        assertThat(store.blockedUntil("k", T0)).isZero();
+    }
+
+    @Test
+    void evictIdleKeepsRecentAndBlockedKeys() {
+        store.increment("idle", T0);
+        store.increment("blocked", T0);
+        store.block("blocked", T0 + 10 * WINDOW, T0);
+        store.increment("recent", T0 + 2 * WINDOW);
+
+        assertThat(store.evictIdle(T0 + 2 * WINDOW + 1)).isEqualTo(1);
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.estimate("idle", T0 + 2 * WINDOW + 1)).isZero();
+        assertThat(store.blockedUntil("blocked", T0 + 2 * WINDOW + 1)).isEqualTo(T0 + 10 * WINDOW);
+    }
+
+    @Test
+    void concurrentIncrementsAreNotLost() throws Exception {
+        int threads = 8;
+        int perThread = 10_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            tasks.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    store.increment("shared", T0);
+                    store.increment("key-" + (i % 100), T0);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertThat(store.estimate("shared", T0)).isEqualTo((double) threads * perThread);
+        for (int i = 0; i < 100; i++) {
+            assertThat(store.estimate("key-" + i, T0)).isEqualTo((double) threads * perThread / 100);
+        }
+        assertThat(store.size()).isEqualTo(101);
+    }
+}
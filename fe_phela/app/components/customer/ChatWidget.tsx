@@ -2,7 +2,7 @@
 import React, { useState, useEffect, useRef, useCallback } from 'react';
 import { Client } from '@stomp/stompjs';
 import SockJS from 'sockjs-client';
-import { getChatHistory } from '~/services/chatServices';
+import { getChatHistoryPage } from '~/services/chatServices';
 import { useAuth, isCustomerUser } from '~/AuthContext';
 
 interface ChatMessage {
@@ -21,7 +21,11 @@ const ChatWidget = () => {
     const [messages, setMessages] = useState<ChatMessage[]>([]);
     const [inputValue, setInputValue] = useState('');
     const stompClientRef = useRef<Client | null>(null);
+    const [historyCursor, setHistoryCursor] = useState<string | null>(null);
+    const [loadingOlder, setLoadingOlder] = useState(false);
     const messagesEndRef = useRef<HTMLDivElement>(null);
+    // Khi chèn tin cũ lên đầu thì không cuộn xuống cuối
+    const skipScrollRef = useRef(false);
     const { user } = useAuth();
 
     const disconnect = useCallback(() => {
@@ -36,6 +40,8 @@ const ChatWidget = () => {
 
         const client = new Client({
             webSocketFactory: () => new SockJS('https://phela-backend-dyl7.onrender.com/ws'),
+            // Server chỉ cho subscribe topic của chính tài khoản đã xác thực bằng JWT khi CONNECT
+            connectHeaders: { Authorization: `Bearer ${localStorage.getItem('token') ?? ''}` },
             onConnect: () => {
                 console.log('Connected to chat server!');
                 client.subscribe(`/topic/chat/${currentCustomerId}`, (message) => {
@@ -93,11 +99,13 @@ const ChatWidget = () => {
             const customerId = user.customerId;
             const setupChat = async () => {
                 try {
-                    const history = await getChatHistory(customerId);
-                    setMessages(history);
+                    const history = await getChatHistoryPage(customerId);
+                    setMessages(history.messages);
+                    setHistoryCursor(history.hasMore ? history.nextCursor : null);
                 } catch (error) {
                     console.error("Failed to load chat history", error);
                     setMessages([]);
+                    setHistoryCursor(null);
                 }
                 connect(customerId);
             };
@@ -110,9 +118,28 @@ const ChatWidget = () => {
     }, [isOpen, user, connect, disconnect]);
 
     useEffect(() => {
+        if (skipScrollRef.current) {
+            skipScrollRef.current = false;
+            return;
+        }
         messagesEndRef.current?.scrollIntoView({ behavior: 'smooth' });
     }, [messages]);
 
+    const loadOlderMessages = async () => {
+        if (!user || !isCustomerUser(user) || !historyCursor || loadingOlder) return;
+        setLoadingOlder(true);
+        try {
+            const older = await getChatHistoryPage(user.customerId, historyCursor);
+            skipScrollRef.current = true;
+            setMessages((prev) => [...older.messages, ...prev.filter(msg => !msg.id || !older.messages.some((o: ChatMessage) => o.id === msg.id))]);
+            setHistoryCursor(older.hasMore ? older.nextCursor : null);
+        } catch (error) {
+            console.error("Failed to load older messages", error);
+        } finally {
+            setLoadingOlder(false);
+        }
+    };
+
     if (!user || !isCustomerUser(user)) {
         return null;
     }
@@ -272,6 +299,17 @@ const ChatWidget = () => {
                         </button>
                     </div>
                     <div className="flex-1 p-4 overflow-y-auto bg-gray-50">
+                        {historyCursor && (
+                            <div className="flex justify-center mb-4">
+                                <button
+                                    onClick={loadOlderMessages}
+                                    disabled={loadingOlder}
+                                    className="text-xs text-[#d4a373] hover:underline disabled:opacity-50"
+                                >
+                                    {loadingOlder ? 'Đang tải...' : 'Tải tin nhắn cũ hơn'}
+                                </button>
+                            </div>
+                        )}
                         {messages.map((msg, index) => (
                             <div key={msg.id || msg.tempId || index} className={`mb-4 flex ${msg.senderId === customerId ? 'justify-end' : 'justify-start'}`}>
                                 <div className={`max-w-xs rounded-lg p-3 ${msg.senderId === customerId ? 'bg-[#d4a373] text-white rounded-tr-none' : 'bg-gray-200 text-gray-800 rounded-tl-none'}`}>
@@ -3,7 +3,7 @@ import React, { useState, useEffect, useRef } from 'react';
 import { Client } from '@stomp/stompjs';
 import SockJS from 'sockjs-client';
 import { useAuth, isAdminUser } from '~/AuthContext';
-import { getConversations, getChatHistory } from '~/services/chatServices';
+import { getConversations, getChatHistoryPage } from '~/services/chatServices';
 import Header from '~/components/admin/Header';
 
 interface ChatMessage {
@@ -21,6 +21,7 @@ interface Conversation {
     customerName: string;
     messages: ChatMessage[];
     lastMessage?: string;
+    historyCursor?: string | null; // Con trỏ để tải các tin cũ hơn, null khi đã hết
 }
 
 const Support = () => {
@@ -30,6 +31,9 @@ const Support = () => {
     const [inputValue, setInputValue] = useState('');
     const stompClientRef = useRef<Client | null>(null);
     const messagesEndRef = useRef<HTMLDivElement>(null);
+    // Khi chèn tin cũ lên đầu thì không cuộn xuống cuối
+    const skipScrollRef = useRef(false);
+    const [loadingOlder, setLoadingOlder] = useState(false);
 
     useEffect(() => {
         if (user && isAdminUser(user)) {
@@ -58,9 +62,11 @@ const Support = () => {
 
             const client = new Client({
                 webSocketFactory: () => new SockJS('https://phela-backend-dyl7.onrender.com/ws'),
+                // Server chỉ cho subscribe topic của chính tài khoản đã xác thực bằng JWT khi CONNECT
+                connectHeaders: { Authorization: `Bearer ${localStorage.getItem('token') ?? ''}` },
                 onConnect: () => {
                     console.log('Admin connected!');
-                    client.subscribe('/topic/chat/**', (message) => {
+                    client.subscribe('/topic/chat-admin', (message) => {
                         const receivedMessage: ChatMessage = JSON.parse(message.body);
                         // Xác định customerId dựa trên senderId và recipientId
                         const customerId = receivedMessage.senderId !== 'ADMIN' ? receivedMessage.senderId : receivedMessage.recipientId;
@@ -111,6 +117,10 @@ const Support = () => {
     }, [user]);
 
     useEffect(() => {
+        if (skipScrollRef.current) {
+            skipScrollRef.current = false;
+            return;
+        }
         messagesEndRef.current?.scrollIntoView({ behavior: 'smooth' });
     }, [conversations, selectedCustomerId]);
 
@@ -120,11 +130,14 @@ const Support = () => {
         // Chỉ tải lịch sử nếu cuộc hội thoại chưa có tin nhắn hoặc có lỗi
         if (currentConv && currentConv.messages.length === 0) {
             try {
-                const history = await getChatHistory(customerId);
+                const history = await getChatHistoryPage(customerId);
                 setConversations(prev => {
                     const newConvs = new Map(prev);
                     const conv = newConvs.get(customerId);
-                    if (conv) conv.messages = history;
+                    if (conv) {
+                        conv.messages = history.messages;
+                        conv.historyCursor = history.hasMore ? history.nextCursor : null;
+                    }
                     return newConvs;
                 });
             } catch (error) {
@@ -134,6 +147,32 @@ const Support = () => {
         }
     };
 
+    const loadOlderMessages = async () => {
+        if (!selectedCustomerId || loadingOlder) return;
+        const customerId = selectedCustomerId;
+        const cursor = conversations.get(customerId)?.historyCursor;
+        if (!cursor) return;
+        setLoadingOlder(true);
+        try {
+            const older = await getChatHistoryPage(customerId, cursor);
+            skipScrollRef.current = true;
+            setConversations(prev => {
+                const newConvs = new Map(prev);
+                const conv = newConvs.get(customerId);
+                if (conv) {
+                    const known = new Set(older.messages.map((msg: ChatMessage) => msg.id));
+                    conv.messages = [...older.messages, ...conv.messages.filter(msg => !msg.id || !known.has(msg.id))];
+                    conv.historyCursor = older.hasMore ? older.nextCursor : null;
+                }
+                return newConvs;
+            });
+        } catch (error) {
+            console.error("Failed to load older messages", error);
+        } finally {
+            setLoadingOlder(false);
+        }
+    };
+
     const handleSendMessage = () => {
         if (!user || !isAdminUser(user) || !inputValue.trim() || !selectedCustomerId || !stompClientRef.current?.connected) {
             return;
@@ -305,6 +344,17 @@ const Support = () => {
                                 </div>
                             </div>
                             <div className="flex-1 p-4 overflow-y-auto bg-[#faf6f2]">
+                                {selectedConversation.historyCursor && (
+                                    <div className="flex justify-center mb-4">
+                                        <button
+                                            onClick={loadOlderMessages}
+                                            disabled={loadingOlder}
+                                            className="text-xs text-[#d4a373] hover:underline disabled:opacity-50"
+                                        >
+                                            {loadingOlder ? 'Đang tải...' : 'Tải tin nhắn cũ hơn'}
+                                        </button>
+                                    </div>
+                                )}
                                 {selectedConversation.messages.map((msg, index) => (
                                     <div
                                         key={msg.id || index}
@@ -1,8 +1,9 @@
-import React, { useState, useEffect, useMemo } from 'react';
+import React, { useState, useEffect, useMemo, useRef } from 'react';
 import Header from '~/components/admin/Header';
 import api from '~/config/axios';
 import { Link } from 'react-router-dom';
 import { useAuth } from '~/AuthContext'; 
+import { ALL_ORDERS_TOPIC, subscribeOrderEvents } from '~/services/orderEventService';
 import { ToastContainer, toast } from 'react-toastify';
 import 'react-toastify/dist/ReactToastify.css';
 
@@ -28,11 +29,25 @@ const STATUS_LABELS: Record<OrderStatus, string> = {
   'CANCELLED': 'Đã hủy'
 };
 
+const PAGE_SIZE = 20;
+
+// Các vai trò được server cho nghe topic /topic/orders
+const ORDER_TOPIC_ROLES = ['ADMIN', 'SUPER_ADMIN', 'STAFF'];
+
 const Order = () => {
   const { user, loading: authLoading } = useAuth();
   const [orders, setOrders] = useState<Order[]>([]);
   const [loading, setLoading] = useState(true);
   const [selectedStatus, setSelectedStatus] = useState<OrderStatus>('PENDING');
+  const [currentPage, setCurrentPage] = useState<number>(0);
+  const [totalPages, setTotalPages] = useState<number>(0);
+  const [totalElements, setTotalElements] = useState<number>(0);
+  // Bản mới nhất của hàm tải và danh sách, dùng trong callback WebSocket mà không phải kết nối lại
+  const fetchOrdersRef = useRef<(showLoading: boolean) => Promise<void>>(async () => {});
+  const ordersRef = useRef<Order[]>([]);
+  const selectedStatusRef = useRef<OrderStatus>(selectedStatus);
+  ordersRef.current = orders;
+  selectedStatusRef.current = selectedStatus;
 
   useEffect(() => {
     if (authLoading) return;
@@ -41,11 +56,15 @@ const Order = () => {
       return;
     }
 
-    const fetchOrders = async () => {
-      setLoading(true);
+    const fetchOrders = async (showLoading: boolean) => {
+      if (showLoading) setLoading(true);
       try {
-        const response = await api.get(`/api/order/status/${selectedStatus}`);
-        setOrders(response.data);
+        const response = await api.get(`/api/order/status/${selectedStatus}`, {
+          params: { page: currentPage, size: PAGE_SIZE }
+        });
+        setOrders(response.data.content);
+        setTotalPages(response.data.totalPages);
+        setTotalElements(response.data.totalElements);
       } catch (error) {
         console.error("Failed to fetch orders:", error);
         toast.error("Không thể tải danh sách đơn hàng");
@@ -53,8 +72,25 @@ const Order = () => {
         setLoading(false);
       }
     };
-    fetchOrders();
-  }, [selectedStatus, user, authLoading]);
+    fetchOrdersRef.current = fetchOrders;
+    fetchOrders(true);
+  }, [selectedStatus, currentPage, user, authLoading]);
+
+  // Đơn mới/đổi trạng thái được đẩy qua WebSocket; chỉ tải lại khi tab đang xem bị ảnh hưởng
+  useEffect(() => {
+    if (!user || !ORDER_TOPIC_ROLES.includes(user.role)) return;
+    return subscribeOrderEvents(ALL_ORDERS_TOPIC, (event) => {
+      if (event.status === selectedStatusRef.current
+          || ordersRef.current.some(order => order.orderId === event.orderId)) {
+        fetchOrdersRef.current(false);
+      }
+    });
+  }, [user]);
+
+  const handleSelectStatus = (status: OrderStatus) => {
+    setSelectedStatus(status);
+    setCurrentPage(0);
+  };
 
   const handleUpdateStatus = async (orderId: string, newStatus: OrderStatus) => {
     if (!user?.username) {
@@ -71,6 +107,7 @@ const Order = () => {
       });
       toast.success('Cập nhật trạng thái thành công!');
       setOrders(orders.filter(o => o.orderId !== orderId));
+      setTotalElements(prev => Math.max(prev - 1, 0));
     } catch (error: any) {
       toast.error(`Lỗi: ${error.response?.data?.message || 'Không thể cập nhật'}`);
     }
@@ -140,11 +177,11 @@ const Order = () => {
         {/* Status Filter Tabs */}
         <div className="mb-6 flex space-x-2 overflow-x-auto pb-2">
           {STATUSES.map(status => {
-            const orderCount = status === selectedStatus ? orders.length : 0;
+            const orderCount = status === selectedStatus ? totalElements : 0;
             return (
               <button
                 key={status}
-                onClick={() => setSelectedStatus(status)}
+                onClick={() => handleSelectStatus(status)}
                 className={`px-4 py-2 rounded-md text-sm font-medium whitespace-nowrap transition-colors ${
                   selectedStatus === status
                     ? 'bg-[#d4a373] text-white shadow-lg'
@@ -234,6 +271,29 @@ const Order = () => {
                 </tbody>
               </table>
             </div>
+            {totalPages > 1 && (
+              <div className="px-6 py-4 flex items-center justify-between border-t border-gray-200">
+                <div className="text-sm text-gray-500">
+                  Hiển thị trang {currentPage + 1} / {totalPages}
+                </div>
+                <div className="flex space-x-2">
+                  <button
+                    onClick={() => setCurrentPage(prev => Math.max(prev - 1, 0))}
+                    disabled={currentPage === 0 || loading}
+                    className="px-3 py-1 border border-gray-300 rounded-md bg-white text-sm font-medium text-gray-700 hover:bg-gray-50 disabled:opacity-50"
+                  >
+                    Trước
+                  </button>
+                  <button
+                    onClick={() => setCurrentPage(prev => Math.min(prev + 1, totalPages - 1))}
+                    disabled={currentPage === totalPages - 1 || loading}
+                    className="px-3 py-1 border border-gray-300 rounded-md bg-white text-sm font-medium text-gray-700 hover:bg-gray-50 disabled:opacity-50"
+                  >
+                    Sau
+                  </button>
+                </div>
+              </div>
+            )}
           </div>
         )}
       </div>
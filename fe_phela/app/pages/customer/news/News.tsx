@@ -11,6 +11,7 @@ interface NewsArticle {
   title: string;
   summary: string;
   thumbnailUrl: string;
+  imageMediumUrl?: string;
 }
 
 const News = () => {
@@ -49,7 +50,7 @@ const News = () => {
             <div key={article.newsId} className="bg-white rounded-lg shadow-lg overflow-hidden transform hover:-translate-y-2 transition-transform duration-300">
               <Link to={`/tin-tuc/${article.newsId}`}>
                 <img 
-                  src={article.thumbnailUrl || 'https://via.placeholder.com/400x250'} 
+                  src={article.imageMediumUrl || article.thumbnailUrl || 'https://via.placeholder.com/400x250'} 
                   alt={article.title} 
                   className="w-full h-56 object-cover"
                 />
@@ -1,8 +1,9 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import { Link } from 'react-router-dom';
 import HeadOrder from '~/components/customer/HeadOrder';
 import api from '~/config/axios';
 import { useAuth } from '~/AuthContext';
+import { customerOrdersTopic, subscribeOrderEvents } from '~/services/orderEventService';
 
 // --- Định nghĩa kiểu dữ liệu cho một đơn hàng trong danh sách ---
 interface OrderSummary {
@@ -15,19 +16,30 @@ interface OrderSummary {
     paymentMethod: 'COD' | 'BANK_TRANSFER';
 }
 
+const PAGE_SIZE = 10;
+
 // --- Component Lịch sử Đơn hàng ---
 const MyOrders = () => {
     const { user } = useAuth();
     const [orders, setOrders] = useState<OrderSummary[]>([]);
     const [loading, setLoading] = useState(true);
     const [error, setError] = useState<string | null>(null);
+    const [currentPage, setCurrentPage] = useState<number>(0);
+    const [totalPages, setTotalPages] = useState<number>(0);
+
+    // Tải lại trang hiện tại; sự kiện WebSocket tải lại không hiện màn hình chờ
+    const fetchOrdersRef = useRef<(showLoading: boolean) => Promise<void>>(async () => {});
 
     useEffect(() => {
-        const fetchOrders = async () => {
+        const fetchOrders = async (showLoading: boolean) => {
             if (user && user.type === 'customer') {
+                if (showLoading) setLoading(true);
                 try {
-                    const response = await api.get(`/api/order/customer/${user.customerId}`);
-                    setOrders(response.data);
+                    const response = await api.get(`/api/order/customer/${user.customerId}`, {
+                        params: { page: currentPage, size: PAGE_SIZE }
+                    });
+                    setOrders(response.data.content);
+                    setTotalPages(response.data.totalPages);
                 } catch (err: any) {
                     console.error("Lỗi khi tải lịch sử đơn hàng:", err);
                     setError(err.response?.data?.message || "Không thể tải được lịch sử đơn hàng.");
@@ -39,7 +51,22 @@ const MyOrders = () => {
             }
         };
 
-        fetchOrders();
+        fetchOrdersRef.current = fetchOrders;
+        fetchOrders(true);
+    }, [user, currentPage]);
+
+    useEffect(() => {
+        if (!user || user.type !== 'customer') return;
+        return subscribeOrderEvents(customerOrdersTopic(user.customerId), (event) => {
+            if (event.type === 'STATUS_CHANGED' || event.type === 'PAYMENT_CONFIRMED') {
+                setOrders(prev => prev.map(order => order.orderId === event.orderId
+                    ? { ...order, status: event.status, paymentStatus: event.paymentStatus }
+                    : order));
+            } else {
+                // Đơn mới hoặc đơn bị xóa làm thay đổi phân trang
+                fetchOrdersRef.current(false);
+            }
+        });
     }, [user]);
 
     // Helper để lấy màu và chữ cho từng trạng thái
@@ -134,6 +161,29 @@ const MyOrders = () => {
                                 })}
                             </tbody>
                         </table>
+                        {totalPages > 1 && (
+                            <div className="px-6 py-4 flex items-center justify-between border-t border-gray-200">
+                                <div className="text-sm text-gray-500">
+                                    Trang {currentPage + 1} / {totalPages}
+                                </div>
+                                <div className="flex space-x-2">
+                                    <button
+                                        onClick={() => setCurrentPage(prev => Math.max(prev - 1, 0))}
+                                        disabled={currentPage === 0}
+                                        className="px-3 py-1 border border-gray-300 rounded-md bg-white text-sm font-medium text-gray-700 hover:bg-gray-50 disabled:opacity-50"
+                                    >
+                                        Trước
+                                    </button>
+                                    <button
+                                        onClick={() => setCurrentPage(prev => Math.min(prev + 1, totalPages - 1))}
+                                        disabled={currentPage === totalPages - 1}
+                                        className="px-3 py-1 border border-gray-300 rounded-md bg-white text-sm font-medium text-gray-700 hover:bg-gray-50 disabled:opacity-50"
+                                    >
+                                        Sau
+                                    </button>
+                                </div>
+                            </div>
+                        )}
                     </div>
                 ) : (
                     <div className="text-center py-12 bg-white rounded-lg shadow-md">
@@ -3,6 +3,7 @@ import { useParams, Link } from 'react-router-dom';
 import HeadOrder from '~/components/customer/HeadOrder';
 import api from '~/config/axios';
 import { useAuth } from '~/AuthContext';
+import { customerOrdersTopic, subscribeOrderEvents } from '~/services/orderEventService';
 
 // --- Định nghĩa các kiểu dữ liệu ---
 // CẬP NHẬT: Thêm imageUrl vào interface Product
@@ -101,6 +102,15 @@ const OrderDetail = () => {
         fetchOrderDetails();
     }, [orderId, user]);
 
+    // Cập nhật trạng thái ngay khi cửa hàng xử lý đơn, không cần tải lại trang
+    useEffect(() => {
+        if (!orderId || !user || user.type !== 'customer') return;
+        return subscribeOrderEvents(customerOrdersTopic(user.customerId), (event) => {
+            if (event.orderId !== orderId) return;
+            setOrder(prev => prev ? { ...prev, status: event.status, paymentStatus: event.paymentStatus } : prev);
+        });
+    }, [orderId, user]);
+
     // Các hàm helper và phần render chính giữ nguyên
     const getStatusText = (status: Order['status']) => {
         const statuses = {
@@ -16,6 +16,7 @@ interface Product {
     description: string;
     originalPrice: number;
     imageUrl: string;
+    imageMediumUrl?: string;
     status: string;
 }
 
@@ -182,7 +183,7 @@ const Product = () => {
                                             <div className="relative h-48 overflow-hidden">
                                                 <Link to={`/san-pham/${product.productId}`}>
                                                     <img
-                                                        src={product.imageUrl}
+                                                        src={product.imageMediumUrl || product.imageUrl}
                                                         alt={product.productName}
                                                         className="w-full h-full object-cover transition-transform duration-500 group-hover:scale-105"
                                                         onError={(e) => {
@@ -101,6 +101,11 @@ export const registerCustomer = async (data: CustomerRegisterData) => {
 
 // Hàm đăng xuất
 export const logout = () => {
+  // Báo server thu hồi token (không chờ kết quả), sau đó xóa phiên ở client
+  const token = localStorage.getItem('token');
+  if (token) {
+    publicApi.post('/auth/logout', null, { headers: { Authorization: `Bearer ${token}` } }).catch(() => {});
+  }
   localStorage.removeItem('token');
   localStorage.removeItem('user');
 };
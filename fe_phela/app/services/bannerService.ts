@@ -23,6 +23,8 @@ export interface Banner {
     bannerId: string;
     title: string;
     imageUrl: string;
+    imageThumbUrl?: string;
+    imageMediumUrl?: string;
     status: BannerStatus;
     createdAt?: string;
     updatedAt?: string;
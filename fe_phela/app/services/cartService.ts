@@ -48,6 +48,21 @@ export const updateCartItem = async (cartId: string, cartItemId: string, quantit
   return response.data;
 };
 
+export interface CartBatchUpdateDTO {
+  items?: CartItemDTO[];
+  removeCartItemIds?: string[];
+  removePromotionIds?: string[];
+  promotionCode?: string;
+  addressId?: string;
+  branchCode?: string;
+}
+
+// Gửi nhiều thay đổi giỏ hàng trong một request
+export const batchUpdateCart = async (cartId: string, batch: CartBatchUpdateDTO) => {
+  const response = await api.post(`/api/customer/cart/${cartId}/batch`, batch);
+  return response.data;
+};
+
 export const removeCartItem = async (cartId: string, cartItemId: string) => {
   const response = await api.delete(`/api/customer/cart/${cartId}/items/${cartItemId}`);
   return response.data;
@@ -5,7 +5,15 @@ export const getChatHistory = async (customerId: string) => {
     return response.data;
 };
 
+// Lịch sử chat theo trang (cũ -> mới); truyền nextCursor của trang trước để tải các tin cũ hơn
+export const getChatHistoryPage = async (customerId: string, cursor?: string | null, size = 50) => {
+    const response = await api.get(`/api/chat/history/${customerId}/page`, {
+        params: { cursor: cursor || undefined, size }
+    });
+    return response.data as { messages: any[]; nextCursor: string | null; hasMore: boolean };
+};
+
 export const getConversations = async () => {
     const response = await api.get('/api/chat/conversations');
     return response.data;
-};
\ No newline at end of file
+};
@@ -20,6 +20,8 @@ export interface News {
   title: string;
   content: string;
   imageUrl?: string;
+  imageThumbUrl?: string;
+  imageMediumUrl?: string;
   status: string;
   createdAt: string;
   updatedAt: string;
@@ -0,0 +1,38 @@
+import { Client } from '@stomp/stompjs';
+import SockJS from 'sockjs-client';
+
+const WS_URL = `${import.meta.env.VITE_API_URL || 'https://phela-backend-dyl7.onrender.com'}/ws`;
+
+// Topic của màn hình quản lý đơn hàng (ADMIN, SUPER_ADMIN, STAFF)
+export const ALL_ORDERS_TOPIC = '/topic/orders';
+export const customerOrdersTopic = (customerId: string) => `/topic/orders/customer/${customerId}`;
+
+export interface OrderStatusEvent {
+    type: 'CREATED' | 'STATUS_CHANGED' | 'PAYMENT_CONFIRMED' | 'REMOVED';
+    orderId: string;
+    orderCode: string;
+    customerId: string | null;
+    branchCode: string | null;
+    status: 'PENDING' | 'CONFIRMED' | 'DELIVERING' | 'DELIVERED' | 'CANCELLED';
+    paymentStatus: 'PENDING' | 'AWAITING_PAYMENT' | 'COMPLETED' | 'FAILED';
+    timestamp: string;
+}
+
+// Nghe sự kiện đơn hàng qua STOMP (server chỉ gửi sau khi đơn đã commit); trả về hàm hủy kết nối
+export const subscribeOrderEvents = (destination: string, onEvent: (event: OrderStatusEvent) => void) => {
+    const client = new Client({
+        webSocketFactory: () => new SockJS(WS_URL),
+        connectHeaders: { Authorization: `Bearer ${localStorage.getItem('token') ?? ''}` },
+        onConnect: () => {
+            client.subscribe(destination, (message) => onEvent(JSON.parse(message.body)));
+        },
+        onStompError: (frame) => {
+            console.error('Broker reported error: ' + frame.headers['message']);
+        },
+        reconnectDelay: 5000,
+    });
+    client.activate();
+    return () => {
+        client.deactivate();
+    };
+};
@@ -20,6 +20,8 @@ export interface Product {
   description: string;
   originalPrice: number;
   imageUrl: string;
+  imageThumbUrl?: string;
+  imageMediumUrl?: string;
   status: string;
   categoryCode?: string;
 }